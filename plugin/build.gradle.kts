@@ -2,6 +2,7 @@ plugins {
     java
     `java-library`
     id("com.mineplex.sdk.plugin") version "1.18.4"
+    id("me.champeau.jmh") version "0.7.2"
 }
 
 group = "com.plexprison.plexpurchases"
@@ -9,8 +10,61 @@ version = "1.0.0"
 
 repositories {
     mavenCentral()
+    maven("https://repo.papermc.io/repository/maven-public/")
 }
 
+// Paper API for running the catalog validator outside a server
+val validator: Configuration by configurations.creating
+
 dependencies {
     implementation("com.fasterxml.jackson.dataformat:jackson-dataformat-yaml:2.15.2")
-}
\ No newline at end of file
+    implementation("com.fasterxml.jackson.dataformat:jackson-dataformat-smile:2.15.2")
+
+    // Benchmarks run without a server, but still load Bukkit types such as Material and Plugin
+    jmh("io.papermc.paper:paper-api:1.20.4-R0.1-SNAPSHOT")
+    validator("io.papermc.paper:paper-api:1.20.4-R0.1-SNAPSHOT")
+}
+
+// Run with ./gradlew catalogFootprint, prints the heap a 10k product catalog keeps alive with and without interning
+tasks.register<JavaExec>("catalogFootprint") {
+    group = "benchmark"
+    description = "Measures the heap footprint of a generated catalog"
+    classpath = sourceSets["jmh"].runtimeClasspath
+    mainClass.set("net.plexprison.plexpurchases.benchmark.CatalogFootprintReport")
+}
+
+// Run with ./gradlew loadTest --args="--purchases 50000 --max-p99-millis 2000", exits non-zero when a limit is exceeded
+tasks.register<JavaExec>("loadTest") {
+    group = "benchmark"
+    description = "Simulates a burst of joins and store callbacks against the plugin without a server"
+    classpath = sourceSets["jmh"].runtimeClasspath
+    mainClass.set("net.plexprison.plexpurchases.benchmark.LoadTestHarness")
+    jvmArgs("-Xms1g", "-Xmx1g")
+}
+
+// Run with ./gradlew playerStateStress --args="--max-threads 16", exits non-zero when an update is lost
+tasks.register<JavaExec>("playerStateStress") {
+    group = "benchmark"
+    description = "Updates player state from 1 to N threads, checking no update is lost and reporting throughput"
+    classpath = sourceSets["jmh"].runtimeClasspath
+    mainClass.set("net.plexprison.plexpurchases.player.PlayerStateStressHarness")
+}
+
+// Run with ./gradlew validatePurchases --args="<purchases directory> [--threads <count>] [--json <report file>]"
+tasks.register<JavaExec>("validatePurchases") {
+    group = "verification"
+    description = "Validates a purchases directory without a server"
+    classpath = sourceSets["main"].runtimeClasspath + validator
+    mainClass.set("net.plexprison.plexpurchases.config.holder.PurchaseCatalogValidator")
+}
+
+// Run with ./gradlew jmh, results are written as JSON to diff between releases
+jmh {
+    jmhVersion.set("1.37")
+    fork.set(1)
+    warmupIterations.set(3)
+    iterations.set(5)
+    resultFormat.set("JSON")
+    resultsFile.set(layout.buildDirectory.file("results/jmh/results.json"))
+    jvmArgs.addAll("-Xms1g", "-Xmx1g")
+}
@@ -0,0 +1,151 @@
+package net.plexprison.plexpurchases.benchmark;
+
+import org.bukkit.plugin.Plugin;
+import org.bukkit.plugin.PluginDescriptionFile;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * Generates the purchase files and server layout the benchmarks run against, so no Minecraft server is needed.
+ * Files are deterministic: the same index always produces the same product, so results are comparable between runs.
+ */
+final class BenchmarkFixtures {
+
+    private static final String[] ITEMS = {"DIAMOND", "EMERALD", "GOLD_INGOT", "NETHER_STAR", "CHEST", "EXPERIENCE_BOTTLE"};
+    private static final String[] FREQUENCIES = {"MONTHLY", "QUARTERLY", "SEMI_YEARLY", "YEARLY"};
+
+    private BenchmarkFixtures() {
+    }
+
+    /**
+     * Builds a product file like the ones generated by the setup UI.
+     * Every tenth product starts a new dependency chain, every seventh is a subscription and every third is limited by times.
+     *
+     * @param index The product number
+     * @return The YAML content
+     */
+    static String productYaml(final int index) {
+        final StringBuilder yaml = new StringBuilder(1024);
+        yaml.append("productId: \"product-").append(index).append("\"\n");
+        yaml.append("productName: \"&6Product ").append(index).append("\"\n");
+        yaml.append("productDescription: \"Generated benchmark product number ").append(index).append(", with a description as long as a real one.\"\n");
+        yaml.append("price: ").append(100 + index % 900).append('\n');
+        yaml.append("callbackDelivery: \"").append(index % 2 == 0 ? "ONLY_WHEN_PLAYER_ONLINE" : "ALLOW_OFFLINE_DELIVERY").append("\"\n");
+        yaml.append("repeatablePurchase: ").append(index % 3 == 0).append('\n');
+        yaml.append("displayItem: \"").append(BenchmarkFixtures.ITEMS[index % BenchmarkFixtures.ITEMS.length]).append("\"\n");
+        yaml.append("amount: ").append(1 + index % 16).append('\n');
+        yaml.append("hideIfNoPermission: ").append(index % 5 == 0).append('\n');
+
+        if (index % 3 == 0) {
+            yaml.append("# max 5 purchases\n");
+            yaml.append("permission: \"plexpurchases.product-").append(index).append(".times.<purchase_times>\"\n");
+        } else {
+            yaml.append("permission: \"plexpurchases.product-").append(index).append("\"\n");
+        }
+
+        if (index % 7 == 0) {
+            yaml.append("subscriptionId: \"subscription-").append(index).append("\"\n");
+            yaml.append("subscriptionName: \"Subscription ").append(index).append("\"\n");
+            yaml.append("subscriptionDescription: \"Generated benchmark subscription\"\n");
+            yaml.append("subscriptionBasis: \"").append(BenchmarkFixtures.FREQUENCIES[index % BenchmarkFixtures.FREQUENCIES.length]).append("\"\n");
+        }
+
+        yaml.append("actions:\n");
+        yaml.append("  success:\n");
+        yaml.append("    - \"/give <player_name> ").append(BenchmarkFixtures.ITEMS[index % BenchmarkFixtures.ITEMS.length].toLowerCase()).append(" 1\"\n");
+        yaml.append("    - \"/broadcast <player_name> bought product <product_id> for the <purchase_times> time\"\n");
+        yaml.append("    - \"/lp user <uuid> permission set plexpurchases.product-").append(index).append("\"\n");
+        yaml.append("  expire:\n");
+        yaml.append("    - \"/lp user <uuid> permission unset plexpurchases.product-").append(index).append("\"\n");
+        yaml.append("  renew: [ ]\n");
+        yaml.append("dependency: \"").append(index % 10 == 0 ? "" : "product-" + (index - 1)).append("\"\n");
+        yaml.append("dependencyAmount: ").append(index % 10 == 0 ? 0 : 1).append('\n');
+        return yaml.toString();
+    }
+
+    /**
+     * Creates a server layout with a plugin data folder and a game-config/purchases directory holding the given number of products
+     *
+     * @param files The number of product files
+     * @return The server root, delete it with {@link #delete(Path)}
+     */
+    static Path createServer(final int files) {
+        try {
+            final Path root = Files.createTempDirectory("plexpurchases-bench");
+            Files.createDirectories(BenchmarkFixtures.dataFolder(root));
+            final Path purchases = Files.createDirectories(root.resolve("game-config").resolve("purchases"));
+            for (int i = 0; i < files; i++) {
+                // Spread over subdirectories like a real store split by category
+                final Path category = Files.createDirectories(purchases.resolve("category-" + i % 16));
+                Files.writeString(category.resolve("product-" + i + ".yml"), BenchmarkFixtures.productYaml(i), StandardCharsets.UTF_8);
+            }
+            return root;
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Creates a plugin whose data folder sits in the given server layout, only the methods the loader uses return anything
+     *
+     * @param root The server root from {@link #createServer(int)}
+     * @return The plugin stand-in
+     */
+    static Plugin plugin(final Path root) {
+        final PluginDescriptionFile description = new PluginDescriptionFile("PlexPurchases", "benchmark", "net.plexprison.plexpurchases.PlexPurchases");
+        return (Plugin) Proxy.newProxyInstance(Plugin.class.getClassLoader(), new Class<?>[]{Plugin.class}, (proxy, method, args) -> switch (method.getName()) {
+            case "getDataFolder" -> BenchmarkFixtures.dataFolder(root).toFile();
+            case "getDescription" -> description;
+            case "getName" -> "PlexPurchases";
+            case "isEnabled" -> true;
+            case "hashCode" -> System.identityHashCode(proxy);
+            case "equals" -> proxy == args[0];
+            case "toString" -> "BenchmarkPlugin";
+            default -> null;
+        });
+    }
+
+    /**
+     * Deletes a directory tree created by {@link #createServer(int)}
+     *
+     * @param root The directory to delete
+     */
+    static void delete(final Path root) {
+        try {
+            Files.walkFileTree(root, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult visitFile(final Path file, final BasicFileAttributes attributes) throws IOException {
+                    Files.delete(file);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult postVisitDirectory(final Path dir, final IOException e) throws IOException {
+                    Files.delete(dir);
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Gets the plugin data folder of a server layout
+     *
+     * @param root The server root from {@link #createServer(int)}
+     * @return The data folder
+     */
+    static Path dataFolder(final Path root) {
+        return root.resolve("plugins").resolve("PlexPurchases");
+    }
+
+}
@@ -0,0 +1,72 @@
+package net.plexprison.plexpurchases.benchmark;
+
+import net.plexprison.plexpurchases.config.holder.ConfiguredPlexPurchasesObjectHolder;
+import org.bukkit.plugin.Plugin;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.ref.Reference;
+import java.nio.file.Path;
+import java.util.Locale;
+
+/**
+ * Measures the heap a loaded catalog keeps alive, per product, with and without interning shared values.
+ * Not a JMH benchmark: retained heap is a single number per configuration, read after forcing full collections.
+ * Run with ./gradlew catalogFootprint, optionally passing the product count as the first argument.
+ */
+public final class CatalogFootprintReport {
+
+    private CatalogFootprintReport() {
+    }
+
+    public static void main(final String[] args) throws InterruptedException {
+        final int products = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        final Path root = BenchmarkFixtures.createServer(products);
+        // Parse every file both times, the compiled catalog cache would hand the second run the first run's values
+        System.setProperty("plexpurchases.cache", "false");
+
+        try {
+            final Plugin plugin = BenchmarkFixtures.plugin(root);
+            // Loads once up front so class loading and Jackson's caches aren't counted against either run
+            CatalogFootprintReport.measure(plugin, true);
+
+            final double before = CatalogFootprintReport.measure(plugin, false);
+            final double after = CatalogFootprintReport.measure(plugin, true);
+            System.out.printf(Locale.ROOT, "Catalog of %d products%n", products);
+            System.out.printf(Locale.ROOT, "  without interning: %8.0f bytes per product%n", before);
+            System.out.printf(Locale.ROOT, "  with interning:    %8.0f bytes per product (%.0f%% less)%n", after, 100 * (1 - after / before));
+        } finally {
+            BenchmarkFixtures.delete(root);
+        }
+    }
+
+    /**
+     * Loads the catalog and measures what it retains
+     *
+     * @param plugin The plugin stand-in
+     * @param intern Whether shared values are interned
+     * @return The retained heap per product in bytes
+     */
+    private static double measure(final Plugin plugin, final boolean intern) throws InterruptedException {
+        System.setProperty("plexpurchases.catalog.intern", String.valueOf(intern));
+        final long baseline = CatalogFootprintReport.usedHeap();
+
+        final ConfiguredPlexPurchasesObjectHolder holder = new ConfiguredPlexPurchasesObjectHolder(plugin);
+        holder.loadPurchases();
+        final int size = holder.getCatalog().size();
+
+        final long retained = CatalogFootprintReport.usedHeap() - baseline;
+        Reference.reachabilityFence(holder);
+        return retained / (double) size;
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+
+}
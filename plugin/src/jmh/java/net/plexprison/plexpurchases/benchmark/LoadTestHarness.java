@@ -0,0 +1,592 @@
+package net.plexprison.plexpurchases.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import net.plexprison.plexpurchases.callback.PurchaseCallbackHandler;
+import net.plexprison.plexpurchases.config.holder.ConfiguredPlexPurchasesObjectHolder;
+import net.plexprison.plexpurchases.config.holder.PurchaseCatalog;
+import net.plexprison.plexpurchases.config.settings.PluginSettings;
+import net.plexprison.plexpurchases.delivery.PurchaseDeliveryService;
+import net.plexprison.plexpurchases.dispatch.ActionDispatcher;
+import net.plexprison.plexpurchases.ledger.PurchaseLedger;
+import net.plexprison.plexpurchases.player.PlayerStateStore;
+import net.plexprison.plexpurchases.player.PrefetchedPurchaseState;
+import net.plexprison.plexpurchases.player.PurchaseCountCache;
+import net.plexprison.plexpurchases.player.PurchaseStatePrefetcher;
+import net.plexprison.plexpurchases.subscription.SubscriptionScheduler;
+import net.plexprison.plexpurchases.utils.LogLevel;
+import net.plexprison.plexpurchases.utils.Logger;
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.Plugin;
+
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Simulates a sale-day burst against the plugin's real components on a {@link SimulatedServer}, without Minecraft.
+ * The components are wired the way {@code PlexPurchases#onEnable()} wires them, over a generated purchases directory.
+ * Players log in through the prefetcher and join, then store callbacks for purchases, renewals and expiries arrive
+ * from several threads while some players quit and rejoin. The report covers callback throughput and latency, the
+ * time the server thread spends per tick, and the heap allocated, and the run fails when a given limit is exceeded,
+ * so it can gate releases.
+ * Run with ./gradlew loadTest, passing options with --args.
+ */
+public final class LoadTestHarness {
+
+    private static final String USAGE = """
+            Usage: LoadTestHarness [options]
+              --products <n>          Products in the generated catalog (default 1000)
+              --players <n>           Players who join before the burst (default 500)
+              --purchases <n>         Purchase callbacks in the burst (default 20000)
+              --renewals <n>          Subscription renewal callbacks in the burst (default 2000)
+              --expiries <n>          Subscription expiry callbacks in the burst (default 1000)
+              --quits <n>             Players who quit and rejoin during the burst (default 200)
+              --senders <n>           Threads callbacks arrive on (default 8)
+              --rate <n>              Callbacks per second across all senders, 0 sends as fast as possible (default 0)
+              --tick-millis <n>       Length of a server tick (default 50)
+              --async-threads <n>     Threads asynchronous tasks run on (default 8)
+              --seed <n>              Seed for the generated players and callbacks (default 42)
+              --max-p99-millis <n>    Fail if the p99 callback latency is higher
+              --max-tick-millis <n>   Fail if the p99 server thread time per tick is higher
+              --min-throughput <n>    Fail if fewer callbacks per second are handled
+              --json <file>           Also write the report as JSON
+            """;
+    private static final long TIMEOUT_MINUTES = 10;
+
+    private final Options options;
+    private final Path root;
+    private SimulatedServer server;
+    private ConfiguredPlexPurchasesObjectHolder holder;
+    private PlayerStateStore playerStates;
+    private PurchaseCountCache purchaseCounts;
+    private ActionDispatcher dispatcher;
+    private PurchaseDeliveryService deliveryService;
+    private PurchaseLedger ledger;
+    private SubscriptionScheduler subscriptionScheduler;
+    private PurchaseCallbackHandler callbackHandler;
+    private PurchaseStatePrefetcher prefetcher;
+
+    private LoadTestHarness(final Path root, final Options options) {
+        this.root = root;
+        this.options = options;
+    }
+
+    public static void main(final String[] args) throws Exception {
+        if (Arrays.asList(args).contains("--help")) {
+            System.out.print(LoadTestHarness.USAGE);
+            return;
+        }
+
+        final Options options;
+        try {
+            options = Options.parse(args);
+        } catch (final IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.print(LoadTestHarness.USAGE);
+            System.exit(2);
+            return;
+        }
+
+        // Measure parsing rather than the compiled catalog cache of a previous run
+        System.setProperty("plexpurchases.cache", "false");
+        final Path root = BenchmarkFixtures.createServer(options.products);
+        final int exitCode;
+        try {
+            exitCode = new LoadTestHarness(root, options).run();
+        } finally {
+            BenchmarkFixtures.delete(root);
+        }
+        System.exit(exitCode);
+    }
+
+    /**
+     * Boots the components, runs the joins and the burst, and prints the report
+     *
+     * @return The exit code, 0 if every limit was met
+     */
+    private int run() throws Exception {
+        final long bootStart = System.nanoTime();
+        this.boot();
+        final double bootMillis = LoadTestHarness.millis(System.nanoTime() - bootStart);
+
+        final Random random = new Random(this.options.seed);
+        final List<Player> players = new ArrayList<>(this.options.players);
+        for (int i = 0; i < this.options.players; i++) {
+            players.add(this.server.createPlayer(new UUID(random.nextLong(), random.nextLong()), "Player" + i));
+        }
+
+        final ExecutorService logins = Executors.newFixedThreadPool(Math.max(1, this.options.senders));
+        final ExecutorService senders = Executors.newFixedThreadPool(Math.max(1, this.options.senders));
+        try {
+            final long[] joinNanos = this.joinAll(players, logins);
+            final Map<String, Object> report = this.burst(players, random, senders, logins);
+            report.put("bootMillis", bootMillis);
+            report.put("joinP50Millis", LoadTestHarness.millis(LoadTestHarness.percentile(joinNanos, 0.50)));
+            report.put("joinP99Millis", LoadTestHarness.millis(LoadTestHarness.percentile(joinNanos, 0.99)));
+            return this.finish(report);
+        } finally {
+            logins.shutdownNow();
+            senders.shutdownNow();
+            this.shutdown();
+        }
+    }
+
+    /**
+     * Creates and starts the components in the order the plugin does
+     */
+    private void boot() throws IOException {
+        this.server = new SimulatedServer(this.root, this.options.tickMillis, this.options.asyncThreads);
+        final Plugin plugin = this.server.getPlugin();
+        Logger.initialize(plugin);
+        Logger.setMinimumLevel(LogLevel.WARNING);
+        final PluginSettings settings = new PluginSettings();
+
+        this.holder = new ConfiguredPlexPurchasesObjectHolder(plugin);
+        this.playerStates = new PlayerStateStore(plugin, settings.getPlayers());
+        this.playerStates.start();
+        this.purchaseCounts = new PurchaseCountCache(plugin, this.holder, this.playerStates);
+        this.holder.addPublishListener(this.purchaseCounts::onCatalogPublished);
+        this.holder.loadPurchasesAsync().join();
+
+        this.dispatcher = new ActionDispatcher(plugin, settings.getDispatch());
+        this.dispatcher.start();
+        this.deliveryService = new PurchaseDeliveryService(plugin, this.holder, this.dispatcher, this.purchaseCounts);
+        this.deliveryService.start();
+        this.ledger = new PurchaseLedger(plugin, settings.getLedger());
+        this.ledger.start();
+
+        this.subscriptionScheduler = new SubscriptionScheduler(plugin, this.holder, settings.getSubscriptions(), this.dispatcher,
+                due -> this.callbackHandler.onExpire(due.player(), due.playerName(), due.subscriptionId(), due.transactionId()));
+        this.callbackHandler = new PurchaseCallbackHandler(plugin, settings.getCallbacks(), this.holder, this.purchaseCounts,
+                this.deliveryService, this.subscriptionScheduler, this.ledger);
+        this.subscriptionScheduler.start();
+        this.prefetcher = new PurchaseStatePrefetcher(this.deliveryService, settings.getPrefetch());
+    }
+
+    /**
+     * Shuts the components down in the order the plugin does
+     */
+    private void shutdown() {
+        if (this.subscriptionScheduler != null) {
+            this.subscriptionScheduler.shutdown();
+        }
+        if (this.callbackHandler != null) {
+            this.callbackHandler.flushAll();
+        }
+        if (this.dispatcher != null) {
+            this.dispatcher.shutdown();
+        }
+        if (this.deliveryService != null) {
+            this.deliveryService.shutdown();
+        }
+        if (this.ledger != null) {
+            this.ledger.shutdown();
+        }
+        if (this.playerStates != null) {
+            this.playerStates.shutdown();
+        }
+        if (this.server != null) {
+            this.server.shutdown();
+        }
+        Logger.shutdown();
+    }
+
+    /**
+     * Logs every player in at once, each through pre-login and join
+     *
+     * @param players The players
+     * @param logins  The threads logins run on, like the server's login threads
+     * @return The time from each login until the player's counts were loaded
+     */
+    private long[] joinAll(final List<Player> players, final ExecutorService logins) throws Exception {
+        final long[] joinNanos = new long[players.size()];
+        final List<CompletableFuture<Void>> joined = new ArrayList<>(players.size());
+        for (int i = 0; i < players.size(); i++) {
+            final int index = i;
+            final long start = System.nanoTime();
+            joined.add(this.join(players.get(i), logins).thenRun(() -> joinNanos[index] = System.nanoTime() - start));
+        }
+        CompletableFuture.allOf(joined.toArray(CompletableFuture[]::new)).get(LoadTestHarness.TIMEOUT_MINUTES, TimeUnit.MINUTES);
+        return joinNanos;
+    }
+
+    /**
+     * Logs a player in like the plugin's pre-login and join handlers
+     *
+     * @param player The player
+     * @param logins The threads the pre-login step runs on
+     * @return Completes once the player's counts are loaded
+     */
+    private CompletableFuture<Void> join(final Player player, final ExecutorService logins) {
+        final CompletableFuture<Void> loaded = new CompletableFuture<>();
+        logins.execute(() -> {
+            this.prefetcher.prefetch(player.getUniqueId());
+            this.server.runOnServerThread(() -> {
+                this.server.join(player);
+                final PrefetchedPurchaseState prefetched = this.prefetcher.take(player.getUniqueId());
+                this.purchaseCounts.load(player).whenComplete((ignored, throwable) -> {
+                    this.server.runOnServerThread(() -> {
+                        if (player.isOnline()) {
+                            this.deliveryService.deliverPending(player, prefetched == null ? null : prefetched.pendingDeliveries());
+                        }
+                    });
+                    if (throwable != null) {
+                        loaded.completeExceptionally(throwable);
+                    } else {
+                        loaded.complete(null);
+                    }
+                });
+            });
+        });
+        return loaded;
+    }
+
+    /**
+     * Sends the burst of callbacks while players quit and rejoin, and waits for every action to run
+     *
+     * @param players The online players
+     * @param random  The seeded random callbacks are picked with
+     * @param senders The threads callbacks arrive on
+     * @param logins  The threads rejoins log in on
+     * @return The measurements
+     */
+    private Map<String, Object> burst(final List<Player> players, final Random random, final ExecutorService senders, final ExecutorService logins) throws Exception {
+        final List<Callback> callbacks = this.createCallbacks(players, random);
+        final int count = callbacks.size();
+        final long[] latencies = new long[count];
+        final CountDownLatch handled = new CountDownLatch(count);
+        final AtomicInteger next = new AtomicInteger();
+        final AtomicInteger failed = new AtomicInteger();
+
+        final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        final long allocatedBefore = LoadTestHarness.allocatedBytes(threads);
+        final long[] gcBefore = LoadTestHarness.gcTotals();
+        final long dispatchedBefore = this.dispatcher.getDispatchedTotal();
+        final long commandsBefore = this.server.getCommands();
+        final long overBudgetBefore = this.dispatcher.getOverBudgetTicks();
+        final int firstTick = this.server.getTicks();
+        final long start = System.nanoTime();
+
+        for (int s = 0; s < Math.max(1, this.options.senders); s++) {
+            senders.execute(() -> {
+                int index;
+                while ((index = next.getAndIncrement()) < count) {
+                    if (this.options.rate > 0) {
+                        final long due = start + (long) (index * (1_000_000_000D / this.options.rate));
+                        final long wait = due - System.nanoTime();
+                        if (wait > 0) {
+                            LockSupport.parkNanos(wait);
+                        }
+                    }
+                    this.send(callbacks.get(index), index, latencies, handled, failed);
+                }
+            });
+        }
+        final Thread churn = this.startChurn(players, random, logins, count);
+
+        if (!handled.await(LoadTestHarness.TIMEOUT_MINUTES, TimeUnit.MINUTES)) {
+            throw new IllegalStateException("Callbacks weren't handled within " + LoadTestHarness.TIMEOUT_MINUTES + " minutes");
+        }
+        final long handledNanos = System.nanoTime() - start;
+        churn.join();
+        while (this.dispatcher.getQueuedActions() > 0) {
+            Thread.sleep(this.options.tickMillis);
+        }
+        final long deliveredNanos = System.nanoTime() - start;
+        final long[] gcAfter = LoadTestHarness.gcTotals();
+        final long allocated = LoadTestHarness.allocatedBytes(threads) - allocatedBefore;
+        final long[] ticks = this.server.getTickTimes(firstTick, this.server.getTicks());
+
+        final Map<String, Object> report = new LinkedHashMap<>();
+        report.put("products", this.holder.getCatalog().size());
+        report.put("players", players.size());
+        report.put("callbacks", count);
+        report.put("failedCallbacks", failed.get());
+        report.put("quits", this.options.quits);
+        report.put("handledMillis", LoadTestHarness.millis(handledNanos));
+        report.put("deliveredMillis", LoadTestHarness.millis(deliveredNanos));
+        report.put("throughputPerSecond", count / (handledNanos / 1e9));
+        report.put("latencyP50Millis", LoadTestHarness.millis(LoadTestHarness.percentile(latencies, 0.50)));
+        report.put("latencyP99Millis", LoadTestHarness.millis(LoadTestHarness.percentile(latencies, 0.99)));
+        report.put("latencyMaxMillis", LoadTestHarness.millis(LoadTestHarness.percentile(latencies, 1.0)));
+        report.put("ticks", ticks.length);
+        report.put("tickP50Millis", LoadTestHarness.millis(LoadTestHarness.percentile(ticks, 0.50)));
+        report.put("tickP99Millis", LoadTestHarness.millis(LoadTestHarness.percentile(ticks, 0.99)));
+        report.put("tickMaxMillis", LoadTestHarness.millis(LoadTestHarness.percentile(ticks, 1.0)));
+        report.put("overBudgetTicks", this.dispatcher.getOverBudgetTicks() - overBudgetBefore);
+        report.put("actionsDispatched", this.dispatcher.getDispatchedTotal() - dispatchedBefore);
+        report.put("commandsRun", this.server.getCommands() - commandsBefore);
+        report.put("allocatedMegabytes", allocated / (1024D * 1024D));
+        report.put("allocatedBytesPerCallback", allocated / (double) Math.max(1, count));
+        report.put("gcCount", gcAfter[0] - gcBefore[0]);
+        report.put("gcMillis", gcAfter[1] - gcBefore[1]);
+        return report;
+    }
+
+    private void send(final Callback callback, final int index, final long[] latencies, final CountDownLatch handled, final AtomicInteger failed) {
+        final long sent = System.nanoTime();
+        final String transactionId = "load-test-" + index;
+        final CompletableFuture<Boolean> future = switch (callback.type()) {
+            case PURCHASE -> this.callbackHandler.onPurchase(callback.player().getUniqueId(), callback.player().getName(), callback.purchaseId(), transactionId);
+            case RENEWAL -> this.callbackHandler.onRenew(callback.player().getUniqueId(), callback.player().getName(), callback.purchaseId(), transactionId);
+            case EXPIRY -> this.callbackHandler.onExpire(callback.player().getUniqueId(), callback.player().getName(), callback.purchaseId(), transactionId);
+        };
+        future.whenComplete((delivered, throwable) -> {
+            latencies[index] = System.nanoTime() - sent;
+            if (throwable != null || !Boolean.TRUE.equals(delivered)) {
+                failed.incrementAndGet();
+            }
+            handled.countDown();
+        });
+    }
+
+    /**
+     * Quits and rejoins random players, spread over roughly the time the burst takes
+     *
+     * @param players   The online players
+     * @param random    The seeded random players are picked with
+     * @param logins    The threads rejoins log in on
+     * @param callbacks The number of callbacks in the burst
+     * @return The thread doing it, finished once every player is back
+     */
+    private Thread startChurn(final List<Player> players, final Random random, final ExecutorService logins, final int callbacks) {
+        final List<Player> leaving = new ArrayList<>(this.options.quits);
+        for (int i = 0; i < this.options.quits && !players.isEmpty(); i++) {
+            leaving.add(players.get(random.nextInt(players.size())));
+        }
+        final long spacingNanos = this.options.rate > 0 && !leaving.isEmpty()
+                ? (long) (callbacks * (1_000_000_000D / this.options.rate) / leaving.size())
+                : TimeUnit.MILLISECONDS.toNanos(1);
+
+        final Thread thread = new Thread(() -> {
+            final List<CompletableFuture<Void>> rejoined = new ArrayList<>(leaving.size());
+            for (final Player player : leaving) {
+                final CountDownLatch quit = new CountDownLatch(1);
+                this.server.runOnServerThread(() -> {
+                    this.server.quit(player);
+                    this.purchaseCounts.evict(player.getUniqueId());
+                    quit.countDown();
+                });
+                try {
+                    quit.await();
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                rejoined.add(this.join(player, logins));
+                LockSupport.parkNanos(spacingNanos);
+            }
+            CompletableFuture.allOf(rejoined.toArray(CompletableFuture[]::new)).join();
+        }, "LoadTest-Churn");
+        thread.start();
+        return thread;
+    }
+
+    /**
+     * Picks the callbacks of the burst, shuffled so purchases, renewals and expiries are interleaved
+     *
+     * @param players The players callbacks are for
+     * @param random  The seeded random
+     * @return The callbacks in the order they are sent
+     */
+    private List<Callback> createCallbacks(final List<Player> players, final Random random) {
+        final PurchaseCatalog catalog = this.holder.getCatalog();
+        final List<String> products = new ArrayList<>();
+        final List<String> subscriptions = new ArrayList<>();
+        for (int i = 0; i < catalog.size(); i++) {
+            (catalog.isSubscription(i) ? subscriptions : products).add(catalog.get(i).getPurchaseId());
+        }
+        if (products.isEmpty() || players.isEmpty()) {
+            throw new IllegalStateException("The generated catalog has no products or there are no players");
+        }
+
+        final List<Callback> callbacks = new ArrayList<>();
+        for (int i = 0; i < this.options.purchases; i++) {
+            callbacks.add(new Callback(CallbackType.PURCHASE, players.get(random.nextInt(players.size())), products.get(random.nextInt(products.size()))));
+        }
+        for (int i = 0; i < this.options.renewals && !subscriptions.isEmpty(); i++) {
+            callbacks.add(new Callback(CallbackType.RENEWAL, players.get(random.nextInt(players.size())), subscriptions.get(random.nextInt(subscriptions.size()))));
+        }
+        for (int i = 0; i < this.options.expiries && !subscriptions.isEmpty(); i++) {
+            callbacks.add(new Callback(CallbackType.EXPIRY, players.get(random.nextInt(players.size())), subscriptions.get(random.nextInt(subscriptions.size()))));
+        }
+        Collections.shuffle(callbacks, random);
+        return callbacks;
+    }
+
+    /**
+     * Prints the report, writes it as JSON if asked to and checks the limits
+     *
+     * @param report The measurements
+     * @return The exit code, 0 if every limit was met
+     */
+    private int finish(final Map<String, Object> report) throws IOException {
+        System.out.printf(Locale.ROOT, "Load test: %d callbacks for %d players over %d products, %d quits%n",
+                report.get("callbacks"), report.get("players"), report.get("products"), report.get("quits"));
+        System.out.printf(Locale.ROOT, "  boot:       %.1fms, join p50 %.2fms, p99 %.2fms%n",
+                report.get("bootMillis"), report.get("joinP50Millis"), report.get("joinP99Millis"));
+        System.out.printf(Locale.ROOT, "  throughput: %.0f callbacks/s, handled in %.0fms, every action run after %.0fms, %d failed%n",
+                report.get("throughputPerSecond"), report.get("handledMillis"), report.get("deliveredMillis"), report.get("failedCallbacks"));
+        System.out.printf(Locale.ROOT, "  latency:    p50 %.2fms, p99 %.2fms, max %.2fms%n",
+                report.get("latencyP50Millis"), report.get("latencyP99Millis"), report.get("latencyMaxMillis"));
+        System.out.printf(Locale.ROOT, "  main tick:  p50 %.3fms, p99 %.3fms, max %.3fms over %d ticks, %d over the dispatch budget%n",
+                report.get("tickP50Millis"), report.get("tickP99Millis"), report.get("tickMaxMillis"), report.get("ticks"), report.get("overBudgetTicks"));
+        System.out.printf(Locale.ROOT, "  actions:    %d dispatched, %d commands run%n",
+                report.get("actionsDispatched"), report.get("commandsRun"));
+        System.out.printf(Locale.ROOT, "  heap:       %.1fMB allocated, %.0f bytes per callback, %d GCs taking %dms%n",
+                report.get("allocatedMegabytes"), report.get("allocatedBytesPerCallback"), report.get("gcCount"), report.get("gcMillis"));
+
+        final List<String> exceeded = new ArrayList<>();
+        if (this.options.maxP99Millis > 0 && (double) report.get("latencyP99Millis") > this.options.maxP99Millis) {
+            exceeded.add("p99 callback latency is over " + this.options.maxP99Millis + "ms");
+        }
+        if (this.options.maxTickMillis > 0 && (double) report.get("tickP99Millis") > this.options.maxTickMillis) {
+            exceeded.add("p99 server thread time per tick is over " + this.options.maxTickMillis + "ms");
+        }
+        if (this.options.minThroughput > 0 && (double) report.get("throughputPerSecond") < this.options.minThroughput) {
+            exceeded.add("throughput is under " + this.options.minThroughput + " callbacks/s");
+        }
+        if ((int) report.get("failedCallbacks") > 0) {
+            exceeded.add(report.get("failedCallbacks") + " callbacks weren't handed over for delivery");
+        }
+        report.put("passed", exceeded.isEmpty());
+        report.put("exceeded", exceeded);
+
+        if (this.options.json != null) {
+            new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(this.options.json.toFile(), report);
+        }
+
+        exceeded.forEach(problem -> System.out.println("FAILED: " + problem));
+        return exceeded.isEmpty() ? 0 : 1;
+    }
+
+    /**
+     * Sums the heap allocated by every live thread, threads that exit during the burst take their share with them,
+     * which is why the pools here are kept alive until the end
+     *
+     * @param threads The thread bean
+     * @return The bytes allocated so far
+     */
+    private static long allocatedBytes(final com.sun.management.ThreadMXBean threads) {
+        long total = 0;
+        for (final long allocated : threads.getThreadAllocatedBytes(threads.getAllThreadIds())) {
+            total += Math.max(0, allocated);
+        }
+        return total;
+    }
+
+    private static long[] gcTotals() {
+        long count = 0;
+        long millis = 0;
+        for (final GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, collector.getCollectionCount());
+            millis += Math.max(0, collector.getCollectionTime());
+        }
+        return new long[]{count, millis};
+    }
+
+    private static long percentile(final long[] values, final double percentile) {
+        if (values.length == 0) {
+            return 0;
+        }
+        final long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[Math.max(0, (int) Math.ceil(percentile * sorted.length) - 1)];
+    }
+
+    private static double millis(final long nanos) {
+        return nanos / 1e6;
+    }
+
+    private enum CallbackType {
+        PURCHASE,
+        RENEWAL,
+        EXPIRY
+    }
+
+    /**
+     * A store callback to send during the burst
+     *
+     * @param type       What the store reports
+     * @param player     The player it is for
+     * @param purchaseId The product or subscription ID
+     */
+    private record Callback(CallbackType type, Player player, String purchaseId) {
+    }
+
+    /**
+     * The command line options
+     */
+    private static final class Options {
+
+        private int products = 1000;
+        private int players = 500;
+        private int purchases = 20_000;
+        private int renewals = 2000;
+        private int expiries = 1000;
+        private int quits = 200;
+        private int senders = 8;
+        private double rate;
+        private long tickMillis = 50;
+        private int asyncThreads = 8;
+        private long seed = 42;
+        private double maxP99Millis;
+        private double maxTickMillis;
+        private double minThroughput;
+        private Path json;
+
+        private static Options parse(final String[] args) {
+            final Options options = new Options();
+            for (int i = 0; i < args.length; i++) {
+                if (i + 1 >= args.length) {
+                    throw new IllegalArgumentException("Missing value for " + args[i]);
+                }
+
+                final String value = args[++i];
+                try {
+                    switch (args[i - 1]) {
+                        case "--products" -> options.products = Integer.parseInt(value);
+                        case "--players" -> options.players = Integer.parseInt(value);
+                        case "--purchases" -> options.purchases = Integer.parseInt(value);
+                        case "--renewals" -> options.renewals = Integer.parseInt(value);
+                        case "--expiries" -> options.expiries = Integer.parseInt(value);
+                        case "--quits" -> options.quits = Integer.parseInt(value);
+                        case "--senders" -> options.senders = Integer.parseInt(value);
+                        case "--rate" -> options.rate = Double.parseDouble(value);
+                        case "--tick-millis" -> options.tickMillis = Math.max(1L, Long.parseLong(value));
+                        case "--async-threads" -> options.asyncThreads = Math.max(1, Integer.parseInt(value));
+                        case "--seed" -> options.seed = Long.parseLong(value);
+                        case "--max-p99-millis" -> options.maxP99Millis = Double.parseDouble(value);
+                        case "--max-tick-millis" -> options.maxTickMillis = Double.parseDouble(value);
+                        case "--min-throughput" -> options.minThroughput = Double.parseDouble(value);
+                        case "--json" -> options.json = Path.of(value);
+                        default -> throw new IllegalArgumentException("Unknown option " + args[i - 1]);
+                    }
+                } catch (final NumberFormatException e) {
+                    throw new IllegalArgumentException("Not a number for " + args[i - 1] + ": " + value);
+                }
+            }
+            return options;
+        }
+
+    }
+
+}
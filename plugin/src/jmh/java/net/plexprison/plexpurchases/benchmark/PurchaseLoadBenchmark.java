@@ -0,0 +1,63 @@
+package net.plexprison.plexpurchases.benchmark;
+
+import net.plexprison.plexpurchases.config.holder.ConfiguredPlexPurchasesObjectHolder;
+import net.plexprison.plexpurchases.config.holder.PurchaseCatalog;
+import org.bukkit.plugin.Plugin;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loading a whole purchases directory, on one thread and on the parallel loader.
+ * With the cache enabled, every load after the first reads unchanged files from the compiled catalog cache like a
+ * warm start; with it disabled every file is parsed like a cold start.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class PurchaseLoadBenchmark {
+
+    @Param({"100", "1000", "10000"})
+    private int files;
+
+    @Param({"false", "true"})
+    private boolean cache;
+
+    private Path root;
+    private Plugin plugin;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        System.setProperty("plexpurchases.cache", String.valueOf(this.cache));
+        this.root = BenchmarkFixtures.createServer(this.files);
+        this.plugin = BenchmarkFixtures.plugin(this.root);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BenchmarkFixtures.delete(this.root);
+    }
+
+    @Benchmark
+    public PurchaseCatalog loadPurchases() {
+        final ConfiguredPlexPurchasesObjectHolder holder = new ConfiguredPlexPurchasesObjectHolder(this.plugin);
+        holder.loadPurchases();
+        return holder.getCatalog();
+    }
+
+    @Benchmark
+    public PurchaseCatalog loadPurchasesAsync() {
+        return new ConfiguredPlexPurchasesObjectHolder(this.plugin).loadPurchasesAsync().join();
+    }
+
+}
@@ -0,0 +1,73 @@
+package net.plexprison.plexpurchases.benchmark;
+
+import net.plexprison.plexpurchases.config.ConfiguredPlexPurchasesObject;
+import net.plexprison.plexpurchases.config.holder.ConfiguredPlexPurchasesObjectHolder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Looking purchases up by ID in a loaded catalog, cycling through IDs so lookups don't all hit the same entry
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PurchaseLookupBenchmark {
+
+    @Param({"100", "1000", "10000"})
+    private int files;
+
+    private Path root;
+    private ConfiguredPlexPurchasesObjectHolder holder;
+    private String[] ids;
+    private String[] missingIds;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        System.setProperty("plexpurchases.cache", "false");
+        this.root = BenchmarkFixtures.createServer(this.files);
+        this.holder = new ConfiguredPlexPurchasesObjectHolder(BenchmarkFixtures.plugin(this.root));
+        this.holder.loadPurchases();
+
+        this.ids = new String[1024];
+        this.missingIds = new String[1024];
+        for (int i = 0; i < this.ids.length; i++) {
+            // Fresh strings, as IDs arriving from store callbacks would be
+            this.ids[i] = new String("product-" + (i * 7919 % this.files));
+            this.missingIds[i] = new String("missing-" + i);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BenchmarkFixtures.delete(this.root);
+    }
+
+    @Benchmark
+    public Optional<ConfiguredPlexPurchasesObject> getConfigById() {
+        return this.holder.getConfigById(this.ids[this.next++ & 1023]);
+    }
+
+    @Benchmark
+    public Optional<ConfiguredPlexPurchasesObject> getConfigByIdMissing() {
+        return this.holder.getConfigById(this.missingIds[this.next++ & 1023]);
+    }
+
+    @Benchmark
+    public ConfiguredPlexPurchasesObject catalogGetById() {
+        return this.holder.getCatalog().getById(this.ids[this.next++ & 1023]);
+    }
+
+}
@@ -0,0 +1,424 @@
+package net.plexprison.plexpurchases.benchmark;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Server;
+import org.bukkit.command.ConsoleCommandSender;
+import org.bukkit.entity.Player;
+import org.bukkit.permissions.PermissionAttachmentInfo;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.plugin.PluginDescriptionFile;
+import org.bukkit.scheduler.BukkitScheduler;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+/**
+ * Just enough of a Bukkit server to run the plugin's components without Minecraft.
+ * A dedicated thread plays the server thread, running synchronous tasks once per tick and timing each tick, while
+ * asynchronous tasks run on a scheduled pool with ticks converted to milliseconds. Commands are counted rather than
+ * run, except LuckPerms style permission commands, which grant and revoke permissions of the simulated players so
+ * permission probes see what purchases granted.
+ * Methods the components don't use return null, 0 or false.
+ */
+final class SimulatedServer {
+
+    private final long tickNanos;
+    private final Server server;
+    private final Plugin plugin;
+    private final Map<UUID, Player> online;
+    private final Map<UUID, Set<String>> permissions;
+    private final ConcurrentLinkedQueue<SyncTask> incoming;
+    private final ScheduledExecutorService asyncPool;
+    private final AtomicInteger taskIds;
+    private final AtomicLong commands;
+    private final Thread mainThread;
+    // Nanoseconds each tick spent running synchronous tasks, written by the server thread only
+    private long[] tickTimes;
+    private volatile int ticks;
+    private volatile boolean running;
+
+    /**
+     * Constructor for the simulated server, starts its server thread and installs it as {@link Bukkit}'s server
+     *
+     * @param root         The server root from {@link BenchmarkFixtures#createServer(int)}
+     * @param tickMillis   The length of a tick
+     * @param asyncThreads The number of threads asynchronous tasks run on
+     */
+    SimulatedServer(final Path root, final long tickMillis, final int asyncThreads) {
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+        this.online = new ConcurrentHashMap<>();
+        this.permissions = new ConcurrentHashMap<>();
+        this.incoming = new ConcurrentLinkedQueue<>();
+        this.taskIds = new AtomicInteger();
+        this.commands = new AtomicLong();
+        this.tickTimes = new long[1024];
+        this.mainThread = new Thread(this::runTicks, "Simulated-Server");
+        this.mainThread.setDaemon(true);
+
+        final AtomicInteger threads = new AtomicInteger();
+        this.asyncPool = Executors.newScheduledThreadPool(asyncThreads, runnable -> {
+            final Thread thread = new Thread(runnable, "Simulated-Async-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        final ConsoleCommandSender console = SimulatedServer.proxy(ConsoleCommandSender.class, (proxy, method, args) -> switch (method.getName()) {
+            case "getName" -> "CONSOLE";
+            case "isOp", "hasPermission" -> true;
+            default -> SimulatedServer.defaultValue(proxy, method, args);
+        });
+        final BukkitScheduler scheduler = SimulatedServer.proxy(BukkitScheduler.class, this::schedule);
+        final Logger logger = Logger.getLogger("SimulatedServer");
+
+        this.server = SimulatedServer.proxy(Server.class, (proxy, method, args) -> switch (method.getName()) {
+            case "getScheduler" -> scheduler;
+            case "getConsoleSender" -> console;
+            case "getPlayer" -> args[0] instanceof UUID id ? this.online.get(id) : null;
+            case "getOnlinePlayers" -> List.copyOf(this.online.values());
+            case "dispatchCommand" -> this.dispatchCommand((String) args[1]);
+            case "isPrimaryThread" -> Thread.currentThread() == this.mainThread;
+            case "getLogger" -> logger;
+            case "getName" -> "SimulatedServer";
+            case "getVersion", "getBukkitVersion", "getMinecraftVersion" -> "simulated";
+            default -> SimulatedServer.defaultValue(proxy, method, args);
+        });
+        Bukkit.setServer(this.server);
+
+        final PluginDescriptionFile description = new PluginDescriptionFile("PlexPurchases", "load-test", "net.plexprison.plexpurchases.PlexPurchases");
+        final Logger pluginLogger = Logger.getLogger("PlexPurchases");
+        this.plugin = SimulatedServer.proxy(Plugin.class, (proxy, method, args) -> switch (method.getName()) {
+            case "getServer" -> this.server;
+            case "getDataFolder" -> BenchmarkFixtures.dataFolder(root).toFile();
+            case "getDescription" -> description;
+            case "getName" -> "PlexPurchases";
+            case "getLogger" -> pluginLogger;
+            case "isEnabled" -> this.running;
+            default -> SimulatedServer.defaultValue(proxy, method, args);
+        });
+
+        this.running = true;
+        this.mainThread.start();
+    }
+
+    /**
+     * Gets the plugin stand-in the components are created with
+     *
+     * @return The plugin
+     */
+    Plugin getPlugin() {
+        return this.plugin;
+    }
+
+    /**
+     * Creates a player who isn't online yet
+     *
+     * @param id   The player's UUID
+     * @param name The player's name
+     * @return The player
+     */
+    Player createPlayer(final UUID id, final String name) {
+        final Set<String> granted = this.permissions.computeIfAbsent(id, key -> ConcurrentHashMap.newKeySet());
+        return SimulatedServer.proxy(Player.class, (proxy, method, args) -> switch (method.getName()) {
+            case "getUniqueId" -> id;
+            case "getName", "getDisplayName" -> name;
+            case "isOnline" -> this.online.get(id) == proxy;
+            case "hasPermission" -> args[0] instanceof String permission && granted.contains(permission);
+            case "getEffectivePermissions" -> granted.stream()
+                    .map(permission -> new PermissionAttachmentInfo((Player) proxy, permission, null, true))
+                    .collect(Collectors.toSet());
+            default -> SimulatedServer.defaultValue(proxy, method, args);
+        });
+    }
+
+    /**
+     * Marks a player online, call on the server thread like a join
+     *
+     * @param player The player
+     */
+    void join(final Player player) {
+        this.online.put(player.getUniqueId(), player);
+    }
+
+    /**
+     * Marks a player offline, call on the server thread like a quit
+     *
+     * @param player The player
+     */
+    void quit(final Player player) {
+        this.online.remove(player.getUniqueId(), player);
+    }
+
+    /**
+     * Runs a task on the server thread during the next tick
+     *
+     * @param task The task
+     */
+    void runOnServerThread(final Runnable task) {
+        this.incoming.add(new SyncTask(this.taskIds.incrementAndGet(), task, this.ticks + 1, 0));
+    }
+
+    /**
+     * Waits until every task queued on the server thread so far has run
+     *
+     * @throws InterruptedException If interrupted while waiting
+     */
+    void awaitServerThread() throws InterruptedException {
+        final CountDownLatch latch = new CountDownLatch(1);
+        this.runOnServerThread(latch::countDown);
+        latch.await();
+    }
+
+    /**
+     * Gets the number of commands dispatched
+     *
+     * @return The number of commands
+     */
+    long getCommands() {
+        return this.commands.get();
+    }
+
+    /**
+     * Gets the number of ticks run so far
+     *
+     * @return The tick count
+     */
+    int getTicks() {
+        return this.ticks;
+    }
+
+    /**
+     * Copies how long the server thread spent in each tick of a range
+     *
+     * @param from The first tick, inclusive
+     * @param to   The last tick, exclusive
+     * @return The time of each tick in nanoseconds
+     * @throws InterruptedException If interrupted while waiting for the ticks to finish
+     */
+    long[] getTickTimes(final int from, final int to) throws InterruptedException {
+        // Read on the server thread, the only writer
+        final long[][] copy = new long[1][];
+        final CountDownLatch latch = new CountDownLatch(1);
+        this.runOnServerThread(() -> {
+            copy[0] = Arrays.copyOfRange(this.tickTimes, from, Math.min(to, this.ticks));
+            latch.countDown();
+        });
+        latch.await();
+        return copy[0];
+    }
+
+    /**
+     * Stops the server thread and the asynchronous pool
+     */
+    void shutdown() {
+        this.running = false;
+        this.asyncPool.shutdownNow();
+        LockSupport.unpark(this.mainThread);
+        try {
+            this.mainThread.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Runs synchronous tasks once per tick until shut down, sleeping out the rest of each tick
+     */
+    private void runTicks() {
+        final PriorityQueue<SyncTask> queue = new PriorityQueue<>();
+        long nextTick = System.nanoTime();
+        while (this.running) {
+            final int tick = this.ticks;
+            final long start = System.nanoTime();
+
+            SyncTask task;
+            while ((task = this.incoming.poll()) != null) {
+                queue.add(task);
+            }
+            final List<SyncTask> repeating = new ArrayList<>();
+            while ((task = queue.peek()) != null && task.dueTick <= tick) {
+                queue.poll();
+                if (task.cancelled) {
+                    continue;
+                }
+                try {
+                    task.runnable.run();
+                } catch (final RuntimeException e) {
+                    Logger.getLogger("SimulatedServer").warning("Task failed on the server thread: " + e);
+                }
+                if (task.period > 0 && !task.cancelled) {
+                    task.dueTick = tick + task.period;
+                    repeating.add(task);
+                }
+            }
+            queue.addAll(repeating);
+
+            if (tick == this.tickTimes.length) {
+                this.tickTimes = Arrays.copyOf(this.tickTimes, tick * 2);
+            }
+            this.tickTimes[tick] = System.nanoTime() - start;
+            this.ticks = tick + 1;
+
+            nextTick += this.tickNanos;
+            final long sleep = nextTick - System.nanoTime();
+            if (sleep > 0) {
+                LockSupport.parkNanos(sleep);
+            } else {
+                // Behind like a lagging server, carry on without trying to catch up
+                nextTick = System.nanoTime();
+            }
+        }
+    }
+
+    private Object schedule(final Object proxy, final Method method, final Object[] args) {
+        final String name = method.getName();
+        if (!name.startsWith("runTask") || args.length < 2 || !(args[1] instanceof Runnable runnable)) {
+            return SimulatedServer.defaultValue(proxy, method, args);
+        }
+
+        final long delay = args.length > 2 ? Math.max(0L, (long) args[2]) : 0L;
+        final long period = args.length > 3 ? (long) args[3] : 0L;
+        final int id = this.taskIds.incrementAndGet();
+
+        if (!name.contains("Asynchronously")) {
+            final SyncTask task = new SyncTask(id, runnable, this.ticks + Math.max(1L, delay), Math.max(0L, period));
+            this.incoming.add(task);
+            return this.task(id, true, () -> task.cancelled = true, () -> task.cancelled);
+        }
+
+        final long delayNanos = delay * this.tickNanos;
+        final ScheduledFuture<?> future = period > 0
+                ? this.asyncPool.scheduleAtFixedRate(runnable, delayNanos, period * this.tickNanos, TimeUnit.NANOSECONDS)
+                : this.asyncPool.schedule(runnable, delayNanos, TimeUnit.NANOSECONDS);
+        return this.task(id, false, () -> future.cancel(false), future::isCancelled);
+    }
+
+    private BukkitTask task(final int id, final boolean sync, final Runnable cancel, final BooleanSupplier cancelled) {
+        return SimulatedServer.proxy(BukkitTask.class, (proxy, method, args) -> switch (method.getName()) {
+            case "getTaskId" -> id;
+            case "getOwner" -> this.plugin;
+            case "isSync" -> sync;
+            case "isCancelled" -> cancelled.getAsBoolean();
+            case "cancel" -> {
+                cancel.run();
+                yield null;
+            }
+            default -> SimulatedServer.defaultValue(proxy, method, args);
+        });
+    }
+
+    /**
+     * Counts a command, applying permission commands such as {@code lp user <uuid> permission set <node>}
+     *
+     * @param line The command line
+     * @return Always true
+     */
+    private boolean dispatchCommand(final String line) {
+        this.commands.incrementAndGet();
+
+        final String[] parts = (line.startsWith("/") ? line.substring(1) : line).split(" ");
+        if (parts.length >= 6 && parts[0].equals("lp") && parts[1].equals("user") && parts[3].equals("permission")) {
+            try {
+                final Set<String> granted = this.permissions.get(UUID.fromString(parts[2]));
+                if (granted != null && parts[4].equals("set")) {
+                    granted.add(parts[5]);
+                } else if (granted != null && parts[4].equals("unset")) {
+                    granted.remove(parts[5]);
+                }
+            } catch (final IllegalArgumentException e) {
+                // Addressed by name rather than UUID, nothing to track
+            }
+        }
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(final Class<T> type, final InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, handler);
+    }
+
+    private static Object defaultValue(final Object proxy, final Method method, final Object[] args) {
+        return switch (method.getName()) {
+            case "hashCode" -> System.identityHashCode(proxy);
+            case "equals" -> proxy == args[0];
+            case "toString" -> method.getDeclaringClass().getSimpleName() + "@" + Integer.toHexString(System.identityHashCode(proxy));
+            default -> {
+                final Class<?> type = method.getReturnType();
+                if (type == boolean.class) {
+                    yield false;
+                } else if (type == int.class || type == long.class || type == double.class || type == float.class || type == short.class || type == byte.class) {
+                    yield SimulatedServer.zero(type);
+                } else if (type == Collection.class || type == List.class) {
+                    yield List.of();
+                }
+                yield null;
+            }
+        };
+    }
+
+    private static Object zero(final Class<?> type) {
+        if (type == int.class) {
+            return 0;
+        } else if (type == long.class) {
+            return 0L;
+        } else if (type == double.class) {
+            return 0D;
+        } else if (type == float.class) {
+            return 0F;
+        } else if (type == short.class) {
+            return (short) 0;
+        }
+        return (byte) 0;
+    }
+
+    /**
+     * A task waiting for the server thread
+     */
+    private static final class SyncTask implements Comparable<SyncTask> {
+
+        private final int id;
+        private final Runnable runnable;
+        private final long period;
+        private long dueTick;
+        private volatile boolean cancelled;
+
+        private SyncTask(final int id, final Runnable runnable, final long dueTick, final long period) {
+            this.id = id;
+            this.runnable = runnable;
+            this.dueTick = dueTick;
+            this.period = period;
+        }
+
+        @Override
+        public int compareTo(final SyncTask other) {
+            final int byTick = Long.compare(this.dueTick, other.dueTick);
+            // Tasks due on the same tick run in the order they were scheduled, like Bukkit's
+            return byTick != 0 ? byTick : Integer.compare(this.id, other.id);
+        }
+
+    }
+
+}
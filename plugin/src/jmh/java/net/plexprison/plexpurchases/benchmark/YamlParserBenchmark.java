@@ -0,0 +1,68 @@
+package net.plexprison.plexpurchases.benchmark;
+
+import net.plexprison.plexpurchases.config.ConfiguredPlexPurchasesObject;
+import net.plexprison.plexpurchases.utils.YamlParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing, reading and merging a single realistic product file
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class YamlParserBenchmark {
+
+    private String yaml;
+    private Path file;
+    private ConfiguredPlexPurchasesObject base;
+    private ConfiguredPlexPurchasesObject override;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        this.yaml = BenchmarkFixtures.productYaml(41);
+        this.file = Files.createTempFile("plexpurchases-bench", ".yml");
+        Files.writeString(this.file, this.yaml, StandardCharsets.UTF_8);
+
+        this.base = YamlParser.parseString(this.yaml, ConfiguredPlexPurchasesObject.class).orElseThrow();
+        // Only a few fields set, like a variant of a base product
+        this.override = new ConfiguredPlexPurchasesObject();
+        this.override.setProductId("product-41-sale");
+        this.override.setPrice(50);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(this.file);
+    }
+
+    @Benchmark
+    public Optional<ConfiguredPlexPurchasesObject> parseString() {
+        return YamlParser.parseString(this.yaml, ConfiguredPlexPurchasesObject.class);
+    }
+
+    @Benchmark
+    public Optional<ConfiguredPlexPurchasesObject> parseFile() {
+        return YamlParser.parseFile(this.file, ConfiguredPlexPurchasesObject.class);
+    }
+
+    @Benchmark
+    public Optional<ConfiguredPlexPurchasesObject> merge() {
+        return YamlParser.merge(this.base, this.override, ConfiguredPlexPurchasesObject.class);
+    }
+
+}
@@ -0,0 +1,348 @@
+package net.plexprison.plexpurchases.player;
+
+import net.plexprison.plexpurchases.config.ConfiguredPlexPurchasesObject;
+import net.plexprison.plexpurchases.config.holder.PurchaseCatalog;
+import net.plexprison.plexpurchases.config.settings.PlayerStateSettings;
+import net.plexprison.plexpurchases.utils.LogLevel;
+import net.plexprison.plexpurchases.utils.Logger;
+import org.bukkit.plugin.Plugin;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntUnaryOperator;
+import java.util.stream.Stream;
+
+/**
+ * Hammers {@link PlayerStateStore#update(UUID, java.util.function.UnaryOperator)} from several threads and checks that
+ * no update was lost. Each thread count from 1 up to the maximum runs twice: once with every thread updating the same
+ * few players, all on one lock stripe, and once with every thread updating its own player on its own stripe.
+ * Afterwards every count must match what a single thread would have produced, every update function must have run
+ * exactly once, and the counts saved by the final flush must match too. The run exits non-zero if any check fails.
+ * Lives in the store's package because the update methods are package-private.
+ * Run with ./gradlew playerStateStress, passing options with --args.
+ */
+public final class PlayerStateStressHarness {
+
+    private static final String USAGE = """
+            Usage: PlayerStateStressHarness [options]
+              --max-threads <n>       Highest thread count to run, every count from 1 up is run (default: available processors)
+              --updates <n>           Updates each thread makes per run (default 200000)
+              --products <n>          Products in the catalog updates are spread over (default 16)
+              --shared-players <n>    Players every thread updates in the shared stripe runs (default 4)
+              --stripes <n>           Lock stripes, raised to the thread count so each thread can get its own (default 64)
+              --seed <n>              Seed for the generated player UUIDs (default 42)
+            """;
+
+    private final Options options;
+    private final Path root;
+    private final PurchaseCatalog catalog;
+    private final List<String> failures;
+    private int runs;
+
+    private PlayerStateStressHarness(final Path root, final Options options) {
+        this.root = root;
+        this.options = options;
+        this.catalog = PlayerStateStressHarness.createCatalog(options.products);
+        this.failures = new ArrayList<>();
+    }
+
+    public static void main(final String[] args) throws Exception {
+        if (Arrays.asList(args).contains("--help")) {
+            System.out.print(PlayerStateStressHarness.USAGE);
+            return;
+        }
+
+        final Options options;
+        try {
+            options = Options.parse(args);
+        } catch (final IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.print(PlayerStateStressHarness.USAGE);
+            System.exit(2);
+            return;
+        }
+
+        final Path root = Files.createTempDirectory("plexpurchases-stress");
+        final int exitCode;
+        try {
+            Logger.initialize(PlayerStateStressHarness.plugin(root));
+            Logger.setMinimumLevel(LogLevel.WARNING);
+            exitCode = new PlayerStateStressHarness(root, options).run();
+        } finally {
+            Logger.shutdown();
+            PlayerStateStressHarness.delete(root);
+        }
+        System.exit(exitCode);
+    }
+
+    /**
+     * Warms up, runs both layouts for every thread count and prints the throughput of each
+     *
+     * @return The exit code, 0 if every run kept every update
+     */
+    private int run() throws Exception {
+        // Lets the JIT compile the update path before anything is timed, the results are still checked
+        for (final Layout layout : Layout.values()) {
+            this.measure(layout, this.options.maxThreads);
+        }
+
+        System.out.printf(Locale.ROOT, "Player state store: %d updates per thread over %d products, %d shared players%n",
+                this.options.updates, this.options.products, this.options.sharedPlayers);
+        System.out.printf(Locale.ROOT, "  %7s  %22s  %22s%n", "threads", "shared stripe", "distinct stripes");
+        for (int threads = 1; threads <= this.options.maxThreads; threads++) {
+            final double shared = this.measure(Layout.SHARED, threads);
+            final double distinct = this.measure(Layout.DISTINCT, threads);
+            System.out.printf(Locale.ROOT, "  %7d  %12.0f updates/s  %12.0f updates/s%n", threads, shared, distinct);
+        }
+
+        this.failures.forEach(problem -> System.out.println("FAILED: " + problem));
+        return this.failures.isEmpty() ? 0 : 1;
+    }
+
+    /**
+     * Runs one layout with a fresh store and checks the counts it ends with
+     *
+     * @param layout  Which players the threads update
+     * @param threads The number of threads
+     * @return The updates per second across all threads
+     */
+    private double measure(final Layout layout, final int threads) throws Exception {
+        final Path dataFolder = this.root.resolve("run-" + this.runs++);
+        final PlayerStateSettings settings = new PlayerStateSettings();
+        settings.setStripes(Math.max(this.options.stripes, threads));
+        final PlayerStateStore store = new PlayerStateStore(PlayerStateStressHarness.plugin(dataFolder), settings);
+
+        final int size = this.catalog.size();
+        final UUID[] players = layout == Layout.SHARED
+                ? this.pickPlayers(store, this.options.sharedPlayers, player -> 0)
+                : this.pickPlayers(store, threads, player -> player);
+        for (final UUID player : players) {
+            store.putIfAbsent(player, new PlayerPurchaseCounts(this.catalog, new int[size], new BitSet(size), true));
+        }
+
+        final LongAdder applied = new LongAdder();
+        final AtomicInteger untracked = new AtomicInteger();
+        final CountDownLatch ready = new CountDownLatch(threads);
+        final CountDownLatch start = new CountDownLatch(1);
+        final Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            final int thread = t;
+            workers[t] = new Thread(() -> {
+                ready.countDown();
+                try {
+                    start.await();
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+
+                for (int i = 0; i < this.options.updates; i++) {
+                    final int index = (thread + i) % size;
+                    final PlayerPurchaseCounts updated = store.update(players[layout.playerOf(thread, i, players.length)], current -> {
+                        applied.increment();
+                        return current.with(index, current.getCount(index) + 1, true);
+                    });
+                    if (updated == null) {
+                        untracked.incrementAndGet();
+                    }
+                }
+            }, "StateStress-" + t);
+            workers[t].start();
+        }
+
+        ready.await();
+        final long startNanos = System.nanoTime();
+        start.countDown();
+        for (final Thread worker : workers) {
+            worker.join();
+        }
+        final long elapsedNanos = System.nanoTime() - startNanos;
+
+        final int[][] expected = new int[players.length][size];
+        for (int t = 0; t < threads; t++) {
+            for (int i = 0; i < this.options.updates; i++) {
+                expected[layout.playerOf(t, i, players.length)][(t + i) % size]++;
+            }
+        }
+        this.check(layout, threads, store, players, expected, applied.sum(), untracked.get());
+        return (long) threads * this.options.updates / (elapsedNanos / 1e9);
+    }
+
+    /**
+     * Checks the counts in memory, that every update function ran once, and the counts the final flush saved
+     *
+     * @param layout    Which players the threads updated
+     * @param threads   The number of threads
+     * @param store     The store updated
+     * @param players   The players updated
+     * @param expected  The counts of each player a single thread would have produced
+     * @param applied   The number of times an update function ran
+     * @param untracked The number of updates that didn't find their player
+     */
+    private void check(final Layout layout, final int threads, final PlayerStateStore store, final UUID[] players,
+                       final int[][] expected, final long applied, final int untracked) {
+        final String run = layout.name().toLowerCase(Locale.ROOT) + " stripe run with " + threads + " threads: ";
+        final long updates = (long) threads * this.options.updates;
+        if (untracked > 0) {
+            this.failures.add(run + untracked + " updates didn't find their player");
+        }
+        if (applied != updates) {
+            this.failures.add(run + "update functions ran " + applied + " times for " + updates + " updates");
+        }
+        if (store.getDirtyCount() != players.length) {
+            this.failures.add(run + store.getDirtyCount() + " players waiting to be saved, expected " + players.length);
+        }
+
+        for (int p = 0; p < players.length; p++) {
+            final int[] counts = store.get(players[p]).counts();
+            if (!Arrays.equals(counts, expected[p])) {
+                this.failures.add(run + "player " + players[p] + " ended with " + Arrays.stream(counts).sum()
+                        + " purchases, expected " + Arrays.stream(expected[p]).sum());
+            }
+        }
+
+        store.shutdown();
+        for (int p = 0; p < players.length; p++) {
+            final PlayerPurchaseCounts saved = store.readSaved(players[p], this.catalog);
+            if (saved == null || !Arrays.equals(saved.counts(), expected[p])) {
+                this.failures.add(run + "saved counts of " + players[p] + " don't match the counts in memory");
+            }
+        }
+    }
+
+    /**
+     * Generates players until each wanted stripe has one
+     *
+     * @param store  The store whose stripes are used
+     * @param count  The number of players
+     * @param stripe The stripe each player must be on, by the player's position
+     * @return The players
+     */
+    private UUID[] pickPlayers(final PlayerStateStore store, final int count, final IntUnaryOperator stripe) {
+        final Random random = new Random(this.options.seed);
+        final UUID[] players = new UUID[count];
+        for (int p = 0; p < count; p++) {
+            final int wanted = stripe.applyAsInt(p) % store.getStripeCount();
+            UUID player;
+            do {
+                player = new UUID(random.nextLong(), random.nextLong());
+            } while (store.stripeIndexOf(player) != wanted);
+            players[p] = player;
+        }
+        return players;
+    }
+
+    /**
+     * Builds a catalog of repeatable products without permissions, so saved counts are kept as they are
+     *
+     * @param products The number of products
+     * @return The catalog
+     */
+    private static PurchaseCatalog createCatalog(final int products) {
+        final List<ConfiguredPlexPurchasesObject> purchases = new ArrayList<>(products);
+        for (int i = 0; i < products; i++) {
+            final ConfiguredPlexPurchasesObject purchase = new ConfiguredPlexPurchasesObject();
+            purchase.setProductId("product-" + i);
+            purchase.setProductName("Product " + i);
+            purchase.setPrice(100);
+            purchase.setRepeatablePurchase(true);
+            purchases.add(purchase);
+        }
+        return PurchaseCatalog.of(purchases);
+    }
+
+    /**
+     * Creates a plugin whose data folder is the given directory, only the methods the store and logger use return anything
+     *
+     * @param dataFolder The data folder
+     * @return The plugin stand-in
+     */
+    private static Plugin plugin(final Path dataFolder) {
+        final java.util.logging.Logger logger = java.util.logging.Logger.getLogger("PlexPurchases");
+        return (Plugin) Proxy.newProxyInstance(Plugin.class.getClassLoader(), new Class<?>[]{Plugin.class}, (proxy, method, args) -> switch (method.getName()) {
+            case "getDataFolder" -> dataFolder.toFile();
+            case "getLogger" -> logger;
+            case "getName" -> "PlexPurchases";
+            case "isEnabled" -> true;
+            case "hashCode" -> System.identityHashCode(proxy);
+            case "equals" -> proxy == args[0];
+            case "toString" -> "StressPlugin";
+            default -> null;
+        });
+    }
+
+    private static void delete(final Path root) throws IOException {
+        try (final Stream<Path> paths = Files.walk(root)) {
+            for (final Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    /**
+     * Which players the threads of a run update
+     */
+    private enum Layout {
+        // Every thread cycles through the same players, who all share one stripe
+        SHARED,
+        // Each thread updates only its own player, who has a stripe to themselves
+        DISTINCT;
+
+        private int playerOf(final int thread, final int update, final int players) {
+            return this == Layout.SHARED ? (thread + update) % players : thread;
+        }
+    }
+
+    /**
+     * The command line options
+     */
+    private static final class Options {
+
+        private int maxThreads = Runtime.getRuntime().availableProcessors();
+        private int updates = 200_000;
+        private int products = 16;
+        private int sharedPlayers = 4;
+        private int stripes = 64;
+        private long seed = 42;
+
+        private static Options parse(final String[] args) {
+            final Options options = new Options();
+            for (int i = 0; i < args.length; i++) {
+                if (i + 1 >= args.length) {
+                    throw new IllegalArgumentException("Missing value for " + args[i]);
+                }
+
+                final String value = args[++i];
+                try {
+                    switch (args[i - 1]) {
+                        case "--max-threads" -> options.maxThreads = Math.max(1, Integer.parseInt(value));
+                        case "--updates" -> options.updates = Math.max(1, Integer.parseInt(value));
+                        case "--products" -> options.products = Math.max(1, Integer.parseInt(value));
+                        case "--shared-players" -> options.sharedPlayers = Math.max(1, Integer.parseInt(value));
+                        case "--stripes" -> options.stripes = Math.max(1, Integer.parseInt(value));
+                        case "--seed" -> options.seed = Long.parseLong(value);
+                        default -> throw new IllegalArgumentException("Unknown option " + args[i - 1]);
+                    }
+                } catch (final NumberFormatException e) {
+                    throw new IllegalArgumentException("Not a number for " + args[i - 1] + ": " + value);
+                }
+            }
+            return options;
+        }
+
+    }
+
+}
@@ -1,13 +1,41 @@
 package net.plexprison.plexpurchases;
 
 import lombok.Getter;
+import net.plexprison.plexpurchases.action.ActionTemplate;
+import net.plexprison.plexpurchases.callback.PurchaseCallbackHandler;
+import net.plexprison.plexpurchases.command.StoreCommand;
+import net.plexprison.plexpurchases.config.ConfiguredPlexPurchasesObject;
 import net.plexprison.plexpurchases.config.holder.ConfiguredPlexPurchasesObjectHolder;
+import net.plexprison.plexpurchases.config.holder.PurchaseCatalog;
+import net.plexprison.plexpurchases.config.settings.PluginSettings;
+import net.plexprison.plexpurchases.delivery.PurchaseDeliveryService;
+import net.plexprison.plexpurchases.dispatch.ActionDispatcher;
+import net.plexprison.plexpurchases.gui.StoreMenuManager;
+import net.plexprison.plexpurchases.ledger.PurchaseLedger;
+import net.plexprison.plexpurchases.metrics.MetricsExporter;
+import net.plexprison.plexpurchases.metrics.PluginMetrics;
+import net.plexprison.plexpurchases.player.PlayerStateStore;
+import net.plexprison.plexpurchases.player.PrefetchedPurchaseState;
+import net.plexprison.plexpurchases.player.PurchaseCountCache;
+import net.plexprison.plexpurchases.player.PurchaseStatePrefetcher;
+import net.plexprison.plexpurchases.subscription.SubscriptionScheduler;
+import net.plexprison.plexpurchases.sync.SyncService;
 import net.plexprison.plexpurchases.utils.Logger;
+import org.bukkit.command.CommandMap;
+import org.bukkit.command.PluginCommand;
+import org.bukkit.entity.Player;
 import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
 import org.bukkit.event.Listener;
+import org.bukkit.event.player.AsyncPlayerPreLoginEvent;
 import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
 import org.bukkit.plugin.java.JavaPlugin;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
 @Getter
 public class PlexPurchases extends JavaPlugin implements Listener {
 
@@ -17,6 +45,78 @@ public class PlexPurchases extends JavaPlugin implements Listener {
      */
     private ConfiguredPlexPurchasesObjectHolder purchasesHolder;
 
+    /**
+     * -- GETTER --
+     * Gets the settings loaded from config.yml
+     */
+    private PluginSettings settings;
+
+    /**
+     * -- GETTER --
+     * Gets the dispatcher purchase actions are queued on
+     */
+    private ActionDispatcher actionDispatcher;
+
+    /**
+     * -- GETTER --
+     * Gets the service that delivers purchases, holding them for offline players where required
+     */
+    private PurchaseDeliveryService deliveryService;
+
+    /**
+     * -- GETTER --
+     * Gets the cache of how many times online players have bought each product
+     */
+    private PurchaseCountCache purchaseCounts;
+
+    /**
+     * -- GETTER --
+     * Gets the striped store player purchase state is kept and saved in
+     */
+    private PlayerStateStore playerStates;
+
+    /**
+     * -- GETTER --
+     * Gets the handler store callbacks are routed through
+     */
+    private PurchaseCallbackHandler callbackHandler;
+
+    /**
+     * -- GETTER --
+     * Gets the ledger of handled store callbacks, or null if it couldn't be opened
+     */
+    private PurchaseLedger purchaseLedger;
+
+    /**
+     * -- GETTER --
+     * Gets the service sharing changes with other instances, or null if sync is disabled or couldn't start
+     */
+    private SyncService syncService;
+
+    /**
+     * -- GETTER --
+     * Gets the scheduler that expires subscriptions whose renewal never arrived
+     */
+    private SubscriptionScheduler subscriptionScheduler;
+
+    /**
+     * -- GETTER --
+     * Gets the prefetcher that loads purchase state while players log in
+     */
+    private PurchaseStatePrefetcher statePrefetcher;
+
+    /**
+     * -- GETTER --
+     * Gets the manager of the /store menus
+     */
+    private StoreMenuManager storeMenus;
+
+    /**
+     * -- GETTER --
+     * Gets the exporter that writes metrics to a file
+     */
+    private MetricsExporter metricsExporter;
+
     @Override
     public void onEnable() {
         // Initialize the logger with this plugin instance
@@ -25,14 +125,88 @@ public class PlexPurchases extends JavaPlugin implements Listener {
         Logger.success("Plugin initialization started");
 
         try {
+            // Load plugin settings
+            this.settings = PluginSettings.load(this);
+            Logger.setMinimumLevel(this.settings.getLogging().getLevel());
+
             // Register events
             this.getServer().getPluginManager().registerEvents(this, this);
             Logger.info("Event listeners registered successfully");
 
-            // Initialize and load purchase configurations
+            // Initialize and load purchase configurations off the server thread, purchases are handled once this completes
             this.purchasesHolder = new ConfiguredPlexPurchasesObjectHolder(this);
-            this.purchasesHolder.loadPurchases();
-            Logger.info("Purchase configurations loaded successfully");
+            this.purchasesHolder.addPublishListener(this::scheduleCommandResolution);
+            this.playerStates = new PlayerStateStore(this, this.settings.getPlayers());
+            this.playerStates.start();
+            this.purchaseCounts = new PurchaseCountCache(this, this.purchasesHolder, this.playerStates);
+            this.purchasesHolder.addPublishListener(this.purchaseCounts::onCatalogPublished);
+            this.storeMenus = new StoreMenuManager(this, this.settings.getStore(), this.purchaseCounts);
+            this.purchasesHolder.addPublishListener(this.storeMenus::onCatalogPublished);
+            this.purchaseCounts.addChangeListener(this.storeMenus::onStateChanged);
+            this.getServer().getPluginManager().registerEvents(this.storeMenus, this);
+            this.purchasesHolder.loadPurchasesAsync().thenRun(this.purchasesHolder::startWatching);
+            this.purchasesHolder.whenReady().thenRun(this::loadOnlinePlayers);
+            Logger.info("Purchase configurations are loading in the background");
+
+            // Start running purchase actions on the server thread
+            this.actionDispatcher = new ActionDispatcher(this, this.settings.getDispatch());
+            // Actions such as permission commands can change which purchases a player sees in the store
+            this.actionDispatcher.addRunListener(this.storeMenus::onActionRun);
+            this.actionDispatcher.start();
+
+            // Open the journal of deliveries waiting for their player to join, without it every purchase is delivered right away
+            this.deliveryService = new PurchaseDeliveryService(this, this.purchasesHolder, this.actionDispatcher, this.purchaseCounts);
+            try {
+                this.deliveryService.start();
+            } catch (final IOException e) {
+                Logger.error("Failed to open the delivery journal, purchases for offline players will be delivered right away: " + e.getMessage());
+            }
+
+            // Open the ledger of handled callbacks, without it callbacks are still delivered but duplicates aren't caught
+            this.purchaseLedger = new PurchaseLedger(this, this.settings.getLedger());
+            try {
+                this.purchaseLedger.start();
+            } catch (final IOException e) {
+                Logger.error("Failed to open the purchase ledger, duplicate store callbacks won't be detected: " + e.getMessage());
+                this.purchaseLedger.shutdown();
+                this.purchaseLedger = null;
+            }
+
+            // Rebuild subscription deadlines, expiring anything that lapsed while the server was down
+            this.subscriptionScheduler = new SubscriptionScheduler(this, this.purchasesHolder, this.settings.getSubscriptions(), this.actionDispatcher,
+                    due -> this.callbackHandler.onExpire(due.player(), due.playerName(), due.subscriptionId(), due.transactionId()));
+            this.callbackHandler = new PurchaseCallbackHandler(this, this.settings.getCallbacks(), this.purchasesHolder, this.purchaseCounts,
+                    this.deliveryService, this.subscriptionScheduler, this.purchaseLedger);
+            this.subscriptionScheduler.start();
+
+            // Share catalog reloads and recorded purchases with other instances serving the same purchases directory
+            if (this.settings.getSync().isEnabled()) {
+                this.syncService = new SyncService(this, this.settings.getSync(), this.purchasesHolder, this.purchaseCounts);
+                try {
+                    this.syncService.start();
+                } catch (final IOException e) {
+                    Logger.error("Failed to start syncing with other instances, they won't see this instance's changes: " + e.getMessage());
+                    this.syncService = null;
+                }
+            }
+
+            // Load purchase state during pre-login so joins only read from memory
+            this.statePrefetcher = new PurchaseStatePrefetcher(this.deliveryService, this.settings.getPrefetch());
+            final long evictTicks = Math.max(1L, this.settings.getPrefetch().getTtlSeconds()) * 20L;
+            this.getServer().getScheduler().runTaskTimerAsynchronously(this, this.statePrefetcher::evictExpired, evictTicks, evictTicks);
+
+            // Export metrics, values kept by the components above are read when exporting
+            this.registerMetrics();
+            this.metricsExporter = new MetricsExporter(this, this.settings.getMetrics());
+            this.metricsExporter.start();
+
+            // Register commands
+            final StoreCommand storeCommand = new StoreCommand(this);
+            final PluginCommand command = this.getCommand("store");
+            if (command != null) {
+                command.setExecutor(storeCommand);
+                command.setTabCompleter(storeCommand);
+            }
 
             Logger.success("Plugin has been enabled successfully!");
 
@@ -48,11 +222,170 @@ public class PlexPurchases extends JavaPlugin implements Listener {
 
         try {
             // Cleanup tasks can go here
+            if (this.storeMenus != null) {
+                this.storeMenus.closeAll();
+            }
+
+            // Stopped first so no more expiries are queued while the dispatcher drains
+            if (this.subscriptionScheduler != null) {
+                this.subscriptionScheduler.shutdown();
+            }
+
+            // Callbacks still waiting to be grouped are handed to the dispatcher before it drains
+            if (this.callbackHandler != null) {
+                this.callbackHandler.flushAll();
+            }
+
+            if (this.actionDispatcher != null) {
+                this.actionDispatcher.shutdown();
+            }
+
+            // Closed after the dispatcher so deliveries it finished on shutdown are recorded
+            if (this.deliveryService != null) {
+                this.deliveryService.shutdown();
+            }
+
+            if (this.purchaseLedger != null) {
+                this.purchaseLedger.shutdown();
+            }
+
+            // Sends the changes recorded during shutdown before the transport closes
+            if (this.syncService != null) {
+                this.syncService.shutdown();
+            }
+
+            // After every component that records purchases, so the final flush includes their changes
+            if (this.playerStates != null) {
+                this.playerStates.shutdown();
+            }
+
+            if (this.purchasesHolder != null) {
+                this.purchasesHolder.stopWatching();
+            }
+
+            // Last, so the final file includes everything done on shutdown
+            if (this.metricsExporter != null) {
+                this.metricsExporter.shutdown();
+            }
+            PluginMetrics.clearSupplied();
             Logger.info("Plugin cleanup completed");
             Logger.warning("Plugin has been disabled successfully!");
 
         } catch (final Exception e) {
             Logger.error("Error during plugin shutdown: " + e.getMessage());
+        } finally {
+            // Last, so everything logged during shutdown is written
+            Logger.shutdown();
+        }
+    }
+
+    /**
+     * Registers the metrics whose values are kept by the plugin's components
+     */
+    private void registerMetrics() {
+        PluginMetrics.gauge("plexpurchases_catalog_purchases", "Purchases in the published catalog",
+                () -> this.purchasesHolder.getConfiguredPurchaseCount());
+        PluginMetrics.gauge("plexpurchases_dispatch_queued_actions", "Purchase actions waiting to run",
+                () -> this.actionDispatcher.getQueuedActions());
+        PluginMetrics.counter("plexpurchases_dispatch_actions_total", "Purchase actions run",
+                () -> this.actionDispatcher.getDispatchedTotal());
+        PluginMetrics.counter("plexpurchases_dispatch_failed_actions_total", "Purchase actions that failed",
+                () -> this.actionDispatcher.getFailedTotal());
+        PluginMetrics.counter("plexpurchases_dispatch_over_budget_ticks_total", "Ticks the action dispatcher went over its budget",
+                () -> this.actionDispatcher.getOverBudgetTicks());
+        PluginMetrics.gauge("plexpurchases_pending_deliveries", "Deliveries waiting for their player to join",
+                () -> this.deliveryService.getPendingCount());
+        PluginMetrics.gauge("plexpurchases_scheduled_subscriptions", "Subscriptions with an expiry deadline",
+                () -> this.subscriptionScheduler.size());
+        PluginMetrics.gauge("plexpurchases_cached_players", "Players whose purchase counts are in memory",
+                () -> this.purchaseCounts.getCachedPlayers());
+        PluginMetrics.gauge("plexpurchases_player_state_unsaved", "Players whose changed purchase counts wait for the next save",
+                () -> this.playerStates.getDirtyCount());
+        PluginMetrics.counter("plexpurchases_player_state_writes_total", "Player purchase count files written",
+                () -> this.playerStates.getWrites());
+        PluginMetrics.counter("plexpurchases_store_visibility_computed_total", "Times the purchases a player can see were worked out from their permissions",
+                () -> this.storeMenus.getVisibilityComputed());
+        PluginMetrics.counter("plexpurchases_store_visibility_hits_total", "Store listings that reused a player's kept visible purchases",
+                () -> this.storeMenus.getVisibilityHits());
+        PluginMetrics.gauge("plexpurchases_prefetch_hit_ratio", "Share of joins whose purchase state was prefetched",
+                () -> this.statePrefetcher.getHitRate());
+        if (this.purchaseLedger != null) {
+            PluginMetrics.gauge("plexpurchases_ledger_transactions", "Transactions recorded in the purchase ledger",
+                    () -> this.purchaseLedger.size());
+            PluginMetrics.counter("plexpurchases_ledger_false_positives_total", "New transactions the duplicate filter had to check on disk",
+                    () -> this.purchaseLedger.getFalsePositives());
+        }
+        if (this.syncService != null) {
+            PluginMetrics.counter("plexpurchases_sync_sent_batches_total", "Sync batches sent to other instances",
+                    () -> this.syncService.getSentBatches());
+            PluginMetrics.counter("plexpurchases_sync_received_batches_total", "Sync batches received from other instances",
+                    () -> this.syncService.getReceivedBatches());
+            PluginMetrics.counter("plexpurchases_sync_applied_deltas_total", "Purchase changes from other instances applied to online players",
+                    () -> this.syncService.getAppliedDeltas());
+        }
+        PluginMetrics.counter("plexpurchases_log_dropped_total", "Log messages dropped because the buffer was full",
+                Logger::getDroppedMessages);
+    }
+
+    /**
+     * Resolves the commands of every action in a newly published catalog on the server thread, warning about unknown ones
+     *
+     * @param catalog The published catalog
+     */
+    private void scheduleCommandResolution(final PurchaseCatalog catalog) {
+        if (!this.isEnabled()) {
+            return;
+        }
+
+        this.getServer().getScheduler().runTask(this, () -> {
+            final List<ActionTemplate> unknown = new ArrayList<>();
+            final CommandMap commandMap = this.getServer().getCommandMap();
+            for (final ConfiguredPlexPurchasesObject purchase : catalog.getPurchases()) {
+                purchase.getCompiledActions().resolve(commandMap, unknown);
+            }
+
+            if (!unknown.isEmpty()) {
+                Logger.warning("Purchase actions use commands that don't exist: " + unknown);
+            }
+        });
+    }
+
+    /**
+     * Loads the purchase counts of players already online when the catalog first becomes ready, such as after a reload
+     */
+    private void loadOnlinePlayers() {
+        if (!this.isEnabled()) {
+            return;
+        }
+
+        this.getServer().getScheduler().runTask(this, () -> this.getServer().getOnlinePlayers().forEach(player -> this.loadPlayer(player, null)));
+    }
+
+    /**
+     * Loads a player's purchase counts in the background, then delivers anything bought while they were offline
+     *
+     * @param player     The player
+     * @param prefetched The state loaded while the player logged in, or null to read it when delivering
+     */
+    private void loadPlayer(final Player player, final PrefetchedPurchaseState prefetched) {
+        this.purchaseCounts.load(player).thenRun(() -> {
+            if (!this.isEnabled()) {
+                return;
+            }
+
+            this.getServer().getScheduler().runTask(this, () -> {
+                if (player.isOnline()) {
+                    this.deliveryService.deliverPending(player, prefetched == null ? null : prefetched.pendingDeliveries());
+                }
+            });
+        });
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onAsyncPlayerPreLogin(final AsyncPlayerPreLoginEvent event) {
+        // Runs off the server thread, so the login can wait for storage instead of the join
+        if (this.statePrefetcher != null && event.getLoginResult() == AsyncPlayerPreLoginEvent.Result.ALLOWED) {
+            this.statePrefetcher.prefetch(event.getUniqueId());
         }
     }
 
@@ -61,12 +394,32 @@ public class PlexPurchases extends JavaPlugin implements Listener {
         final String playerName = event.getPlayer().getName();
 
         // Send welcome message to player using configuration
-        Logger.debug("Player joined: " + playerName);
-        Logger.info("Player " + playerName + " joined the server");
+        Logger.debug(() -> "Player joined: " + playerName);
+        Logger.info(() -> "Player " + playerName + " joined the server");
+
+        // Purchase handling is gated until the catalog has been published
+        if (this.purchasesHolder == null || !this.purchasesHolder.isReady()) {
+            Logger.debug(() -> "Player " + playerName + " joined before purchase configurations finished loading");
+            return;
+        }
 
         // Log the number of loaded purchases for debugging
-        if (this.purchasesHolder != null) {
-            Logger.debug("Player " + playerName + " joined. Total purchases loaded: " + this.purchasesHolder.getConfiguredPurchaseCount());
+        Logger.debug(() -> "Player " + playerName + " joined. Total purchases loaded: " + this.purchasesHolder.getConfiguredPurchaseCount());
+
+        // Read the player's purchase counts, then queue anything bought while they were offline
+        if (this.purchaseCounts != null && this.deliveryService != null) {
+            final PrefetchedPurchaseState prefetched = this.statePrefetcher == null ? null : this.statePrefetcher.take(event.getPlayer().getUniqueId());
+            this.loadPlayer(event.getPlayer(), prefetched);
+        }
+    }
+
+    @EventHandler
+    public void onPlayerQuit(final PlayerQuitEvent event) {
+        if (this.purchaseCounts != null) {
+            this.purchaseCounts.evict(event.getPlayer().getUniqueId());
+        }
+        if (this.storeMenus != null) {
+            this.storeMenus.evict(event.getPlayer().getUniqueId());
         }
     }
 
@@ -0,0 +1,30 @@
+package net.plexprison.plexpurchases.action;
+
+import java.util.UUID;
+
+/**
+ * Values substituted into an action template when it is rendered
+ *
+ * @param playerName    The purchasing player's name
+ * @param uuid          The purchasing player's UUID
+ * @param purchaseTimes How many times the player has bought the product, including this purchase
+ * @param productId     The product or subscription ID the action belongs to
+ */
+public record ActionContext(String playerName, UUID uuid, int purchaseTimes, String productId) {
+
+    /**
+     * Appends the value of a placeholder
+     *
+     * @param placeholder The placeholder to substitute
+     * @param builder     The builder to append to
+     */
+    void append(final ActionPlaceholder placeholder, final StringBuilder builder) {
+        switch (placeholder) {
+            case PLAYER_NAME -> builder.append(this.playerName);
+            case PURCHASE_TIMES -> builder.append(this.purchaseTimes);
+            case UUID -> builder.append(this.uuid);
+            case PRODUCT_ID -> builder.append(this.productId);
+        }
+    }
+
+}
@@ -0,0 +1,47 @@
+package net.plexprison.plexpurchases.action;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Placeholders that can be used inside purchase action commands
+ */
+public enum ActionPlaceholder {
+    PLAYER_NAME("<player_name>"),
+    PURCHASE_TIMES("<purchase_times>"),
+    UUID("<uuid>"),
+    PRODUCT_ID("<product_id>");
+
+    private static final Map<String, ActionPlaceholder> BY_TOKEN = new HashMap<>();
+
+    static {
+        for (final ActionPlaceholder placeholder : ActionPlaceholder.values()) {
+            ActionPlaceholder.BY_TOKEN.put(placeholder.token, placeholder);
+        }
+    }
+
+    private final String token;
+
+    ActionPlaceholder(final String token) {
+        this.token = token;
+    }
+
+    /**
+     * Gets the token as written in configs, including the angle brackets
+     *
+     * @return The placeholder token
+     */
+    public String getToken() {
+        return this.token;
+    }
+
+    /**
+     * Finds the placeholder for a token
+     *
+     * @param token The token including angle brackets, e.g. {@code <player_name>}
+     * @return The placeholder, or null if the token is unknown
+     */
+    public static ActionPlaceholder byToken(final String token) {
+        return ActionPlaceholder.BY_TOKEN.get(token);
+    }
+}
@@ -0,0 +1,198 @@
+package net.plexprison.plexpurchases.action;
+
+import org.bukkit.Bukkit;
+import org.bukkit.command.Command;
+import org.bukkit.command.CommandMap;
+import org.bukkit.command.CommandSender;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A single purchase action command, compiled once at load time.
+ * The command is split into literal text and placeholder slots with the leading slash removed, so rendering is a
+ * single pass over two arrays into a reused builder. The target command is resolved from the command map on the
+ * server thread after each load, letting dispatch skip the command map lookup.
+ */
+public final class ActionTemplate {
+
+    private static final ThreadLocal<StringBuilder> BUILDER = ThreadLocal.withInitial(() -> new StringBuilder(64));
+    private static final String[] NO_ARGUMENTS = new String[0];
+
+    private final String source;
+    private final String label;
+    // Rendered as literals[0] + placeholders[0] + literals[1] + ... + literals[n], literals[0] starts with the label
+    private final String[] literals;
+    private final ActionPlaceholder[] placeholders;
+    private volatile Command command;
+
+    private ActionTemplate(final String source, final String label, final String[] literals, final ActionPlaceholder[] placeholders) {
+        this.source = source;
+        this.label = label;
+        this.literals = literals;
+        this.placeholders = placeholders;
+    }
+
+    /**
+     * Compiles a raw action command such as {@code /givecoins <player_name> 1000}
+     *
+     * @param raw The command as written in the config
+     * @return The compiled template
+     * @throws IllegalArgumentException if the command is blank, or uses an unknown placeholder or a placeholder as the command name
+     */
+    public static ActionTemplate compile(final String raw) {
+        if (raw == null || raw.isBlank()) {
+            throw new IllegalArgumentException("action is blank");
+        }
+
+        String command = raw.strip();
+        if (command.startsWith("/")) {
+            command = command.substring(1);
+        }
+
+        final int labelEnd = command.indexOf(' ');
+        final String label = labelEnd == -1 ? command : command.substring(0, labelEnd);
+        if (label.isEmpty() || label.indexOf('<') != -1) {
+            throw new IllegalArgumentException("action '" + raw + "' must start with a command name");
+        }
+
+        final List<String> literals = new ArrayList<>();
+        final List<ActionPlaceholder> placeholders = new ArrayList<>();
+        int literalStart = 0;
+        int index = command.indexOf('<', label.length());
+
+        while (index != -1) {
+            final int end = ActionTemplate.placeholderEnd(command, index);
+            if (end == -1) {
+                // Not placeholder syntax, such as a lone "<3", keep it as text
+                index = command.indexOf('<', index + 1);
+                continue;
+            }
+
+            final String token = command.substring(index, end);
+            final ActionPlaceholder placeholder = ActionPlaceholder.byToken(token);
+            if (placeholder == null) {
+                throw new IllegalArgumentException("action '" + raw + "' uses unknown placeholder " + token);
+            }
+
+            literals.add(command.substring(literalStart, index));
+            placeholders.add(placeholder);
+            literalStart = end;
+            index = command.indexOf('<', end);
+        }
+        literals.add(command.substring(literalStart));
+
+        return new ActionTemplate(raw, label, literals.toArray(new String[0]), placeholders.toArray(new ActionPlaceholder[0]));
+    }
+
+    /**
+     * Renders the full command line, without a leading slash, into the given builder
+     *
+     * @param context The values to substitute
+     * @param builder The builder to append to
+     */
+    public void render(final ActionContext context, final StringBuilder builder) {
+        builder.append(this.literals[0]);
+        for (int i = 0; i < this.placeholders.length; i++) {
+            context.append(this.placeholders[i], builder);
+            builder.append(this.literals[i + 1]);
+        }
+    }
+
+    /**
+     * Renders the full command line, without a leading slash, using a builder reused by this thread
+     *
+     * @param context The values to substitute
+     * @return The rendered command line
+     */
+    public String render(final ActionContext context) {
+        final StringBuilder builder = ActionTemplate.BUILDER.get();
+        builder.setLength(0);
+        this.render(context, builder);
+        return builder.toString();
+    }
+
+    /**
+     * Runs the command as the given sender, which must happen on the server thread.
+     * Goes straight to the resolved command when there is one, otherwise falls back to a normal dispatch.
+     *
+     * @param sender  The sender to run the command as, usually the console
+     * @param context The values to substitute
+     * @return true if the command ran successfully
+     */
+    public boolean dispatch(final CommandSender sender, final ActionContext context) {
+        return this.execute(sender, this.render(context));
+    }
+
+    /**
+     * Runs an already rendered command line of this template as the given sender, which must happen on the server thread
+     *
+     * @param sender The sender to run the command as, usually the console
+     * @param line   The line produced by {@link #render(ActionContext)}
+     * @return true if the command ran successfully
+     */
+    public boolean execute(final CommandSender sender, final String line) {
+        final Command target = this.command;
+        if (target == null) {
+            return Bukkit.dispatchCommand(sender, line);
+        }
+
+        final String arguments = line.length() > this.label.length() ? line.substring(this.label.length() + 1) : "";
+        return target.execute(sender, this.label, arguments.isEmpty() ? ActionTemplate.NO_ARGUMENTS : arguments.split(" "));
+    }
+
+    /**
+     * Resolves the target command from the command map, must be called on the server thread
+     *
+     * @param commandMap The server command map
+     * @return true if the command exists
+     */
+    public boolean resolve(final CommandMap commandMap) {
+        this.command = commandMap.getCommand(this.label);
+        return this.command != null;
+    }
+
+    /**
+     * Gets the command as written in the config
+     *
+     * @return The raw action command
+     */
+    public String getSource() {
+        return this.source;
+    }
+
+    /**
+     * Gets the name of the command this action runs
+     *
+     * @return The command label, without a leading slash
+     */
+    public String getLabel() {
+        return this.label;
+    }
+
+    @Override
+    public String toString() {
+        return this.source;
+    }
+
+    /**
+     * Finds the end of a {@code <lower_snake_case>} token starting at the given index
+     *
+     * @param command The command text
+     * @param start   The index of the opening bracket
+     * @return The index just past the closing bracket, or -1 if this isn't placeholder syntax
+     */
+    private static int placeholderEnd(final String command, final int start) {
+        for (int i = start + 1; i < command.length(); i++) {
+            final char c = command.charAt(i);
+            if (c == '>') {
+                return i == start + 1 ? -1 : i + 1;
+            }
+            if ((c < 'a' || c > 'z') && c != '_') {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+}
@@ -0,0 +1,154 @@
+package net.plexprison.plexpurchases.action;
+
+import net.plexprison.plexpurchases.config.PurchaseActions;
+import org.bukkit.command.CommandMap;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The success, expire and renew actions of a single purchase, compiled into templates
+ */
+public final class CompiledPurchaseActions {
+
+    /**
+     * Actions for a purchase that has none configured
+     */
+    public static final CompiledPurchaseActions NONE = new CompiledPurchaseActions(List.of(), List.of(), List.of());
+
+    private final List<ActionTemplate> success;
+    private final List<ActionTemplate> expire;
+    private final List<ActionTemplate> renew;
+
+    private CompiledPurchaseActions(final List<ActionTemplate> success, final List<ActionTemplate> expire, final List<ActionTemplate> renew) {
+        this.success = success;
+        this.expire = expire;
+        this.renew = renew;
+    }
+
+    /**
+     * Compiles every action of a purchase
+     *
+     * @param actions The configured actions, may be null
+     * @return The compiled actions
+     * @throws IllegalArgumentException describing the first action that failed to compile
+     */
+    public static CompiledPurchaseActions compile(final PurchaseActions actions) {
+        if (actions == null) {
+            return CompiledPurchaseActions.NONE;
+        }
+
+        return new CompiledPurchaseActions(
+                CompiledPurchaseActions.compileAll("success", actions.getSuccess()),
+                CompiledPurchaseActions.compileAll("expire", actions.getExpire()),
+                CompiledPurchaseActions.compileAll("renew", actions.getRenew()));
+    }
+
+    /**
+     * Swaps every template for an equal one shared with other purchases, so a command used by many purchases is only
+     * held once
+     *
+     * @param shared The templates already in use, by source command, new ones are added
+     * @return Actions using the shared templates
+     */
+    public CompiledPurchaseActions share(final Map<String, ActionTemplate> shared) {
+        if (this == CompiledPurchaseActions.NONE) {
+            return this;
+        }
+        return new CompiledPurchaseActions(
+                CompiledPurchaseActions.shareAll(this.success, shared),
+                CompiledPurchaseActions.shareAll(this.expire, shared),
+                CompiledPurchaseActions.shareAll(this.renew, shared));
+    }
+
+    /**
+     * Resolves the target command of every action, must be called on the server thread
+     *
+     * @param commandMap The server command map
+     * @param unknown    Receives the actions whose command doesn't exist
+     */
+    public void resolve(final CommandMap commandMap, final List<ActionTemplate> unknown) {
+        CompiledPurchaseActions.resolveAll(this.success, commandMap, unknown);
+        CompiledPurchaseActions.resolveAll(this.expire, commandMap, unknown);
+        CompiledPurchaseActions.resolveAll(this.renew, commandMap, unknown);
+    }
+
+    /**
+     * Gets the actions run for a purchase event
+     *
+     * @param type The purchase event
+     * @return Unmodifiable list of templates
+     */
+    public List<ActionTemplate> get(final PurchaseActionType type) {
+        return switch (type) {
+            case SUCCESS -> this.success;
+            case EXPIRE -> this.expire;
+            case RENEW -> this.renew;
+        };
+    }
+
+    /**
+     * Gets the actions run when the purchase completes
+     *
+     * @return Unmodifiable list of templates
+     */
+    public List<ActionTemplate> getSuccess() {
+        return this.success;
+    }
+
+    /**
+     * Gets the actions run when a subscription expires
+     *
+     * @return Unmodifiable list of templates
+     */
+    public List<ActionTemplate> getExpire() {
+        return this.expire;
+    }
+
+    /**
+     * Gets the actions run when a subscription renews
+     *
+     * @return Unmodifiable list of templates
+     */
+    public List<ActionTemplate> getRenew() {
+        return this.renew;
+    }
+
+    private static List<ActionTemplate> compileAll(final String type, final List<String> raw) {
+        if (raw == null || raw.isEmpty()) {
+            return List.of();
+        }
+
+        final List<ActionTemplate> templates = new ArrayList<>(raw.size());
+        for (int i = 0; i < raw.size(); i++) {
+            try {
+                templates.add(ActionTemplate.compile(raw.get(i)));
+            } catch (final IllegalArgumentException e) {
+                throw new IllegalArgumentException(type + " action " + (i + 1) + ": " + e.getMessage(), e);
+            }
+        }
+        return List.copyOf(templates);
+    }
+
+    private static List<ActionTemplate> shareAll(final List<ActionTemplate> templates, final Map<String, ActionTemplate> shared) {
+        if (templates.isEmpty()) {
+            return templates;
+        }
+
+        final List<ActionTemplate> result = new ArrayList<>(templates.size());
+        for (final ActionTemplate template : templates) {
+            result.add(shared.computeIfAbsent(template.getSource(), source -> template));
+        }
+        return List.copyOf(result);
+    }
+
+    private static void resolveAll(final List<ActionTemplate> templates, final CommandMap commandMap, final List<ActionTemplate> unknown) {
+        for (final ActionTemplate template : templates) {
+            if (!template.resolve(commandMap)) {
+                unknown.add(template);
+            }
+        }
+    }
+
+}
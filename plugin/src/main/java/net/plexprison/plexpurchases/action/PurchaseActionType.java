@@ -0,0 +1,10 @@
+package net.plexprison.plexpurchases.action;
+
+/**
+ * The purchase events that have actions attached
+ */
+public enum PurchaseActionType {
+    SUCCESS,
+    EXPIRE,
+    RENEW
+}
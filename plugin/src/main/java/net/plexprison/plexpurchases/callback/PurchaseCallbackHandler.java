@@ -0,0 +1,308 @@
+package net.plexprison.plexpurchases.callback;
+
+import net.plexprison.plexpurchases.action.PurchaseActionType;
+import net.plexprison.plexpurchases.config.ConfiguredPlexPurchasesObject;
+import net.plexprison.plexpurchases.config.holder.ConfiguredPlexPurchasesObjectHolder;
+import net.plexprison.plexpurchases.config.holder.PurchaseCatalog;
+import net.plexprison.plexpurchases.config.settings.CallbackSettings;
+import net.plexprison.plexpurchases.delivery.DeliveryRequest;
+import net.plexprison.plexpurchases.delivery.PurchaseDeliveryService;
+import net.plexprison.plexpurchases.ledger.PurchaseLedger;
+import net.plexprison.plexpurchases.metrics.PluginMetrics;
+import net.plexprison.plexpurchases.player.PurchaseCountCache;
+import net.plexprison.plexpurchases.subscription.SubscriptionScheduler;
+import net.plexprison.plexpurchases.utils.Logger;
+import org.bukkit.plugin.Plugin;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Entry point for store callbacks: every purchase, renewal and expiry reported by the store is routed through here.
+ * Resolves the purchase, keeps the player's purchase count and subscription deadline up to date and hands the event to
+ * the delivery service, which reports back once the delivery can no longer be lost; only then is the transaction
+ * recorded in the purchase ledger. A callback whose transaction ID is already in the ledger or still being delivered,
+ * such as one the store retried, is acknowledged without being delivered again.
+ * Callbacks are coalesced per player: the first one of a player waits a configured number of ticks for others, such
+ * as the rest of a bundle, and then the whole group is resolved against one catalog snapshot and delivered as a single
+ * batch, in the order the callbacks arrived.
+ * Safe to call from any thread.
+ */
+public class PurchaseCallbackHandler {
+
+    private final Plugin plugin;
+    private final CallbackSettings settings;
+    private final ConfiguredPlexPurchasesObjectHolder holder;
+    private final PurchaseCountCache purchaseCounts;
+    private final PurchaseDeliveryService deliveryService;
+    private final SubscriptionScheduler subscriptionScheduler;
+    private final PurchaseLedger ledger;
+    // Callbacks waiting for their player's window to close, a player's list is only touched inside compute calls
+    private final Map<UUID, List<PendingCallback>> pending;
+    // Transaction IDs handed to the delivery service but not yet recorded in the ledger
+    private final Set<String> inFlight;
+
+    /**
+     * Constructor for the callback handler
+     *
+     * @param plugin                The plugin instance
+     * @param settings              The callback settings
+     * @param holder                The holder purchases are looked up in
+     * @param purchaseCounts        The cache of player purchase counts
+     * @param deliveryService       The service that delivers the purchase actions
+     * @param subscriptionScheduler The scheduler that expires subscriptions without a renewal
+     * @param ledger                The ledger duplicate callbacks are detected with, or null to deliver every callback
+     */
+    public PurchaseCallbackHandler(final Plugin plugin, final CallbackSettings settings, final ConfiguredPlexPurchasesObjectHolder holder,
+                                   final PurchaseCountCache purchaseCounts, final PurchaseDeliveryService deliveryService,
+                                   final SubscriptionScheduler subscriptionScheduler, final PurchaseLedger ledger) {
+        this.plugin = plugin;
+        this.settings = settings;
+        this.holder = holder;
+        this.purchaseCounts = purchaseCounts;
+        this.deliveryService = deliveryService;
+        this.subscriptionScheduler = subscriptionScheduler;
+        this.ledger = ledger;
+        this.pending = new ConcurrentHashMap<>();
+        this.inFlight = ConcurrentHashMap.newKeySet();
+    }
+
+    /**
+     * Handles a completed purchase of a product or a new subscription
+     *
+     * @param player        The purchasing player's UUID
+     * @param playerName    The purchasing player's name
+     * @param productId     The product or subscription ID
+     * @param transactionId The store's ID for the transaction, or null if there is none and the callback can't be deduplicated
+     * @return Completes with true once the purchase was handed over for delivery, now or by an earlier callback, or
+     * false if it isn't configured
+     */
+    public CompletableFuture<Boolean> onPurchase(final UUID player, final String playerName, final String productId, final String transactionId) {
+        return this.submit(player, playerName, productId, PurchaseActionType.SUCCESS, transactionId);
+    }
+
+    /**
+     * Handles a subscription renewal
+     *
+     * @param player         The subscribed player's UUID
+     * @param playerName     The subscribed player's name
+     * @param subscriptionId The subscription ID
+     * @param transactionId  The store's ID for the transaction, or null if there is none and the callback can't be deduplicated
+     * @return Completes with true once the subscription was handed over for delivery, now or by an earlier callback,
+     * or false if it isn't configured
+     */
+    public CompletableFuture<Boolean> onRenew(final UUID player, final String playerName, final String subscriptionId, final String transactionId) {
+        return this.submit(player, playerName, subscriptionId, PurchaseActionType.RENEW, transactionId);
+    }
+
+    /**
+     * Handles a subscription expiring
+     *
+     * @param player         The subscribed player's UUID
+     * @param playerName     The subscribed player's name
+     * @param subscriptionId The subscription ID
+     * @param transactionId  The store's ID for the transaction, or null if there is none and the callback can't be deduplicated
+     * @return Completes with true once the subscription was handed over for delivery, now or by an earlier callback,
+     * or false if it isn't configured
+     */
+    public CompletableFuture<Boolean> onExpire(final UUID player, final String playerName, final String subscriptionId, final String transactionId) {
+        return this.submit(player, playerName, subscriptionId, PurchaseActionType.EXPIRE, transactionId);
+    }
+
+    /**
+     * Handles every callback still waiting for its window, call on shutdown before the dispatcher is shut down
+     */
+    public void flushAll() {
+        for (final UUID player : List.copyOf(this.pending.keySet())) {
+            this.flush(player);
+        }
+    }
+
+    private CompletableFuture<Boolean> submit(final UUID player, final String playerName, final String id, final PurchaseActionType type,
+                                              final String transactionId) {
+        final PendingCallback callback = new PendingCallback(playerName, id, type, transactionId, System.nanoTime(), new CompletableFuture<>());
+        final boolean[] first = new boolean[1];
+        this.pending.compute(player, (key, callbacks) -> {
+            final List<PendingCallback> group = callbacks == null ? new ArrayList<>(4) : callbacks;
+            first[0] = callbacks == null;
+            group.add(callback);
+            return group;
+        });
+
+        if (first[0]) {
+            // The scheduler refuses tasks while the plugin is disabled, those callbacks are handled right away
+            if (this.settings.getCoalesceTicks() > 0 && this.plugin.isEnabled()) {
+                this.plugin.getServer().getScheduler().runTaskLaterAsynchronously(this.plugin, () -> this.flush(player), this.settings.getCoalesceTicks());
+            } else {
+                this.flush(player);
+            }
+        }
+        return callback.result();
+    }
+
+    /**
+     * Handles a player's waiting callbacks as one group
+     *
+     * @param player The player
+     */
+    private void flush(final UUID player) {
+        final List<PendingCallback> callbacks = this.pending.remove(player);
+        if (callbacks == null) {
+            return;
+        }
+
+        final long start = System.nanoTime();
+        final PurchaseCatalog catalog = this.holder.getCatalog();
+        final List<DeliveryRequest> requests = new ArrayList<>(callbacks.size());
+        final List<PendingCallback> accepted = new ArrayList<>(callbacks.size());
+        final List<String> claimed = new ArrayList<>(callbacks.size());
+        String playerName = null;
+
+        try {
+            for (final PendingCallback callback : callbacks) {
+                final ConfiguredPlexPurchasesObject purchase = catalog.getById(callback.id());
+                if (purchase == null) {
+                    PluginMetrics.UNKNOWN_CALLBACKS.increment();
+                    Logger.error("Received " + callback.type() + " callback for unknown product " + callback.id() + " from " + callback.playerName());
+                    callback.result().complete(false);
+                    continue;
+                }
+
+                if (!this.claimTransaction(callback)) {
+                    PluginMetrics.DUPLICATE_CALLBACKS.increment();
+                    Logger.warning("Ignoring duplicate " + callback.type() + " callback " + callback.transactionId() + " for " + callback.id()
+                            + " from " + callback.playerName());
+                    callback.result().complete(true);
+                    continue;
+                }
+
+                final boolean tracked = this.isTracked(callback);
+                if (tracked) {
+                    claimed.add(callback.transactionId());
+                }
+                final DeliveryRequest request = this.apply(player, callback, purchase);
+                requests.add(tracked ? new DeliveryRequest(request.purchase(), request.type(), request.purchaseTimes(),
+                        () -> this.recordTransaction(player, callback, purchase)) : request);
+                accepted.add(callback);
+                playerName = callback.playerName();
+            }
+
+            if (!requests.isEmpty()) {
+                // The latest name, in case the player renamed between callbacks
+                this.deliveryService.deliver(player, playerName, requests);
+            }
+            for (final PendingCallback callback : accepted) {
+                PluginMetrics.CALLBACK_TIME.recordSince(callback.receivedAt());
+                callback.result().complete(true);
+            }
+
+            if (callbacks.size() > 1) {
+                final int count = callbacks.size();
+                // Measured now, the message is only built later on the logger thread
+                final long elapsedMicros = (System.nanoTime() - start) / 1000L;
+                Logger.debug(() -> "Handled " + count + " callbacks of " + player + " together in " + elapsedMicros + "us");
+            }
+
+        } catch (final RuntimeException e) {
+            // Nothing was recorded, so the store's retry is delivered; anything that did become durable recorded itself
+            claimed.forEach(this.inFlight::remove);
+            Logger.error("Failed to handle store callbacks of " + player + ": " + e.getMessage());
+            for (final PendingCallback callback : callbacks) {
+                callback.result().completeExceptionally(e);
+            }
+        }
+    }
+
+    /**
+     * Updates the player's purchase count and subscription deadline for an accepted callback
+     *
+     * @return The delivery of the callback
+     */
+    private DeliveryRequest apply(final UUID player, final PendingCallback callback, final ConfiguredPlexPurchasesObject purchase) {
+        final PurchaseActionType type = callback.type();
+        if (type != PurchaseActionType.SUCCESS) {
+            this.purchaseCounts.setOwned(player, purchase, type == PurchaseActionType.RENEW);
+        }
+
+        if (purchase.getSubscriptionBasis() != null) {
+            if (type == PurchaseActionType.EXPIRE) {
+                this.subscriptionScheduler.cancel(player, purchase.getPurchaseId());
+            } else {
+                this.subscriptionScheduler.schedule(player, callback.playerName(), purchase);
+            }
+        }
+
+        // 0 when the count isn't known yet, the delivery then waits until the player's counts are loaded and counts it
+        final int purchaseTimes = type == PurchaseActionType.SUCCESS
+                ? this.purchaseCounts.increment(player, purchase)
+                : this.purchaseCounts.getCount(player, purchase);
+        return new DeliveryRequest(purchase, type, Math.max(purchaseTimes, 0));
+    }
+
+    /**
+     * Checks whether a callback's transaction is deduplicated through the ledger
+     *
+     * @return true if there is a ledger and the callback has a transaction ID
+     */
+    private boolean isTracked(final PendingCallback callback) {
+        return this.ledger != null && callback.transactionId() != null && !callback.transactionId().isBlank();
+    }
+
+    /**
+     * Claims a callback's transaction for delivery, unless it was delivered before or is being delivered right now
+     *
+     * @return false if the callback is a duplicate
+     */
+    private boolean claimTransaction(final PendingCallback callback) {
+        if (!this.isTracked(callback)) {
+            return true;
+        }
+
+        // Claimed before checking the ledger, a transaction is only unclaimed once it has been recorded
+        if (!this.inFlight.add(callback.transactionId())) {
+            return false;
+        }
+        if (this.ledger.contains(callback.transactionId())) {
+            this.inFlight.remove(callback.transactionId());
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Records a callback in the ledger once its delivery is durable, so a repeat of it is recognised even after a crash
+     */
+    private void recordTransaction(final UUID player, final PendingCallback callback, final ConfiguredPlexPurchasesObject purchase) {
+        final String transactionId = callback.transactionId();
+        try {
+            this.ledger.record(transactionId, player, purchase.getPurchaseId(), callback.type());
+        } catch (final IOException | RuntimeException e) {
+            // Delivering twice if the store retries is better than never delivering
+            Logger.error("Failed to record " + callback.type() + " callback " + transactionId + " from " + callback.playerName()
+                    + " in the purchase ledger, a retry of it will be delivered again: " + e.getMessage());
+        } finally {
+            this.inFlight.remove(transactionId);
+        }
+    }
+
+    /**
+     * A callback waiting for its player's window to close
+     *
+     * @param playerName    The player's name as sent with the callback
+     * @param id            The product or subscription ID
+     * @param type          Whether it is a purchase, renewal or expiry
+     * @param transactionId The store's transaction ID, or null
+     * @param receivedAt    When the callback arrived, from {@link System#nanoTime()}
+     * @param result        Completed once the callback was handled
+     */
+    private record PendingCallback(String playerName, String id, PurchaseActionType type, String transactionId, long receivedAt,
+                                   CompletableFuture<Boolean> result) {
+    }
+
+}
@@ -0,0 +1,186 @@
+package net.plexprison.plexpurchases.command;
+
+import net.plexprison.plexpurchases.PlexPurchases;
+import net.plexprison.plexpurchases.config.holder.ConfiguredPlexPurchasesObjectHolder;
+import net.plexprison.plexpurchases.config.holder.PurchaseLoadReport;
+import net.plexprison.plexpurchases.gui.StoreMenuManager;
+import net.plexprison.plexpurchases.gui.StoreView;
+import net.plexprison.plexpurchases.metrics.PluginMetrics;
+import net.plexprison.plexpurchases.player.PlayerPurchaseCounts;
+import org.bukkit.ChatColor;
+import org.bukkit.command.Command;
+import org.bukkit.command.CommandSender;
+import org.bukkit.command.TabExecutor;
+import org.bukkit.entity.Player;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Executor for the /store command (alias /buy).
+ * Without arguments, or with buy or purchases, it opens the store menu for players.
+ * Admin subcommands are gated behind the plexpurchases.admin permission.
+ */
+public class StoreCommand implements TabExecutor {
+
+    /**
+     * Permission required for admin subcommands such as reload and metrics
+     */
+    public static final String ADMIN_PERMISSION = "plexpurchases.admin";
+
+    private final PlexPurchases plugin;
+
+    /**
+     * Constructor for the store command
+     *
+     * @param plugin The plugin instance
+     */
+    public StoreCommand(final PlexPurchases plugin) {
+        this.plugin = plugin;
+    }
+
+    @Override
+    public boolean onCommand(final CommandSender sender, final Command command, final String label, final String[] args) {
+        if (args.length == 0) {
+            this.open(sender, StoreView.BUY);
+            return true;
+        }
+
+        switch (args[0].toLowerCase(Locale.ROOT)) {
+            case "buy":
+                this.open(sender, StoreView.BUY);
+                return true;
+            case "purchases":
+                this.open(sender, StoreView.PURCHASES);
+                return true;
+            case "info":
+                this.info(sender);
+                return true;
+            case "reload":
+                this.reload(sender);
+                return true;
+            case "metrics":
+                this.metrics(sender);
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    @Override
+    public List<String> onTabComplete(final CommandSender sender, final Command command, final String alias, final String[] args) {
+        final List<String> completions = new ArrayList<>();
+        if (args.length != 1) {
+            return completions;
+        }
+
+        final String prefix = args[0].toLowerCase(Locale.ROOT);
+        for (final String subcommand : this.getSubcommands(sender)) {
+            if (subcommand.startsWith(prefix)) {
+                completions.add(subcommand);
+            }
+        }
+        return completions;
+    }
+
+    /**
+     * Opens a view of the store menu
+     *
+     * @param sender The sender that ran the command
+     * @param view   The view to open
+     */
+    private void open(final CommandSender sender, final StoreView view) {
+        if (!(sender instanceof final Player player)) {
+            sender.sendMessage(ChatColor.RED + "Only players can open the store.");
+            return;
+        }
+
+        final StoreMenuManager storeMenus = this.plugin.getStoreMenus();
+        if (storeMenus == null || !storeMenus.open(player, view)) {
+            sender.sendMessage(ChatColor.RED + "The store is still loading, try again shortly.");
+        }
+    }
+
+    /**
+     * Shows how many purchases the store has and, for players, how many they own
+     *
+     * @param sender The sender that ran the command
+     */
+    private void info(final CommandSender sender) {
+        final ConfiguredPlexPurchasesObjectHolder holder = this.plugin.getPurchasesHolder();
+        if (holder == null || !holder.isReady()) {
+            sender.sendMessage(ChatColor.RED + "Purchase configurations are still loading, try again shortly.");
+            return;
+        }
+
+        sender.sendMessage(ChatColor.GRAY + "The store has " + ChatColor.WHITE + holder.getConfiguredPurchaseCount() + ChatColor.GRAY + " purchases.");
+        if (sender instanceof final Player player && this.plugin.getPurchaseCounts() != null) {
+            final PlayerPurchaseCounts state = this.plugin.getPurchaseCounts().getState(player.getUniqueId());
+            if (state != null) {
+                sender.sendMessage(ChatColor.GRAY + "You own " + ChatColor.WHITE + state.owned().cardinality() + ChatColor.GRAY + " of them.");
+            }
+        }
+    }
+
+    /**
+     * Reparses the purchase files that changed since they were last loaded, off the server thread
+     *
+     * @param sender The sender that ran the command
+     */
+    private void reload(final CommandSender sender) {
+        if (!sender.hasPermission(StoreCommand.ADMIN_PERMISSION)) {
+            sender.sendMessage(ChatColor.RED + "You don't have permission to do that.");
+            return;
+        }
+
+        final ConfiguredPlexPurchasesObjectHolder holder = this.plugin.getPurchasesHolder();
+        if (holder == null || !holder.isReady()) {
+            sender.sendMessage(ChatColor.RED + "Purchase configurations are still loading, try again shortly.");
+            return;
+        }
+
+        sender.sendMessage(ChatColor.GRAY + "Reloading changed purchase configurations...");
+        this.plugin.getServer().getScheduler().runTaskAsynchronously(this.plugin, () -> {
+            final PurchaseLoadReport report = holder.reloadChangedFiles();
+            this.plugin.getServer().getScheduler().runTask(this.plugin, () -> StoreCommand.sendReport(sender, report));
+        });
+    }
+
+    /**
+     * Shows every metric, the same values the metrics file is written with
+     *
+     * @param sender The sender that ran the command
+     */
+    private void metrics(final CommandSender sender) {
+        if (!sender.hasPermission(StoreCommand.ADMIN_PERMISSION)) {
+            sender.sendMessage(ChatColor.RED + "You don't have permission to do that.");
+            return;
+        }
+
+        sender.sendMessage(ChatColor.GREEN + "PlexPurchases metrics:");
+        for (final String line : PluginMetrics.describe()) {
+            final int separator = line.indexOf(':');
+            sender.sendMessage(ChatColor.GRAY + line.substring(0, separator + 1) + ChatColor.WHITE + line.substring(separator + 1));
+        }
+    }
+
+    private static void sendReport(final CommandSender sender, final PurchaseLoadReport report) {
+        sender.sendMessage(ChatColor.GREEN + "Reloaded " + report.getFilesFound() + " changed files in " + report.getElapsedMillis()
+                + "ms, " + report.getPurchasesLoaded() + " purchase configurations loaded.");
+
+        if (!report.getFailures().isEmpty()) {
+            sender.sendMessage(ChatColor.YELLOW + "" + report.getFailures().size() + " files failed to load, see console for details.");
+        }
+    }
+
+    private List<String> getSubcommands(final CommandSender sender) {
+        final List<String> subcommands = new ArrayList<>(List.of("buy", "purchases", "info"));
+        if (sender.hasPermission(StoreCommand.ADMIN_PERMISSION)) {
+            subcommands.add("reload");
+            subcommands.add("metrics");
+        }
+        return subcommands;
+    }
+
+}
@@ -1,7 +1,12 @@
 package net.plexprison.plexpurchases.config;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonSetter;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
+import lombok.ToString;
+import net.plexprison.plexpurchases.action.CompiledPurchaseActions;
 import net.plexprison.plexpurchases.config.base.ConfiguredPurchaseObject;
 import org.bukkit.Material;
 
@@ -9,6 +14,13 @@ import org.bukkit.Material;
 @Data
 public class ConfiguredPlexPurchasesObject extends ConfiguredPurchaseObject {
 
+    // bits of declaredFields, one per field whose unset value can't be told apart from 0 or false
+    public static final int DECLARED_PRICE = 1;
+    public static final int DECLARED_REPEATABLE_PURCHASE = 1 << 1;
+    public static final int DECLARED_DEPENDENCY_AMOUNT = 1 << 2;
+    public static final int DECLARED_HIDE_IF_NO_PERMISSION = 1 << 3;
+    public static final int DECLARED_AMOUNT = 1 << 4;
+
     private PurchaseActions actions;
     private String dependency;
     private int dependencyAmount;
@@ -17,6 +29,74 @@ public class ConfiguredPlexPurchasesObject extends ConfiguredPurchaseObject {
     private int amount;
     private String permission;
 
+    // inheritance, the product ID of the template or product this one takes its unset fields from
+    @JsonProperty("extends")
+    private String extendsId;
+    // only used as a base for other products, never published on its own
+    private boolean template;
+
+    // compiled when the purchase is loaded, never read from or written to config
+    @JsonIgnore
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private CompiledPurchaseActions compiledActions = CompiledPurchaseActions.NONE;
+
+    // which of the primitive fields were present in the purchase's file, so inheritance only overlays those
+    @JsonIgnore
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private int declaredFields;
+
+    /**
+     * Gets the ID the store knows this purchase by
+     *
+     * @return The product ID, or the subscription ID for subscriptions
+     */
+    @JsonIgnore
+    public String getPurchaseId() {
+        return this.getProductId() != null && !this.getProductId().isBlank() ? this.getProductId() : this.getSubscriptionId();
+    }
+
+    /**
+     * Checks whether a primitive field was present in the purchase's file, even if it was set to 0 or false
+     *
+     * @param field One of the DECLARED_ bits
+     * @return true if the field was set in the file
+     */
+    public boolean isDeclared(final int field) {
+        return (this.declaredFields & field) != 0;
+    }
+
+    @JsonSetter("price")
+    private void readPrice(final long price) {
+        this.setPrice(price);
+        this.declaredFields |= ConfiguredPlexPurchasesObject.DECLARED_PRICE;
+    }
+
+    @JsonSetter("repeatablePurchase")
+    private void readRepeatablePurchase(final boolean repeatablePurchase) {
+        this.setRepeatablePurchase(repeatablePurchase);
+        this.declaredFields |= ConfiguredPlexPurchasesObject.DECLARED_REPEATABLE_PURCHASE;
+    }
+
+    @JsonSetter("dependencyAmount")
+    private void readDependencyAmount(final int dependencyAmount) {
+        this.dependencyAmount = dependencyAmount;
+        this.declaredFields |= ConfiguredPlexPurchasesObject.DECLARED_DEPENDENCY_AMOUNT;
+    }
+
+    @JsonSetter("hideIfNoPermission")
+    private void readHideIfNoPermission(final boolean hideIfNoPermission) {
+        this.hideIfNoPermission = hideIfNoPermission;
+        this.declaredFields |= ConfiguredPlexPurchasesObject.DECLARED_HIDE_IF_NO_PERMISSION;
+    }
+
+    @JsonSetter("amount")
+    private void readAmount(final int amount) {
+        this.amount = amount;
+        this.declaredFields |= ConfiguredPlexPurchasesObject.DECLARED_AMOUNT;
+    }
+
     /**
      * Checks if this purchase is limited by times a player can purchase it
      *
@@ -1,8 +1,25 @@
 package net.plexprison.plexpurchases.config.base;
 
+import java.time.Period;
+
 public enum SubscriptionFrequency {
-    MONTHLY,
-    QUARTERLY,
-    SEMI_YEARLY,
-    YEARLY
+    MONTHLY(Period.ofMonths(1)),
+    QUARTERLY(Period.ofMonths(3)),
+    SEMI_YEARLY(Period.ofMonths(6)),
+    YEARLY(Period.ofYears(1));
+
+    private final Period period;
+
+    SubscriptionFrequency(final Period period) {
+        this.period = period;
+    }
+
+    /**
+     * Gets the time between two bills
+     *
+     * @return The billing period
+     */
+    public Period getPeriod() {
+        return this.period;
+    }
 }
@@ -0,0 +1,28 @@
+package net.plexprison.plexpurchases.config.holder;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import net.plexprison.plexpurchases.config.ConfiguredPlexPurchasesObject;
+
+import java.util.List;
+
+/**
+ * A single manifest entry in the compiled catalog cache
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+class CatalogCacheEntry {
+
+    // Relative to the purchases directory
+    private String path;
+    private long size;
+    private long lastModified;
+    private byte[] hash;
+    private List<ConfiguredPlexPurchasesObject> purchases;
+    // Each purchase's declared fields, which aren't part of its own serialized form
+    private int[] declaredFields;
+    private String failure;
+
+}
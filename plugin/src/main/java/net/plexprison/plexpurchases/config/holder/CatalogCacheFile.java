@@ -0,0 +1,21 @@
+package net.plexprison.plexpurchases.config.holder;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Root of the compiled catalog cache file
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+class CatalogCacheFile {
+
+    private int formatVersion;
+    private String pluginVersion;
+    private List<CatalogCacheEntry> entries;
+
+}
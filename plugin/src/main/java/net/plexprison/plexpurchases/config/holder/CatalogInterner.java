@@ -0,0 +1,122 @@
+package net.plexprison.plexpurchases.config.holder;
+
+import net.plexprison.plexpurchases.action.ActionTemplate;
+import net.plexprison.plexpurchases.action.CompiledPurchaseActions;
+import net.plexprison.plexpurchases.config.ConfiguredPlexPurchasesObject;
+import net.plexprison.plexpurchases.config.PurchaseActions;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Deduplicates the values purchases of a catalog have in common before it is published.
+ * Jackson gives every purchase its own copy of each string, so on a generated catalog of similar tiers the same
+ * descriptions, permissions and action commands are held thousands of times. Equal strings, action lists, action
+ * templates and compiled actions are swapped for one shared instance, which is safe because none of them are
+ * modified after load. Uses its own table rather than {@link String#intern()}, so nothing outlives the catalog.
+ * Can be turned off with -Dplexpurchases.catalog.intern=false to compare footprints.
+ */
+final class CatalogInterner {
+
+    private final Map<String, String> strings = new HashMap<>();
+    private final Map<List<String>, List<String>> lists = new HashMap<>();
+    private final Map<PurchaseActions, PurchaseActions> actions = new HashMap<>();
+    private final Map<PurchaseActions, CompiledPurchaseActions> compiled = new IdentityHashMap<>();
+    private final Map<String, ActionTemplate> templates = new HashMap<>();
+    private int shared;
+
+    /**
+     * Checks whether purchases are interned before they are published
+     *
+     * @return false if turned off with -Dplexpurchases.catalog.intern=false
+     */
+    static boolean isEnabled() {
+        return Boolean.parseBoolean(System.getProperty("plexpurchases.catalog.intern", "true"));
+    }
+
+    /**
+     * Swaps the values of a purchase for the shared instances.
+     * Safe on a purchase that is already published, every value is swapped for an equal one.
+     *
+     * @param purchase The purchase
+     */
+    void intern(final ConfiguredPlexPurchasesObject purchase) {
+        purchase.setProductId(this.string(purchase.getProductId()));
+        purchase.setProductName(this.string(purchase.getProductName()));
+        purchase.setProductDescription(this.string(purchase.getProductDescription()));
+        purchase.setSubscriptionId(this.string(purchase.getSubscriptionId()));
+        purchase.setSubscriptionName(this.string(purchase.getSubscriptionName()));
+        purchase.setSubscriptionDescription(this.string(purchase.getSubscriptionDescription()));
+        purchase.setPermission(this.string(purchase.getPermission()));
+        purchase.setDependency(this.string(purchase.getDependency()));
+        purchase.setExtendsId(this.string(purchase.getExtendsId()));
+
+        if (purchase.getActions() != null) {
+            final PurchaseActions actions = this.actions(purchase.getActions());
+            purchase.setActions(actions);
+            purchase.setCompiledActions(this.compiled.computeIfAbsent(actions, key -> purchase.getCompiledActions().share(this.templates)));
+        }
+    }
+
+    /**
+     * Gets the number of values that were replaced by an equal instance another purchase already held
+     *
+     * @return The number of duplicates dropped
+     */
+    int getShared() {
+        return this.shared;
+    }
+
+    private String string(final String value) {
+        if (value == null) {
+            return null;
+        }
+
+        final String canonical = this.strings.putIfAbsent(value, value);
+        if (canonical == null) {
+            return value;
+        }
+        if (canonical != value) {
+            this.shared++;
+        }
+        return canonical;
+    }
+
+    private List<String> list(final List<String> values) {
+        if (values == null) {
+            return null;
+        }
+
+        final List<String> canonical = this.lists.get(values);
+        if (canonical != null) {
+            if (canonical != values) {
+                this.shared++;
+            }
+            return canonical;
+        }
+
+        final List<String> interned = new ArrayList<>(values.size());
+        for (final String value : values) {
+            interned.add(this.string(value));
+        }
+        final List<String> copy = List.copyOf(interned);
+        this.lists.put(copy, copy);
+        return copy;
+    }
+
+    private PurchaseActions actions(final PurchaseActions actions) {
+        final PurchaseActions candidate = new PurchaseActions(this.list(actions.getSuccess()), this.list(actions.getExpire()), this.list(actions.getRenew()));
+        final PurchaseActions canonical = this.actions.putIfAbsent(candidate, candidate);
+        if (canonical == null) {
+            return candidate;
+        }
+        if (canonical != actions) {
+            this.shared++;
+        }
+        return canonical;
+    }
+
+}
@@ -0,0 +1,150 @@
+package net.plexprison.plexpurchases.config.holder;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import lombok.Getter;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The outcome of validating a purchases directory with {@link PurchaseCatalogValidator}: every problem found, where
+ * it is, and how long the run took. Printed as text for people and as JSON for deploy pipelines.
+ */
+@Getter
+public class CatalogValidationReport {
+
+    private static final ObjectMapper jsonMapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+
+    private final String directory;
+    private final int threads;
+    private final int filesChecked;
+    private final int purchasesChecked;
+    private final int templatesChecked;
+    // Sorted by file and line
+    private final List<Issue> issues;
+    @JsonIgnore
+    private final long elapsedNanos;
+
+    /**
+     * Constructor for the report
+     *
+     * @param directory        The purchases directory that was validated
+     * @param threads          The number of threads files were checked on
+     * @param filesChecked     The number of YAML files found
+     * @param purchasesChecked The number of purchases found, templates excluded
+     * @param templatesChecked The number of templates found
+     * @param issues           Every problem found, in any order
+     * @param elapsedNanos     How long the validation took
+     */
+    CatalogValidationReport(final String directory, final int threads, final int filesChecked, final int purchasesChecked, final int templatesChecked,
+                            final List<Issue> issues, final long elapsedNanos) {
+        this.directory = directory;
+        this.threads = threads;
+        this.filesChecked = filesChecked;
+        this.purchasesChecked = purchasesChecked;
+        this.templatesChecked = templatesChecked;
+        this.issues = issues.stream()
+                .sorted(Comparator.comparing(Issue::file).thenComparingInt(Issue::line))
+                .toList();
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * Gets the number of problems that keep a purchase out of the catalog
+     *
+     * @return The error count
+     */
+    public long getErrorCount() {
+        return this.issues.stream().filter(issue -> issue.severity() == Severity.ERROR).count();
+    }
+
+    /**
+     * Gets the number of problems that load, but probably aren't intended
+     *
+     * @return The warning count
+     */
+    public long getWarningCount() {
+        return this.issues.stream().filter(issue -> issue.severity() == Severity.WARNING).count();
+    }
+
+    /**
+     * Checks whether every purchase would load
+     *
+     * @return true if there are no errors
+     */
+    public boolean isValid() {
+        return this.getErrorCount() == 0;
+    }
+
+    /**
+     * Gets how long the validation took
+     *
+     * @return The time in milliseconds
+     */
+    public double getElapsedMillis() {
+        return this.elapsedNanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    /**
+     * Formats the report for reading in a terminal
+     *
+     * @return One line per issue followed by a summary
+     */
+    public String toText() {
+        final StringBuilder builder = new StringBuilder();
+        for (final Issue issue : this.issues) {
+            builder.append(issue.severity()).append(' ').append(issue.file());
+            if (issue.line() > 0) {
+                builder.append(':').append(issue.line());
+            }
+            if (issue.purchase() != null) {
+                builder.append(" [").append(issue.purchase()).append(']');
+            }
+            builder.append(": ").append(issue.message()).append('\n');
+        }
+
+        builder.append(String.format(Locale.ROOT, "Checked %d purchases and %d templates in %d files on %d threads in %.1fms: %d errors, %d warnings%n",
+                this.purchasesChecked, this.templatesChecked, this.filesChecked, this.threads, this.getElapsedMillis(),
+                this.getErrorCount(), this.getWarningCount()));
+        return builder.toString();
+    }
+
+    /**
+     * Formats the report as JSON
+     *
+     * @return The JSON document
+     */
+    public String toJson() {
+        try {
+            return CatalogValidationReport.jsonMapper.writeValueAsString(this);
+        } catch (final JsonProcessingException e) {
+            throw new IllegalStateException("Failed to write validation report: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * How serious a problem is
+     */
+    public enum Severity {
+        ERROR,
+        WARNING
+    }
+
+    /**
+     * A single problem
+     *
+     * @param file     The file, relative to the purchases directory
+     * @param line     The line the problem is on, or 0 if it applies to the whole file
+     * @param purchase The product ID of the purchase it applies to, or null if it isn't known
+     * @param severity How serious it is
+     * @param message  What is wrong
+     */
+    public record Issue(String file, int line, String purchase, Severity severity, String message) {
+    }
+
+}
@@ -0,0 +1,173 @@
+package net.plexprison.plexpurchases.config.holder;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import net.plexprison.plexpurchases.config.ConfiguredPlexPurchasesObject;
+import net.plexprison.plexpurchases.utils.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Binary snapshot of the last successful load, written as Smile next to the plugin data.
+ * Each entry carries the file's size, modification time and content hash, so on the next start unchanged files are
+ * taken straight from the snapshot and only changed files go through the YAML parser.
+ * The cache is thrown away whenever the plugin version or cache format changes.
+ */
+final class CompiledCatalogCache {
+
+    private static final int FORMAT_VERSION = 5;
+    private static final ObjectMapper smileMapper;
+
+    static {
+        smileMapper = new ObjectMapper(new SmileFactory());
+        CompiledCatalogCache.smileMapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        CompiledCatalogCache.smileMapper.configure(DeserializationFeature.FAIL_ON_NULL_FOR_PRIMITIVES, false);
+    }
+
+    private final Path purchasesDir;
+    private final Map<String, CatalogCacheEntry> entries;
+
+    private CompiledCatalogCache(final Path purchasesDir, final Map<String, CatalogCacheEntry> entries) {
+        this.purchasesDir = purchasesDir;
+        this.entries = entries;
+    }
+
+    /**
+     * Reads the cache written by a previous load
+     *
+     * @param cacheFile     The cache file
+     * @param purchasesDir  The purchases directory the cache describes
+     * @param pluginVersion The running plugin version
+     * @return The cache, or null if there is no usable cache
+     */
+    static CompiledCatalogCache read(final File cacheFile, final Path purchasesDir, final String pluginVersion) {
+        if (!cacheFile.isFile()) {
+            return null;
+        }
+
+        try {
+            final CatalogCacheFile contents = CompiledCatalogCache.smileMapper.readValue(cacheFile, CatalogCacheFile.class);
+            if (contents.getFormatVersion() != CompiledCatalogCache.FORMAT_VERSION || !pluginVersion.equals(contents.getPluginVersion()) || contents.getEntries() == null) {
+                Logger.info("Ignoring compiled catalog cache written by a different plugin version");
+                return null;
+            }
+
+            final Map<String, CatalogCacheEntry> entries = new HashMap<>((int) (contents.getEntries().size() / 0.75f) + 1);
+            for (final CatalogCacheEntry entry : contents.getEntries()) {
+                entries.put(entry.getPath(), entry);
+            }
+            return new CompiledCatalogCache(purchasesDir, entries);
+
+        } catch (final IOException e) {
+            Logger.warning("Failed to read compiled catalog cache, doing a full load: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Writes a new cache describing the given files, replacing the old one atomically.
+     * Files holding purchases kept from an earlier version are left out, so the next start parses them the same way a
+     * start without a cache would.
+     *
+     * @param cacheFile     The cache file
+     * @param purchasesDir  The purchases directory the files live in
+     * @param pluginVersion The running plugin version
+     * @param files         Every loaded file
+     */
+    static void write(final File cacheFile, final Path purchasesDir, final String pluginVersion, final Map<Path, LoadedPurchaseFile> files) {
+        final List<CatalogCacheEntry> entries = new ArrayList<>(files.size());
+        files.forEach((path, loaded) -> {
+            if (!loaded.stale()) {
+                final int[] declaredFields = new int[loaded.purchases().size()];
+                for (int i = 0; i < declaredFields.length; i++) {
+                    declaredFields[i] = loaded.purchases().get(i).getDeclaredFields();
+                }
+                entries.add(new CatalogCacheEntry(purchasesDir.relativize(path).toString(),
+                        loaded.size(), loaded.lastModified(), loaded.hash(), loaded.purchases(), declaredFields, loaded.failure()));
+            }
+        });
+
+        try {
+            final Path target = cacheFile.toPath();
+            Files.createDirectories(target.getParent());
+
+            final Path temp = target.resolveSibling(cacheFile.getName() + ".tmp");
+            CompiledCatalogCache.smileMapper.writeValue(temp.toFile(), new CatalogCacheFile(CompiledCatalogCache.FORMAT_VERSION, pluginVersion, entries));
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        } catch (final IOException e) {
+            Logger.warning("Failed to write compiled catalog cache: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Gets the cached result for a file whose size and modification time haven't changed
+     *
+     * @param file         The purchase file
+     * @param lastModified The file's current modification time
+     * @param size         The file's current size
+     * @return The cached result, or null if the file is new or its stamp changed
+     */
+    LoadedPurchaseFile getIfUnchanged(final Path file, final long lastModified, final long size) {
+        final CatalogCacheEntry entry = this.entries.get(this.purchasesDir.relativize(file).toString());
+        if (entry == null || entry.getLastModified() != lastModified || entry.getSize() != size) {
+            return null;
+        }
+        return CompiledCatalogCache.toLoaded(entry, lastModified, size);
+    }
+
+    /**
+     * Gets the cached result for a file that was touched but whose content is identical, such as after a checkout
+     *
+     * @param file         The purchase file
+     * @param hash         The hash of the file's current content
+     * @param lastModified The file's current modification time
+     * @param size         The file's current size
+     * @return The cached result restamped with the new modification time, or null if the content changed
+     */
+    LoadedPurchaseFile getIfSameContent(final Path file, final byte[] hash, final long lastModified, final long size) {
+        final CatalogCacheEntry entry = this.entries.get(this.purchasesDir.relativize(file).toString());
+        if (entry == null || entry.getSize() != size || !Arrays.equals(entry.getHash(), hash)) {
+            return null;
+        }
+        return CompiledCatalogCache.toLoaded(entry, lastModified, size);
+    }
+
+    /**
+     * Hashes file content for change detection
+     *
+     * @param content The raw file content
+     * @return SHA-256 of the content
+     */
+    static byte[] hash(final byte[] content) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(content);
+        } catch (final NoSuchAlgorithmException e) {
+            // Every JVM is required to provide SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static LoadedPurchaseFile toLoaded(final CatalogCacheEntry entry, final long lastModified, final long size) {
+        final List<ConfiguredPlexPurchasesObject> purchases = entry.getPurchases() == null ? List.of() : entry.getPurchases();
+        // Reading the cache marks every field as declared, put back what the file actually set
+        final int[] declaredFields = entry.getDeclaredFields();
+        for (int i = 0; i < purchases.size(); i++) {
+            purchases.get(i).setDeclaredFields(declaredFields != null && i < declaredFields.length ? declaredFields[i] : 0);
+        }
+        return new LoadedPurchaseFile(purchases, lastModified, size, entry.getHash(), entry.getFailure());
+    }
+
+}
@@ -1,27 +1,68 @@
 package net.plexprison.plexpurchases.config.holder;
 
+import lombok.Getter;
+import net.plexprison.plexpurchases.action.CompiledPurchaseActions;
 import net.plexprison.plexpurchases.config.ConfiguredPlexPurchasesObject;
+import net.plexprison.plexpurchases.metrics.PluginMetrics;
 import net.plexprison.plexpurchases.utils.Logger;
 import net.plexprison.plexpurchases.utils.YamlParser;
 import org.bukkit.plugin.Plugin;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 /**
  * Holder class responsible for managing a list of ConfiguredPlexPurchasesObject instances.
  * Loads YAML files from the assets/purchases directory and parses them into ConfiguredPlexPurchasesObject.
  * Follows single responsibility principle by only handling the loading and storage of purchase configurations.
+ * Loaded purchases are published as an immutable {@link PurchaseCatalog}, replaced in a single write on every load.
+ * Every loaded file is remembered by path, so a hot-reload only reparses the files that actually changed.
+ * After each load the files are written to a {@link CompiledCatalogCache}, letting the next start skip unchanged files.
  */
 public class ConfiguredPlexPurchasesObjectHolder {
 
-    private final List<ConfiguredPlexPurchasesObject> purchases;
     private final Plugin plugin;
+    private final CompletableFuture<PurchaseCatalog> ready;
+    // Guarded by itself, in the order files were first discovered
+    private final Map<Path, LoadedPurchaseFile> files;
+    private final List<Consumer<PurchaseCatalog>> publishListeners;
+    private volatile PurchaseCatalog catalog;
+    private volatile Path purchasesPath;
+    private final File cacheFile;
+    private PurchaseDirectoryWatcher watcher;
+    /**
+     * -- GETTER --
+     * Gets the report of the most recent load or reload, or null if nothing has loaded yet
+     */
+    @Getter
+    private volatile PurchaseLoadReport lastReport;
+    /**
+     * -- GETTER --
+     * Gets a fingerprint of the content of every loaded file, equal on every instance that loaded the same files
+     */
+    @Getter
+    private volatile long contentVersion;
 
     /**
      * Constructor for the holder class
@@ -30,16 +71,215 @@ public class ConfiguredPlexPurchasesObjectHolder {
      */
     public ConfiguredPlexPurchasesObjectHolder(final Plugin plugin) {
         this.plugin = plugin;
-        this.purchases = new ArrayList<>();
+        this.ready = new CompletableFuture<>();
+        this.files = new LinkedHashMap<>();
+        this.publishListeners = new CopyOnWriteArrayList<>();
+        this.cacheFile = new File(plugin.getDataFolder(), "catalog-cache.smile");
+        this.catalog = PurchaseCatalog.EMPTY;
     }
 
     /**
      * Loads all YAML files from the game-config/purchases directory relative to the plugins folder and parses them into ConfiguredPlexPurchasesObject instances.
-     * This method should be called during plugin initialization.
+     * Files are parsed one after another on the calling thread, see {@link #loadPurchasesAsync()} for the parallel loader.
      */
     public void loadPurchases() {
         Logger.info("Starting to load purchase configurations...");
 
+        final PurchaseLoadReport report = new PurchaseLoadReport(1, false);
+        final Path purchasesDir = this.findPurchasesDirectory();
+        final Map<Path, LoadedPurchaseFile> loaded = purchasesDir == null ? Map.of() : ConfiguredPlexPurchasesObjectHolder.loadPurchaseFiles(purchasesDir, null, report, this.readCache(purchasesDir));
+
+        this.publish(loaded, report);
+        this.writeCache();
+    }
+
+    /**
+     * Loads all purchase configurations off the calling thread, parsing files in parallel on a bounded pool.
+     * The catalog is published once every file has been parsed, and {@link #isReady()} flips at the same time.
+     * This method should be called during plugin initialization.
+     *
+     * @return Future completed with the published catalog
+     */
+    public CompletableFuture<PurchaseCatalog> loadPurchasesAsync() {
+        Logger.info("Starting to load purchase configurations in parallel...");
+
+        final ForkJoinPool pool = ConfiguredPlexPurchasesObjectHolder.createLoaderPool();
+        final PurchaseLoadReport report = new PurchaseLoadReport(pool.getParallelism(), false);
+
+        return CompletableFuture.supplyAsync(() -> {
+                    final Path purchasesDir = this.findPurchasesDirectory();
+                    final Map<Path, LoadedPurchaseFile> loaded = purchasesDir == null ? Map.of() : ConfiguredPlexPurchasesObjectHolder.loadPurchaseFiles(purchasesDir, pool, report, this.readCache(purchasesDir));
+                    final PurchaseCatalog published = this.publish(loaded, report);
+                    this.writeCache();
+                    return published;
+                }, pool)
+                .exceptionally(throwable -> {
+                    Logger.error("Failed to load purchase configurations: " + throwable.getMessage());
+                    return this.publish(Map.of(), report);
+                })
+                .whenComplete((catalog, throwable) -> pool.shutdown());
+    }
+
+    /**
+     * Reparses only the given files and publishes a new catalog.
+     * Files that no longer exist are dropped, and a file that no longer parses keeps its last good version. Within a file
+     * that does parse, each purchase that no longer validates keeps its last good version by product ID.
+     *
+     * @param changed The created, modified or deleted files
+     * @return The report for this reload
+     */
+    public PurchaseLoadReport reloadFiles(final Collection<Path> changed) {
+        final PurchaseLoadReport report = new PurchaseLoadReport(1, true);
+        report.setFilesFound(changed.size());
+
+        final PurchaseCatalog published;
+        synchronized (this.files) {
+            for (final Path path : changed) {
+                if (!Files.isRegularFile(path)) {
+                    final LoadedPurchaseFile removed = this.files.remove(path);
+                    if (removed != null) {
+                        for (final ConfiguredPlexPurchasesObject purchase : removed.purchases()) {
+                            Logger.info("Removed purchase configuration " + purchase.getProductId() + " (file deleted: " + path + ")");
+                        }
+                    }
+                    continue;
+                }
+
+                final LoadedPurchaseFile previous = this.files.get(path);
+                final LoadedPurchaseFile loaded = ConfiguredPlexPurchasesObjectHolder.loadPurchaseFile(path, report, null);
+                final List<ConfiguredPlexPurchasesObject> kept = previous == null ? List.of() : ConfiguredPlexPurchasesObjectHolder.findRejected(previous, loaded);
+
+                if (!kept.isEmpty()) {
+                    // Remember the new stamp so the broken file isn't retried until it changes again
+                    final List<ConfiguredPlexPurchasesObject> purchases = new ArrayList<>(loaded.purchases());
+                    purchases.addAll(kept);
+                    this.files.put(path, new LoadedPurchaseFile(List.copyOf(purchases), loaded.lastModified(), loaded.size(), loaded.hash(), loaded.failure(), loaded.rejected(), true));
+                    Logger.warning("Keeping last good version of " + kept.size() + " purchase(s) from " + path);
+                } else {
+                    this.files.put(path, loaded);
+                }
+            }
+
+            published = PurchaseCatalog.of(this.resolvePurchases(report));
+            this.catalog = published;
+            this.contentVersion = this.fingerprintFiles();
+        }
+
+        report.finish(published.size());
+        report.log();
+        this.lastReport = report;
+        this.notifyPublished(published);
+        this.writeCache();
+        return report;
+    }
+
+    /**
+     * Finds every file created, modified or deleted since it was last loaded, comparing size and modification time only,
+     * and reparses just those through {@link #reloadFiles(Collection)}
+     *
+     * @return The report for this reload
+     */
+    public PurchaseLoadReport reloadChangedFiles() {
+        Path purchasesDir = this.purchasesPath;
+        if (purchasesDir == null) {
+            purchasesDir = this.findPurchasesDirectory();
+        }
+
+        final List<Path> found = purchasesDir == null ? List.of() : ConfiguredPlexPurchasesObjectHolder.listPurchaseFiles(purchasesDir);
+        final Set<Path> changed = new LinkedHashSet<>();
+
+        synchronized (this.files) {
+            for (final Path path : found) {
+                final LoadedPurchaseFile known = this.files.get(path);
+                if (known == null || !known.matches(path.toFile())) {
+                    changed.add(path);
+                }
+            }
+
+            final Set<Path> present = new HashSet<>(found);
+            for (final Path path : this.files.keySet()) {
+                if (!present.contains(path)) {
+                    changed.add(path);
+                }
+            }
+        }
+
+        return this.reloadFiles(changed);
+    }
+
+    /**
+     * Starts watching the purchases directory and hot-reloading changed files in the background.
+     * Bursts of changes are batched until the directory has been quiet for -Dplexpurchases.watch.debounce milliseconds (default 500).
+     */
+    public synchronized void startWatching() {
+        final Path purchasesDir = this.purchasesPath;
+        if (this.watcher != null || purchasesDir == null) {
+            return;
+        }
+
+        try {
+            this.watcher = new PurchaseDirectoryWatcher(purchasesDir, Long.getLong("plexpurchases.watch.debounce", 500L),
+                    this::reloadFiles, this::reloadChangedFiles);
+            this.watcher.start();
+        } catch (final IOException e) {
+            Logger.error("Failed to watch purchases directory, use /store reload to pick up changes: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Stops the background watcher if it is running
+     */
+    public synchronized void stopWatching() {
+        if (this.watcher != null) {
+            this.watcher.stop();
+            this.watcher = null;
+        }
+    }
+
+    /**
+     * Registers a listener called with every newly published catalog, on whichever thread published it
+     *
+     * @param listener The listener to call
+     */
+    public void addPublishListener(final Consumer<PurchaseCatalog> listener) {
+        this.publishListeners.add(listener);
+    }
+
+    /**
+     * Checks whether the first load has finished and purchases can be handled
+     *
+     * @return true once a catalog has been published
+     */
+    public boolean isReady() {
+        return this.ready.isDone();
+    }
+
+    /**
+     * Gets a future completed with the first published catalog
+     *
+     * @return Future completed once the purchases are ready
+     */
+    public CompletableFuture<PurchaseCatalog> whenReady() {
+        return this.ready;
+    }
+
+    /**
+     * Checks whether a path looks like a purchase configuration file
+     *
+     * @param path The path to check
+     * @return true if the path has a YAML extension
+     */
+    static boolean isPurchaseFile(final Path path) {
+        final String name = path.toString().toLowerCase();
+        return name.endsWith(".yml") || name.endsWith(".yaml");
+    }
+
+    /**
+     * Resolves the game-config/purchases directory, which sits next to the plugins folder
+     *
+     * @return The purchases directory, or null if it does not exist
+     */
+    private Path findPurchasesDirectory() {
         // Get the plugins folder and navigate to its parent directory
         final File pluginsFolder = this.plugin.getDataFolder().getParentFile();
         final File parentDir = pluginsFolder.getParentFile();
@@ -48,107 +288,552 @@ public class ConfiguredPlexPurchasesObjectHolder {
 
         if (!gameConfigDir.exists()) {
             Logger.warning("game-config directory does not exist at: " + gameConfigDir.getAbsolutePath() + ", this plugin is useless without this!");
-            return;
+            return null;
         }
 
         if (!purchasesDir.exists()) {
             Logger.warning("purchases directory does not exist at: " + purchasesDir.getAbsolutePath() + ", this plugin is useless without this!");
+            return null;
+        }
+
+        // Normalised so paths from the initial walk and from the watcher compare equal
+        final Path purchasesDirPath = purchasesDir.toPath().toAbsolutePath().normalize();
+        this.purchasesPath = purchasesDirPath;
+        return purchasesDirPath;
+    }
+
+    /**
+     * Reads the compiled catalog cache, unless disabled with -Dplexpurchases.cache=false
+     *
+     * @param purchasesDir The purchases directory being loaded
+     * @return The cache, or null if there is no usable cache
+     */
+    private CompiledCatalogCache readCache(final Path purchasesDir) {
+        if (!ConfiguredPlexPurchasesObjectHolder.isCacheEnabled()) {
+            return null;
+        }
+        return CompiledCatalogCache.read(this.cacheFile, purchasesDir, this.plugin.getDescription().getVersion());
+    }
+
+    /**
+     * Writes the currently loaded files to the compiled catalog cache so the next start can skip unchanged files
+     */
+    private void writeCache() {
+        final Path purchasesDir = this.purchasesPath;
+        if (!ConfiguredPlexPurchasesObjectHolder.isCacheEnabled() || purchasesDir == null) {
             return;
         }
 
-        // Load all YAML files from the purchases directory
-        this.loadPurchaseFiles(purchasesDir);
+        final Map<Path, LoadedPurchaseFile> snapshot;
+        synchronized (this.files) {
+            snapshot = new LinkedHashMap<>(this.files);
+        }
+        CompiledCatalogCache.write(this.cacheFile, purchasesDir, this.plugin.getDescription().getVersion(), snapshot);
+    }
+
+    private static boolean isCacheEnabled() {
+        return Boolean.parseBoolean(System.getProperty("plexpurchases.cache", "true"));
+    }
+
+    /**
+     * Publishes the loaded files as the new catalog snapshot and logs the load report
+     *
+     * @param loaded The loaded files, in discovery order
+     * @param report The report for this load
+     * @return The published catalog
+     */
+    private PurchaseCatalog publish(final Map<Path, LoadedPurchaseFile> loaded, final PurchaseLoadReport report) {
+        final PurchaseCatalog published;
+        synchronized (this.files) {
+            this.files.clear();
+            this.files.putAll(loaded);
+
+            published = PurchaseCatalog.of(this.resolvePurchases(report));
+            this.catalog = published;
+            this.contentVersion = this.fingerprintFiles();
+        }
+        this.lastReport = report;
+
+        report.finish(published.size());
+        report.log();
 
-        Logger.success("Loaded " + this.purchases.size() + " purchase configurations");
+        this.ready.complete(published);
+        this.notifyPublished(published);
+        return published;
     }
 
     /**
-     * Loads all YAML files from the specified directory and parses them into ConfiguredPlexPurchasesObject instances
+     * Combines the path and content hash of every known file, must be called while holding the files lock.
+     * Each file is mixed in on its own and summed, so the order files were discovered in doesn't matter.
+     *
+     * @return The fingerprint, 0 if no files are loaded
+     */
+    private long fingerprintFiles() {
+        long fingerprint = 0;
+        for (final Map.Entry<Path, LoadedPurchaseFile> entry : this.files.entrySet()) {
+            final Path path = this.purchasesPath == null ? entry.getKey() : this.purchasesPath.relativize(entry.getKey());
+            long mixed = path.toString().hashCode();
+            final byte[] hash = entry.getValue().hash();
+            if (hash != null) {
+                for (int i = 0; i < Math.min(hash.length, Long.BYTES); i++) {
+                    mixed = mixed * 31 + (hash[i] & 0xFF);
+                }
+            }
+            // SplitMix64 finalizer, so sums of similar files don't cancel out
+            mixed = (mixed ^ (mixed >>> 30)) * 0xBF58476D1CE4E5B9L;
+            mixed = (mixed ^ (mixed >>> 27)) * 0x94D049BB133111EBL;
+            fingerprint += mixed ^ (mixed >>> 31);
+        }
+        return fingerprint;
+    }
+
+    /**
+     * Tells every publish listener about a new catalog, keeping one failing listener from affecting the others
+     *
+     * @param published The catalog that was just published
+     */
+    private void notifyPublished(final PurchaseCatalog published) {
+        for (final Consumer<PurchaseCatalog> listener : this.publishListeners) {
+            try {
+                listener.accept(published);
+            } catch (final RuntimeException e) {
+                Logger.error("Purchase catalog listener failed: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Builds the purchases of the next catalog from every known file, must be called while holding the files lock.
+     * Purchases are only valid together: inheritance is resolved first, then dependencies are checked, and a purchase
+     * whose template or dependency chain is broken keeps its version from the current catalog, or is left out if it has none.
+     *
+     * @param report The report rejected purchases are recorded in
+     * @return The resolved purchases, in discovery order
+     */
+    private List<ConfiguredPlexPurchasesObject> resolvePurchases(final PurchaseLoadReport report) {
+        final List<ConfiguredPlexPurchasesObject> declared = this.collectPurchases();
+        final PurchaseTemplates.Resolution resolution = PurchaseTemplates.resolve(declared);
+        final Map<ConfiguredPlexPurchasesObject, String> invalid = new IdentityHashMap<>(resolution.invalid());
+
+        // A rejected purchase keeps the version the current catalog holds, the same as a file that stops parsing
+        final PurchaseCatalog previous = this.catalog;
+
+        // Inherited purchases are only complete now, so they are validated and compiled here rather than when parsed
+        final List<ConfiguredPlexPurchasesObject> purchases = new ArrayList<>(declared.size());
+        final Map<ConfiguredPlexPurchasesObject, ConfiguredPlexPurchasesObject> declaredBy = new IdentityHashMap<>();
+        for (int i = 0; i < declared.size(); i++) {
+            ConfiguredPlexPurchasesObject purchase = resolution.resolved().get(i);
+            if (purchase != null && purchase != declared.get(i)) {
+                final String problem = ConfiguredPlexPurchasesObjectHolder.validatePurchase(purchase);
+                if (problem != null) {
+                    invalid.put(declared.get(i), problem);
+                    purchase = null;
+                }
+            }
+
+            if (purchase == null && invalid.containsKey(declared.get(i))) {
+                purchase = ConfiguredPlexPurchasesObjectHolder.lastGoodVersion(previous, declared.get(i));
+            }
+            if (purchase == null) {
+                continue;
+            }
+            purchases.add(purchase);
+            declaredBy.put(purchase, declared.get(i));
+        }
+
+        final Map<ConfiguredPlexPurchasesObject, String> dependencies = PurchaseDependencyGraph.findInvalid(purchases);
+        if (!dependencies.isEmpty()) {
+            dependencies.forEach((purchase, problem) -> invalid.putIfAbsent(declaredBy.get(purchase), problem));
+
+            boolean replaced = false;
+            for (int i = 0; i < purchases.size(); i++) {
+                final ConfiguredPlexPurchasesObject purchase = purchases.get(i);
+                if (!dependencies.containsKey(purchase)) {
+                    continue;
+                }
+
+                final ConfiguredPlexPurchasesObject kept = ConfiguredPlexPurchasesObjectHolder.lastGoodVersion(previous, purchase);
+                if (kept == null || kept == purchase) {
+                    purchases.set(i, null);
+                    continue;
+                }
+                purchases.set(i, kept);
+                declaredBy.put(kept, declaredBy.get(purchase));
+                replaced = true;
+            }
+            purchases.removeIf(Objects::isNull);
+
+            // The kept versions have to fit the rest of this load, which may have dropped what they depend on
+            if (replaced) {
+                final Map<ConfiguredPlexPurchasesObject, String> remaining = PurchaseDependencyGraph.findInvalid(purchases);
+                remaining.forEach((purchase, problem) -> invalid.putIfAbsent(declaredBy.get(purchase), problem));
+                purchases.removeIf(remaining::containsKey);
+            }
+        }
+
+        if (!invalid.isEmpty()) {
+            this.files.forEach((path, file) -> {
+                for (final ConfiguredPlexPurchasesObject purchase : file.purchases()) {
+                    final String problem = invalid.get(purchase);
+                    if (problem != null) {
+                        report.fileFailed(path, ConfiguredPlexPurchasesObjectHolder.describe(file, purchase, problem));
+                    }
+                }
+            });
+        }
+
+        if (CatalogInterner.isEnabled()) {
+            final CatalogInterner interner = new CatalogInterner();
+            purchases.forEach(interner::intern);
+            Logger.debug(() -> "Shared " + interner.getShared() + " duplicate values between " + purchases.size() + " purchases");
+        }
+        return purchases;
+    }
+
+    /**
+     * Gets the version of a rejected purchase that the current catalog holds
+     *
+     * @param previous The catalog being replaced
+     * @param rejected The rejected purchase, as declared or resolved
+     * @return The purchase from the current catalog with the same product ID, or null if there is none
+     */
+    private static ConfiguredPlexPurchasesObject lastGoodVersion(final PurchaseCatalog previous, final ConfiguredPlexPurchasesObject rejected) {
+        final ConfiguredPlexPurchasesObject kept = previous.getByProductId(rejected.getProductId());
+        if (kept != null && kept != rejected) {
+            Logger.warning("Keeping last good version of purchase " + rejected.getProductId());
+        }
+        return kept;
+    }
+
+    /**
+     * Finds the purchases of a file's previous version that its new version still declares but rejected
+     *
+     * @param previous The file as last loaded
+     * @param loaded   The file as just reparsed
+     * @return The previous version of every rejected purchase, in file order, or all previous purchases if the file no longer parses
+     */
+    private static List<ConfiguredPlexPurchasesObject> findRejected(final LoadedPurchaseFile previous, final LoadedPurchaseFile loaded) {
+        if (loaded.purchases().isEmpty() && loaded.rejected().isEmpty()) {
+            return loaded.failure() == null ? List.of() : previous.purchases();
+        }
+        if (loaded.rejected().isEmpty()) {
+            return List.of();
+        }
+
+        final Set<String> loadedIds = new HashSet<>();
+        loaded.purchases().forEach(purchase -> loadedIds.add(purchase.getProductId()));
+
+        // A rejected purchase whose product ID can't be read could be any of the ones that went missing
+        final Set<String> rejectedIds = new HashSet<>();
+        boolean unidentified = false;
+        for (final ConfiguredPlexPurchasesObject purchase : loaded.rejected()) {
+            if (purchase == null || purchase.getProductId() == null || purchase.getProductId().isBlank()) {
+                unidentified = true;
+            } else {
+                rejectedIds.add(purchase.getProductId());
+            }
+        }
+
+        final List<ConfiguredPlexPurchasesObject> kept = new ArrayList<>();
+        for (final ConfiguredPlexPurchasesObject purchase : previous.purchases()) {
+            if (!loadedIds.contains(purchase.getProductId()) && (unidentified || rejectedIds.contains(purchase.getProductId()))) {
+                kept.add(purchase);
+            }
+        }
+        return kept;
+    }
+
+    /**
+     * Collects the current purchases of every known file, templates included, must be called while holding the files lock
+     *
+     * @return The valid purchases, in discovery order
+     */
+    private List<ConfiguredPlexPurchasesObject> collectPurchases() {
+        final List<ConfiguredPlexPurchasesObject> purchases = new ArrayList<>(this.files.size());
+        for (final LoadedPurchaseFile file : this.files.values()) {
+            purchases.addAll(file.purchases());
+        }
+        return purchases;
+    }
+
+    /**
+     * Lists every YAML file below the purchases directory
      *
      * @param purchasesDir The directory containing purchase YAML files
+     * @return The YAML files found, empty if the directory could not be scanned
      */
-    private void loadPurchaseFiles(final File purchasesDir) {
-        try {
-            // Get all YAML files from the directory
-            final List<File> yamlFiles = Files.walk(purchasesDir.toPath())
-                    .filter(path -> path.toString().toLowerCase().endsWith(".yml") || path.toString().toLowerCase().endsWith(".yaml"))
-                    .map(Path::toFile)
-                    .filter(File::isFile)
+    private static List<Path> listPurchaseFiles(final Path purchasesDir) {
+        try (final Stream<Path> paths = Files.walk(purchasesDir)) {
+            return paths
+                    .filter(ConfiguredPlexPurchasesObjectHolder::isPurchaseFile)
+                    .filter(Files::isRegularFile)
                     .toList();
+        } catch (final IOException | UncheckedIOException e) {
+            Logger.error("Failed to scan purchases directory: " + e.getMessage());
+            return List.of();
+        }
+    }
+
+    /**
+     * Loads all YAML files from the specified directory and parses them into ConfiguredPlexPurchasesObject instances
+     *
+     * @param purchasesDir The directory containing purchase YAML files
+     * @param pool         The pool to parse files on, or null to parse them on the calling thread
+     * @param report       The report failures are recorded in
+     * @param cache        The compiled catalog cache unchanged files are taken from, or null to parse every file
+     * @return Every file found mapped to what was loaded from it, in discovery order
+     */
+    private static Map<Path, LoadedPurchaseFile> loadPurchaseFiles(final Path purchasesDir, final ForkJoinPool pool, final PurchaseLoadReport report, final CompiledCatalogCache cache) {
+        // Get all YAML files from the directory
+        final List<Path> yamlFiles = ConfiguredPlexPurchasesObjectHolder.listPurchaseFiles(purchasesDir);
+
+        report.setFilesFound(yamlFiles.size());
+        Logger.info("Found " + yamlFiles.size() + " YAML files in purchases directory");
 
-            Logger.info("Found " + yamlFiles.size() + " YAML files in purchases directory");
+        final Map<Path, LoadedPurchaseFile> loaded = new LinkedHashMap<>();
 
+        if (pool == null) {
             // Parse each YAML file
-            for (final File yamlFile : yamlFiles) {
-                this.loadPurchaseFile(yamlFile);
+            for (final Path yamlFile : yamlFiles) {
+                loaded.put(yamlFile, ConfiguredPlexPurchasesObjectHolder.loadPurchaseFile(yamlFile, report, cache));
             }
+            return loaded;
+        }
 
-        } catch (final IOException e) {
-            Logger.error("Failed to scan purchases directory: " + e.getMessage());
+        // Fork one task per file, then join them in file order so duplicate IDs resolve the same way as a sequential load
+        final List<ForkJoinTask<LoadedPurchaseFile>> tasks = new ArrayList<>(yamlFiles.size());
+        for (final Path yamlFile : yamlFiles) {
+            tasks.add(ForkJoinTask.adapt(() -> ConfiguredPlexPurchasesObjectHolder.loadPurchaseFile(yamlFile, report, cache)));
         }
+        ForkJoinTask.invokeAll(tasks);
+
+        for (int i = 0; i < yamlFiles.size(); i++) {
+            loaded.put(yamlFiles.get(i), tasks.get(i).join());
+        }
+        return loaded;
     }
 
     /**
-     * Loads a single YAML file and parses it into a ConfiguredPlexPurchasesObject
+     * Loads a single YAML file and parses it into a ConfiguredPlexPurchasesObject.
+     * Files whose stamp or content hash matches the compiled catalog cache are taken from the cache without parsing.
      *
      * @param yamlFile The YAML file to parse
+     * @param report   The report a failure is recorded in
+     * @param cache    The compiled catalog cache, or null to always parse
+     * @return The loaded file, holding the purchases that parsed and validated
      */
-    private void loadPurchaseFile(final File yamlFile) {
-        Logger.debug("Loading purchase file: " + yamlFile.getName());
+    private static LoadedPurchaseFile loadPurchaseFile(final Path yamlFile, final PurchaseLoadReport report, final CompiledCatalogCache cache) {
+        // Stamp before reading so an edit made mid-parse is picked up by the next reload
+        final File file = yamlFile.toFile();
+        final long lastModified = file.lastModified();
+        final long size = file.length();
 
-        final Optional<ConfiguredPlexPurchasesObject> purchaseOptional = YamlParser.parseFile(yamlFile, ConfiguredPlexPurchasesObject.class);
+        if (cache != null) {
+            final LoadedPurchaseFile cached = cache.getIfUnchanged(yamlFile, lastModified, size);
+            if (cached != null) {
+                return ConfiguredPlexPurchasesObjectHolder.fromCache(yamlFile, cached, report);
+            }
+        }
 
-        if (purchaseOptional.isPresent()) {
-            final ConfiguredPlexPurchasesObject purchase = purchaseOptional.get();
+        Logger.debug(() -> "Loading purchase file: " + yamlFile.getFileName());
 
-            // Validate the purchase object
-            if (ConfiguredPlexPurchasesObjectHolder.isValidPurchase(purchase)) {
-                this.purchases.add(purchase);
-                Logger.debug("Successfully loaded purchase configuration: " + purchase.getProductName() + " (ID: " + purchase.getProductId() + ")");
-            } else {
-                Logger.warning("Invalid purchase configuration in file: " + yamlFile.getName());
+        final byte[] content;
+        try {
+            content = Files.readAllBytes(yamlFile);
+        } catch (final IOException e) {
+            final String failure = "failed to read: " + e.getMessage();
+            report.fileFailed(yamlFile, failure);
+            return new LoadedPurchaseFile(List.of(), lastModified, size, null, failure);
+        }
+
+        final byte[] hash = CompiledCatalogCache.hash(content);
+        if (cache != null) {
+            final LoadedPurchaseFile cached = cache.getIfSameContent(yamlFile, hash, lastModified, size);
+            if (cached != null) {
+                return ConfiguredPlexPurchasesObjectHolder.fromCache(yamlFile, cached, report);
             }
-        } else {
-            Logger.warning("Failed to parse purchase file: " + yamlFile.getName());
         }
+
+        final long parseStart = System.nanoTime();
+        PluginMetrics.FILES_PARSED.increment();
+        final List<ConfiguredPlexPurchasesObject> parsed;
+        try {
+            parsed = YamlParser.readAll(content, ConfiguredPlexPurchasesObject.class);
+        } catch (final IOException e) {
+            PluginMetrics.FILE_PARSE_TIME.recordSince(parseStart);
+            final String failure = "failed to parse: " + e.getMessage();
+            report.fileFailed(yamlFile, failure);
+            return new LoadedPurchaseFile(List.of(), lastModified, size, hash, failure);
+        }
+
+        if (parsed.isEmpty()) {
+            PluginMetrics.FILE_PARSE_TIME.recordSince(parseStart);
+            report.fileFailed(yamlFile, "file is empty");
+            return new LoadedPurchaseFile(List.of(), lastModified, size, hash, "file is empty");
+        }
+
+        // Validate each purchase object and compile its actions, a broken one doesn't take the rest of the file down
+        final List<ConfiguredPlexPurchasesObject> purchases = new ArrayList<>(parsed.size());
+        final List<ConfiguredPlexPurchasesObject> rejected = new ArrayList<>(0);
+        final List<String> problems = new ArrayList<>(0);
+        for (int i = 0; i < parsed.size(); i++) {
+            final ConfiguredPlexPurchasesObject purchase = parsed.get(i);
+            final String problem = ConfiguredPlexPurchasesObjectHolder.validatePurchase(purchase);
+            if (problem != null) {
+                problems.add(parsed.size() == 1 ? problem : "purchase #" + (i + 1) + ": " + problem);
+                rejected.add(purchase);
+                continue;
+            }
+
+            if (purchase.getActions() == null && !PurchaseTemplates.isPartial(purchase)) {
+                Logger.warning("Purchase " + purchase.getProductId() + " missing field: actions, you'll have to listen for this in your plugin!");
+            }
+
+            Logger.debug(() -> "Successfully loaded purchase configuration: " + purchase.getProductName() + " (ID: " + purchase.getProductId() + ")");
+            purchases.add(purchase);
+        }
+        PluginMetrics.FILE_PARSE_TIME.recordSince(parseStart);
+
+        final String failure = problems.isEmpty() ? null : String.join("; ", problems);
+        if (failure != null) {
+            report.fileFailed(yamlFile, failure);
+        }
+        return new LoadedPurchaseFile(List.copyOf(purchases), lastModified, size, hash, failure, rejected.isEmpty() ? List.of() : rejected);
+    }
+
+    /**
+     * Accepts a result from the compiled catalog cache, re-reporting the failure if the cached file was broken
+     *
+     * @param yamlFile The YAML file
+     * @param cached   The cached result
+     * @param report   The report for this load
+     * @return The cached result
+     */
+    private static LoadedPurchaseFile fromCache(final Path yamlFile, final LoadedPurchaseFile cached, final PurchaseLoadReport report) {
+        report.fileCached();
+        PluginMetrics.FILES_CACHED.increment();
+        if (cached.failure() != null) {
+            report.fileFailed(yamlFile, cached.failure());
+        }
+
+        // Compiled actions aren't cached, they are cheap to rebuild from the cached purchases
+        final List<ConfiguredPlexPurchasesObject> compiled = new ArrayList<>(cached.purchases().size());
+        String failure = cached.failure();
+        for (final ConfiguredPlexPurchasesObject purchase : cached.purchases()) {
+            final String problem = PurchaseTemplates.isPartial(purchase) ? null : ConfiguredPlexPurchasesObjectHolder.compileActions(purchase);
+            if (problem == null) {
+                compiled.add(purchase);
+                continue;
+            }
+
+            final String described = ConfiguredPlexPurchasesObjectHolder.describe(cached, purchase, problem);
+            report.fileFailed(yamlFile, described);
+            failure = failure == null ? described : failure + "; " + described;
+        }
+        return compiled.size() == cached.purchases().size()
+                ? cached
+                : new LoadedPurchaseFile(List.copyOf(compiled), cached.lastModified(), cached.size(), cached.hash(), failure);
+    }
+
+    /**
+     * Describes a problem with one purchase of a file, naming the purchase if the file holds several
+     *
+     * @param file     The file the purchase was loaded from
+     * @param purchase The purchase
+     * @param problem  The problem
+     * @return The description
+     */
+    private static String describe(final LoadedPurchaseFile file, final ConfiguredPlexPurchasesObject purchase, final String problem) {
+        return file.purchases().size() == 1 ? problem : purchase.getProductId() + ": " + problem;
     }
 
     /**
      * Validates a ConfiguredPlexPurchasesObject to ensure it has required fields
      *
      * @param purchase The purchase object to validate
-     * @return true if the purchase is valid, false otherwise
+     * @return null if the purchase is valid, otherwise a description of the first problem found
      */
-    private static boolean isValidPurchase(final ConfiguredPlexPurchasesObject purchase) {
+    private static String validatePurchase(final ConfiguredPlexPurchasesObject purchase) {
+        if (purchase == null) {
+            return "file is empty";
+        }
+
         if (purchase.getProductId() == null || purchase.getProductId().trim().isEmpty()) {
-            Logger.warning("Purchase missing required field: productId");
-            return false;
+            return "missing required field: productId";
+        }
+
+        // The rest is checked once the purchase's template is resolved
+        if (PurchaseTemplates.isPartial(purchase)) {
+            return null;
         }
 
         if (purchase.getProductName() == null || purchase.getProductName().trim().isEmpty()) {
-            Logger.warning("Purchase missing required field: productName");
-            return false;
+            return "missing required field: productName";
         }
 
-        if (purchase.getPrice() <= 0) {
-            Logger.warning("Purchase has invalid price: " + purchase.getPrice());
-            return false;
+        // A file that leaves the price out would otherwise sell for free, 0 has to be written out
+        if (purchase.getPrice() == 0 && !purchase.isDeclared(ConfiguredPlexPurchasesObject.DECLARED_PRICE)) {
+            return "missing required field: price";
         }
 
-        if (purchase.getActions() == null) {
-            Logger.warning("Purchase missing field: actions, you'll have to listen for this in your plugin!");
+        if (purchase.getPrice() < 0) {
+            return "invalid price: " + purchase.getPrice();
+        }
+
+        return ConfiguredPlexPurchasesObjectHolder.compileActions(purchase);
+    }
+
+    /**
+     * Compiles the actions of a purchase into templates, so placeholder mistakes are caught at load time
+     *
+     * @param purchase The purchase to compile
+     * @return null if every action compiled, otherwise a description of the first broken action
+     */
+    private static String compileActions(final ConfiguredPlexPurchasesObject purchase) {
+        try {
+            purchase.setCompiledActions(CompiledPurchaseActions.compile(purchase.getActions()));
+            return null;
+        } catch (final IllegalArgumentException e) {
+            return e.getMessage();
         }
+    }
+
+    /**
+     * Creates the bounded pool purchase files are parsed on.
+     * Size defaults to the number of cores and can be overridden with -Dplexpurchases.loader.threads.
+     *
+     * @return A new loader pool, shut down by the caller once the load completes
+     */
+    private static ForkJoinPool createLoaderPool() {
+        final int threads = Math.max(1, Integer.getInteger("plexpurchases.loader.threads", Runtime.getRuntime().availableProcessors()));
+        final ClassLoader pluginClassLoader = ConfiguredPlexPurchasesObjectHolder.class.getClassLoader();
 
-        return true;
+        return new ForkJoinPool(threads, pool -> {
+            final ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("PlexPurchases-Loader-" + thread.getPoolIndex());
+            // Worker threads don't inherit the plugin class loader, which Jackson needs to see our config classes
+            thread.setContextClassLoader(pluginClassLoader);
+            return thread;
+        }, null, false);
+    }
+
+    /**
+     * Gets the current catalog snapshot.
+     * Callers doing several lookups should grab this once so they all see the same load.
+     *
+     * @return The current catalog snapshot
+     */
+    public PurchaseCatalog getCatalog() {
+        return this.catalog;
     }
 
     /**
      * Gets the list of all loaded ConfiguredPlexPurchasesObject instances
      *
-     * @return List of ConfiguredPlexPurchasesObject instances
+     * @return Unmodifiable list of ConfiguredPlexPurchasesObject instances
      */
     public List<ConfiguredPlexPurchasesObject> getConfiguredPurchases() {
-        return new ArrayList<>(this.purchases);
+        return this.catalog.getPurchases();
     }
 
     /**
@@ -158,9 +843,17 @@ public class ConfiguredPlexPurchasesObjectHolder {
      * @return Optional containing the purchase if found, empty otherwise
      */
     public Optional<ConfiguredPlexPurchasesObject> getConfigById(final String productId) {
-        return this.purchases.stream()
-                .filter(purchase -> productId.equals(purchase.getProductId()))
-                .findFirst();
+        return Optional.ofNullable(this.catalog.getByProductId(productId));
+    }
+
+    /**
+     * Gets a specific subscription by its subscription ID
+     *
+     * @param subscriptionId The subscription ID to search for
+     * @return Optional containing the subscription if found, empty otherwise
+     */
+    public Optional<ConfiguredPlexPurchasesObject> getConfigBySubscriptionId(final String subscriptionId) {
+        return Optional.ofNullable(this.catalog.getBySubscriptionId(subscriptionId));
     }
 
     /**
@@ -169,7 +862,7 @@ public class ConfiguredPlexPurchasesObjectHolder {
      * @return The number of purchases
      */
     public int getConfiguredPurchaseCount() {
-        return this.purchases.size();
+        return this.catalog.size();
     }
 
-} 
\ No newline at end of file
+}
@@ -0,0 +1,48 @@
+package net.plexprison.plexpurchases.config.holder;
+
+import net.plexprison.plexpurchases.config.ConfiguredPlexPurchasesObject;
+
+import java.io.File;
+import java.util.List;
+
+/**
+ * What was last loaded from a single purchase file, stamped with the size, modification time and content hash it had when read.
+ * A file holds one purchase, or several as a list or as separate YAML documents.
+ *
+ * @param purchases    The valid purchases in file order, empty if none of them has ever loaded successfully
+ * @param lastModified The file's modification time when it was read
+ * @param size         The file's size when it was read
+ * @param hash         SHA-256 of the file's content when it was read
+ * @param failure      Why the file or some of its purchases failed to load, or null if everything loaded
+ * @param rejected     The purchases that parsed but failed to validate, as parsed
+ * @param stale        Whether some purchases were kept from an earlier version of the file rather than parsed from this content
+ */
+record LoadedPurchaseFile(List<ConfiguredPlexPurchasesObject> purchases, long lastModified, long size, byte[] hash, String failure,
+                          List<ConfiguredPlexPurchasesObject> rejected, boolean stale) {
+
+    /**
+     * Creates a loaded file whose purchases all came from its current content
+     */
+    LoadedPurchaseFile(final List<ConfiguredPlexPurchasesObject> purchases, final long lastModified, final long size, final byte[] hash, final String failure) {
+        this(purchases, lastModified, size, hash, failure, List.of(), false);
+    }
+
+    /**
+     * Creates a loaded file whose purchases all came from its current content, with the ones it rejected
+     */
+    LoadedPurchaseFile(final List<ConfiguredPlexPurchasesObject> purchases, final long lastModified, final long size, final byte[] hash, final String failure,
+                       final List<ConfiguredPlexPurchasesObject> rejected) {
+        this(purchases, lastModified, size, hash, failure, rejected, false);
+    }
+
+    /**
+     * Checks whether a file still has the size and modification time this was loaded with
+     *
+     * @param file The file on disk
+     * @return true if neither has changed
+     */
+    boolean matches(final File file) {
+        return this.lastModified == file.lastModified() && this.size == file.length();
+    }
+
+}
@@ -0,0 +1,354 @@
+package net.plexprison.plexpurchases.config.holder;
+
+import net.plexprison.plexpurchases.config.ConfiguredPlexPurchasesObject;
+import net.plexprison.plexpurchases.config.base.SubscriptionFrequency;
+import net.plexprison.plexpurchases.metrics.PluginMetrics;
+import net.plexprison.plexpurchases.utils.Logger;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable snapshot of every loaded purchase configuration.
+ * All indexes are built once when the snapshot is created, so lookups are O(1) and readers never copy.
+ * Each purchase also gets a dense index, its position in load order, for per-player state kept in plain arrays, and
+ * the dependency graph between purchases is resolved against those indexes. The fields read on every menu open and
+ * permission probe are also copied into flat arrays by dense index, so those loops don't chase a purchase object each.
+ * A new snapshot is built and swapped in as a whole whenever the purchases are reloaded.
+ */
+public final class PurchaseCatalog {
+
+    /**
+     * Catalog with no purchases, used before the first load completes
+     */
+    public static final PurchaseCatalog EMPTY = new PurchaseCatalog(List.of());
+
+    private static final String TIMES_PLACEHOLDER = "<purchase_times>";
+    private static final byte REPEATABLE = 1;
+    private static final byte HIDDEN_WITHOUT_PERMISSION = 1 << 1;
+    private static final byte LIMITED_BY_TIMES = 1 << 2;
+    private static final byte SUBSCRIPTION = 1 << 3;
+
+    private final List<ConfiguredPlexPurchasesObject> purchases;
+    private final Map<ConfiguredPlexPurchasesObject, Integer> indexes;
+    private final Map<String, ConfiguredPlexPurchasesObject> byProductId;
+    private final Map<String, ConfiguredPlexPurchasesObject> bySubscriptionId;
+    private final Map<String, List<ConfiguredPlexPurchasesObject>> byDependency;
+    private final Map<SubscriptionFrequency, List<ConfiguredPlexPurchasesObject>> byFrequency;
+    private final PurchaseDependencyGraph dependencyGraph;
+    // Hot fields by dense index
+    private final long[] prices;
+    private final byte[] flags;
+    // The permission, split around <purchase_times> if it is limited by times, both null without a permission
+    private final String[] permissionPrefixes;
+    private final String[] permissionSuffixes;
+
+    private PurchaseCatalog(final Collection<ConfiguredPlexPurchasesObject> purchases) {
+        final Map<String, ConfiguredPlexPurchasesObject> productIndex = new HashMap<>(PurchaseCatalog.capacityFor(purchases.size()));
+        final Map<String, ConfiguredPlexPurchasesObject> subscriptionIndex = new HashMap<>();
+
+        // Duplicates are dropped before anything else is built, so they never get a dense index, a menu slot or saved state
+        final List<ConfiguredPlexPurchasesObject> unique = new ArrayList<>(purchases.size());
+        for (final ConfiguredPlexPurchasesObject purchase : purchases) {
+            if (PurchaseCatalog.isDuplicate(productIndex, purchase.getProductId(), "productId")
+                    || PurchaseCatalog.isDuplicate(subscriptionIndex, purchase.getSubscriptionId(), "subscriptionId")) {
+                continue;
+            }
+            PurchaseCatalog.index(productIndex, purchase.getProductId(), purchase);
+            PurchaseCatalog.index(subscriptionIndex, purchase.getSubscriptionId(), purchase);
+            unique.add(purchase);
+        }
+        this.purchases = List.copyOf(unique);
+
+        final Map<String, List<ConfiguredPlexPurchasesObject>> dependencyIndex = new HashMap<>();
+        final Map<SubscriptionFrequency, List<ConfiguredPlexPurchasesObject>> frequencyIndex = new EnumMap<>(SubscriptionFrequency.class);
+        final Map<ConfiguredPlexPurchasesObject, Integer> denseIndex = new IdentityHashMap<>(this.purchases.size());
+
+        for (final ConfiguredPlexPurchasesObject purchase : this.purchases) {
+            denseIndex.put(purchase, denseIndex.size());
+
+            if (purchase.getDependency() != null && !purchase.getDependency().isBlank()) {
+                dependencyIndex.computeIfAbsent(purchase.getDependency(), key -> new ArrayList<>()).add(purchase);
+            }
+
+            if (purchase.getSubscriptionBasis() != null) {
+                frequencyIndex.computeIfAbsent(purchase.getSubscriptionBasis(), key -> new ArrayList<>()).add(purchase);
+            }
+        }
+
+        this.indexes = Collections.unmodifiableMap(denseIndex);
+        this.byProductId = Collections.unmodifiableMap(productIndex);
+        this.bySubscriptionId = Collections.unmodifiableMap(subscriptionIndex);
+        this.byDependency = Collections.unmodifiableMap(PurchaseCatalog.freeze(dependencyIndex));
+        this.byFrequency = Collections.unmodifiableMap(PurchaseCatalog.freeze(frequencyIndex));
+        this.dependencyGraph = PurchaseDependencyGraph.build(this.purchases, this.indexes::get, this::find);
+
+        this.prices = new long[this.purchases.size()];
+        this.flags = new byte[this.purchases.size()];
+        this.permissionPrefixes = new String[this.purchases.size()];
+        this.permissionSuffixes = new String[this.purchases.size()];
+        for (int i = 0; i < this.purchases.size(); i++) {
+            final ConfiguredPlexPurchasesObject purchase = this.purchases.get(i);
+            this.prices[i] = purchase.getPrice();
+            this.flags[i] = PurchaseCatalog.flagsOf(purchase);
+
+            final String permission = purchase.getPermission();
+            if (permission == null || permission.isBlank()) {
+                continue;
+            }
+            final int placeholder = permission.indexOf(PurchaseCatalog.TIMES_PLACEHOLDER);
+            if (placeholder == -1) {
+                this.permissionPrefixes[i] = permission;
+            } else {
+                this.permissionPrefixes[i] = permission.substring(0, placeholder);
+                this.permissionSuffixes[i] = permission.substring(placeholder + PurchaseCatalog.TIMES_PLACEHOLDER.length());
+            }
+        }
+    }
+
+    /**
+     * Builds a new catalog snapshot from the given purchases
+     *
+     * @param purchases The validated purchases to include, in load order, with dependencies checked by {@link PurchaseDependencyGraph#findInvalid(List)}.
+     *                  A purchase reusing a product or subscription ID of an earlier one is left out.
+     * @return The new catalog snapshot
+     */
+    public static PurchaseCatalog of(final Collection<ConfiguredPlexPurchasesObject> purchases) {
+        return purchases.isEmpty() ? PurchaseCatalog.EMPTY : new PurchaseCatalog(purchases);
+    }
+
+    /**
+     * Gets every purchase in this snapshot
+     *
+     * @return Unmodifiable view of the purchases, in load order
+     */
+    public List<ConfiguredPlexPurchasesObject> getPurchases() {
+        return this.purchases;
+    }
+
+    /**
+     * Gets a purchase by its product ID
+     *
+     * @param productId The product ID to look up
+     * @return The purchase, or null if none has this product ID
+     */
+    public ConfiguredPlexPurchasesObject getByProductId(final String productId) {
+        PluginMetrics.LOOKUPS.increment();
+        return productId == null ? null : this.byProductId.get(productId);
+    }
+
+    /**
+     * Gets a purchase by its subscription ID
+     *
+     * @param subscriptionId The subscription ID to look up
+     * @return The purchase, or null if none has this subscription ID
+     */
+    public ConfiguredPlexPurchasesObject getBySubscriptionId(final String subscriptionId) {
+        PluginMetrics.LOOKUPS.increment();
+        return subscriptionId == null ? null : this.bySubscriptionId.get(subscriptionId);
+    }
+
+    /**
+     * Gets a purchase by its product ID, falling back to its subscription ID
+     *
+     * @param id The product or subscription ID to look up
+     * @return The purchase, or null if none has this ID
+     */
+    public ConfiguredPlexPurchasesObject getById(final String id) {
+        PluginMetrics.LOOKUPS.increment();
+        return this.find(id);
+    }
+
+    /**
+     * Gets the dense index of a purchase in this snapshot
+     *
+     * @param purchase The purchase, which must be the instance held by this snapshot
+     * @return The index, between 0 and {@link #size()}, or -1 if the purchase isn't part of this snapshot
+     */
+    public int indexOf(final ConfiguredPlexPurchasesObject purchase) {
+        final Integer index = this.indexes.get(purchase);
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * Gets a purchase by its dense index
+     *
+     * @param index The index, as returned by {@link #indexOf(ConfiguredPlexPurchasesObject)}
+     * @return The purchase
+     */
+    public ConfiguredPlexPurchasesObject get(final int index) {
+        return this.purchases.get(index);
+    }
+
+    /**
+     * Gets every purchase that depends on the given product
+     *
+     * @param dependency The product ID other purchases depend on
+     * @return Unmodifiable list of dependent purchases, empty if there are none
+     */
+    public List<ConfiguredPlexPurchasesObject> getByDependency(final String dependency) {
+        return dependency == null ? List.of() : this.byDependency.getOrDefault(dependency, List.of());
+    }
+
+    /**
+     * Gets every subscription billed at the given frequency
+     *
+     * @param frequency The subscription frequency
+     * @return Unmodifiable list of subscriptions, empty if there are none
+     */
+    public List<ConfiguredPlexPurchasesObject> getByFrequency(final SubscriptionFrequency frequency) {
+        return frequency == null ? List.of() : this.byFrequency.getOrDefault(frequency, List.of());
+    }
+
+    /**
+     * Gets the dependency graph between the purchases in this snapshot
+     *
+     * @return The dependency graph, indexed by dense index
+     */
+    public PurchaseDependencyGraph getDependencyGraph() {
+        return this.dependencyGraph;
+    }
+
+    /**
+     * Gets the price of a purchase
+     *
+     * @param index The dense index of the purchase
+     * @return The price
+     */
+    public long getPrice(final int index) {
+        return this.prices[index];
+    }
+
+    /**
+     * Checks whether a purchase can be bought more than once
+     *
+     * @param index The dense index of the purchase
+     * @return true if it is repeatable
+     */
+    public boolean isRepeatable(final int index) {
+        return (this.flags[index] & PurchaseCatalog.REPEATABLE) != 0;
+    }
+
+    /**
+     * Checks whether a purchase is only shown to players with its permission
+     *
+     * @param index The dense index of the purchase
+     * @return true if it is hidden without permission
+     */
+    public boolean isHiddenWithoutPermission(final int index) {
+        return (this.flags[index] & PurchaseCatalog.HIDDEN_WITHOUT_PERMISSION) != 0;
+    }
+
+    /**
+     * Checks whether a purchase's permission counts how often it was bought
+     *
+     * @param index The dense index of the purchase
+     * @return true if the permission contains the <purchase_times> variable
+     */
+    public boolean isLimitedByTimes(final int index) {
+        return (this.flags[index] & PurchaseCatalog.LIMITED_BY_TIMES) != 0;
+    }
+
+    /**
+     * Checks whether a purchase is a subscription
+     *
+     * @param index The dense index of the purchase
+     * @return true if it has a subscription basis
+     */
+    public boolean isSubscription(final int index) {
+        return (this.flags[index] & PurchaseCatalog.SUBSCRIPTION) != 0;
+    }
+
+    /**
+     * Gets the permission a purchase grants, or for purchases limited by times the part before the count
+     *
+     * @param index The dense index of the purchase
+     * @return The permission or its prefix, null if the purchase has no permission
+     */
+    public String getPermissionPrefix(final int index) {
+        return this.permissionPrefixes[index];
+    }
+
+    /**
+     * Gets the part of a purchase's permission after the count
+     *
+     * @param index The dense index of the purchase
+     * @return The suffix, possibly empty, or null if the purchase isn't limited by times
+     */
+    public String getPermissionSuffix(final int index) {
+        return this.permissionSuffixes[index];
+    }
+
+    /**
+     * Gets the number of purchases in this snapshot
+     *
+     * @return The number of purchases
+     */
+    public int size() {
+        return this.purchases.size();
+    }
+
+    /**
+     * Looks up a purchase without counting it in the lookup metrics, so a fallback counts once and building the
+     * snapshot isn't counted at all
+     *
+     * @param id The product or subscription ID to look up
+     * @return The purchase, or null if none has this ID
+     */
+    private ConfiguredPlexPurchasesObject find(final String id) {
+        if (id == null) {
+            return null;
+        }
+
+        final ConfiguredPlexPurchasesObject purchase = this.byProductId.get(id);
+        return purchase != null ? purchase : this.bySubscriptionId.get(id);
+    }
+
+    private static boolean isDuplicate(final Map<String, ConfiguredPlexPurchasesObject> index, final String key, final String field) {
+        // First one wins, matching the old linear search
+        if (key == null || key.isBlank() || !index.containsKey(key)) {
+            return false;
+        }
+        Logger.warning("Duplicate " + field + " '" + key + "', ignoring later definition");
+        return true;
+    }
+
+    private static void index(final Map<String, ConfiguredPlexPurchasesObject> index, final String key, final ConfiguredPlexPurchasesObject purchase) {
+        if (key != null && !key.isBlank()) {
+            index.put(key, purchase);
+        }
+    }
+
+    private static byte flagsOf(final ConfiguredPlexPurchasesObject purchase) {
+        byte flags = 0;
+        if (purchase.isRepeatablePurchase()) {
+            flags |= PurchaseCatalog.REPEATABLE;
+        }
+        if (purchase.isHideIfNoPermission()) {
+            flags |= PurchaseCatalog.HIDDEN_WITHOUT_PERMISSION;
+        }
+        if (purchase.isLimitedByTimes()) {
+            flags |= PurchaseCatalog.LIMITED_BY_TIMES;
+        }
+        if (purchase.getSubscriptionBasis() != null) {
+            flags |= PurchaseCatalog.SUBSCRIPTION;
+        }
+        return flags;
+    }
+
+    private static <K> Map<K, List<ConfiguredPlexPurchasesObject>> freeze(final Map<K, List<ConfiguredPlexPurchasesObject>> index) {
+        index.replaceAll((key, list) -> List.copyOf(list));
+        return index;
+    }
+
+    private static int capacityFor(final int size) {
+        return (int) (size / 0.75f) + 1;
+    }
+
+}
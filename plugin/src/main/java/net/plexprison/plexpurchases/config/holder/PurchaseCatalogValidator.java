@@ -0,0 +1,383 @@
+package net.plexprison.plexpurchases.config.holder;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.deser.DeserializationProblemHandler;
+import net.plexprison.plexpurchases.action.ActionTemplate;
+import net.plexprison.plexpurchases.config.ConfiguredPlexPurchasesObject;
+import net.plexprison.plexpurchases.config.PurchaseActions;
+import net.plexprison.plexpurchases.config.holder.CatalogValidationReport.Issue;
+import net.plexprison.plexpurchases.config.holder.CatalogValidationReport.Severity;
+import net.plexprison.plexpurchases.utils.YamlParser;
+import org.bukkit.Material;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.stream.Stream;
+
+/**
+ * Validates a whole purchases directory without a server, so a generated catalog can be checked before it is deployed.
+ * Files are parsed in parallel and every problem is reported, rather than only the first one of each purchase, with
+ * the file and line it is on. Runs the same template and dependency resolution as the plugin, so a catalog that
+ * passes loads without rejected purchases.
+ * Needs the Paper API on the classpath for {@link Material}, see the validatePurchases Gradle task.
+ * Exits with 0 if the catalog is valid, 1 if it has errors and 2 if it couldn't be checked.
+ */
+public final class PurchaseCatalogValidator {
+
+    private static final String USAGE = "Usage: PurchaseCatalogValidator <purchases directory> [--threads <count>] [--json <report file>]";
+
+    private PurchaseCatalogValidator() {
+    }
+
+    /**
+     * Validates the directory given on the command line, printing the text report and optionally writing the JSON report
+     *
+     * @param args The purchases directory, optionally followed by --threads and --json
+     */
+    public static void main(final String[] args) {
+        Path directory = null;
+        Path jsonFile = null;
+        int threads = Runtime.getRuntime().availableProcessors();
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--threads" -> threads = Math.max(1, Integer.parseInt(args[++i]));
+                    case "--json" -> jsonFile = Path.of(args[++i]);
+                    default -> directory = Path.of(args[i]);
+                }
+            }
+        } catch (final ArrayIndexOutOfBoundsException | NumberFormatException e) {
+            directory = null;
+        }
+
+        if (directory == null || !Files.isDirectory(directory)) {
+            System.err.println(directory == null ? PurchaseCatalogValidator.USAGE : "Not a directory: " + directory);
+            System.exit(2);
+            return;
+        }
+
+        final CatalogValidationReport report;
+        try {
+            report = PurchaseCatalogValidator.validate(directory, threads);
+            if (jsonFile != null) {
+                Files.writeString(jsonFile, report.toJson());
+            }
+        } catch (final IOException | UncheckedIOException e) {
+            System.err.println("Failed to validate " + directory + ": " + e.getMessage());
+            System.exit(2);
+            return;
+        }
+
+        System.out.print(report.toText());
+        System.exit(report.isValid() ? 0 : 1);
+    }
+
+    /**
+     * Validates every purchase file below a directory
+     *
+     * @param purchasesDir The purchases directory
+     * @param threads      The number of threads to parse files on
+     * @return The report
+     * @throws IOException if the directory can't be listed
+     */
+    public static CatalogValidationReport validate(final Path purchasesDir, final int threads) throws IOException {
+        final long start = System.nanoTime();
+        final List<Path> files;
+        try (final Stream<Path> paths = Files.walk(purchasesDir)) {
+            files = paths.filter(ConfiguredPlexPurchasesObjectHolder::isPurchaseFile).filter(Files::isRegularFile).toList();
+        }
+
+        final ForkJoinPool pool = new ForkJoinPool(threads);
+        final List<FileResult> results = new ArrayList<>(files.size());
+        try {
+            final List<ForkJoinTask<FileResult>> tasks = new ArrayList<>(files.size());
+            for (final Path file : files) {
+                tasks.add(ForkJoinTask.adapt(() -> PurchaseCatalogValidator.checkFile(purchasesDir, file)));
+            }
+            pool.submit(() -> ForkJoinTask.invokeAll(tasks)).join();
+
+            // Joined in file order, so duplicates resolve the same way as in the plugin
+            for (final ForkJoinTask<FileResult> task : tasks) {
+                results.add(task.join());
+            }
+        } finally {
+            pool.shutdown();
+        }
+
+        final List<Issue> issues = new ArrayList<>();
+        final List<Entry> entries = new ArrayList<>();
+        for (final FileResult result : results) {
+            issues.addAll(result.issues());
+            entries.addAll(result.entries());
+        }
+        PurchaseCatalogValidator.checkCatalog(entries, issues);
+
+        final int templates = (int) entries.stream().filter(entry -> entry.purchase.isTemplate()).count();
+        return new CatalogValidationReport(purchasesDir.toString(), threads, files.size(), entries.size() - templates, templates,
+                issues, System.nanoTime() - start);
+    }
+
+    /**
+     * Parses one file and checks each of its purchases on its own
+     *
+     * @param purchasesDir The purchases directory
+     * @param file         The file
+     * @return The purchases found and the problems with them
+     */
+    private static FileResult checkFile(final Path purchasesDir, final Path file) {
+        final String name = purchasesDir.relativize(file).toString();
+        final List<Issue> issues = new ArrayList<>();
+        final List<Entry> entries = new ArrayList<>();
+        final ProblemCollector problems = new ProblemCollector();
+
+        try {
+            final byte[] content = Files.readAllBytes(file);
+            YamlParser.readAll(content, ConfiguredPlexPurchasesObject.class, problems, (purchase, line) -> {
+                final Entry entry = new Entry(name, line, purchase);
+                // Values that didn't match their field were reported while this purchase was bound
+                for (final Problem problem : problems.drain()) {
+                    issues.add(new Issue(name, problem.line(), purchase.getProductId(), Severity.ERROR, problem.message()));
+                    entry.rejected = true;
+                }
+                entries.add(entry);
+            });
+        } catch (final JsonProcessingException e) {
+            final int line = e.getLocation() == null ? 0 : e.getLocation().getLineNr();
+            issues.add(new Issue(name, line, null, Severity.ERROR, "failed to parse: " + e.getOriginalMessage()));
+        } catch (final IOException e) {
+            issues.add(new Issue(name, 0, null, Severity.ERROR, "failed to read: " + e.getMessage()));
+        }
+
+        if (entries.isEmpty() && issues.isEmpty()) {
+            issues.add(new Issue(name, 0, null, Severity.ERROR, "file is empty"));
+        }
+
+        for (final Entry entry : entries) {
+            if (entry.purchase.getProductId() == null || entry.purchase.getProductId().isBlank()) {
+                entry.report(issues, Severity.ERROR, "missing required field: productId");
+            }
+            if (!PurchaseTemplates.isPartial(entry.purchase)) {
+                PurchaseCatalogValidator.checkComplete(entry, entry.purchase, issues);
+            }
+        }
+        return new FileResult(issues, entries);
+    }
+
+    /**
+     * Checks the fields of a purchase that can only be checked once its template is resolved
+     *
+     * @param entry    Where the purchase was declared
+     * @param purchase The purchase, resolved if it extends a template
+     * @param issues   Receives the problems found
+     */
+    private static void checkComplete(final Entry entry, final ConfiguredPlexPurchasesObject purchase, final List<Issue> issues) {
+        if (purchase.getProductName() == null || purchase.getProductName().isBlank()) {
+            entry.report(issues, Severity.ERROR, "missing required field: productName");
+        }
+        if (purchase.getPrice() == 0 && !purchase.isDeclared(ConfiguredPlexPurchasesObject.DECLARED_PRICE)) {
+            entry.report(issues, Severity.ERROR, "missing required field: price");
+        } else if (purchase.getPrice() < 0) {
+            entry.report(issues, Severity.ERROR, "invalid price: " + purchase.getPrice());
+        }
+
+        final PurchaseActions actions = purchase.getActions();
+        if (actions == null) {
+            entry.report(issues, Severity.WARNING, "missing field: actions, it only works if another plugin listens for it");
+        } else {
+            PurchaseCatalogValidator.checkActions(entry, "success", actions.getSuccess(), issues);
+            PurchaseCatalogValidator.checkActions(entry, "expire", actions.getExpire(), issues);
+            PurchaseCatalogValidator.checkActions(entry, "renew", actions.getRenew(), issues);
+        }
+
+        final Material material = purchase.getDisplayItem();
+        if (material == null || material.isAir()) {
+            entry.report(issues, Severity.WARNING, "no displayItem, shown as PAPER");
+        } else if (material.isLegacy() || !material.isItem()) {
+            entry.report(issues, Severity.ERROR, "displayItem " + material + " is not an item");
+        }
+        if (purchase.getAmount() > 64) {
+            entry.report(issues, Severity.WARNING, "amount " + purchase.getAmount() + " is shown as 64");
+        }
+    }
+
+    private static void checkActions(final Entry entry, final String type, final List<String> raw, final List<Issue> issues) {
+        if (raw == null) {
+            return;
+        }
+
+        for (int i = 0; i < raw.size(); i++) {
+            try {
+                ActionTemplate.compile(raw.get(i));
+            } catch (final IllegalArgumentException e) {
+                entry.report(issues, Severity.ERROR, type + " action " + (i + 1) + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Checks everything that depends on more than one purchase: duplicate IDs, templates and dependencies
+     *
+     * @param entries Every purchase found, in load order
+     * @param issues  Receives the problems found
+     */
+    private static void checkCatalog(final List<Entry> entries, final List<Issue> issues) {
+        final Map<String, Entry> byProductId = new HashMap<>();
+        final Map<String, Entry> bySubscriptionId = new HashMap<>();
+        for (final Entry entry : entries) {
+            PurchaseCatalogValidator.checkUnique(byProductId, "productId", entry.purchase.getProductId(), entry, issues);
+            PurchaseCatalogValidator.checkUnique(bySubscriptionId, "subscriptionId", entry.purchase.getSubscriptionId(), entry, issues);
+        }
+
+        final List<ConfiguredPlexPurchasesObject> declared = entries.stream().map(entry -> entry.purchase).toList();
+        final PurchaseTemplates.Resolution resolution = PurchaseTemplates.resolve(declared);
+
+        final List<ConfiguredPlexPurchasesObject> purchases = new ArrayList<>(entries.size());
+        final Map<ConfiguredPlexPurchasesObject, Entry> entryOf = new IdentityHashMap<>();
+        for (int i = 0; i < entries.size(); i++) {
+            final Entry entry = entries.get(i);
+            if (entry.rejected) {
+                continue;
+            }
+
+            final String problem = resolution.invalid().get(entry.purchase);
+            if (problem != null) {
+                entry.report(issues, Severity.ERROR, problem);
+                continue;
+            }
+
+            // The plugin wouldn't load a rejected template at all, so everything built on it is reported as well
+            final Entry rejectedParent = PurchaseCatalogValidator.findRejectedParent(entry, byProductId, entries.size());
+            if (rejectedParent != null) {
+                entry.report(issues, Severity.ERROR, "template '" + rejectedParent.purchase.getProductId() + "' was rejected");
+                continue;
+            }
+
+            final ConfiguredPlexPurchasesObject purchase = resolution.resolved().get(i);
+            if (purchase == null) {
+                continue;
+            }
+            if (purchase != entry.purchase) {
+                PurchaseCatalogValidator.checkComplete(entry, purchase, issues);
+            }
+            if (!entry.rejected) {
+                purchases.add(purchase);
+                entryOf.put(purchase, entry);
+            }
+        }
+
+        PurchaseDependencyGraph.findInvalid(purchases).forEach((purchase, problem) -> entryOf.get(purchase).report(issues, Severity.ERROR, problem));
+    }
+
+    /**
+     * Walks up the inheritance chain of a purchase whose chain is known to resolve
+     *
+     * @param entry       The purchase
+     * @param byProductId Every purchase by product ID
+     * @param limit       The longest chain possible
+     * @return The closest rejected parent, or null if every parent would load
+     */
+    private static Entry findRejectedParent(final Entry entry, final Map<String, Entry> byProductId, final int limit) {
+        Entry current = entry;
+        for (int depth = 0; depth < limit && PurchaseTemplates.isPartial(current.purchase) && current.purchase.getExtendsId() != null; depth++) {
+            current = byProductId.get(current.purchase.getExtendsId());
+            if (current == null || current.rejected) {
+                return current;
+            }
+        }
+        return null;
+    }
+
+    private static void checkUnique(final Map<String, Entry> byId, final String field, final String id, final Entry entry, final List<Issue> issues) {
+        if (id == null || id.isBlank()) {
+            return;
+        }
+
+        final Entry first = byId.putIfAbsent(id, entry);
+        if (first != null) {
+            entry.report(issues, Severity.ERROR, "duplicate " + field + " '" + id + "', already used at " + first.file + ":" + first.line);
+        }
+    }
+
+    /**
+     * A purchase as declared in its file
+     */
+    private static final class Entry {
+
+        private final String file;
+        private final int line;
+        private final ConfiguredPlexPurchasesObject purchase;
+        // true once an error would keep the plugin from loading it
+        private boolean rejected;
+
+        private Entry(final String file, final int line, final ConfiguredPlexPurchasesObject purchase) {
+            this.file = file;
+            this.line = line;
+            this.purchase = purchase;
+        }
+
+        private void report(final List<Issue> issues, final Severity severity, final String message) {
+            issues.add(new Issue(this.file, this.line, this.purchase.getProductId(), severity, message));
+            if (severity == Severity.ERROR) {
+                this.rejected = true;
+            }
+        }
+
+    }
+
+    /**
+     * The outcome of checking one file
+     *
+     * @param issues  The problems found in the file
+     * @param entries The purchases declared in the file
+     */
+    private record FileResult(List<Issue> issues, List<Entry> entries) {
+    }
+
+    /**
+     * A value that didn't match its field
+     *
+     * @param line    The line the value is on
+     * @param message What is wrong with it
+     */
+    private record Problem(int line, String message) {
+    }
+
+    /**
+     * Records values that don't match their field instead of failing the whole file, leaving the field unset
+     */
+    private static final class ProblemCollector extends DeserializationProblemHandler {
+
+        private final List<Problem> problems = new ArrayList<>();
+
+        @Override
+        public Object handleWeirdStringValue(final DeserializationContext context, final Class<?> targetType, final String value,
+                                             final String failureMessage) throws IOException {
+            final JsonParser parser = context.getParser();
+            final String message = targetType.isEnum()
+                    ? "unknown " + targetType.getSimpleName() + " '" + value + "' for " + parser.currentName()
+                    : "invalid value '" + value + "' for " + parser.currentName();
+            this.problems.add(new Problem(parser.currentLocation().getLineNr(), message));
+            return null;
+        }
+
+        private List<Problem> drain() {
+            final List<Problem> drained = List.copyOf(this.problems);
+            this.problems.clear();
+            return drained;
+        }
+
+    }
+
+}
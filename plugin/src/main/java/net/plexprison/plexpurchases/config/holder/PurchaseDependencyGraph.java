@@ -0,0 +1,239 @@
+package net.plexprison.plexpurchases.config.holder;
+
+import net.plexprison.plexpurchases.config.ConfiguredPlexPurchasesObject;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * The product dependency DAG of a catalog, stored as flat arrays indexed by each purchase's dense catalog index.
+ * Every purchase depends on at most one other, so the graph is a forest and checking a purchase walks its chain of
+ * dependencies without allocating, in time proportional to its depth.
+ * Purchases with a dangling dependency or a dependency cycle are rejected by {@link #findInvalid(List)} before the
+ * catalog is built, so every chain in a graph ends at a purchase without a dependency.
+ */
+public final class PurchaseDependencyGraph {
+
+    private static final int UNVISITED = 0;
+    private static final int VISITING = 1;
+    private static final int VALID = 2;
+    private static final int INVALID = 3;
+
+    // Dense index of each purchase's dependency, -1 if it has none
+    private final int[] parents;
+    // Purchase count of the dependency required before each purchase can be bought
+    private final int[] required;
+    private final boolean[] repeatable;
+    private final int maxDepth;
+
+    private PurchaseDependencyGraph(final int[] parents, final int[] required, final boolean[] repeatable, final int maxDepth) {
+        this.parents = parents;
+        this.required = required;
+        this.repeatable = repeatable;
+        this.maxDepth = maxDepth;
+    }
+
+    /**
+     * Builds the graph of a catalog's purchases, whose dependencies must already have been checked with {@link #findInvalid(List)}
+     *
+     * @param purchases The catalog's purchases, in dense index order
+     * @param indexOf   Looks up the dense index of a purchase
+     * @param byId      Looks up a purchase by product or subscription ID
+     * @return The dependency graph
+     */
+    static PurchaseDependencyGraph build(final List<ConfiguredPlexPurchasesObject> purchases, final Function<ConfiguredPlexPurchasesObject, Integer> indexOf,
+                                         final Function<String, ConfiguredPlexPurchasesObject> byId) {
+        final int[] parents = new int[purchases.size()];
+        final int[] required = new int[purchases.size()];
+        final boolean[] repeatable = new boolean[purchases.size()];
+        Arrays.fill(parents, -1);
+
+        for (int i = 0; i < parents.length; i++) {
+            final ConfiguredPlexPurchasesObject purchase = purchases.get(i);
+            repeatable[i] = purchase.isRepeatablePurchase();
+            if (!PurchaseDependencyGraph.hasDependency(purchase)) {
+                continue;
+            }
+
+            final ConfiguredPlexPurchasesObject dependency = byId.apply(purchase.getDependency());
+            if (dependency != null) {
+                parents[i] = indexOf.apply(dependency);
+                required[i] = Math.max(1, purchase.getDependencyAmount());
+            }
+        }
+
+        int maxDepth = 0;
+        for (int i = 0; i < parents.length; i++) {
+            int depth = 0;
+            for (int current = parents[i]; current != -1 && depth < parents.length; current = parents[current]) {
+                depth++;
+            }
+            maxDepth = Math.max(maxDepth, depth);
+        }
+        return new PurchaseDependencyGraph(parents, required, repeatable, maxDepth);
+    }
+
+    /**
+     * Finds every purchase whose dependency doesn't exist, is part of a cycle, or is itself invalid
+     *
+     * @param purchases The loaded purchases, in load order
+     * @return Each invalid purchase mapped to a description of the problem, empty if every dependency resolves
+     */
+    static Map<ConfiguredPlexPurchasesObject, String> findInvalid(final List<ConfiguredPlexPurchasesObject> purchases) {
+        // First one wins and product IDs take precedence, matching the catalog
+        final Map<String, Integer> byProductId = new HashMap<>();
+        final Map<String, Integer> bySubscriptionId = new HashMap<>();
+        for (int i = 0; i < purchases.size(); i++) {
+            PurchaseDependencyGraph.putId(byProductId, purchases.get(i).getProductId(), i);
+            PurchaseDependencyGraph.putId(bySubscriptionId, purchases.get(i).getSubscriptionId(), i);
+        }
+
+        final Map<ConfiguredPlexPurchasesObject, String> invalid = new IdentityHashMap<>();
+        final int[] state = new int[purchases.size()];
+        final int[] path = new int[purchases.size()];
+
+        for (int start = 0; start < purchases.size(); start++) {
+            int length = 0;
+            int current = start;
+            String problem = null;
+
+            // Follow the chain until it reaches a purchase whose outcome is known
+            while (true) {
+                if (state[current] == PurchaseDependencyGraph.VALID) {
+                    break;
+                }
+                if (state[current] == PurchaseDependencyGraph.INVALID) {
+                    problem = "dependency '" + purchases.get(current).getPurchaseId() + "' was rejected";
+                    break;
+                }
+                if (state[current] == PurchaseDependencyGraph.VISITING) {
+                    length = PurchaseDependencyGraph.rejectCycle(purchases, path, length, current, state, invalid);
+                    problem = "dependency '" + purchases.get(current).getPurchaseId() + "' is part of a dependency cycle";
+                    break;
+                }
+
+                state[current] = PurchaseDependencyGraph.VISITING;
+                path[length++] = current;
+
+                final ConfiguredPlexPurchasesObject purchase = purchases.get(current);
+                if (!PurchaseDependencyGraph.hasDependency(purchase)) {
+                    break;
+                }
+
+                final Integer next = byProductId.getOrDefault(purchase.getDependency(), bySubscriptionId.get(purchase.getDependency()));
+                if (next == null) {
+                    state[current] = PurchaseDependencyGraph.INVALID;
+                    invalid.put(purchase, "depends on unknown product '" + purchase.getDependency() + "'");
+                    length--;
+                    problem = "dependency '" + purchase.getPurchaseId() + "' was rejected";
+                    break;
+                }
+                current = next;
+            }
+
+            // Everything still on the path depends on the purchase the walk stopped at
+            for (int i = length - 1; i >= 0; i--) {
+                final int index = path[i];
+                if (problem == null) {
+                    state[index] = PurchaseDependencyGraph.VALID;
+                } else {
+                    state[index] = PurchaseDependencyGraph.INVALID;
+                    invalid.put(purchases.get(index), problem);
+                    problem = "dependency '" + purchases.get(index).getPurchaseId() + "' was rejected";
+                }
+            }
+        }
+        return invalid;
+    }
+
+    /**
+     * Checks whether a player can buy a purchase: it must be repeatable or not owned yet, and every purchase up its
+     * dependency chain must be owned and bought at least the required number of times
+     *
+     * @param index  The dense index of the purchase
+     * @param owned  The dense indexes of the purchases the player currently owns
+     * @param counts The player's purchase count of every purchase, by dense index
+     * @return true if the player may buy the purchase
+     */
+    public boolean canPurchase(final int index, final BitSet owned, final int[] counts) {
+        if (!this.repeatable[index] && owned.get(index)) {
+            return false;
+        }
+
+        int steps = 0;
+        for (int current = index; this.parents[current] != -1 && steps < this.parents.length; current = this.parents[current]) {
+            final int parent = this.parents[current];
+            if (!owned.get(parent) || counts[parent] < this.required[current]) {
+                return false;
+            }
+            steps++;
+        }
+        return true;
+    }
+
+    /**
+     * Gets the dense index of the purchase another purchase depends on
+     *
+     * @param index The dense index of the purchase
+     * @return The index of its dependency, or -1 if it has none
+     */
+    public int getDependency(final int index) {
+        return this.parents[index];
+    }
+
+    /**
+     * Gets the length of the longest dependency chain in the catalog
+     *
+     * @return The maximum depth, 0 if no purchase has a dependency
+     */
+    public int getMaxDepth() {
+        return this.maxDepth;
+    }
+
+    /**
+     * Marks every purchase of a detected cycle invalid
+     *
+     * @param purchases The loaded purchases
+     * @param path      The chain walked so far
+     * @param length    The length of the chain
+     * @param repeated  The purchase the chain came back to
+     * @param state     The visit state of every purchase
+     * @param invalid   Receives the purchases of the cycle
+     * @return The length of the chain leading into the cycle
+     */
+    private static int rejectCycle(final List<ConfiguredPlexPurchasesObject> purchases, final int[] path, final int length, final int repeated,
+                                   final int[] state, final Map<ConfiguredPlexPurchasesObject, String> invalid) {
+        int cycleStart = length - 1;
+        while (path[cycleStart] != repeated) {
+            cycleStart--;
+        }
+
+        final StringBuilder cycle = new StringBuilder("dependency cycle: ");
+        for (int i = cycleStart; i < length; i++) {
+            cycle.append(purchases.get(path[i]).getPurchaseId()).append(" -> ");
+        }
+        cycle.append(purchases.get(repeated).getPurchaseId());
+
+        for (int i = cycleStart; i < length; i++) {
+            state[path[i]] = PurchaseDependencyGraph.INVALID;
+            invalid.put(purchases.get(path[i]), cycle.toString());
+        }
+        return cycleStart;
+    }
+
+    private static boolean hasDependency(final ConfiguredPlexPurchasesObject purchase) {
+        return purchase.getDependency() != null && !purchase.getDependency().isBlank();
+    }
+
+    private static void putId(final Map<String, Integer> byId, final String id, final int index) {
+        if (id != null && !id.isBlank()) {
+            byId.putIfAbsent(id, index);
+        }
+    }
+
+}
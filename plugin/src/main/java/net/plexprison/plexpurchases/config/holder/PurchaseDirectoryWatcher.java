@@ -0,0 +1,194 @@
+package net.plexprison.plexpurchases.config.holder;
+
+import net.plexprison.plexpurchases.utils.Logger;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Watches the purchases directory tree and reports changed YAML files in debounced batches.
+ * Events are collected until the directory has been quiet for the debounce period, so a whole directory being unzipped
+ * turns into a single batch rather than one reload per file.
+ */
+class PurchaseDirectoryWatcher implements Runnable {
+
+    private final Path root;
+    private final long debounceMillis;
+    private final Consumer<Set<Path>> onChange;
+    private final Runnable onOverflow;
+    private final Map<WatchKey, Path> directories;
+    private final WatchService watchService;
+    private final Thread thread;
+
+    /**
+     * Constructor for the watcher, registers every directory under the root
+     *
+     * @param root           The purchases directory to watch
+     * @param debounceMillis How long the directory must be quiet before a batch is reported
+     * @param onChange       Receives each batch of created, modified or deleted YAML files
+     * @param onOverflow     Called when events were lost and the whole directory has to be rescanned
+     * @throws IOException if the directory cannot be watched
+     */
+    PurchaseDirectoryWatcher(final Path root, final long debounceMillis, final Consumer<Set<Path>> onChange, final Runnable onOverflow) throws IOException {
+        this.root = root;
+        this.debounceMillis = debounceMillis;
+        this.onChange = onChange;
+        this.onOverflow = onOverflow;
+        this.directories = new HashMap<>();
+        this.watchService = root.getFileSystem().newWatchService();
+        this.registerTree(root, null);
+
+        this.thread = new Thread(this, "PlexPurchases-Watcher");
+        this.thread.setDaemon(true);
+    }
+
+    /**
+     * Starts watching on a background thread
+     */
+    void start() {
+        this.thread.start();
+        Logger.info("Watching " + this.root + " for purchase configuration changes");
+    }
+
+    /**
+     * Stops watching and releases the watch service
+     */
+    void stop() {
+        try {
+            this.watchService.close();
+        } catch (final IOException e) {
+            Logger.error("Failed to close purchases directory watcher: " + e.getMessage());
+        }
+        this.thread.interrupt();
+    }
+
+    @Override
+    public void run() {
+        final Set<Path> pending = new LinkedHashSet<>();
+        boolean overflow = false;
+        long flushAt = 0;
+
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                final boolean idle = pending.isEmpty() && !overflow;
+                final WatchKey key = idle
+                        ? this.watchService.take()
+                        : this.watchService.poll(Math.max(0, flushAt - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+
+                // Quiet for the whole debounce period, hand the batch over
+                if (key == null) {
+                    this.flush(pending, overflow);
+                    pending.clear();
+                    overflow = false;
+                    continue;
+                }
+
+                overflow |= this.collect(key, pending);
+                flushAt = System.currentTimeMillis() + this.debounceMillis;
+            }
+        } catch (final InterruptedException | ClosedWatchServiceException e) {
+            // Watcher is shutting down
+        }
+    }
+
+    /**
+     * Collects the events from a signalled key into the pending batch
+     *
+     * @param key     The signalled watch key
+     * @param pending The batch of changed files
+     * @return true if events were lost and the directory needs a full rescan
+     */
+    private boolean collect(final WatchKey key, final Set<Path> pending) {
+        final Path directory = this.directories.get(key);
+        boolean overflow = directory == null;
+
+        for (final WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW || directory == null) {
+                overflow = true;
+                continue;
+            }
+
+            final Path child = directory.resolve((Path) event.context());
+
+            if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(child)) {
+                // Files may have landed in the new directory before we started watching it
+                this.registerTree(child, pending);
+            } else if (ConfiguredPlexPurchasesObjectHolder.isPurchaseFile(child)) {
+                pending.add(child);
+            } else if (event.kind() == StandardWatchEventKinds.ENTRY_DELETE) {
+                // A removed directory doesn't tell us which files it held
+                overflow = true;
+            }
+        }
+
+        if (!key.reset()) {
+            this.directories.remove(key);
+        }
+        return overflow;
+    }
+
+    /**
+     * Hands a finished batch to the callbacks, never letting a failure kill the watcher thread
+     *
+     * @param pending  The changed files
+     * @param overflow Whether a full rescan is needed instead
+     */
+    private void flush(final Set<Path> pending, final boolean overflow) {
+        try {
+            if (overflow) {
+                this.onOverflow.run();
+            } else if (!pending.isEmpty()) {
+                this.onChange.accept(Set.copyOf(pending));
+            }
+        } catch (final RuntimeException e) {
+            Logger.error("Failed to reload changed purchase files: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Registers a directory and everything below it
+     *
+     * @param start   The directory to register
+     * @param pending Batch existing YAML files are added to, or null to skip them
+     */
+    private void registerTree(final Path start, final Set<Path> pending) {
+        try (final Stream<Path> paths = Files.walk(start)) {
+            paths.forEach(path -> {
+                if (Files.isDirectory(path)) {
+                    this.register(path);
+                } else if (pending != null && ConfiguredPlexPurchasesObjectHolder.isPurchaseFile(path)) {
+                    pending.add(path);
+                }
+            });
+        } catch (final IOException | UncheckedIOException e) {
+            Logger.error("Failed to watch purchases directory " + start + ": " + e.getMessage());
+        }
+    }
+
+    private void register(final Path directory) {
+        try {
+            final WatchKey key = directory.register(this.watchService,
+                    StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY,
+                    StandardWatchEventKinds.ENTRY_DELETE);
+            this.directories.put(key, directory);
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+}
@@ -0,0 +1,127 @@
+package net.plexprison.plexpurchases.config.holder;
+
+import lombok.Getter;
+import net.plexprison.plexpurchases.utils.Logger;
+
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Collects the outcome of a single purchase load: how many files were found and loaded, how long it took
+ * and why individual files were rejected. Safe to write to from several loader threads at once.
+ */
+@Getter
+public class PurchaseLoadReport {
+
+    private final long startedAt = System.nanoTime();
+    // Sorted by path so the report reads the same regardless of which thread finished first
+    private final Map<String, String> failures = new ConcurrentSkipListMap<>();
+    private final int threads;
+    private final boolean incremental;
+    private final LongAdder filesCached = new LongAdder();
+    private volatile int filesFound;
+    private volatile int purchasesLoaded;
+    private volatile long elapsedNanos;
+
+    /**
+     * Constructor for the report
+     *
+     * @param threads     The number of threads parsing files for this load
+     * @param incremental Whether only changed files are being reparsed
+     */
+    public PurchaseLoadReport(final int threads, final boolean incremental) {
+        this.threads = threads;
+        this.incremental = incremental;
+    }
+
+    /**
+     * Records the number of YAML files discovered in the purchases directory, or changed since the last load
+     *
+     * @param filesFound The number of files found
+     */
+    void setFilesFound(final int filesFound) {
+        this.filesFound = filesFound;
+    }
+
+    /**
+     * Records that a file was taken from the compiled catalog cache instead of being parsed
+     */
+    void fileCached() {
+        this.filesCached.increment();
+    }
+
+    /**
+     * Gets the number of files taken from the compiled catalog cache
+     *
+     * @return The number of cached files
+     */
+    public long getFilesCached() {
+        return this.filesCached.sum();
+    }
+
+    /**
+     * Records that a file could not be loaded
+     *
+     * @param file   The file that failed
+     * @param reason Why the file was rejected
+     */
+    void fileFailed(final Path file, final String reason) {
+        // A file can hold several purchases, each of which may fail on its own
+        this.failures.merge(file.toString(), reason, (first, second) -> first + "; " + second);
+    }
+
+    /**
+     * Marks the load as finished and stops the timer
+     *
+     * @param purchasesLoaded The number of purchases that made it into the catalog
+     */
+    void finish(final int purchasesLoaded) {
+        this.purchasesLoaded = purchasesLoaded;
+        this.elapsedNanos = System.nanoTime() - this.startedAt;
+    }
+
+    /**
+     * Gets the failures recorded for this load
+     *
+     * @return Unmodifiable map of file path to failure reason
+     */
+    public Map<String, String> getFailures() {
+        return Collections.unmodifiableMap(this.failures);
+    }
+
+    /**
+     * Gets the time the load took in milliseconds
+     *
+     * @return Elapsed time in milliseconds
+     */
+    public long getElapsedMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(this.elapsedNanos);
+    }
+
+    /**
+     * Logs the summary line and, if any files failed, a single warning listing every failure
+     */
+    public void log() {
+        if (this.incremental) {
+            Logger.success("Reloaded " + this.filesFound + " changed purchase files in " + this.getElapsedMillis() + "ms, "
+                    + this.purchasesLoaded + " purchase configurations now loaded");
+        } else {
+            Logger.success("Loaded " + this.purchasesLoaded + " purchase configurations from " + this.filesFound + " files in "
+                    + this.getElapsedMillis() + "ms using " + this.threads + (this.threads == 1 ? " thread" : " threads")
+                    + " (" + this.getFilesCached() + " unchanged files taken from cache)");
+        }
+
+        if (this.failures.isEmpty()) {
+            return;
+        }
+
+        final StringBuilder builder = new StringBuilder("Failed to load ").append(this.failures.size()).append(" purchase files:");
+        this.failures.forEach((path, reason) -> builder.append("\n - ").append(path).append(": ").append(reason));
+        Logger.warning(builder.toString());
+    }
+
+}
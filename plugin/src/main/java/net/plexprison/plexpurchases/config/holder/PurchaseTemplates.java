@@ -0,0 +1,183 @@
+package net.plexprison.plexpurchases.config.holder;
+
+import net.plexprison.plexpurchases.config.ConfiguredPlexPurchasesObject;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Resolves product inheritance: a purchase that declares {@code extends: <id>} takes every field it leaves unset from
+ * the template or product with that product ID, which may itself extend another.
+ * Each purchase is resolved at most once per load, so a template shared by many tiers is merged once and every child
+ * is a shallow field overlay on the memoized result, without converting anything to a tree.
+ * A field is inherited when the child's file leaves it out: for objects that is while it is null, for numbers and
+ * flags only when the key is missing, so a child can set a price of 0 or switch off a flag its template turns on.
+ * The product and subscription IDs are never inherited.
+ */
+final class PurchaseTemplates {
+
+    private static final int UNRESOLVED = 0;
+    private static final int RESOLVING = 1;
+    private static final int RESOLVED = 2;
+
+    private PurchaseTemplates() {
+    }
+
+    /**
+     * Resolves the inheritance of every purchase of a load
+     *
+     * @param declared The purchases as loaded from their files, templates included, in load order
+     * @return The resolved purchases and the ones that were rejected
+     */
+    static Resolution resolve(final List<ConfiguredPlexPurchasesObject> declared) {
+        // First one wins, matching the catalog
+        final Map<String, Integer> byProductId = new HashMap<>();
+        for (int i = 0; i < declared.size(); i++) {
+            final String productId = declared.get(i).getProductId();
+            if (productId != null && !productId.isBlank()) {
+                byProductId.putIfAbsent(productId, i);
+            }
+        }
+
+        final Resolver resolver = new Resolver(declared, byProductId);
+        final List<ConfiguredPlexPurchasesObject> resolved = new ArrayList<>(declared.size());
+        for (int i = 0; i < declared.size(); i++) {
+            final ConfiguredPlexPurchasesObject purchase = resolver.resolve(i);
+            resolved.add(purchase == null || declared.get(i).isTemplate() ? null : purchase);
+        }
+        return new Resolution(resolved, resolver.invalid);
+    }
+
+    /**
+     * Checks whether a purchase is only complete once its inheritance is resolved
+     *
+     * @param purchase The purchase as loaded from its file
+     * @return true if it is a template or extends one
+     */
+    static boolean isPartial(final ConfiguredPlexPurchasesObject purchase) {
+        return purchase.isTemplate() || PurchaseTemplates.hasParent(purchase);
+    }
+
+    /**
+     * Lays a child's set fields over its resolved parent
+     *
+     * @param parent The resolved parent
+     * @param child  The child as loaded from its file
+     * @return A new purchase, neither argument is modified
+     */
+    static ConfiguredPlexPurchasesObject overlay(final ConfiguredPlexPurchasesObject parent, final ConfiguredPlexPurchasesObject child) {
+        final ConfiguredPlexPurchasesObject merged = new ConfiguredPlexPurchasesObject();
+        merged.setProductId(child.getProductId());
+        merged.setSubscriptionId(child.getSubscriptionId());
+        merged.setTemplate(child.isTemplate());
+
+        merged.setProductName(PurchaseTemplates.pick(child.getProductName(), parent.getProductName()));
+        merged.setProductDescription(PurchaseTemplates.pick(child.getProductDescription(), parent.getProductDescription()));
+        merged.setPrice(child.isDeclared(ConfiguredPlexPurchasesObject.DECLARED_PRICE) ? child.getPrice() : parent.getPrice());
+        merged.setCallbackDelivery(PurchaseTemplates.pick(child.getCallbackDelivery(), parent.getCallbackDelivery()));
+        merged.setRepeatablePurchase(child.isDeclared(ConfiguredPlexPurchasesObject.DECLARED_REPEATABLE_PURCHASE)
+                ? child.isRepeatablePurchase() : parent.isRepeatablePurchase());
+        merged.setSubscriptionName(PurchaseTemplates.pick(child.getSubscriptionName(), parent.getSubscriptionName()));
+        merged.setSubscriptionDescription(PurchaseTemplates.pick(child.getSubscriptionDescription(), parent.getSubscriptionDescription()));
+        merged.setSubscriptionBasis(PurchaseTemplates.pick(child.getSubscriptionBasis(), parent.getSubscriptionBasis()));
+
+        merged.setActions(PurchaseTemplates.pick(child.getActions(), parent.getActions()));
+        merged.setDependency(PurchaseTemplates.pick(child.getDependency(), parent.getDependency()));
+        merged.setDependencyAmount(child.isDeclared(ConfiguredPlexPurchasesObject.DECLARED_DEPENDENCY_AMOUNT)
+                ? child.getDependencyAmount() : parent.getDependencyAmount());
+        merged.setHideIfNoPermission(child.isDeclared(ConfiguredPlexPurchasesObject.DECLARED_HIDE_IF_NO_PERMISSION)
+                ? child.isHideIfNoPermission() : parent.isHideIfNoPermission());
+        merged.setDisplayItem(PurchaseTemplates.pick(child.getDisplayItem(), parent.getDisplayItem()));
+        merged.setAmount(child.isDeclared(ConfiguredPlexPurchasesObject.DECLARED_AMOUNT) ? child.getAmount() : parent.getAmount());
+        merged.setPermission(PurchaseTemplates.pick(child.getPermission(), parent.getPermission()));
+        // The parent is already resolved, so this covers every field declared anywhere up the chain
+        merged.setDeclaredFields(child.getDeclaredFields() | parent.getDeclaredFields());
+        return merged;
+    }
+
+    private static <T> T pick(final T child, final T parent) {
+        return child != null ? child : parent;
+    }
+
+    private static boolean hasParent(final ConfiguredPlexPurchasesObject purchase) {
+        return purchase.getExtendsId() != null && !purchase.getExtendsId().isBlank();
+    }
+
+    /**
+     * The outcome of resolving a load
+     *
+     * @param resolved The resolved purchase at the index of each declared one, null for templates and rejected purchases
+     * @param invalid  Each rejected purchase, as declared, mapped to a description of the problem
+     */
+    record Resolution(List<ConfiguredPlexPurchasesObject> resolved, Map<ConfiguredPlexPurchasesObject, String> invalid) {
+    }
+
+    /**
+     * Depth-first resolution of one load, memoizing every purchase it resolves
+     */
+    private static final class Resolver {
+
+        private final List<ConfiguredPlexPurchasesObject> declared;
+        private final Map<String, Integer> byProductId;
+        private final ConfiguredPlexPurchasesObject[] merged;
+        private final int[] state;
+        private final Map<ConfiguredPlexPurchasesObject, String> invalid;
+
+        private Resolver(final List<ConfiguredPlexPurchasesObject> declared, final Map<String, Integer> byProductId) {
+            this.declared = declared;
+            this.byProductId = byProductId;
+            this.merged = new ConfiguredPlexPurchasesObject[declared.size()];
+            this.state = new int[declared.size()];
+            this.invalid = new IdentityHashMap<>();
+            Arrays.fill(this.state, PurchaseTemplates.UNRESOLVED);
+        }
+
+        /**
+         * Resolves a purchase and, first, every parent up its chain
+         *
+         * @param index The index of the purchase
+         * @return The resolved purchase, or null if it was rejected
+         */
+        private ConfiguredPlexPurchasesObject resolve(final int index) {
+            if (this.state[index] == PurchaseTemplates.RESOLVED) {
+                return this.merged[index];
+            }
+
+            final ConfiguredPlexPurchasesObject purchase = this.declared.get(index);
+            if (!PurchaseTemplates.hasParent(purchase)) {
+                this.state[index] = PurchaseTemplates.RESOLVED;
+                this.merged[index] = purchase;
+                return purchase;
+            }
+
+            final Integer parentIndex = this.byProductId.get(purchase.getExtendsId());
+            String problem = null;
+            ConfiguredPlexPurchasesObject parent = null;
+            if (parentIndex == null) {
+                problem = "extends unknown template '" + purchase.getExtendsId() + "'";
+            } else if (this.state[parentIndex] == PurchaseTemplates.RESOLVING || parentIndex == index) {
+                problem = "extends '" + purchase.getExtendsId() + "', which is part of an inheritance cycle";
+            } else {
+                this.state[index] = PurchaseTemplates.RESOLVING;
+                parent = this.resolve(parentIndex);
+                if (parent == null) {
+                    problem = "template '" + purchase.getExtendsId() + "' was rejected";
+                }
+            }
+
+            this.state[index] = PurchaseTemplates.RESOLVED;
+            if (problem != null) {
+                this.invalid.put(purchase, problem);
+                return null;
+            }
+            this.merged[index] = PurchaseTemplates.overlay(parent, purchase);
+            return this.merged[index];
+        }
+
+    }
+
+}
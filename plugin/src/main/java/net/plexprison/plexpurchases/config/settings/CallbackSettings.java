@@ -0,0 +1,16 @@
+package net.plexprison.plexpurchases.config.settings;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Settings for how store callbacks are grouped before they are handled
+ */
+@Data
+@NoArgsConstructor
+public class CallbackSettings {
+
+    // ticks a player's first callback waits for more of the same player, such as the rest of a bundle, 0 handles each right away
+    private long coalesceTicks = 1;
+
+}
@@ -0,0 +1,20 @@
+package net.plexprison.plexpurchases.config.settings;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Settings for the action dispatcher, which runs purchase actions on the server thread
+ */
+@Data
+@NoArgsConstructor
+public class DispatchSettings {
+
+    // main thread time actions may use each tick
+    private double tickBudgetMillis = 2.0;
+    // time allowed to flush the queue on shutdown before the rest is saved for next start
+    private long shutdownBudgetMillis = 5000;
+    // queue depth at which a back-pressure warning is logged
+    private int warnQueueDepth = 1000;
+
+}
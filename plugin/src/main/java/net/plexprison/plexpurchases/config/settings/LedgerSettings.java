@@ -0,0 +1,18 @@
+package net.plexprison.plexpurchases.config.settings;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Settings for the ledger of handled purchase callbacks
+ */
+@Data
+@NoArgsConstructor
+public class LedgerSettings {
+
+    // size a ledger segment grows to before it is sealed and indexed, only the last segment is replayed on startup
+    private long segmentSizeMegabytes = 16;
+    // transactions the duplicate filter is sized for up front, it is rebuilt larger when the ledger outgrows it
+    private long expectedTransactions = 1_000_000;
+
+}
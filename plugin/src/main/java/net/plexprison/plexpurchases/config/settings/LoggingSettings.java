@@ -0,0 +1,17 @@
+package net.plexprison.plexpurchases.config.settings;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import net.plexprison.plexpurchases.utils.LogLevel;
+
+/**
+ * Settings for the plugin logger
+ */
+@Data
+@NoArgsConstructor
+public class LoggingSettings {
+
+    // messages below this level are dropped without being built
+    private LogLevel level = LogLevel.INFO;
+
+}
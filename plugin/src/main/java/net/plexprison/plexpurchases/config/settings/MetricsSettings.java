@@ -0,0 +1,20 @@
+package net.plexprison.plexpurchases.config.settings;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Settings for the metrics file written in the Prometheus text format
+ */
+@Data
+@NoArgsConstructor
+public class MetricsSettings {
+
+    // whether the metrics file is written at all, /store metrics works either way
+    private boolean enabled = true;
+    // path of the file, relative to the plugin data folder unless absolute
+    private String file = "metrics.prom";
+    // seconds between writes of the file
+    private long writeIntervalSeconds = 15;
+
+}
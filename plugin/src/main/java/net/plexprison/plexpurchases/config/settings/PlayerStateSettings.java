@@ -0,0 +1,20 @@
+package net.plexprison.plexpurchases.config.settings;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Settings for the in-memory store of player purchase state and how it is saved
+ */
+@Data
+@NoArgsConstructor
+public class PlayerStateSettings {
+
+    // lock stripes players are spread over by UUID, rounded up to a power of two
+    private int stripes = 64;
+    // save purchase counts to plugins/PlexPurchases/players, so counts not backed by a permission survive restarts
+    private boolean persist = true;
+    // seconds between background saves of players whose counts changed
+    private long flushIntervalSeconds = 5;
+
+}
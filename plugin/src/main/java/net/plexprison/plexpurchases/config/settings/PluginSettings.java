@@ -0,0 +1,80 @@
+package net.plexprison.plexpurchases.config.settings;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import net.plexprison.plexpurchases.utils.Logger;
+import net.plexprison.plexpurchases.utils.YamlParser;
+import org.bukkit.plugin.Plugin;
+
+import java.io.File;
+
+/**
+ * Plugin-wide settings read from config.yml in the plugin data folder.
+ * Every section falls back to its defaults when missing, so an old config.yml keeps working after an update.
+ */
+@Data
+@NoArgsConstructor
+public class PluginSettings {
+
+    private DispatchSettings dispatch = new DispatchSettings();
+    private LoggingSettings logging = new LoggingSettings();
+    private PrefetchSettings prefetch = new PrefetchSettings();
+    private SubscriptionSettings subscriptions = new SubscriptionSettings();
+    private MetricsSettings metrics = new MetricsSettings();
+    private LedgerSettings ledger = new LedgerSettings();
+    private CallbackSettings callbacks = new CallbackSettings();
+    private PlayerStateSettings players = new PlayerStateSettings();
+    private SyncSettings sync = new SyncSettings();
+    private StoreSettings store = new StoreSettings();
+
+    /**
+     * Loads the settings, writing the default config.yml first if there isn't one
+     *
+     * @param plugin The plugin instance
+     * @return The loaded settings, or the defaults if config.yml could not be read
+     */
+    public static PluginSettings load(final Plugin plugin) {
+        final File file = new File(plugin.getDataFolder(), "config.yml");
+        if (!file.exists()) {
+            plugin.saveResource("config.yml", false);
+        }
+
+        final PluginSettings settings = YamlParser.parseFile(file, PluginSettings.class).orElseGet(() -> {
+            Logger.warning("Failed to read config.yml, using default settings");
+            return new PluginSettings();
+        });
+
+        if (settings.getDispatch() == null) {
+            settings.setDispatch(new DispatchSettings());
+        }
+        if (settings.getPrefetch() == null) {
+            settings.setPrefetch(new PrefetchSettings());
+        }
+        if (settings.getSubscriptions() == null) {
+            settings.setSubscriptions(new SubscriptionSettings());
+        }
+        if (settings.getCallbacks() == null) {
+            settings.setCallbacks(new CallbackSettings());
+        }
+        if (settings.getLedger() == null) {
+            settings.setLedger(new LedgerSettings());
+        }
+        if (settings.getPlayers() == null) {
+            settings.setPlayers(new PlayerStateSettings());
+        }
+        if (settings.getSync() == null || settings.getSync().getTransport() == null) {
+            settings.setSync(new SyncSettings());
+        }
+        if (settings.getStore() == null) {
+            settings.setStore(new StoreSettings());
+        }
+        if (settings.getMetrics() == null || settings.getMetrics().getFile() == null) {
+            settings.setMetrics(new MetricsSettings());
+        }
+        if (settings.getLogging() == null || settings.getLogging().getLevel() == null) {
+            settings.setLogging(new LoggingSettings());
+        }
+        return settings;
+    }
+
+}
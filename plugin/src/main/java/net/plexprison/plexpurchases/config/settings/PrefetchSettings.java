@@ -0,0 +1,22 @@
+package net.plexprison.plexpurchases.config.settings;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Settings for prefetching player purchase state during pre-login
+ */
+@Data
+@NoArgsConstructor
+public class PrefetchSettings {
+
+    // how long prefetched state is kept waiting for the player to join
+    private long ttlSeconds = 30;
+    // most players whose prefetched state is kept, the oldest are evicted first
+    private int maxEntries = 1000;
+    // time a prefetch waits for other logins to share its storage read
+    private long batchWindowMillis = 2;
+    // longest a login is held waiting for its prefetch, the join falls back to loading directly
+    private long timeoutMillis = 2000;
+
+}
@@ -0,0 +1,16 @@
+package net.plexprison.plexpurchases.config.settings;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Settings for the /store menus
+ */
+@Data
+@NoArgsConstructor
+public class StoreSettings {
+
+    // how long the purchases a player can see are kept before their view permissions are checked again, 0 keeps them until invalidated
+    private long visibilityMaxAgeSeconds = 60;
+
+}
@@ -0,0 +1,24 @@
+package net.plexprison.plexpurchases.config.settings;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Settings for the scheduler that expires subscriptions whose renewal never arrived
+ */
+@Data
+@NoArgsConstructor
+public class SubscriptionSettings {
+
+    // run a subscription's expire actions when no renewal arrives within its billing period plus the grace time
+    private boolean expireWithoutRenewal = true;
+    // extra time after a subscription's billing period before it is expired, so late renewals still arrive in time
+    private long graceHours = 72;
+    // most due subscriptions handed to the action pipeline each second
+    private int batchSize = 100;
+    // due subscriptions wait while the action dispatcher has this many actions queued
+    private int maxQueuedActions = 1000;
+    // how often the schedule is saved to disk when it changed
+    private long saveIntervalSeconds = 30;
+
+}
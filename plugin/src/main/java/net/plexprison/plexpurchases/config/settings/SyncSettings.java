@@ -0,0 +1,41 @@
+package net.plexprison.plexpurchases.config.settings;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Settings for sharing catalog reloads and purchase counts with other instances serving the same purchases directory
+ */
+@Data
+@NoArgsConstructor
+public class SyncSettings {
+
+    // whether this instance talks to the others at all
+    private boolean enabled = false;
+    // how changes reach the other instances
+    private Transport transport = Transport.DIRECTORY;
+    // milliseconds changes are collected for before they are sent as one batch, rounded up to whole ticks
+    private long batchMillis = 250;
+    // directory every instance shares, relative to the plugin data folder unless absolute
+    private String directory = "../PlexPurchases-sync";
+    // milliseconds between checks of the shared directory for batches from other instances
+    private long pollMillis = 250;
+    // seconds a batch file is kept in the shared directory before the instance that wrote it deletes it
+    private long retentionSeconds = 60;
+    // multicast group and port every instance joins
+    private String multicastGroup = "239.255.80.80";
+    private int multicastPort = 25580;
+    // hops multicast batches may travel, 0 keeps them on this machine
+    private int multicastTtl = 0;
+
+    /**
+     * How batches are carried between instances
+     */
+    public enum Transport {
+        // batch files in a directory every instance can read and write
+        DIRECTORY,
+        // UDP multicast datagrams
+        MULTICAST
+    }
+
+}
@@ -0,0 +1,447 @@
+package net.plexprison.plexpurchases.delivery;
+
+import net.plexprison.plexpurchases.action.PurchaseActionType;
+import net.plexprison.plexpurchases.utils.Logger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal of deliveries waiting for their player, memory-mapped so appends are plain memory writes.
+ * Every record is {@code [length][kind][body][crc32]}: an ADD record stores a delivery, a COMPLETE record marks one
+ * as done. The length is written last, so a record torn by a crash reads as the end of the journal.
+ * Only the offsets of pending ADD records are kept on the heap, grouped by player, so finding a player's deliveries
+ * is a single map lookup and the deliveries themselves are read from the mapping on demand.
+ * Once completed records take up more space than pending ones the journal is rewritten with only the pending records.
+ * Not thread-safe on its own, every method is synchronized.
+ */
+final class DeliveryJournal implements Closeable {
+
+    private static final int MAGIC = 0x50504A31;
+    private static final int HEADER_SIZE = 8;
+    private static final int INITIAL_CAPACITY = 1 << 20;
+    // Completed records must waste at least this much before compaction is worth a rewrite
+    private static final int MIN_COMPACT_WASTE = 1 << 20;
+
+    private static final byte KIND_ADD = 1;
+    private static final byte KIND_COMPLETE = 2;
+    private static final int RECORD_OVERHEAD = 4 + 1 + 4;
+    private static final int ADD_FIXED_BODY = 8 + 16 + 1 + 4 + 2;
+    private static final int COMPLETE_BODY = 8 + 16;
+
+    private final Path file;
+    private final CRC32 crc;
+    private final Map<UUID, OffsetList> index;
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private int position;
+    private long nextId;
+    private int pendingCount;
+    private long liveBytes;
+    private boolean dirty;
+
+    private DeliveryJournal(final Path file) {
+        this.file = file;
+        this.crc = new CRC32();
+        this.index = new HashMap<>();
+        this.nextId = 1;
+    }
+
+    /**
+     * Opens the journal, creating it if needed, and replays it to rebuild the index of pending deliveries
+     *
+     * @param file The journal file
+     * @return The opened journal
+     * @throws IOException if the file can't be opened or isn't a delivery journal
+     */
+    static DeliveryJournal open(final Path file) throws IOException {
+        final DeliveryJournal journal = new DeliveryJournal(file);
+        Files.createDirectories(file.getParent());
+        journal.map(file);
+        journal.replay();
+        return journal;
+    }
+
+    /**
+     * Appends a delivery for a player
+     *
+     * @param player        The player the delivery belongs to
+     * @param type          Which of the purchase's actions to run
+     * @param purchaseTimes The number of times the player had bought the product
+     * @param productId     The product or subscription id
+     * @return The id of the delivery
+     * @throws IOException if the journal can't grow
+     */
+    synchronized long append(final UUID player, final PurchaseActionType type, final int purchaseTimes, final String productId) throws IOException {
+        final byte[] productBytes = productId.getBytes(StandardCharsets.UTF_8);
+        if (productBytes.length > 0xFFFF) {
+            throw new IllegalArgumentException("product id is too long: " + productId);
+        }
+
+        final long id = this.nextId++;
+        final int length = DeliveryJournal.ADD_FIXED_BODY + productBytes.length;
+        final int offset = this.reserve(length);
+        final int body = offset + 5;
+        this.buffer.putLong(body, id);
+        this.buffer.putLong(body + 8, player.getMostSignificantBits());
+        this.buffer.putLong(body + 16, player.getLeastSignificantBits());
+        this.buffer.put(body + 24, (byte) type.ordinal());
+        this.buffer.putInt(body + 25, purchaseTimes);
+        this.buffer.putShort(body + 29, (short) productBytes.length);
+        this.buffer.put(body + 31, productBytes);
+        this.seal(offset, DeliveryJournal.KIND_ADD, length);
+
+        this.index.computeIfAbsent(player, key -> new OffsetList()).add(offset);
+        this.pendingCount++;
+        this.liveBytes += DeliveryJournal.RECORD_OVERHEAD + length;
+        return id;
+    }
+
+    /**
+     * Reads every pending delivery of a player, in the order they were added
+     *
+     * @param player The player
+     * @return The pending deliveries, empty if there are none
+     */
+    synchronized List<PendingDelivery> pending(final UUID player) {
+        final OffsetList offsets = this.index.get(player);
+        if (offsets == null) {
+            return List.of();
+        }
+
+        final List<PendingDelivery> deliveries = new ArrayList<>(offsets.size);
+        for (int i = 0; i < offsets.size; i++) {
+            deliveries.add(this.readAdd(offsets.values[i]));
+        }
+        return deliveries;
+    }
+
+    /**
+     * Reads the pending deliveries of several players under a single lock
+     *
+     * @param players The players
+     * @return Every player mapped to their pending deliveries, empty lists for players without any
+     */
+    synchronized Map<UUID, List<PendingDelivery>> pending(final Collection<UUID> players) {
+        final Map<UUID, List<PendingDelivery>> deliveries = new HashMap<>(players.size() * 2);
+        for (final UUID player : players) {
+            deliveries.put(player, this.pending(player));
+        }
+        return deliveries;
+    }
+
+    /**
+     * Checks whether a delivery is still waiting, for deliveries read some time ago
+     *
+     * @param player The player the delivery belongs to
+     * @param id     The id of the delivery
+     * @return true if the delivery hasn't been completed
+     */
+    synchronized boolean isPending(final UUID player, final long id) {
+        final OffsetList offsets = this.index.get(player);
+        if (offsets == null) {
+            return false;
+        }
+
+        for (int i = 0; i < offsets.size; i++) {
+            if (this.buffer.getLong(offsets.values[i] + 5) == id) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Marks a delivery as done so it is never replayed
+     *
+     * @param player The player the delivery belongs to
+     * @param id     The id of the delivery
+     * @return true if the delivery was pending
+     * @throws IOException if the journal can't grow
+     */
+    synchronized boolean complete(final UUID player, final long id) throws IOException {
+        if (!this.removePending(player, id)) {
+            return false;
+        }
+
+        final int offset = this.reserve(DeliveryJournal.COMPLETE_BODY);
+        this.buffer.putLong(offset + 5, id);
+        this.buffer.putLong(offset + 13, player.getMostSignificantBits());
+        this.buffer.putLong(offset + 21, player.getLeastSignificantBits());
+        this.seal(offset, DeliveryJournal.KIND_COMPLETE, DeliveryJournal.COMPLETE_BODY);
+        return true;
+    }
+
+    /**
+     * Gets the number of deliveries waiting for their player
+     *
+     * @return The pending delivery count
+     */
+    synchronized int size() {
+        return this.pendingCount;
+    }
+
+    /**
+     * Gets the number of players with pending deliveries
+     *
+     * @return The player count
+     */
+    synchronized int playerCount() {
+        return this.index.size();
+    }
+
+    /**
+     * Forces written records to disk. Records already survive a process crash once appended, this covers power loss.
+     */
+    synchronized void flush() {
+        if (this.dirty) {
+            this.buffer.force();
+            this.dirty = false;
+        }
+    }
+
+    /**
+     * Rewrites the journal with only the pending deliveries once completed records dominate it
+     *
+     * @return true if the journal was compacted
+     * @throws IOException if the rewrite failed, the current journal is kept as is
+     */
+    synchronized boolean compactIfWasteful() throws IOException {
+        final long waste = this.position - DeliveryJournal.HEADER_SIZE - this.liveBytes;
+        if (this.channel == null || waste < DeliveryJournal.MIN_COMPACT_WASTE || waste < this.liveBytes) {
+            return false;
+        }
+
+        final long start = System.nanoTime();
+        final int before = this.position;
+        final Path temp = this.file.resolveSibling(this.file.getFileName() + ".compact");
+        final Map<OffsetList, int[]> moved = new IdentityHashMap<>();
+
+        try (final FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            final ByteBuffer header = ByteBuffer.allocate(DeliveryJournal.HEADER_SIZE);
+            header.putInt(DeliveryJournal.MAGIC).putInt(0).flip();
+            this.writeFully(out, header);
+
+            int written = DeliveryJournal.HEADER_SIZE;
+            for (final OffsetList offsets : this.index.values()) {
+                final int[] relocated = new int[offsets.size];
+                for (int i = 0; i < offsets.size; i++) {
+                    final int offset = offsets.values[i];
+                    final int total = DeliveryJournal.RECORD_OVERHEAD + this.buffer.getInt(offset);
+                    this.writeFully(out, this.buffer.duplicate().limit(offset + total).position(offset));
+                    relocated[i] = written;
+                    written += total;
+                }
+                moved.put(offsets, relocated);
+            }
+            out.force(true);
+        }
+
+        this.flush();
+        this.channel.close();
+        try {
+            Files.move(temp, this.file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (final IOException e) {
+            // The old journal and its offsets are untouched, keep using them
+            this.map(this.file);
+            throw e;
+        }
+
+        moved.forEach((offsets, relocated) -> System.arraycopy(relocated, 0, offsets.values, 0, relocated.length));
+        this.map(this.file);
+        this.position = DeliveryJournal.HEADER_SIZE + (int) this.liveBytes;
+
+        Logger.info("Compacted delivery journal from " + before + " to " + this.position + " bytes in "
+                + (System.nanoTime() - start) / 1_000_000L + "ms");
+        return true;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (this.channel == null) {
+            return;
+        }
+
+        this.flush();
+        this.channel.close();
+        this.channel = null;
+    }
+
+    private void map(final Path path) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        final long size = this.channel.size();
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("delivery journal is larger than 2GB");
+        }
+
+        int capacity = DeliveryJournal.INITIAL_CAPACITY;
+        while (capacity < size * 2 && capacity < Integer.MAX_VALUE / 2) {
+            capacity <<= 1;
+        }
+        this.buffer = this.channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+
+        if (size == 0) {
+            this.buffer.putInt(0, DeliveryJournal.MAGIC);
+            this.buffer.putInt(4, 0);
+            this.dirty = true;
+        } else if (this.buffer.getInt(0) != DeliveryJournal.MAGIC) {
+            throw new IOException(path.getFileName() + " is not a delivery journal");
+        }
+    }
+
+    /**
+     * Walks every intact record, stopping at the first empty or torn one, which is where new records go
+     */
+    private void replay() {
+        int offset = DeliveryJournal.HEADER_SIZE;
+        final int capacity = this.buffer.capacity();
+
+        while (offset + DeliveryJournal.RECORD_OVERHEAD <= capacity) {
+            final int length = this.buffer.getInt(offset);
+            if (length <= 0 || length > capacity - offset - DeliveryJournal.RECORD_OVERHEAD) {
+                break;
+            }
+            if (this.checksum(offset, length) != this.buffer.getInt(offset + 5 + length)) {
+                Logger.warning("Delivery journal ends with a torn record at byte " + offset + ", ignoring it");
+                break;
+            }
+
+            final byte kind = this.buffer.get(offset + 4);
+            final long id = this.buffer.getLong(offset + 5);
+            final UUID player = new UUID(this.buffer.getLong(offset + 13), this.buffer.getLong(offset + 21));
+            if (kind == DeliveryJournal.KIND_ADD) {
+                this.index.computeIfAbsent(player, key -> new OffsetList()).add(offset);
+                this.pendingCount++;
+                this.liveBytes += DeliveryJournal.RECORD_OVERHEAD + length;
+            } else if (kind == DeliveryJournal.KIND_COMPLETE) {
+                this.removePending(player, id);
+            }
+
+            this.nextId = Math.max(this.nextId, id + 1);
+            offset += DeliveryJournal.RECORD_OVERHEAD + length;
+        }
+
+        this.position = offset;
+    }
+
+    private boolean removePending(final UUID player, final long id) {
+        final OffsetList offsets = this.index.get(player);
+        if (offsets == null) {
+            return false;
+        }
+
+        for (int i = 0; i < offsets.size; i++) {
+            final int offset = offsets.values[i];
+            if (this.buffer.getLong(offset + 5) == id) {
+                offsets.remove(i);
+                if (offsets.size == 0) {
+                    this.index.remove(player);
+                }
+                this.pendingCount--;
+                this.liveBytes -= DeliveryJournal.RECORD_OVERHEAD + this.buffer.getInt(offset);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private PendingDelivery readAdd(final int offset) {
+        final int body = offset + 5;
+        final byte[] productBytes = new byte[this.buffer.getShort(body + 29) & 0xFFFF];
+        this.buffer.get(body + 31, productBytes);
+
+        final PurchaseActionType[] types = PurchaseActionType.values();
+        final int type = this.buffer.get(body + 24);
+        return new PendingDelivery(
+                this.buffer.getLong(body),
+                new UUID(this.buffer.getLong(body + 8), this.buffer.getLong(body + 16)),
+                type >= 0 && type < types.length ? types[type] : PurchaseActionType.SUCCESS,
+                this.buffer.getInt(body + 25),
+                new String(productBytes, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Makes room for a record at the end of the journal, growing the mapping if needed
+     *
+     * @param length The body length of the record
+     * @return The offset to write the record at
+     */
+    private int reserve(final int length) throws IOException {
+        final long needed = (long) this.position + DeliveryJournal.RECORD_OVERHEAD + length;
+        if (needed > this.buffer.capacity()) {
+            long capacity = this.buffer.capacity();
+            while (capacity < needed) {
+                capacity <<= 1;
+            }
+            if (capacity > Integer.MAX_VALUE) {
+                throw new IOException("delivery journal can't grow past 2GB");
+            }
+            this.buffer.force();
+            this.buffer = this.channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+        }
+        return this.position;
+    }
+
+    /**
+     * Writes the checksum and then the length, which is what makes the record visible to replay
+     */
+    private void seal(final int offset, final byte kind, final int length) {
+        this.buffer.put(offset + 4, kind);
+        this.buffer.putInt(offset + 5 + length, this.checksum(offset, length));
+        this.buffer.putInt(offset, length);
+        this.position = offset + DeliveryJournal.RECORD_OVERHEAD + length;
+        this.dirty = true;
+    }
+
+    private int checksum(final int offset, final int length) {
+        this.crc.reset();
+        this.crc.update(this.buffer.duplicate().limit(offset + 5 + length).position(offset + 4));
+        return (int) this.crc.getValue();
+    }
+
+    private void writeFully(final FileChannel out, final ByteBuffer source) throws IOException {
+        while (source.hasRemaining()) {
+            out.write(source);
+        }
+    }
+
+    /**
+     * Growable list of record offsets, kept primitive since there is one per pending delivery
+     */
+    private static final class OffsetList {
+
+        private int[] values = new int[2];
+        private int size;
+
+        private void add(final int value) {
+            if (this.size == this.values.length) {
+                this.values = Arrays.copyOf(this.values, this.size * 2);
+            }
+            this.values[this.size++] = value;
+        }
+
+        private void remove(final int index) {
+            System.arraycopy(this.values, index + 1, this.values, index, this.size - index - 1);
+            this.size--;
+        }
+
+    }
+
+}
@@ -0,0 +1,25 @@
+package net.plexprison.plexpurchases.delivery;
+
+import net.plexprison.plexpurchases.action.PurchaseActionType;
+import net.plexprison.plexpurchases.config.ConfiguredPlexPurchasesObject;
+
+/**
+ * A purchase event to deliver, one entry of a batch handed to {@link PurchaseDeliveryService#deliver(java.util.UUID, String, java.util.List)}
+ *
+ * @param purchase      The purchase configuration
+ * @param type          Which of the purchase's actions to run
+ * @param purchaseTimes How many times the player has bought the product, including this purchase, or 0 if not known yet,
+ *                      in which case a purchase limited by times is counted when it is delivered
+ * @param onDurable     Called once the delivery can no longer be lost: its actions ran or were saved for the next start,
+ *                      or it was journaled until the player joins. May be null
+ */
+public record DeliveryRequest(ConfiguredPlexPurchasesObject purchase, PurchaseActionType type, int purchaseTimes, Runnable onDurable) {
+
+    /**
+     * Creates a request nothing waits on
+     */
+    public DeliveryRequest(final ConfiguredPlexPurchasesObject purchase, final PurchaseActionType type, final int purchaseTimes) {
+        this(purchase, type, purchaseTimes, null);
+    }
+
+}
@@ -0,0 +1,17 @@
+package net.plexprison.plexpurchases.delivery;
+
+import net.plexprison.plexpurchases.action.PurchaseActionType;
+
+import java.util.UUID;
+
+/**
+ * A purchase event waiting for its player to come online, read back from the delivery journal
+ *
+ * @param id            The journal sequence number of the delivery
+ * @param player        The player the delivery belongs to
+ * @param type          Which of the purchase's actions to run
+ * @param purchaseTimes The number of times the player had bought the product when it was purchased
+ * @param productId     The product or subscription id of the purchase
+ */
+public record PendingDelivery(long id, UUID player, PurchaseActionType type, int purchaseTimes, String productId) {
+}
@@ -0,0 +1,313 @@
+package net.plexprison.plexpurchases.delivery;
+
+import net.plexprison.plexpurchases.action.ActionContext;
+import net.plexprison.plexpurchases.action.ActionTemplate;
+import net.plexprison.plexpurchases.action.PurchaseActionType;
+import net.plexprison.plexpurchases.config.ConfiguredPlexPurchasesObject;
+import net.plexprison.plexpurchases.config.base.DeliveryType;
+import net.plexprison.plexpurchases.config.holder.ConfiguredPlexPurchasesObjectHolder;
+import net.plexprison.plexpurchases.dispatch.ActionBatch;
+import net.plexprison.plexpurchases.dispatch.ActionDispatcher;
+import net.plexprison.plexpurchases.player.PurchaseCountCache;
+import net.plexprison.plexpurchases.utils.Logger;
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Hands purchase actions to the dispatcher according to the purchase's {@link DeliveryType}.
+ * Purchases that may only be delivered to online players are written to a journal while the player is offline and
+ * delivered when they next join. Purchases limited by times whose purchase count isn't known yet also wait, since
+ * the count is only known once the player is online.
+ * A delivery is marked complete once the dispatcher has run its actions or saved them for the next start, so a crash
+ * in between delivers it again rather than losing it.
+ */
+public class PurchaseDeliveryService {
+
+    private static final long FLUSH_INTERVAL_TICKS = 20L;
+    // Compaction is checked every this many flushes, about every five minutes
+    private static final int COMPACT_EVERY_FLUSHES = 300;
+
+    private final Plugin plugin;
+    private final ConfiguredPlexPurchasesObjectHolder holder;
+    private final ActionDispatcher dispatcher;
+    private final PurchaseCountCache purchaseCounts;
+    // Deliveries handed to the dispatcher but not yet complete, so a quick rejoin doesn't queue them twice
+    private final Set<Long> inFlight;
+    private DeliveryJournal journal;
+    private BukkitTask maintenanceTask;
+    private int flushes;
+
+    /**
+     * Constructor for the delivery service
+     *
+     * @param plugin         The plugin instance
+     * @param holder         The holder pending deliveries are looked up in
+     * @param dispatcher     The dispatcher actions are queued on
+     * @param purchaseCounts The cache of player purchase counts
+     */
+    public PurchaseDeliveryService(final Plugin plugin, final ConfiguredPlexPurchasesObjectHolder holder, final ActionDispatcher dispatcher,
+                                   final PurchaseCountCache purchaseCounts) {
+        this.plugin = plugin;
+        this.holder = holder;
+        this.dispatcher = dispatcher;
+        this.purchaseCounts = purchaseCounts;
+        this.inFlight = ConcurrentHashMap.newKeySet();
+    }
+
+    /**
+     * Opens the delivery journal, replaying it to find deliveries still pending, and starts flushing it in the background
+     *
+     * @throws IOException if the journal can't be opened
+     */
+    public void start() throws IOException {
+        this.journal = DeliveryJournal.open(this.plugin.getDataFolder().toPath().resolve("deliveries.journal"));
+        Logger.info("Delivery journal opened with " + this.journal.size() + " pending deliveries for " + this.journal.playerCount() + " players");
+
+        this.maintenanceTask = this.plugin.getServer().getScheduler().runTaskTimerAsynchronously(this.plugin,
+                this::maintain, PurchaseDeliveryService.FLUSH_INTERVAL_TICKS, PurchaseDeliveryService.FLUSH_INTERVAL_TICKS);
+    }
+
+    /**
+     * Stops background maintenance and closes the journal, call after the dispatcher has shut down
+     */
+    public void shutdown() {
+        if (this.maintenanceTask != null) {
+            this.maintenanceTask.cancel();
+            this.maintenanceTask = null;
+        }
+
+        if (this.journal != null) {
+            try {
+                this.journal.close();
+            } catch (final IOException e) {
+                Logger.error("Failed to close delivery journal: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Delivers a purchase event now, or journals it until the player joins if the purchase requires them online
+     *
+     * @param player        The purchasing player's UUID
+     * @param playerName    The purchasing player's name
+     * @param purchase      The purchase configuration
+     * @param type          Which of the purchase's actions to run
+     * @param purchaseTimes How many times the player has bought the product, including this purchase, or 0 if not known yet
+     */
+    public void deliver(final UUID player, final String playerName, final ConfiguredPlexPurchasesObject purchase,
+                        final PurchaseActionType type, final int purchaseTimes) {
+        this.deliver(player, playerName, List.of(new DeliveryRequest(purchase, type, purchaseTimes)));
+    }
+
+    /**
+     * Delivers several purchase events of one player in order, checking once whether the player is online.
+     * Events that can run now are queued on the dispatcher as one batch, the rest are journaled until the player joins.
+     * Each request's {@link DeliveryRequest#onDurable()} is called once its actions ran or were saved, or once it was journaled.
+     *
+     * @param player     The purchasing player's UUID
+     * @param playerName The purchasing player's name
+     * @param requests   The events to deliver, in the order they happened
+     */
+    public void deliver(final UUID player, final String playerName, final List<DeliveryRequest> requests) {
+        final boolean online = this.plugin.getServer().getPlayer(player) != null;
+        final ActionBatch batch = new ActionBatch();
+        boolean journaled = false;
+
+        for (final DeliveryRequest request : requests) {
+            final ConfiguredPlexPurchasesObject purchase = request.purchase();
+            final String productId = purchase.getPurchaseId();
+            final boolean timesKnown = request.purchaseTimes() > 0 || !purchase.isLimitedByTimes();
+            // Once one event waits in the journal the rest follow it, so they are delivered in order
+            if (!journaled && timesKnown && (purchase.getCallbackDelivery() == DeliveryType.ALLOW_OFFLINE_DELIVERY || online)
+                    || this.journal == null) {
+                final int purchaseTimes = timesKnown ? request.purchaseTimes() : this.resolvePurchaseTimesNow(player, request);
+                batch.add(purchase.getCompiledActions().get(request.type()), new ActionContext(playerName, player, purchaseTimes, productId), request.onDurable());
+                continue;
+            }
+
+            try {
+                this.journal.append(player, request.type(), request.purchaseTimes(), productId);
+                journaled = true;
+                Logger.debug(() -> "Stored " + request.type() + " delivery of " + productId + " until " + playerName + " joins");
+            } catch (final IOException e) {
+                Logger.error("Failed to store delivery of " + productId + " for " + playerName + ", delivering now instead: " + e.getMessage());
+                final int purchaseTimes = timesKnown ? request.purchaseTimes() : this.resolvePurchaseTimesNow(player, request);
+                batch.add(purchase.getCompiledActions().get(request.type()), new ActionContext(playerName, player, purchaseTimes, productId), request.onDurable());
+                continue;
+            }
+
+            // The journal survives a crash once appended, the same as the dispatcher's saved actions
+            if (request.onDurable() != null) {
+                request.onDurable().run();
+            }
+        }
+
+        this.dispatcher.enqueue(player, batch);
+        if (!journaled) {
+            return;
+        }
+
+        // The player may have joined while the deliveries were being written, after their join already drained the journal
+        this.plugin.getServer().getScheduler().runTask(this.plugin, () -> {
+            final Player joined = this.plugin.getServer().getPlayer(player);
+            if (joined != null) {
+                this.deliverPending(joined);
+            }
+        });
+    }
+
+    /**
+     * Queues every pending delivery of a player who just joined, must be called on the server thread.
+     * Deliveries that need the player's purchase count are left pending until their counts are loaded.
+     *
+     * @param player The player
+     * @return The number of deliveries queued
+     */
+    public int deliverPending(final Player player) {
+        return this.deliverPending(player, null);
+    }
+
+    /**
+     * Queues the pending deliveries of a player who just joined, using deliveries read ahead of the join if there are any.
+     * Must be called on the server thread.
+     *
+     * @param player     The player
+     * @param prefetched The player's deliveries as read by {@link #readPending(Collection)}, or null to read them now
+     * @return The number of deliveries queued
+     */
+    public int deliverPending(final Player player, final List<PendingDelivery> prefetched) {
+        if (this.journal == null) {
+            return 0;
+        }
+
+        final List<PendingDelivery> pending = prefetched != null ? prefetched : this.journal.pending(player.getUniqueId());
+        int queued = 0;
+        for (final PendingDelivery delivery : pending) {
+            if (!this.inFlight.add(delivery.id())) {
+                continue;
+            }
+
+            // A prefetched delivery may have been completed since, by a previous session of the same player
+            if (prefetched != null && !this.journal.isPending(delivery.player(), delivery.id())) {
+                this.inFlight.remove(delivery.id());
+                continue;
+            }
+
+            final ConfiguredPlexPurchasesObject purchase = this.holder.getCatalog().getById(delivery.productId());
+            if (purchase == null) {
+                // Kept in the journal in case the purchase comes back with the next reload
+                this.inFlight.remove(delivery.id());
+                Logger.warning("Pending delivery of unknown product " + delivery.productId() + " for " + player.getName() + " was skipped");
+                continue;
+            }
+
+            final int purchaseTimes = this.resolvePurchaseTimes(delivery, purchase);
+            if (purchaseTimes < 0) {
+                // Counts are still loading, this runs again once they are
+                this.inFlight.remove(delivery.id());
+                continue;
+            }
+
+            final List<ActionTemplate> actions = purchase.getCompiledActions().get(delivery.type());
+            final ActionContext context = new ActionContext(player.getName(), delivery.player(), purchaseTimes, delivery.productId());
+            this.dispatcher.enqueue(delivery.player(), actions, context, () -> this.complete(delivery));
+            queued++;
+        }
+
+        if (queued > 0) {
+            Logger.info("Delivering " + queued + " pending purchases to " + player.getName());
+        }
+        return queued;
+    }
+
+    /**
+     * Reads the pending deliveries of several players in one pass, safe to call from any thread
+     *
+     * @param players The players
+     * @return Every player mapped to their pending deliveries, empty lists for players without any
+     */
+    public Map<UUID, List<PendingDelivery>> readPending(final Collection<UUID> players) {
+        if (this.journal == null) {
+            return Map.of();
+        }
+        return this.journal.pending(players);
+    }
+
+    /**
+     * Gets the number of deliveries waiting for their player to join
+     *
+     * @return The pending delivery count
+     */
+    public int getPendingCount() {
+        return this.journal == null ? 0 : this.journal.size();
+    }
+
+    /**
+     * Counts a purchase whose count wasn't known but that can't wait in the journal, the way draining the journal would.
+     * Delivered with a count of 0 if the player's counts still aren't loaded.
+     *
+     * @param player  The purchasing player's UUID
+     * @param request The request being delivered
+     * @return The purchase count to render the actions with
+     */
+    private int resolvePurchaseTimesNow(final UUID player, final DeliveryRequest request) {
+        final int purchaseTimes = request.type() == PurchaseActionType.SUCCESS
+                ? this.purchaseCounts.increment(player, request.purchase())
+                : this.purchaseCounts.getCount(player, request.purchase());
+        return Math.max(purchaseTimes, 0);
+    }
+
+    /**
+     * Gets the purchase count of a journaled delivery, a purchase journaled without one is only counted here
+     *
+     * @param delivery The pending delivery
+     * @param purchase The purchase configuration
+     * @return The purchase count, or -1 if the player's counts are still loading
+     */
+    private int resolvePurchaseTimes(final PendingDelivery delivery, final ConfiguredPlexPurchasesObject purchase) {
+        if (delivery.purchaseTimes() > 0 || !purchase.isLimitedByTimes()) {
+            return delivery.purchaseTimes();
+        }
+
+        return delivery.type() == PurchaseActionType.SUCCESS
+                ? this.purchaseCounts.increment(delivery.player(), purchase)
+                : this.purchaseCounts.getCount(delivery.player(), purchase);
+    }
+
+    private void complete(final PendingDelivery delivery) {
+        try {
+            this.journal.complete(delivery.player(), delivery.id());
+        } catch (final IOException e) {
+            Logger.error("Failed to mark delivery " + delivery.id() + " complete, it may be delivered again: " + e.getMessage());
+        } finally {
+            this.inFlight.remove(delivery.id());
+        }
+    }
+
+    /**
+     * Flushes the journal to disk and compacts it every few minutes, runs off the server thread
+     */
+    private void maintain() {
+        this.journal.flush();
+        if (++this.flushes < PurchaseDeliveryService.COMPACT_EVERY_FLUSHES) {
+            return;
+        }
+
+        this.flushes = 0;
+        try {
+            this.journal.compactIfWasteful();
+        } catch (final IOException e) {
+            Logger.warning("Failed to compact delivery journal, will retry later: " + e.getMessage());
+        }
+    }
+
+}
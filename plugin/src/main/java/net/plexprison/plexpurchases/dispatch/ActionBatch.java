@@ -0,0 +1,82 @@
+package net.plexprison.plexpurchases.dispatch;
+
+import net.plexprison.plexpurchases.action.ActionContext;
+import net.plexprison.plexpurchases.action.ActionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Several purchases' actions for one player, rendered and queued together by
+ * {@link ActionDispatcher#enqueue(UUID, ActionBatch)} so a burst of purchases takes the queue lock once.
+ * Actions run in the order they were added. Not thread safe, build it on one thread and hand it over.
+ */
+public final class ActionBatch {
+
+    private final List<List<ActionTemplate>> templates;
+    private final List<ActionContext> contexts;
+    private final List<Runnable> callbacks;
+    private int actionCount;
+
+    /**
+     * Constructor for an empty batch
+     */
+    public ActionBatch() {
+        this.templates = new ArrayList<>();
+        this.contexts = new ArrayList<>();
+        this.callbacks = new ArrayList<>();
+    }
+
+    /**
+     * Adds a purchase's actions after everything already in the batch
+     *
+     * @param templates The action templates to run
+     * @param context   The values to render the templates with
+     * @param onDone    Called on the server thread after the last of these actions has run or been saved for the next start, may be null
+     */
+    public void add(final List<ActionTemplate> templates, final ActionContext context, final Runnable onDone) {
+        this.templates.add(templates);
+        this.contexts.add(context);
+        this.callbacks.add(onDone);
+        this.actionCount += templates.size();
+    }
+
+    /**
+     * Checks whether nothing was added
+     *
+     * @return true if the batch is empty
+     */
+    public boolean isEmpty() {
+        return this.templates.isEmpty();
+    }
+
+    /**
+     * Renders every action in the batch
+     *
+     * @param player The player the actions belong to
+     * @param now    The time the actions are queued at, from {@link System#nanoTime()}
+     * @return The rendered actions in order
+     */
+    List<PendingAction> render(final UUID player, final long now) {
+        final List<PendingAction> actions = new ArrayList<>(this.actionCount);
+        for (int i = 0; i < this.templates.size(); i++) {
+            final List<ActionTemplate> purchaseTemplates = this.templates.get(i);
+            final Runnable onDone = this.callbacks.get(i);
+            if (purchaseTemplates.isEmpty()) {
+                if (onDone != null) {
+                    onDone.run();
+                }
+                continue;
+            }
+
+            for (int j = 0; j < purchaseTemplates.size(); j++) {
+                final ActionTemplate template = purchaseTemplates.get(j);
+                final boolean last = j == purchaseTemplates.size() - 1;
+                actions.add(new PendingAction(player, template, template.render(this.contexts.get(i)), now, last ? onDone : null));
+            }
+        }
+        return actions;
+    }
+
+}
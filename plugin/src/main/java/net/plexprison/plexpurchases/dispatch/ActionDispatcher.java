@@ -0,0 +1,526 @@
+package net.plexprison.plexpurchases.dispatch;
+
+import net.plexprison.plexpurchases.action.ActionContext;
+import net.plexprison.plexpurchases.action.ActionTemplate;
+import net.plexprison.plexpurchases.config.settings.DispatchSettings;
+import net.plexprison.plexpurchases.metrics.PluginMetrics;
+import net.plexprison.plexpurchases.utils.Logger;
+import net.plexprison.plexpurchases.utils.YamlParser;
+import org.bukkit.command.CommandSender;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Queues rendered purchase actions and runs them on the server thread under a per-tick time budget.
+ * Actions are queued per player: each player's actions always run in the order they were queued, and a player's
+ * pending actions run back to back whenever that player gets a turn. Players take turns in the order they first had
+ * something queued, so one player's burst can't starve everyone else.
+ * Anything still queued on shutdown is flushed within a budget and the rest is saved and replayed on the next start.
+ * The saved file is only removed once every replayed action has run, until then it is rewritten with what is left, so
+ * a crash soon after a restart replays them again instead of losing them.
+ */
+public class ActionDispatcher {
+
+    private final Plugin plugin;
+    private final DispatchSettings settings;
+    private final File pendingFile;
+    // A player's queue lives here while it has actions and is only touched inside compute calls for that player
+    private final Map<UUID, PlayerQueue> queues;
+    // Players with queued actions, in the order they get their turn
+    private final Deque<PlayerQueue> ready;
+    private final AtomicInteger queued;
+    private final AtomicBoolean backPressureWarned;
+    private final LongAdder enqueuedTotal;
+    private final LongAdder dispatchedTotal;
+    private final LongAdder failedTotal;
+    private final LongAdder overBudgetTicks;
+    private final List<Consumer<UUID>> runListeners;
+    // Server thread only, the actions replayed from the saved file in file order and those of them that haven't run yet
+    private final List<PersistedAction> restored;
+    private final Set<PersistedAction> restoredWaiting;
+    private boolean restoredChanged;
+    private volatile long lastTickNanos;
+    private volatile long maxWaitNanos;
+    private BukkitTask task;
+
+    /**
+     * Constructor for the dispatcher
+     *
+     * @param plugin   The plugin instance
+     * @param settings The dispatch settings
+     */
+    public ActionDispatcher(final Plugin plugin, final DispatchSettings settings) {
+        this.plugin = plugin;
+        this.settings = settings;
+        this.pendingFile = new File(plugin.getDataFolder(), "pending-actions.yml");
+        this.queues = new ConcurrentHashMap<>();
+        this.ready = new ConcurrentLinkedDeque<>();
+        this.queued = new AtomicInteger();
+        this.backPressureWarned = new AtomicBoolean();
+        this.enqueuedTotal = new LongAdder();
+        this.dispatchedTotal = new LongAdder();
+        this.failedTotal = new LongAdder();
+        this.overBudgetTicks = new LongAdder();
+        this.runListeners = new CopyOnWriteArrayList<>();
+        this.restored = new ArrayList<>();
+        this.restoredWaiting = Collections.newSetFromMap(new IdentityHashMap<>());
+    }
+
+    /**
+     * Registers a listener called on the server thread with the player an action was run for, whether or not it succeeded
+     *
+     * @param listener The listener to call
+     */
+    public void addRunListener(final Consumer<UUID> listener) {
+        this.runListeners.add(listener);
+    }
+
+    /**
+     * Replays actions saved by the last shutdown and starts draining the queue every tick
+     */
+    public void start() {
+        this.restorePending();
+        this.task = this.plugin.getServer().getScheduler().runTaskTimer(this.plugin, this::tick, 1L, 1L);
+        Logger.info("Action dispatcher started with a " + this.settings.getTickBudgetMillis() + "ms tick budget");
+    }
+
+    /**
+     * Stops the per-tick drain, runs as much of the queue as the shutdown budget allows and saves the rest.
+     * Must be called on the server thread.
+     */
+    public void shutdown() {
+        if (this.task != null) {
+            this.task.cancel();
+            this.task = null;
+        }
+
+        final int ran = this.drain(TimeUnit.MILLISECONDS.toNanos(this.settings.getShutdownBudgetMillis()));
+        if (ran > 0) {
+            Logger.info("Ran " + ran + " queued purchase actions before shutdown");
+        }
+        this.persistPending();
+    }
+
+    /**
+     * Renders and queues actions for a player, they run in list order after anything already queued for the player
+     *
+     * @param player    The player the actions belong to
+     * @param templates The action templates to run
+     * @param context   The values to render the templates with
+     */
+    public void enqueue(final UUID player, final List<ActionTemplate> templates, final ActionContext context) {
+        this.enqueue(player, templates, context, null);
+    }
+
+    /**
+     * Renders and queues actions for a player, calling back once all of them have run
+     *
+     * @param player    The player the actions belong to
+     * @param templates The action templates to run
+     * @param context   The values to render the templates with
+     * @param onDone    Called on the server thread after the last action has run or been saved for the next start, may be null
+     */
+    public void enqueue(final UUID player, final List<ActionTemplate> templates, final ActionContext context, final Runnable onDone) {
+        if (templates.isEmpty()) {
+            if (onDone != null) {
+                onDone.run();
+            }
+            return;
+        }
+
+        // Render outside the map lock, the dispatcher only ever stores finished lines
+        final long now = System.nanoTime();
+        final List<PendingAction> actions = new ArrayList<>(templates.size());
+        for (int i = 0; i < templates.size(); i++) {
+            final ActionTemplate template = templates.get(i);
+            final boolean last = i == templates.size() - 1;
+            actions.add(new PendingAction(player, template, template.render(context), now, last ? onDone : null));
+        }
+        this.enqueueAll(player, actions);
+    }
+
+    /**
+     * Renders and queues several purchases' actions for a player in one go, they run in batch order after anything
+     * already queued for the player
+     *
+     * @param player The player the actions belong to
+     * @param batch  The actions to run
+     */
+    public void enqueue(final UUID player, final ActionBatch batch) {
+        final List<PendingAction> actions = batch.render(player, System.nanoTime());
+        if (!actions.isEmpty()) {
+            this.enqueueAll(player, actions);
+        }
+    }
+
+    /**
+     * Queues a single already rendered action for a player
+     *
+     * @param player   The player the action belongs to
+     * @param template The template the line was rendered from, or null to dispatch it as a plain command
+     * @param line     The rendered command line, without a leading slash
+     */
+    public void enqueue(final UUID player, final ActionTemplate template, final String line) {
+        this.enqueueAll(player, List.of(new PendingAction(player, template, line, System.nanoTime(), null)));
+    }
+
+    private void enqueueAll(final UUID player, final List<PendingAction> actions) {
+        this.queues.compute(player, (id, current) -> {
+            final PlayerQueue queue = current == null ? new PlayerQueue(id) : current;
+            queue.actions.addAll(actions);
+            if (!queue.scheduled) {
+                queue.scheduled = true;
+                this.ready.offerLast(queue);
+            }
+            return queue;
+        });
+
+        this.enqueuedTotal.add(actions.size());
+        final int depth = this.queued.addAndGet(actions.size());
+        if (depth >= this.settings.getWarnQueueDepth() && this.backPressureWarned.compareAndSet(false, true)) {
+            Logger.warning("Purchase action queue is backing up: " + depth + " actions waiting, consider raising dispatch.tickBudgetMillis");
+        }
+    }
+
+    /**
+     * Runs queued actions until the tick budget is used up
+     */
+    private void tick() {
+        final long start = System.nanoTime();
+        this.drain((long) (this.settings.getTickBudgetMillis() * 1_000_000L));
+
+        final long elapsed = System.nanoTime() - start;
+        this.lastTickNanos = elapsed;
+        PluginMetrics.DISPATCH_TICK_TIME.record(elapsed);
+        if (elapsed > this.settings.getTickBudgetMillis() * 1_000_000L) {
+            this.overBudgetTicks.increment();
+        }
+
+        if (this.queued.get() < this.settings.getWarnQueueDepth() / 2) {
+            this.backPressureWarned.set(false);
+        }
+        this.syncRestored();
+    }
+
+    /**
+     * Runs queued actions, player by player, until the queue is empty or the budget is used up.
+     * At least one action always runs so a single slow command can't stall the queue forever.
+     *
+     * @param budgetNanos The time allowed
+     * @return The number of actions run
+     */
+    private int drain(final long budgetNanos) {
+        final long deadline = System.nanoTime() + budgetNanos;
+        final CommandSender console = this.plugin.getServer().getConsoleSender();
+        int ran = 0;
+
+        PlayerQueue queue;
+        while ((queue = this.ready.pollFirst()) != null) {
+            PendingAction action;
+            while ((action = this.next(queue)) != null) {
+                this.run(console, action);
+                ran++;
+
+                if (System.nanoTime() >= deadline) {
+                    // Out of time mid-player, they go first next tick so their actions stay together
+                    this.ready.offerFirst(queue);
+                    return ran;
+                }
+            }
+        }
+        return ran;
+    }
+
+    /**
+     * Takes the next action of a player, dropping the player's queue once it is empty
+     *
+     * @param queue The player's queue
+     * @return The next action, or null if the player has nothing left
+     */
+    private PendingAction next(final PlayerQueue queue) {
+        final PendingAction[] next = new PendingAction[1];
+        this.queues.computeIfPresent(queue.player, (id, current) -> {
+            next[0] = current.actions.pollFirst();
+            if (next[0] != null) {
+                return current;
+            }
+            current.scheduled = false;
+            return null;
+        });
+        return next[0];
+    }
+
+    private void run(final CommandSender console, final PendingAction action) {
+        this.queued.decrementAndGet();
+        this.dispatchedTotal.increment();
+
+        final long waited = System.nanoTime() - action.enqueuedAt();
+        if (waited > this.maxWaitNanos) {
+            this.maxWaitNanos = waited;
+        }
+
+        try {
+            final boolean success = action.template() != null
+                    ? action.template().execute(console, action.line())
+                    : this.plugin.getServer().dispatchCommand(console, action.line());
+
+            if (!success) {
+                this.failedTotal.increment();
+                Logger.warning("Purchase action for " + action.player() + " did not succeed: " + action.line());
+            }
+        } catch (final RuntimeException e) {
+            this.failedTotal.increment();
+            Logger.error("Failed to run purchase action for " + action.player() + " '" + action.line() + "': " + e.getMessage());
+        }
+
+        for (final Consumer<UUID> listener : this.runListeners) {
+            try {
+                listener.accept(action.player());
+            } catch (final RuntimeException e) {
+                Logger.error("Purchase action listener failed for " + action.player() + ": " + e.getMessage());
+            }
+        }
+        ActionDispatcher.complete(action);
+    }
+
+    private static void complete(final PendingAction action) {
+        if (action.onDone() == null) {
+            return;
+        }
+
+        try {
+            action.onDone().run();
+        } catch (final RuntimeException e) {
+            Logger.error("Purchase action completion callback failed for " + action.player() + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Saves everything still queued to pending-actions.yml, in turn order
+     */
+    private void persistPending() {
+        final List<PendingAction> drained = new ArrayList<>();
+        final List<PersistedAction> pending = new ArrayList<>();
+        PlayerQueue queue;
+        while ((queue = this.ready.pollFirst()) != null) {
+            PendingAction action;
+            while ((action = this.next(queue)) != null) {
+                this.queued.decrementAndGet();
+                drained.add(action);
+                pending.add(new PersistedAction(action.player().toString(), action.line()));
+            }
+        }
+
+        if (pending.isEmpty()) {
+            this.syncRestored();
+            return;
+        }
+
+        // Replayed actions that haven't run yet are still queued, so they are part of what is written here
+        if (this.writePending(pending)) {
+            Logger.warning("Saved " + pending.size() + " queued purchase actions, they will run on next start");
+            this.restored.clear();
+            this.restoredWaiting.clear();
+            this.restoredChanged = false;
+            // Saved actions are as good as run, they will be replayed from the file
+            drained.forEach(ActionDispatcher::complete);
+        } else {
+            Logger.error("Failed to save " + pending.size() + " queued purchase actions: " + pending);
+        }
+    }
+
+    /**
+     * Queues actions saved by the last shutdown. The file stays until they have all run, see {@link #syncRestored()}.
+     */
+    private void restorePending() {
+        if (!this.pendingFile.exists()) {
+            return;
+        }
+
+        final Optional<PendingActionsFile> restored = YamlParser.parseFile(this.pendingFile, PendingActionsFile.class);
+        if (restored.isEmpty() || restored.get().getActions() == null) {
+            Logger.error("Failed to read " + this.pendingFile.getName() + ", leaving it in place for manual recovery");
+            return;
+        }
+
+        final long now = System.nanoTime();
+        for (final PersistedAction action : restored.get().getActions()) {
+            final UUID player;
+            try {
+                player = UUID.fromString(action.getPlayer());
+            } catch (final IllegalArgumentException e) {
+                Logger.error("Skipping saved purchase action with invalid player '" + action.getPlayer() + "': " + action.getCommand());
+                continue;
+            }
+
+            this.restored.add(action);
+            this.restoredWaiting.add(action);
+            this.enqueueAll(player, List.of(new PendingAction(player, null, action.getCommand(), now, () -> {
+                // Not tracked any more once the shutdown saved it again
+                if (this.restoredWaiting.remove(action)) {
+                    this.restoredChanged = true;
+                }
+            })));
+        }
+
+        // Skipped entries are dropped from the file with the first rewrite
+        this.restoredChanged = this.restored.size() != restored.get().getActions().size();
+        Logger.info("Restored " + this.restored.size() + " purchase actions saved at last shutdown");
+        this.syncRestored();
+    }
+
+    /**
+     * Rewrites the saved file with the replayed actions that haven't run yet, or removes it once they all have.
+     * Called on the server thread after each tick, so the file is rewritten at most once per tick.
+     */
+    private void syncRestored() {
+        if (!this.restoredChanged) {
+            return;
+        }
+        this.restoredChanged = false;
+
+        final List<PersistedAction> left = new ArrayList<>(this.restoredWaiting.size());
+        for (final PersistedAction action : this.restored) {
+            if (this.restoredWaiting.contains(action)) {
+                left.add(action);
+            }
+        }
+
+        if (!left.isEmpty()) {
+            if (!this.writePending(left)) {
+                // Tried again after the next action runs, the old file still holds everything that is left
+                this.restoredChanged = true;
+            }
+            return;
+        }
+
+        this.restored.clear();
+        if (!this.pendingFile.delete() && this.pendingFile.exists()) {
+            Logger.warning("Failed to delete " + this.pendingFile.getName() + ", its actions may run again on next start");
+        }
+    }
+
+    /**
+     * Writes actions to pending-actions.yml through a temporary file, so a crash mid-write leaves the previous file intact
+     *
+     * @param actions The actions to save, in turn order
+     * @return true if the file was replaced
+     */
+    private boolean writePending(final List<PersistedAction> actions) {
+        final File temp = new File(this.pendingFile.getParentFile(), this.pendingFile.getName() + ".tmp");
+        if (!YamlParser.writeToFile(temp, new PendingActionsFile(actions))) {
+            return false;
+        }
+
+        try {
+            Files.move(temp.toPath(), this.pendingFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return true;
+        } catch (final IOException e) {
+            Logger.error("Failed to replace " + this.pendingFile.getName() + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Gets the number of actions waiting to run
+     *
+     * @return The queue depth
+     */
+    public int getQueuedActions() {
+        return this.queued.get();
+    }
+
+    /**
+     * Gets the number of actions queued since startup
+     *
+     * @return The total queued
+     */
+    public long getEnqueuedTotal() {
+        return this.enqueuedTotal.sum();
+    }
+
+    /**
+     * Gets the number of actions run since startup
+     *
+     * @return The total run
+     */
+    public long getDispatchedTotal() {
+        return this.dispatchedTotal.sum();
+    }
+
+    /**
+     * Gets the number of actions that threw or reported failure since startup
+     *
+     * @return The total failed
+     */
+    public long getFailedTotal() {
+        return this.failedTotal.sum();
+    }
+
+    /**
+     * Gets the number of ticks where running actions took longer than the budget
+     *
+     * @return The number of over-budget ticks
+     */
+    public long getOverBudgetTicks() {
+        return this.overBudgetTicks.sum();
+    }
+
+    /**
+     * Gets the time spent running actions in the most recent tick
+     *
+     * @return Nanoseconds spent in the last tick
+     */
+    public long getLastTickNanos() {
+        return this.lastTickNanos;
+    }
+
+    /**
+     * Gets the longest time any action has waited in the queue since startup
+     *
+     * @return The maximum wait in milliseconds
+     */
+    public long getMaxWaitMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(this.maxWaitNanos);
+    }
+
+    /**
+     * A single player's queued actions
+     */
+    private static final class PlayerQueue {
+
+        private final UUID player;
+        private final ArrayDeque<PendingAction> actions;
+        private boolean scheduled;
+
+        private PlayerQueue(final UUID player) {
+            this.player = player;
+            this.actions = new ArrayDeque<>();
+        }
+
+    }
+
+}
@@ -0,0 +1,17 @@
+package net.plexprison.plexpurchases.dispatch;
+
+import net.plexprison.plexpurchases.action.ActionTemplate;
+
+import java.util.UUID;
+
+/**
+ * A rendered action waiting to run on the server thread
+ *
+ * @param player     The player the action belongs to, actions of one player always run in the order they were queued
+ * @param template   The template the line was rendered from, or null for actions restored from disk
+ * @param line       The rendered command line, without a leading slash
+ * @param enqueuedAt {@link System#nanoTime()} when the action was queued
+ * @param onDone     Called once the action has run or been saved for the next start, may be null
+ */
+record PendingAction(UUID player, ActionTemplate template, String line, long enqueuedAt, Runnable onDone) {
+}
@@ -0,0 +1,19 @@
+package net.plexprison.plexpurchases.dispatch;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Root of pending-actions.yml, written on shutdown and replayed on the next start
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PendingActionsFile {
+
+    private List<PersistedAction> actions;
+
+}
@@ -0,0 +1,18 @@
+package net.plexprison.plexpurchases.dispatch;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * An action that was still queued when the plugin shut down
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PersistedAction {
+
+    private String player;
+    private String command;
+
+}
@@ -0,0 +1,13 @@
+package net.plexprison.plexpurchases.gui;
+
+/**
+ * How a purchase is shown to a player in the store, each state has its own item template.
+ * AVAILABLE can be bought, OWNED can't be bought again, LOCKED is waiting on its dependency or on the player getting
+ * its permission and EXPIRED is a subscription that has run out.
+ */
+public enum StoreItemState {
+    AVAILABLE,
+    OWNED,
+    LOCKED,
+    EXPIRED
+}
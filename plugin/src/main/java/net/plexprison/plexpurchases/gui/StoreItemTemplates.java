@@ -0,0 +1,315 @@
+package net.plexprison.plexpurchases.gui;
+
+import net.plexprison.plexpurchases.config.ConfiguredPlexPurchasesObject;
+import net.plexprison.plexpurchases.config.holder.PurchaseCatalog;
+import org.bukkit.ChatColor;
+import org.bukkit.Material;
+import org.bukkit.inventory.ItemFlag;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.inventory.meta.ItemMeta;
+import org.bukkit.permissions.Permissible;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * The store's items for one catalog snapshot, built once when the catalog is published and shared by every player.
+ * Each purchase has one template per {@link StoreItemState}, indexed by its dense catalog index. Variants showing how
+ * many times a player bought a purchase are built the first time they're needed and kept, so after warm-up rendering
+ * a menu only looks items up.
+ * The returned items must never be modified, inventories copy them when they are set. Only use from the server thread.
+ */
+public final class StoreItemTemplates {
+
+    private static final int STATES = StoreItemState.values().length;
+    // Purchase counts above this are built each time they're shown instead of kept
+    private static final int MAX_CACHED_COUNT = 64;
+
+    private final PurchaseCatalog catalog;
+    // Indexed by dense index * STATES + state ordinal
+    private final ItemStack[] templates;
+    private final List<String>[] lore;
+    private final ItemStack[][] counted;
+    private final boolean[] showsCount;
+    // The permission a player needs to buy each purchase, null for purchases anyone can buy
+    private final String[] permissions;
+    // Purchases without a permission, purchases shown even without their permission, then each distinct permission
+    // with the purchases it unlocks, so purchases sharing a node cost one permission check
+    private final BitSet unrestricted;
+    private final BitSet shownLocked;
+    private final String[] permissionNodes;
+    private final BitSet[] permissionGroups;
+    private final ItemStack previousPage;
+    private final ItemStack nextPage;
+    private final ItemStack filler;
+    private final ItemStack[] viewSwitches;
+
+    @SuppressWarnings("unchecked")
+    private StoreItemTemplates(final PurchaseCatalog catalog) {
+        this.catalog = catalog;
+        this.templates = new ItemStack[catalog.size() * StoreItemTemplates.STATES];
+        this.lore = new List[this.templates.length];
+        this.counted = new ItemStack[this.templates.length][];
+        this.showsCount = new boolean[catalog.size()];
+        this.permissions = new String[catalog.size()];
+        this.unrestricted = new BitSet(catalog.size());
+        this.shownLocked = new BitSet(catalog.size());
+        final Map<String, BitSet> groups = new LinkedHashMap<>();
+
+        for (int i = 0; i < catalog.size(); i++) {
+            final ConfiguredPlexPurchasesObject purchase = catalog.get(i);
+            this.showsCount[i] = catalog.isRepeatable(i) || catalog.isLimitedByTimes(i);
+            this.permissions[i] = StoreItemTemplates.getRequiredPermission(catalog, i);
+            if (this.permissions[i] == null) {
+                this.unrestricted.set(i);
+            } else {
+                groups.computeIfAbsent(this.permissions[i], node -> new BitSet(catalog.size())).set(i);
+                this.shownLocked.set(i, !catalog.isHiddenWithoutPermission(i));
+            }
+
+            for (final StoreItemState state : StoreItemState.values()) {
+                final int slot = i * StoreItemTemplates.STATES + state.ordinal();
+                this.lore[slot] = this.buildLore(purchase, state);
+                this.templates[slot] = StoreItemTemplates.buildItem(purchase.getDisplayItem(), purchase.getAmount(),
+                        StoreItemTemplates.getName(purchase), this.lore[slot]);
+            }
+        }
+
+        this.permissionNodes = groups.keySet().toArray(new String[0]);
+        this.permissionGroups = groups.values().toArray(new BitSet[0]);
+
+        this.previousPage = StoreItemTemplates.buildItem(Material.ARROW, 1, ChatColor.YELLOW + "Previous page", List.of());
+        this.nextPage = StoreItemTemplates.buildItem(Material.ARROW, 1, ChatColor.YELLOW + "Next page", List.of());
+        this.filler = StoreItemTemplates.buildItem(Material.GRAY_STAINED_GLASS_PANE, 1, " ", List.of());
+        this.viewSwitches = new ItemStack[StoreView.values().length];
+        this.viewSwitches[StoreView.BUY.ordinal()] = StoreItemTemplates.buildItem(Material.BOOK, 1, ChatColor.AQUA + "Your Purchases",
+                List.of(ChatColor.GRAY + "See everything you've bought"));
+        this.viewSwitches[StoreView.PURCHASES.ordinal()] = StoreItemTemplates.buildItem(Material.CHEST, 1, ChatColor.AQUA + "Store",
+                List.of(ChatColor.GRAY + "Back to the store"));
+    }
+
+    /**
+     * Builds the templates of every purchase in a catalog, call from the server thread
+     *
+     * @param catalog The published catalog
+     * @return The templates
+     */
+    public static StoreItemTemplates build(final PurchaseCatalog catalog) {
+        return new StoreItemTemplates(catalog);
+    }
+
+    /**
+     * Gets the catalog these templates were built for
+     *
+     * @return The catalog, dense indexes passed to this class refer to it
+     */
+    public PurchaseCatalog getCatalog() {
+        return this.catalog;
+    }
+
+    /**
+     * Gets the item showing a purchase to a player
+     *
+     * @param index The dense index of the purchase
+     * @param state The state the purchase is shown in
+     * @param count How many times the player bought it, 0 to leave it out
+     * @return The shared item, must not be modified
+     */
+    public ItemStack get(final int index, final StoreItemState state, final int count) {
+        final int slot = index * StoreItemTemplates.STATES + state.ordinal();
+        if (count <= 0 || !this.showsCount[index]) {
+            return this.templates[slot];
+        }
+        if (count > StoreItemTemplates.MAX_CACHED_COUNT) {
+            return this.buildCounted(index, slot, count);
+        }
+
+        ItemStack[] variants = this.counted[slot];
+        if (variants == null || variants.length <= count) {
+            variants = Arrays.copyOf(variants == null ? new ItemStack[0] : variants, Math.min(StoreItemTemplates.MAX_CACHED_COUNT, count * 2) + 1);
+            this.counted[slot] = variants;
+        }
+        if (variants[count] == null) {
+            variants[count] = this.buildCounted(index, slot, count);
+        }
+        return variants[count];
+    }
+
+    /**
+     * Checks whether the purchase count is part of a purchase's item, so callers can leave it out of their cache keys
+     *
+     * @param index The dense index of the purchase
+     * @return true if the item shows how many times it was bought
+     */
+    public boolean showsCount(final int index) {
+        return this.showsCount[index];
+    }
+
+    /**
+     * Gets the permission a player needs to buy a purchase, without it the purchase is hidden if it has
+     * hideIfNoPermission set and shown locked otherwise
+     *
+     * @param index The dense index of the purchase
+     * @return The permission, or null if every player can buy it
+     */
+    public String getPermission(final int index) {
+        return this.permissions[index];
+    }
+
+    /**
+     * Works out which purchases a player has the permission for, checking each distinct permission once
+     *
+     * @param viewer The player
+     * @return A new set of the dense indexes the player has the permission for, including every purchase without one
+     */
+    public BitSet computePermitted(final Permissible viewer) {
+        final BitSet permitted = (BitSet) this.unrestricted.clone();
+        for (int i = 0; i < this.permissionNodes.length; i++) {
+            if (viewer.hasPermission(this.permissionNodes[i])) {
+                permitted.or(this.permissionGroups[i]);
+            }
+        }
+        return permitted;
+    }
+
+    /**
+     * Works out which purchases a player can see from the ones they have the permission for
+     *
+     * @param permitted The set returned by {@link #computePermitted(Permissible)}
+     * @return A new set of the dense indexes the player can see, purchases without hideIfNoPermission are always seen
+     */
+    public BitSet computeVisible(final BitSet permitted) {
+        final BitSet visible = (BitSet) permitted.clone();
+        visible.or(this.shownLocked);
+        return visible;
+    }
+
+    /**
+     * Gets the number of distinct permissions {@link #computePermitted(Permissible)} checks
+     *
+     * @return The number of permissions
+     */
+    public int getPermissionCount() {
+        return this.permissionNodes.length;
+    }
+
+    /**
+     * Gets the button that goes back a page
+     *
+     * @return The shared item
+     */
+    public ItemStack getPreviousPage() {
+        return this.previousPage;
+    }
+
+    /**
+     * Gets the button that goes forward a page
+     *
+     * @return The shared item
+     */
+    public ItemStack getNextPage() {
+        return this.nextPage;
+    }
+
+    /**
+     * Gets the item filling unused slots of the bottom row
+     *
+     * @return The shared item
+     */
+    public ItemStack getFiller() {
+        return this.filler;
+    }
+
+    /**
+     * Gets the button that switches away from a view
+     *
+     * @param from The view the button is shown in
+     * @return The shared item
+     */
+    public ItemStack getViewSwitch(final StoreView from) {
+        return this.viewSwitches[from.ordinal()];
+    }
+
+    private ItemStack buildCounted(final int index, final int slot, final int count) {
+        final List<String> countedLore = new ArrayList<>(this.lore[slot].size() + 1);
+        countedLore.addAll(this.lore[slot]);
+        countedLore.add(ChatColor.GRAY + "Purchased " + ChatColor.WHITE + count + ChatColor.GRAY + (count == 1 ? " time" : " times"));
+
+        final ConfiguredPlexPurchasesObject purchase = this.catalog.get(index);
+        return StoreItemTemplates.buildItem(purchase.getDisplayItem(), purchase.getAmount(), StoreItemTemplates.getName(purchase), countedLore);
+    }
+
+    private List<String> buildLore(final ConfiguredPlexPurchasesObject purchase, final StoreItemState state) {
+        final List<String> lines = new ArrayList<>();
+        final String description = purchase.getSubscriptionId() != null && !purchase.getSubscriptionId().isBlank()
+                ? purchase.getSubscriptionDescription() : purchase.getProductDescription();
+        if (description != null && !description.isBlank()) {
+            lines.add(ChatColor.GRAY + ChatColor.translateAlternateColorCodes('&', description));
+            lines.add("");
+        }
+
+        lines.add(ChatColor.GRAY + "Price: " + ChatColor.GOLD + purchase.getPrice());
+        if (purchase.getSubscriptionBasis() != null) {
+            lines.add(ChatColor.GRAY + "Billed " + ChatColor.WHITE + purchase.getSubscriptionBasis().name().toLowerCase(Locale.ROOT).replace('_', '-'));
+        }
+
+        switch (state) {
+            case AVAILABLE -> lines.add(ChatColor.GREEN + "Available");
+            case OWNED -> lines.add(ChatColor.AQUA + "Owned");
+            case EXPIRED -> lines.add(ChatColor.RED + "Expired");
+            case LOCKED -> {
+                if (purchase.getDependency() != null && !purchase.getDependency().isBlank()) {
+                    final int dependency = this.catalog.getDependencyGraph().getDependency(this.catalog.indexOf(purchase));
+                    final String name = dependency == -1 ? purchase.getDependency() : StoreItemTemplates.getName(this.catalog.get(dependency));
+                    final int amount = Math.max(1, purchase.getDependencyAmount());
+                    lines.add(ChatColor.RED + "Requires " + name + (amount > 1 ? " bought " + amount + " times" : ""));
+                }
+                if (this.permissions[this.catalog.indexOf(purchase)] != null) {
+                    lines.add(ChatColor.RED + "Requires permission to buy");
+                }
+            }
+        }
+        return List.copyOf(lines);
+    }
+
+    /**
+     * Gets the node a player needs to buy a purchase, its configured permission or for purchases limited by times the
+     * part before the count, without the trailing separator
+     *
+     * @param catalog The catalog
+     * @param index   The dense index of the purchase
+     * @return The node, or null if the purchase has no permission
+     */
+    private static String getRequiredPermission(final PurchaseCatalog catalog, final int index) {
+        final String prefix = catalog.getPermissionPrefix(index);
+        if (prefix == null || !catalog.isLimitedByTimes(index)) {
+            return prefix;
+        }
+        final String node = prefix.endsWith(".") ? prefix.substring(0, prefix.length() - 1) : prefix;
+        return node.isBlank() ? null : node;
+    }
+
+    private static String getName(final ConfiguredPlexPurchasesObject purchase) {
+        final String name = purchase.getProductName() != null && !purchase.getProductName().isBlank()
+                ? purchase.getProductName() : purchase.getSubscriptionName();
+        return ChatColor.WHITE + ChatColor.translateAlternateColorCodes('&', name == null ? purchase.getPurchaseId() : name);
+    }
+
+    private static ItemStack buildItem(final Material material, final int amount, final String name, final List<String> lore) {
+        final ItemStack item = new ItemStack(material == null || material.isAir() ? Material.PAPER : material, Math.max(1, Math.min(64, amount)));
+        final ItemMeta meta = item.getItemMeta();
+        if (meta != null) {
+            meta.setDisplayName(name);
+            meta.setLore(lore);
+            meta.addItemFlags(ItemFlag.HIDE_ATTRIBUTES, ItemFlag.HIDE_ENCHANTS);
+            item.setItemMeta(meta);
+        }
+        return item;
+    }
+
+}
@@ -0,0 +1,212 @@
+package net.plexprison.plexpurchases.gui;
+
+import net.plexprison.plexpurchases.config.holder.PurchaseCatalog;
+import net.plexprison.plexpurchases.player.PlayerPurchaseCounts;
+import org.bukkit.Server;
+import org.bukkit.entity.Player;
+import org.bukkit.inventory.Inventory;
+import org.bukkit.inventory.InventoryHolder;
+import org.bukkit.inventory.ItemStack;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.UUID;
+
+/**
+ * One player's page of the store, kept for as long as the player is online and reused every time they open it.
+ * The inventory is assembled from the shared {@link StoreItemTemplates} and the player's purchase state. Every slot
+ * remembers a key describing what it shows, so rendering again after a change only sets the slots whose key changed.
+ * The store view lists the purchases the player can see from their sets in the {@link StoreVisibilityCache}, showing
+ * the ones whose permission the player lacks as locked, so it doesn't check any permissions while those sets are kept.
+ * Only use from the server thread.
+ */
+public final class StoreMenu implements InventoryHolder {
+
+    static final int SIZE = 54;
+    static final int PAGE_SIZE = 45;
+    static final int PREVIOUS_SLOT = 45;
+    static final int SWITCH_SLOT = 49;
+    static final int NEXT_SLOT = 53;
+
+    // Keys of the fixed items, purchase keys are always larger
+    private static final long EMPTY_KEY = 0;
+    private static final long PREVIOUS_KEY = 1;
+    private static final long NEXT_KEY = 2;
+    private static final long SWITCH_KEY = 3;
+    private static final long FILLER_KEY = 4;
+
+    private final UUID player;
+    private final StoreView view;
+    private final StoreVisibilityCache visibility;
+    private final Inventory inventory;
+    private final long[] slotKeys;
+    // Dense indexes of the purchases this view shows, only the first entryCount are valid
+    private int[] entries;
+    private int entryCount;
+    private int page;
+    private StoreItemTemplates rendered;
+
+    /**
+     * Constructor for a player's store menu
+     *
+     * @param server     The server the inventory is created on
+     * @param player     The player the menu belongs to
+     * @param view       The view the menu shows
+     * @param visibility The cache of purchases each player can see
+     */
+    StoreMenu(final Server server, final UUID player, final StoreView view, final StoreVisibilityCache visibility) {
+        this.player = player;
+        this.view = view;
+        this.visibility = visibility;
+        this.inventory = server.createInventory(this, StoreMenu.SIZE, view.getTitle());
+        this.slotKeys = new long[StoreMenu.SIZE];
+        this.entries = new int[0];
+    }
+
+    @Override
+    public Inventory getInventory() {
+        return this.inventory;
+    }
+
+    /**
+     * Gets the player the menu belongs to
+     *
+     * @return The player's UUID
+     */
+    public UUID getPlayer() {
+        return this.player;
+    }
+
+    /**
+     * Gets the view the menu shows
+     *
+     * @return The view
+     */
+    public StoreView getView() {
+        return this.view;
+    }
+
+    /**
+     * Checks whether anyone is looking at the menu
+     *
+     * @return true if the inventory is open
+     */
+    boolean isOpen() {
+        return !this.inventory.getViewers().isEmpty();
+    }
+
+    /**
+     * Moves to another page, rendered on the next {@link #render(StoreItemTemplates, PlayerPurchaseCounts, Player)}
+     *
+     * @param delta The number of pages to move, negative to go back
+     */
+    void turnPage(final int delta) {
+        this.page = Math.max(0, this.page + delta);
+    }
+
+    /**
+     * Brings the inventory up to date, setting only the slots that changed since the last render
+     *
+     * @param templates The current templates
+     * @param state     The player's purchase state, or null if it isn't loaded yet
+     * @param viewer    The player, for permissions
+     */
+    void render(final StoreItemTemplates templates, final PlayerPurchaseCounts state, final Player viewer) {
+        if (templates != this.rendered) {
+            // Keys are only meaningful within one set of templates
+            Arrays.fill(this.slotKeys, -1L);
+            this.rendered = templates;
+        }
+
+        final PurchaseCatalog catalog = templates.getCatalog();
+        // State from a previous catalog is being remapped, show it once that's done
+        final PlayerPurchaseCounts current = state != null && state.catalog() == catalog ? state : null;
+        final StoreVisibilityCache.Visibility access = this.view == StoreView.BUY ? this.visibility.get(templates, viewer) : null;
+        this.collectEntries(templates, current, access);
+
+        final int lastPage = this.entryCount == 0 ? 0 : (this.entryCount - 1) / StoreMenu.PAGE_SIZE;
+        this.page = Math.min(this.page, lastPage);
+
+        for (int slot = 0; slot < StoreMenu.PAGE_SIZE; slot++) {
+            final int entry = this.page * StoreMenu.PAGE_SIZE + slot;
+            if (entry >= this.entryCount) {
+                this.setSlot(slot, StoreMenu.EMPTY_KEY, null);
+                continue;
+            }
+
+            final int index = this.entries[entry];
+            final StoreItemState itemState = this.getState(current, access, index);
+            final int count = current == null || !templates.showsCount(index) ? 0 : current.getCount(index);
+            final long key = ((long) (index + 1) << 34) | ((long) itemState.ordinal() << 31) | count;
+            if (this.slotKeys[slot] != key) {
+                this.setSlot(slot, key, templates.get(index, itemState, count));
+            }
+        }
+
+        for (int slot = StoreMenu.PAGE_SIZE; slot < StoreMenu.SIZE; slot++) {
+            if (slot == StoreMenu.PREVIOUS_SLOT && this.page > 0) {
+                this.setSlot(slot, StoreMenu.PREVIOUS_KEY, templates.getPreviousPage());
+            } else if (slot == StoreMenu.NEXT_SLOT && this.page < lastPage) {
+                this.setSlot(slot, StoreMenu.NEXT_KEY, templates.getNextPage());
+            } else if (slot == StoreMenu.SWITCH_SLOT) {
+                this.setSlot(slot, StoreMenu.SWITCH_KEY, templates.getViewSwitch(this.view));
+            } else {
+                this.setSlot(slot, StoreMenu.FILLER_KEY, templates.getFiller());
+            }
+        }
+    }
+
+    /**
+     * Lists the purchases this view shows the player, reusing the entries array
+     *
+     * @param templates The current templates
+     * @param state     The player's state for the templates' catalog, or null if it isn't loaded
+     * @param access    The purchases the player can see and has the permission for, null outside the store view
+     */
+    private void collectEntries(final StoreItemTemplates templates, final PlayerPurchaseCounts state, final StoreVisibilityCache.Visibility access) {
+        final int size = templates.getCatalog().size();
+        if (this.entries.length < size) {
+            this.entries = new int[size];
+        }
+
+        this.entryCount = 0;
+        if (access != null) {
+            final BitSet visible = access.visible();
+            for (int index = visible.nextSetBit(0); index >= 0; index = visible.nextSetBit(index + 1)) {
+                this.entries[this.entryCount++] = index;
+            }
+            return;
+        }
+
+        for (int index = 0; index < size; index++) {
+            if (state != null && (state.isOwned(index) || state.getCount(index) > 0)) {
+                this.entries[this.entryCount++] = index;
+            }
+        }
+    }
+
+    private StoreItemState getState(final PlayerPurchaseCounts state, final StoreVisibilityCache.Visibility access, final int index) {
+        // Purchases hidden without their permission never get here, the rest are shown locked
+        if (access != null && !access.permitted().get(index)) {
+            return StoreItemState.LOCKED;
+        }
+        if (state == null) {
+            return StoreItemState.AVAILABLE;
+        }
+        if (this.view == StoreView.PURCHASES) {
+            return state.isOwned(index) ? StoreItemState.OWNED : StoreItemState.EXPIRED;
+        }
+        if (state.canPurchase(index)) {
+            return StoreItemState.AVAILABLE;
+        }
+        return state.isOwned(index) ? StoreItemState.OWNED : StoreItemState.LOCKED;
+    }
+
+    private void setSlot(final int slot, final long key, final ItemStack item) {
+        if (this.slotKeys[slot] != key) {
+            this.inventory.setItem(slot, item);
+            this.slotKeys[slot] = key;
+        }
+    }
+
+}
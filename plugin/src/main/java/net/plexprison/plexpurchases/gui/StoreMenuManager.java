@@ -0,0 +1,244 @@
+package net.plexprison.plexpurchases.gui;
+
+import net.plexprison.plexpurchases.config.holder.PurchaseCatalog;
+import net.plexprison.plexpurchases.config.settings.StoreSettings;
+import net.plexprison.plexpurchases.player.PurchaseCountCache;
+import net.plexprison.plexpurchases.utils.Logger;
+import org.bukkit.entity.HumanEntity;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.Listener;
+import org.bukkit.event.inventory.InventoryClickEvent;
+import org.bukkit.event.inventory.InventoryDragEvent;
+import org.bukkit.plugin.Plugin;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Opens the /store menus and keeps open ones up to date.
+ * Item templates are rebuilt once per published catalog, and each player keeps their menus until they quit, so opening
+ * the store only renders into an existing inventory. When a player's purchase state changes their open menu is
+ * rendered again, which only touches the slots that changed; changes arriving together are rendered once.
+ * Which purchases each player can see is kept between opens, and worked out again once purchase actions ran for them.
+ */
+public class StoreMenuManager implements Listener {
+
+    private final Plugin plugin;
+    private final PurchaseCountCache purchaseCounts;
+    // Server thread only
+    private final Map<UUID, StoreMenu[]> menus;
+    private final Set<UUID> changed;
+    private final AtomicBoolean refreshScheduled;
+    private final StoreVisibilityCache visibility;
+    private StoreItemTemplates templates;
+
+    /**
+     * Constructor for the store menu manager
+     *
+     * @param plugin         The plugin instance
+     * @param settings       The store settings
+     * @param purchaseCounts The cache player purchase state is read from
+     */
+    public StoreMenuManager(final Plugin plugin, final StoreSettings settings, final PurchaseCountCache purchaseCounts) {
+        this.plugin = plugin;
+        this.purchaseCounts = purchaseCounts;
+        this.menus = new HashMap<>();
+        this.changed = ConcurrentHashMap.newKeySet();
+        this.refreshScheduled = new AtomicBoolean();
+        this.visibility = new StoreVisibilityCache(settings.getVisibilityMaxAgeSeconds());
+    }
+
+    /**
+     * Rebuilds the item templates for a newly published catalog on the server thread and re-renders open menus
+     *
+     * @param catalog The published catalog
+     */
+    public void onCatalogPublished(final PurchaseCatalog catalog) {
+        if (!this.plugin.isEnabled()) {
+            return;
+        }
+
+        this.plugin.getServer().getScheduler().runTask(this.plugin, () -> {
+            final long start = System.nanoTime();
+            final StoreItemTemplates built = StoreItemTemplates.build(catalog);
+            this.templates = built;
+            this.visibility.clear();
+            final long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+            Logger.debug(() -> "Built store items for " + catalog.size() + " purchases behind " + built.getPermissionCount()
+                    + " permissions in " + elapsedMillis + "ms");
+
+            this.menus.keySet().forEach(this::refresh);
+        });
+    }
+
+    /**
+     * Queues a re-render of a player's open menu, call whenever their purchase state changes, from any thread
+     *
+     * @param player The player whose state changed
+     */
+    public void onStateChanged(final UUID player) {
+        this.changed.add(player);
+        if (this.plugin.isEnabled() && this.refreshScheduled.compareAndSet(false, true)) {
+            this.plugin.getServer().getScheduler().runTask(this.plugin, this::refreshChanged);
+        }
+    }
+
+    /**
+     * Works out which purchases a player can see again and re-renders their open menu, call on the server thread
+     * after actions that may have changed their permissions ran
+     *
+     * @param player The player the actions ran for
+     */
+    public void onActionRun(final UUID player) {
+        this.visibility.invalidate(player);
+        this.onStateChanged(player);
+    }
+
+    /**
+     * Opens a view of the store for a player
+     *
+     * @param player The player
+     * @param view   The view to open
+     * @return false if the store isn't ready yet
+     */
+    public boolean open(final Player player, final StoreView view) {
+        if (this.templates == null) {
+            return false;
+        }
+
+        final StoreMenu[] playerMenus = this.menus.computeIfAbsent(player.getUniqueId(), id -> new StoreMenu[StoreView.values().length]);
+        StoreMenu menu = playerMenus[view.ordinal()];
+        if (menu == null) {
+            menu = new StoreMenu(this.plugin.getServer(), player.getUniqueId(), view, this.visibility);
+            playerMenus[view.ordinal()] = menu;
+        }
+
+        menu.render(this.templates, this.purchaseCounts.getState(player.getUniqueId()), player);
+        if (player.getOpenInventory().getTopInventory() != menu.getInventory()) {
+            player.openInventory(menu.getInventory());
+        }
+        return true;
+    }
+
+    /**
+     * Re-renders a player's open menus
+     *
+     * @param player The player
+     */
+    public void refresh(final UUID player) {
+        final StoreMenu[] playerMenus = this.menus.get(player);
+        if (playerMenus == null || this.templates == null) {
+            return;
+        }
+
+        for (final StoreMenu menu : playerMenus) {
+            if (menu != null && menu.isOpen()) {
+                final Player viewer = this.plugin.getServer().getPlayer(player);
+                if (viewer != null) {
+                    menu.render(this.templates, this.purchaseCounts.getState(player), viewer);
+                }
+            }
+        }
+    }
+
+    /**
+     * Drops a player's menus, call when they quit
+     *
+     * @param player The player
+     */
+    public void evict(final UUID player) {
+        this.menus.remove(player);
+        this.visibility.invalidate(player);
+    }
+
+    /**
+     * Gets the number of times the purchases a player can see were worked out from their permissions
+     *
+     * @return The number of computed visibility sets
+     */
+    public long getVisibilityComputed() {
+        return this.visibility.getComputed();
+    }
+
+    /**
+     * Gets the number of store listings that reused a player's kept visibility set
+     *
+     * @return The number of visibility cache hits
+     */
+    public long getVisibilityHits() {
+        return this.visibility.getHits();
+    }
+
+    /**
+     * Closes every open store menu, call on shutdown
+     */
+    public void closeAll() {
+        for (final StoreMenu[] playerMenus : this.menus.values()) {
+            for (final StoreMenu menu : playerMenus) {
+                if (menu != null) {
+                    // Copied, closing removes the viewer from the list
+                    for (final HumanEntity viewer : menu.getInventory().getViewers().toArray(new HumanEntity[0])) {
+                        viewer.closeInventory();
+                    }
+                }
+            }
+        }
+        this.menus.clear();
+        this.visibility.clear();
+    }
+
+    @EventHandler
+    public void onInventoryClick(final InventoryClickEvent event) {
+        if (!(event.getInventory().getHolder() instanceof final StoreMenu menu)) {
+            return;
+        }
+
+        // Nothing can be taken out of or put into the store
+        event.setCancelled(true);
+        if (!(event.getWhoClicked() instanceof final Player player) || this.templates == null) {
+            return;
+        }
+
+        switch (event.getRawSlot()) {
+            case StoreMenu.PREVIOUS_SLOT -> {
+                menu.turnPage(-1);
+                menu.render(this.templates, this.purchaseCounts.getState(player.getUniqueId()), player);
+            }
+            case StoreMenu.NEXT_SLOT -> {
+                menu.turnPage(1);
+                menu.render(this.templates, this.purchaseCounts.getState(player.getUniqueId()), player);
+            }
+            case StoreMenu.SWITCH_SLOT -> {
+                final StoreView other = menu.getView() == StoreView.BUY ? StoreView.PURCHASES : StoreView.BUY;
+                // Opening an inventory from a click handler must wait for the next tick
+                this.plugin.getServer().getScheduler().runTask(this.plugin, () -> this.open(player, other));
+            }
+            default -> {
+            }
+        }
+    }
+
+    @EventHandler
+    public void onInventoryDrag(final InventoryDragEvent event) {
+        if (event.getInventory().getHolder() instanceof StoreMenu) {
+            event.setCancelled(true);
+        }
+    }
+
+    private void refreshChanged() {
+        this.refreshScheduled.set(false);
+        final Iterator<UUID> iterator = this.changed.iterator();
+        while (iterator.hasNext()) {
+            final UUID player = iterator.next();
+            iterator.remove();
+            this.refresh(player);
+        }
+    }
+
+}
@@ -0,0 +1,25 @@
+package net.plexprison.plexpurchases.gui;
+
+/**
+ * The pages of the /store menu, each with the title of its inventory
+ */
+public enum StoreView {
+    BUY("Store"),
+    PURCHASES("Your Purchases");
+
+    private final String title;
+
+    StoreView(final String title) {
+        this.title = title;
+    }
+
+    /**
+     * Gets the title of the view's inventory
+     *
+     * @return The title
+     */
+    public String getTitle() {
+        return this.title;
+    }
+
+}
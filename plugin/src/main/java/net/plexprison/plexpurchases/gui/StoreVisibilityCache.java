@@ -0,0 +1,111 @@
+package net.plexprison.plexpurchases.gui;
+
+import org.bukkit.entity.Player;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Remembers which purchases each player can see and has the permission for in the store, so listing and paging
+ * through it is a walk over a bitset instead of a permission check per purchase.
+ * A player's sets are worked out from the distinct permissions of the current {@link StoreItemTemplates} the first
+ * time they need them, and kept until their permissions may have changed: after purchase actions ran for them, when they
+ * quit and when a new catalog is published. Permissions changed by anything other than a purchase action are picked
+ * up once the set reaches its maximum age. Only use from the server thread.
+ */
+final class StoreVisibilityCache {
+
+    private final long maxAgeNanos;
+    private final Map<UUID, Entry> entries;
+    // Written on the server thread only, read by the metrics exporter
+    private volatile long computed;
+    private volatile long hits;
+
+    /**
+     * Constructor for the visibility cache
+     *
+     * @param maxAgeSeconds Seconds a player's set is kept without being invalidated, 0 or less to keep it until it is
+     */
+    StoreVisibilityCache(final long maxAgeSeconds) {
+        this.maxAgeNanos = maxAgeSeconds <= 0 ? Long.MAX_VALUE : maxAgeSeconds * 1_000_000_000L;
+        this.entries = new HashMap<>();
+    }
+
+    /**
+     * Gets the purchases a player can see and has the permission for, working them out if the player has no current sets
+     *
+     * @param templates The current templates
+     * @param viewer    The player
+     * @return The player's sets, shared and must not be modified
+     */
+    Visibility get(final StoreItemTemplates templates, final Player viewer) {
+        final long now = System.nanoTime();
+        final Entry entry = this.entries.get(viewer.getUniqueId());
+        if (entry != null && entry.templates() == templates && now - entry.computedAt() < this.maxAgeNanos) {
+            this.hits++;
+            return entry.visibility();
+        }
+
+        final BitSet permitted = templates.computePermitted(viewer);
+        final Visibility visibility = new Visibility(templates.computeVisible(permitted), permitted);
+        this.entries.put(viewer.getUniqueId(), new Entry(templates, visibility, now));
+        this.computed++;
+        return visibility;
+    }
+
+    /**
+     * Drops a player's set, it is worked out again the next time it is needed
+     *
+     * @param player The player
+     */
+    void invalidate(final UUID player) {
+        this.entries.remove(player);
+    }
+
+    /**
+     * Drops every player's set, call when new templates are built
+     */
+    void clear() {
+        this.entries.clear();
+    }
+
+    /**
+     * Gets the number of sets worked out from permissions
+     *
+     * @return The number of computed sets
+     */
+    long getComputed() {
+        return this.computed;
+    }
+
+    /**
+     * Gets the number of times a kept set was reused
+     *
+     * @return The number of hits
+     */
+    long getHits() {
+        return this.hits;
+    }
+
+    /**
+     * The purchases a player is shown
+     *
+     * @param visible   The dense indexes the player can see
+     * @param permitted The dense indexes the player has the permission for, the rest of the visible ones are locked
+     */
+    record Visibility(BitSet visible, BitSet permitted) {
+    }
+
+    /**
+     * A player's kept sets
+     *
+     * @param templates  The templates they were worked out for
+     * @param visibility The player's sets
+     * @param computedAt {@link System#nanoTime()} when they were worked out
+     */
+    private record Entry(StoreItemTemplates templates, Visibility visibility, long computedAt) {
+    }
+
+}
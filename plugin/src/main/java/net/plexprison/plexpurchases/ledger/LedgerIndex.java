@@ -0,0 +1,154 @@
+package net.plexprison.plexpurchases.ledger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.function.IntPredicate;
+import java.util.function.LongConsumer;
+import java.util.stream.IntStream;
+import java.util.zip.CRC32;
+
+/**
+ * On-disk index of a sealed ledger segment: the transaction ID hash and record offset of every record, sorted by hash.
+ * It is written once when the segment is sealed and memory-mapped read-only afterwards, so checking a transaction
+ * against a segment is a binary search through the page cache rather than a read of the segment.
+ * Layout is {@code [magic][count][hash, offset]...[crc32]}.
+ */
+final class LedgerIndex {
+
+    private static final int MAGIC = 0x50504C49;
+    private static final int HEADER_SIZE = 8;
+    private static final int ENTRY_SIZE = 12;
+
+    private final MappedByteBuffer buffer;
+    private final int count;
+
+    private LedgerIndex(final MappedByteBuffer buffer, final int count) {
+        this.buffer = buffer;
+        this.count = count;
+    }
+
+    /**
+     * Writes an index to a temporary file and moves it into place, so a crash never leaves a partial index
+     *
+     * @param file    The index file
+     * @param hashes  The transaction ID hashes, in record order
+     * @param offsets The record offsets matching the hashes
+     * @param count   The number of records
+     * @throws IOException if the index couldn't be written
+     */
+    static void write(final Path file, final long[] hashes, final int[] offsets, final int count) throws IOException {
+        final int[] order = IntStream.range(0, count).boxed()
+                .sorted(Comparator.comparingLong(i -> hashes[i]))
+                .mapToInt(Integer::intValue)
+                .toArray();
+
+        final ByteBuffer out = ByteBuffer.allocate(LedgerIndex.HEADER_SIZE + count * LedgerIndex.ENTRY_SIZE + Long.BYTES).order(ByteOrder.BIG_ENDIAN);
+        out.putInt(LedgerIndex.MAGIC).putInt(count);
+        for (final int i : order) {
+            out.putLong(hashes[i]).putInt(offsets[i]);
+        }
+        final CRC32 crc = new CRC32();
+        crc.update(out.array(), 0, out.position());
+        out.putLong(crc.getValue()).flip();
+
+        final Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (final FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (out.hasRemaining()) {
+                channel.write(out);
+            }
+            channel.force(true);
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Maps an index, checking it is complete
+     *
+     * @param file The index file
+     * @return The index
+     * @throws IOException if the file can't be read or is corrupt
+     */
+    static LedgerIndex open(final Path file) throws IOException {
+        try (final FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            final long size = channel.size();
+            if (size < LedgerIndex.HEADER_SIZE + Long.BYTES || size > Integer.MAX_VALUE) {
+                throw new IOException(file.getFileName() + " has an invalid size");
+            }
+
+            // The mapping stays valid after the channel is closed
+            final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            final int count = buffer.getInt(4);
+            if (buffer.getInt(0) != LedgerIndex.MAGIC || count < 0 || size != LedgerIndex.HEADER_SIZE + (long) count * LedgerIndex.ENTRY_SIZE + Long.BYTES) {
+                throw new IOException(file.getFileName() + " is not a ledger index");
+            }
+
+            final CRC32 crc = new CRC32();
+            crc.update(buffer.duplicate().limit((int) size - Long.BYTES).position(0));
+            if (crc.getValue() != buffer.getLong((int) size - Long.BYTES)) {
+                throw new IOException(file.getFileName() + " is corrupt");
+            }
+            return new LedgerIndex(buffer, count);
+        }
+    }
+
+    /**
+     * Gets the number of records in the segment
+     *
+     * @return The record count
+     */
+    int size() {
+        return this.count;
+    }
+
+    /**
+     * Passes every hash in the index, for rebuilding the Bloom filter
+     *
+     * @param consumer Receives each hash
+     */
+    void forEachHash(final LongConsumer consumer) {
+        for (int i = 0; i < this.count; i++) {
+            consumer.accept(this.hashAt(i));
+        }
+    }
+
+    /**
+     * Passes the offset of every record with a hash until one matches
+     *
+     * @param hash    The transaction ID hash
+     * @param matches Checks the record at an offset, returning true stops the search
+     * @return true if a record matched
+     */
+    boolean anyMatch(final long hash, final IntPredicate matches) {
+        int low = 0;
+        int high = this.count;
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+            if (this.hashAt(middle) < hash) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+
+        // Hashes can collide, every record with this hash is checked
+        for (int i = low; i < this.count && this.hashAt(i) == hash; i++) {
+            if (matches.test(this.buffer.getInt(LedgerIndex.HEADER_SIZE + i * LedgerIndex.ENTRY_SIZE + Long.BYTES))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private long hashAt(final int index) {
+        return this.buffer.getLong(LedgerIndex.HEADER_SIZE + index * LedgerIndex.ENTRY_SIZE);
+    }
+
+}
@@ -0,0 +1,487 @@
+package net.plexprison.plexpurchases.ledger;
+
+import net.plexprison.plexpurchases.action.PurchaseActionType;
+import net.plexprison.plexpurchases.config.settings.LedgerSettings;
+import net.plexprison.plexpurchases.utils.Logger;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only record of every purchase, renewal and expiry delivered, keyed by the store's transaction ID, so a callback
+ * the store retries or sends twice is only delivered once. A transaction is only recorded once its delivery can no
+ * longer be lost, so a callback that failed or was still queued when the server crashed is delivered when retried.
+ * Records are {@code [length][kind][body][crc32]} appended to the tail segment; once it reaches the configured size it
+ * is sealed with an on-disk {@link LedgerIndex} and a new segment is started. Every transaction ID ever recorded is in
+ * an in-memory {@link TransactionBloomFilter}, so checking a new transaction is one hash and one probe, and only the
+ * rare possible duplicate is confirmed against the tail's IDs and the sealed segments' indexes.
+ * On startup only the tail segment is replayed, sealed segments are read through their indexes. A record torn by a
+ * crash fails its checksum and is cut off.
+ * Safe to call from any thread, every method is synchronized.
+ */
+public class PurchaseLedger {
+
+    private static final int MAGIC = 0x50504C31;
+    private static final int HEADER_SIZE = 8;
+    private static final byte KIND_EVENT = 1;
+    private static final int RECORD_OVERHEAD = 4 + 1 + 4;
+    private static final int EVENT_FIXED_BODY = 8 + 16 + 1 + 2 + 2;
+    private static final long FLUSH_INTERVAL_TICKS = 20L;
+    private static final Pattern SEGMENT_NAME = Pattern.compile("ledger-(\\d+)\\.log");
+
+    private final Plugin plugin;
+    private final LedgerSettings settings;
+    private final Path directory;
+    private final CRC32 crc;
+    private final List<LedgerIndex> sealed;
+    private final List<Path> sealedSegments;
+    // Read channels of the sealed segments, opened by the first lookup that needs one and kept until shutdown
+    private final List<FileChannel> sealedReaders;
+    // IDs, hashes and offsets of the tail segment's records, the hashes and offsets become its index when it is sealed
+    private final Set<String> tailIds;
+    private long[] tailHashes;
+    private int[] tailOffsets;
+    private int tailCount;
+    private int tailNumber;
+    private FileChannel tail;
+    private long tailPosition;
+    private TransactionBloomFilter bloom;
+    private boolean dirty;
+    private BukkitTask flushTask;
+    private final LongAdder duplicates;
+    private final LongAdder falsePositives;
+
+    /**
+     * Constructor for the purchase ledger
+     *
+     * @param plugin   The plugin instance
+     * @param settings The ledger settings
+     */
+    public PurchaseLedger(final Plugin plugin, final LedgerSettings settings) {
+        this.plugin = plugin;
+        this.settings = settings;
+        this.directory = plugin.getDataFolder().toPath().resolve("ledger");
+        this.crc = new CRC32();
+        this.sealed = new ArrayList<>();
+        this.sealedSegments = new ArrayList<>();
+        this.sealedReaders = new ArrayList<>();
+        this.tailIds = new HashSet<>();
+        this.tailHashes = new long[1024];
+        this.tailOffsets = new int[1024];
+        this.duplicates = new LongAdder();
+        this.falsePositives = new LongAdder();
+    }
+
+    /**
+     * Opens the sealed segments' indexes, replays the tail segment and starts flushing it in the background
+     *
+     * @throws IOException if the ledger can't be opened
+     */
+    public synchronized void start() throws IOException {
+        final long start = System.nanoTime();
+        Files.createDirectories(this.directory);
+
+        final List<Integer> numbers = new ArrayList<>();
+        try (final Stream<Path> files = Files.list(this.directory)) {
+            files.forEach(path -> {
+                final Matcher matcher = PurchaseLedger.SEGMENT_NAME.matcher(path.getFileName().toString());
+                if (matcher.matches()) {
+                    numbers.add(Integer.parseInt(matcher.group(1)));
+                }
+            });
+        }
+        numbers.sort(null);
+
+        // Every segment but the last is sealed, the last one is the tail even if a crash left an index for it
+        for (int i = 0; i < numbers.size() - 1; i++) {
+            this.openSealed(numbers.get(i));
+        }
+        this.tailNumber = numbers.isEmpty() ? 1 : numbers.get(numbers.size() - 1);
+        this.openTail();
+
+        long total = this.tailCount;
+        for (final LedgerIndex index : this.sealed) {
+            total += index.size();
+        }
+        this.rebuildBloom(Math.max(this.settings.getExpectedTransactions(), total * 2));
+
+        Logger.info("Purchase ledger opened with " + total + " transactions in " + (this.sealed.size() + 1) + " segments in "
+                + (System.nanoTime() - start) / 1_000_000L + "ms");
+
+        this.flushTask = this.plugin.getServer().getScheduler().runTaskTimerAsynchronously(this.plugin, this::flush,
+                PurchaseLedger.FLUSH_INTERVAL_TICKS, PurchaseLedger.FLUSH_INTERVAL_TICKS);
+    }
+
+    /**
+     * Stops flushing in the background and closes the tail segment and the sealed segments' read channels
+     */
+    public synchronized void shutdown() {
+        if (this.flushTask != null) {
+            this.flushTask.cancel();
+            this.flushTask = null;
+        }
+
+        if (this.tail != null) {
+            try {
+                this.flush();
+                this.tail.close();
+            } catch (final IOException e) {
+                Logger.error("Failed to close purchase ledger: " + e.getMessage());
+            }
+            this.tail = null;
+        }
+
+        for (int i = 0; i < this.sealedReaders.size(); i++) {
+            this.closeReader(i);
+        }
+    }
+
+    /**
+     * Records a transaction whose delivery is durable, unless it was recorded before
+     *
+     * @param transactionId The store's transaction ID
+     * @param player        The player's UUID
+     * @param purchaseId    The product or subscription ID
+     * @param type          Whether it is a purchase, renewal or expiry
+     * @return false if the transaction was already recorded
+     * @throws IOException if the record couldn't be written
+     */
+    public synchronized boolean record(final String transactionId, final UUID player, final String purchaseId, final PurchaseActionType type) throws IOException {
+        if (this.tail == null) {
+            throw new IOException("the purchase ledger isn't open");
+        }
+
+        // Callers check with contains first, so this only guards against recording twice and isn't counted
+        final long hash = TransactionBloomFilter.hash(transactionId);
+        if (this.bloom.mightContain(hash) && this.containsExact(transactionId, hash)) {
+            return false;
+        }
+
+        this.append(transactionId, hash, player, purchaseId, type);
+        this.bloom.add(hash);
+        if (this.bloom.isFull()) {
+            this.rebuildBloom(this.bloom.getCapacity() * 2);
+        }
+        return true;
+    }
+
+    /**
+     * Checks whether a transaction was recorded, call before delivering it
+     *
+     * @param transactionId The store's transaction ID
+     * @return true if it was recorded, it must then not be delivered again
+     */
+    public synchronized boolean contains(final String transactionId) {
+        final long hash = TransactionBloomFilter.hash(transactionId);
+        if (this.bloom == null || !this.bloom.mightContain(hash)) {
+            return false;
+        }
+        if (this.containsExact(transactionId, hash)) {
+            this.duplicates.increment();
+            return true;
+        }
+        this.falsePositives.increment();
+        return false;
+    }
+
+    /**
+     * Gets the number of recorded transactions
+     *
+     * @return The transaction count
+     */
+    public synchronized long size() {
+        long total = this.tailCount;
+        for (final LedgerIndex index : this.sealed) {
+            total += index.size();
+        }
+        return total;
+    }
+
+    /**
+     * Gets the number of transactions turned away as duplicates
+     *
+     * @return The total since startup
+     */
+    public long getDuplicates() {
+        return this.duplicates.sum();
+    }
+
+    /**
+     * Gets the number of new transactions the Bloom filter reported as possibly seen, each cost an index lookup
+     *
+     * @return The total since startup
+     */
+    public long getFalsePositives() {
+        return this.falsePositives.sum();
+    }
+
+    /**
+     * Forces written records to disk. Records already survive a process crash once appended, this covers power loss.
+     */
+    private synchronized void flush() {
+        if (!this.dirty || this.tail == null) {
+            return;
+        }
+
+        try {
+            this.tail.force(false);
+            this.dirty = false;
+        } catch (final IOException e) {
+            Logger.error("Failed to flush purchase ledger: " + e.getMessage());
+        }
+    }
+
+    private void append(final String transactionId, final long hash, final UUID player, final String purchaseId, final PurchaseActionType type) throws IOException {
+        final byte[] transactionBytes = transactionId.getBytes(StandardCharsets.UTF_8);
+        final byte[] purchaseBytes = purchaseId.getBytes(StandardCharsets.UTF_8);
+        if (transactionBytes.length > 0xFFFF || purchaseBytes.length > 0xFFFF) {
+            throw new IllegalArgumentException("transaction or purchase id is too long: " + transactionId);
+        }
+
+        final int length = PurchaseLedger.EVENT_FIXED_BODY + transactionBytes.length + purchaseBytes.length;
+        if (this.tailPosition + PurchaseLedger.RECORD_OVERHEAD + length > this.settings.getSegmentSizeMegabytes() * 1024L * 1024L && this.tailCount > 0) {
+            this.seal();
+        }
+
+        final ByteBuffer record = ByteBuffer.allocate(PurchaseLedger.RECORD_OVERHEAD + length);
+        record.putInt(length).put(PurchaseLedger.KIND_EVENT)
+                .putLong(System.currentTimeMillis())
+                .putLong(player.getMostSignificantBits())
+                .putLong(player.getLeastSignificantBits())
+                .put((byte) type.ordinal())
+                .putShort((short) transactionBytes.length).put(transactionBytes)
+                .putShort((short) purchaseBytes.length).put(purchaseBytes);
+        this.crc.reset();
+        this.crc.update(record.array(), 4, 1 + length);
+        record.putInt((int) this.crc.getValue()).flip();
+
+        final int offset = (int) this.tailPosition;
+        while (record.hasRemaining()) {
+            this.tailPosition += this.tail.write(record, this.tailPosition);
+        }
+        this.dirty = true;
+        this.addToTail(transactionId, hash, offset);
+    }
+
+    /**
+     * Writes the tail segment's index and starts a new tail segment
+     */
+    private void seal() throws IOException {
+        final long start = System.nanoTime();
+        this.tail.force(true);
+        final Path indexFile = this.indexFile(this.tailNumber);
+        LedgerIndex.write(indexFile, this.tailHashes, this.tailOffsets, this.tailCount);
+        this.sealed.add(LedgerIndex.open(indexFile));
+        this.sealedSegments.add(this.segmentFile(this.tailNumber));
+        this.sealedReaders.add(null);
+        this.tail.close();
+
+        final int sealedCount = this.tailCount;
+        this.tailNumber++;
+        this.tailIds.clear();
+        this.tailCount = 0;
+        this.openTail();
+        // Measured now, the message is only built later on the logger thread
+        final long elapsedMillis = (System.nanoTime() - start) / 1_000_000L;
+        Logger.debug(() -> "Sealed purchase ledger segment with " + sealedCount + " transactions in " + elapsedMillis + "ms");
+    }
+
+    /**
+     * Opens the index of a sealed segment, rebuilding it from the segment if a crash interrupted sealing
+     */
+    private void openSealed(final int number) throws IOException {
+        final Path indexFile = this.indexFile(number);
+        LedgerIndex index;
+        try {
+            index = LedgerIndex.open(indexFile);
+        } catch (final IOException e) {
+            Logger.warning("Rebuilding purchase ledger index " + indexFile.getFileName() + ": " + e.getMessage());
+            this.tailIds.clear();
+            this.tailCount = 0;
+            try (final FileChannel channel = FileChannel.open(this.segmentFile(number), StandardOpenOption.READ)) {
+                this.replay(channel, number);
+            }
+            LedgerIndex.write(indexFile, this.tailHashes, this.tailOffsets, this.tailCount);
+            index = LedgerIndex.open(indexFile);
+            this.tailIds.clear();
+            this.tailCount = 0;
+        }
+
+        this.sealed.add(index);
+        this.sealedSegments.add(this.segmentFile(number));
+        this.sealedReaders.add(null);
+    }
+
+    /**
+     * Opens the tail segment, creating it or replaying it and cutting off a torn last record
+     */
+    private void openTail() throws IOException {
+        this.tail = FileChannel.open(this.segmentFile(this.tailNumber), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (this.tail.size() < PurchaseLedger.HEADER_SIZE) {
+            // New, or created just before a crash
+            this.tail.truncate(0);
+            final ByteBuffer header = ByteBuffer.allocate(PurchaseLedger.HEADER_SIZE);
+            header.putInt(PurchaseLedger.MAGIC).putInt(this.tailNumber).flip();
+            while (header.hasRemaining()) {
+                this.tail.write(header, PurchaseLedger.HEADER_SIZE - header.remaining());
+            }
+            this.tailPosition = PurchaseLedger.HEADER_SIZE;
+            this.dirty = true;
+            return;
+        }
+
+        this.tailPosition = this.replay(this.tail, this.tailNumber);
+        if (this.tailPosition < this.tail.size()) {
+            Logger.warning("Purchase ledger ends with a torn record at byte " + this.tailPosition + ", cutting it off");
+            this.tail.truncate(this.tailPosition);
+        }
+        // A stale index from an interrupted seal would be mistaken for this segment's on the next start
+        Files.deleteIfExists(this.indexFile(this.tailNumber));
+    }
+
+    /**
+     * Reads every intact record of a segment into the tail structures
+     *
+     * @return The offset after the last intact record
+     */
+    private int replay(final FileChannel channel, final int number) throws IOException {
+        final long size = channel.size();
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("purchase ledger segment " + number + " is larger than 2GB");
+        }
+
+        final ByteBuffer buffer = ByteBuffer.allocate((int) size);
+        while (buffer.hasRemaining() && channel.read(buffer, buffer.position()) >= 0) {
+            // Keep reading until the whole segment is in memory
+        }
+        if (size < PurchaseLedger.HEADER_SIZE || buffer.getInt(0) != PurchaseLedger.MAGIC) {
+            throw new IOException("ledger-" + number + " is not a purchase ledger segment");
+        }
+
+        int offset = PurchaseLedger.HEADER_SIZE;
+        while (offset + PurchaseLedger.RECORD_OVERHEAD <= size) {
+            final int length = buffer.getInt(offset);
+            if (length < PurchaseLedger.EVENT_FIXED_BODY || length > size - offset - PurchaseLedger.RECORD_OVERHEAD) {
+                break;
+            }
+            this.crc.reset();
+            this.crc.update(buffer.array(), offset + 4, 1 + length);
+            if ((int) this.crc.getValue() != buffer.getInt(offset + 5 + length)) {
+                break;
+            }
+
+            final String transactionId = PurchaseLedger.readTransactionId(buffer, offset);
+            this.addToTail(transactionId, TransactionBloomFilter.hash(transactionId), offset);
+            offset += PurchaseLedger.RECORD_OVERHEAD + length;
+        }
+        return offset;
+    }
+
+    private void addToTail(final String transactionId, final long hash, final int offset) {
+        if (this.tailCount == this.tailHashes.length) {
+            this.tailHashes = Arrays.copyOf(this.tailHashes, this.tailCount * 2);
+            this.tailOffsets = Arrays.copyOf(this.tailOffsets, this.tailCount * 2);
+        }
+        this.tailHashes[this.tailCount] = hash;
+        this.tailOffsets[this.tailCount] = offset;
+        this.tailCount++;
+        this.tailIds.add(transactionId);
+    }
+
+    private boolean containsExact(final String transactionId, final long hash) {
+        if (this.tailIds.contains(transactionId)) {
+            return true;
+        }
+
+        // Newest first, retries usually arrive soon after the original
+        for (int i = this.sealed.size() - 1; i >= 0; i--) {
+            final int segment = i;
+            if (this.sealed.get(i).anyMatch(hash, offset -> this.readTransactionId(segment, offset).equals(transactionId))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private String readTransactionId(final int segment, final int offset) {
+        try {
+            FileChannel channel = this.sealedReaders.get(segment);
+            if (channel == null) {
+                channel = FileChannel.open(this.sealedSegments.get(segment), StandardOpenOption.READ);
+                this.sealedReaders.set(segment, channel);
+            }
+
+            final ByteBuffer header = ByteBuffer.allocate(4);
+            while (header.hasRemaining() && channel.read(header, offset + header.position()) >= 0) {
+                // Keep reading until the whole length is in memory
+            }
+            final ByteBuffer record = ByteBuffer.allocate(5 + header.getInt(0));
+            while (record.hasRemaining() && channel.read(record, offset + record.position()) >= 0) {
+                // Keep reading until the whole record is in memory
+            }
+            return PurchaseLedger.readTransactionId(record, 0);
+        } catch (final IOException | RuntimeException e) {
+            // Treated as a different transaction, delivering twice beats never delivering. Reopened by the next lookup
+            Logger.error("Failed to read purchase ledger " + this.sealedSegments.get(segment).getFileName() + " at byte " + offset + ": " + e.getMessage());
+            this.closeReader(segment);
+            return "";
+        }
+    }
+
+    private void closeReader(final int segment) {
+        final FileChannel channel = this.sealedReaders.set(segment, null);
+        if (channel == null) {
+            return;
+        }
+
+        try {
+            channel.close();
+        } catch (final IOException e) {
+            Logger.warning("Failed to close purchase ledger " + this.sealedSegments.get(segment).getFileName() + ": " + e.getMessage());
+        }
+    }
+
+    private static String readTransactionId(final ByteBuffer buffer, final int offset) {
+        final int body = offset + 5;
+        final int length = buffer.getShort(body + 25) & 0xFFFF;
+        return new String(buffer.array(), body + 27, length, StandardCharsets.UTF_8);
+    }
+
+    private void rebuildBloom(final long capacity) {
+        final TransactionBloomFilter rebuilt = new TransactionBloomFilter(capacity);
+        for (final LedgerIndex index : this.sealed) {
+            index.forEachHash(rebuilt::add);
+        }
+        for (int i = 0; i < this.tailCount; i++) {
+            rebuilt.add(this.tailHashes[i]);
+        }
+        this.bloom = rebuilt;
+    }
+
+    private Path segmentFile(final int number) {
+        return this.directory.resolve(String.format("ledger-%08d.log", number));
+    }
+
+    private Path indexFile(final int number) {
+        return this.directory.resolve(String.format("ledger-%08d.idx", number));
+    }
+
+}
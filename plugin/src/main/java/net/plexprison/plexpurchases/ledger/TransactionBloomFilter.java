@@ -0,0 +1,138 @@
+package net.plexprison.plexpurchases.ledger;
+
+/**
+ * Blocked Bloom filter of transaction ID hashes.
+ * All the bits of one hash fall in a single 64-bit word, so adding or checking a transaction touches one word of
+ * memory. That costs precision: the number of transactions per word varies, and crowded words answer yes more often,
+ * so a blocked filter needs more bits per transaction than a classic one for the same rate. The filter is sized for
+ * {@link #TARGET_FALSE_POSITIVE_RATE}, about 1 in 1000 unseen transactions is reported as possibly seen, which the
+ * ledger then rules out against its on-disk index. Not thread safe.
+ */
+final class TransactionBloomFilter {
+
+    // 1 in 1000 unseen transactions cost an index lookup when the filter is full
+    private static final double TARGET_FALSE_POSITIVE_RATE = 0.001;
+    // Six 6-bit slices of the hash, close to the best count for a 64-bit word at this size
+    private static final int HASHES = 6;
+    // 24 for the target above, where a classic Bloom filter would need about 15
+    private static final int BITS_PER_ENTRY = TransactionBloomFilter.bitsPerEntryFor(TransactionBloomFilter.TARGET_FALSE_POSITIVE_RATE);
+
+    private final long[] words;
+    private final long capacity;
+    private long size;
+
+    /**
+     * Constructor for an empty filter
+     *
+     * @param capacity The number of transactions the filter is sized for, it still works past this but gets less precise
+     */
+    TransactionBloomFilter(final long capacity) {
+        this.capacity = Math.max(1024, capacity);
+        final long words = Math.max(1, this.capacity * TransactionBloomFilter.BITS_PER_ENTRY / Long.SIZE);
+        this.words = new long[(int) Math.min(Integer.MAX_VALUE - 8, words)];
+    }
+
+    /**
+     * Adds a transaction
+     *
+     * @param hash The transaction ID hash, from {@link #hash(String)}
+     */
+    void add(final long hash) {
+        this.words[this.wordIndex(hash)] |= TransactionBloomFilter.mask(hash);
+        this.size++;
+    }
+
+    /**
+     * Checks whether a transaction may have been added
+     *
+     * @param hash The transaction ID hash, from {@link #hash(String)}
+     * @return false if it definitely wasn't added, true if it probably was
+     */
+    boolean mightContain(final long hash) {
+        final long mask = TransactionBloomFilter.mask(hash);
+        return (this.words[this.wordIndex(hash)] & mask) == mask;
+    }
+
+    /**
+     * Checks whether more transactions were added than the filter was sized for
+     *
+     * @return true if the filter should be rebuilt larger
+     */
+    boolean isFull() {
+        return this.size > this.capacity;
+    }
+
+    /**
+     * Gets the number of transactions the filter is sized for
+     *
+     * @return The capacity
+     */
+    long getCapacity() {
+        return this.capacity;
+    }
+
+    /**
+     * Hashes a transaction ID, the same hash is stored in the on-disk index
+     *
+     * @param transactionId The transaction ID
+     * @return A well-mixed 64-bit hash
+     */
+    static long hash(final String transactionId) {
+        // FNV-1a over the chars, then the murmur3 finalizer to spread the bits
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < transactionId.length(); i++) {
+            hash ^= transactionId.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    /**
+     * Gets the expected false positive rate of a full filter, averaging over how many transactions a word holds
+     *
+     * @param bitsPerEntry The bits per transaction
+     * @return The chance an unseen transaction is reported as possibly seen
+     */
+    static double falsePositiveRate(final int bitsPerEntry) {
+        // The transactions in one word are Poisson distributed around the word size divided by the bits per transaction
+        final double mean = (double) Long.SIZE / bitsPerEntry;
+        double probability = Math.exp(-mean);
+        double rate = 0;
+        for (int count = 0; count < Long.SIZE * 2; count++) {
+            if (count > 0) {
+                probability *= mean / count;
+            }
+            final double bitSet = 1 - Math.pow(1 - 1D / Long.SIZE, (double) TransactionBloomFilter.HASHES * count);
+            rate += probability * Math.pow(bitSet, TransactionBloomFilter.HASHES);
+        }
+        return rate;
+    }
+
+    private static int bitsPerEntryFor(final double targetRate) {
+        int bitsPerEntry = 8;
+        while (TransactionBloomFilter.falsePositiveRate(bitsPerEntry) > targetRate) {
+            bitsPerEntry++;
+        }
+        return bitsPerEntry;
+    }
+
+    private int wordIndex(final long hash) {
+        // The high half picks the word, multiply-shift avoids a division
+        return (int) (((hash >>> 32) * this.words.length) >>> 32);
+    }
+
+    private static long mask(final long hash) {
+        // The low half supplies six bit positions of six bits each
+        long mask = 0;
+        for (int i = 0; i < TransactionBloomFilter.HASHES; i++) {
+            mask |= 1L << ((hash >>> (i * 6)) & 63);
+        }
+        return mask;
+    }
+
+}
@@ -0,0 +1,37 @@
+package net.plexprison.plexpurchases.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A count that only goes up, cheap to increment from many threads at once
+ */
+public final class Counter {
+
+    private final LongAdder adder = new LongAdder();
+
+    /**
+     * Adds one to the count
+     */
+    public void increment() {
+        this.adder.increment();
+    }
+
+    /**
+     * Adds to the count
+     *
+     * @param amount The amount to add, must not be negative
+     */
+    public void add(final long amount) {
+        this.adder.add(amount);
+    }
+
+    /**
+     * Gets the count
+     *
+     * @return The count since startup
+     */
+    public long get() {
+        return this.adder.sum();
+    }
+
+}
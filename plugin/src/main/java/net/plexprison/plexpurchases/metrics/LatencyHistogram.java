@@ -0,0 +1,140 @@
+package net.plexprison.plexpurchases.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Records durations into log-linear buckets, like an HDR histogram with one significant digit.
+ * Every power of two is split into 8 buckets, so a recorded value is known to within 12.5% from 8ns up to about
+ * 18 minutes, and recording is a bucket lookup plus a {@link LongAdder} increment, safe from any thread.
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << LatencyHistogram.SUB_BUCKET_BITS;
+    // Longer durations are recorded as this, about 18 minutes
+    private static final long MAX_VALUE = (1L << 40) - 1;
+    private static final int BUCKETS = LatencyHistogram.indexOf(LatencyHistogram.MAX_VALUE) + 1;
+
+    private final LongAdder[] buckets;
+    private final LongAdder count;
+    private final LongAdder sum;
+    private final AtomicLong max;
+
+    /**
+     * Constructor for an empty histogram
+     */
+    public LatencyHistogram() {
+        this.buckets = new LongAdder[LatencyHistogram.BUCKETS];
+        for (int i = 0; i < this.buckets.length; i++) {
+            this.buckets[i] = new LongAdder();
+        }
+        this.count = new LongAdder();
+        this.sum = new LongAdder();
+        this.max = new AtomicLong();
+    }
+
+    /**
+     * Records a duration
+     *
+     * @param nanos The duration in nanoseconds, negative values are recorded as 0
+     */
+    public void record(final long nanos) {
+        final long value = Math.max(0, Math.min(nanos, LatencyHistogram.MAX_VALUE));
+        this.buckets[LatencyHistogram.indexOf(value)].increment();
+        this.count.increment();
+        this.sum.add(value);
+        if (value > this.max.get()) {
+            this.max.accumulateAndGet(value, Math::max);
+        }
+    }
+
+    /**
+     * Records the time since a start time
+     *
+     * @param startNanos The start, from {@link System#nanoTime()}
+     */
+    public void recordSince(final long startNanos) {
+        this.record(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Gets the number of recorded durations
+     *
+     * @return The count since startup
+     */
+    public long getCount() {
+        return this.count.sum();
+    }
+
+    /**
+     * Gets the total of every recorded duration
+     *
+     * @param unit The unit to return it in
+     * @return The sum
+     */
+    public double getSum(final TimeUnit unit) {
+        return this.sum.sum() / (double) unit.toNanos(1);
+    }
+
+    /**
+     * Gets the longest recorded duration
+     *
+     * @param unit The unit to return it in
+     * @return The maximum, 0 if nothing was recorded
+     */
+    public double getMax(final TimeUnit unit) {
+        return this.max.get() / (double) unit.toNanos(1);
+    }
+
+    /**
+     * Estimates a percentile of the recorded durations
+     *
+     * @param quantile The quantile, between 0 and 1
+     * @param unit     The unit to return it in
+     * @return The upper bound of the bucket holding the quantile, 0 if nothing was recorded
+     */
+    public double getQuantile(final double quantile, final TimeUnit unit) {
+        final long[] counts = new long[this.buckets.length];
+        long total = 0;
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = this.buckets[i].sum();
+            total += counts[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+
+        final long target = Math.max(1, (long) Math.ceil(quantile * total));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= target) {
+                return Math.min(LatencyHistogram.upperBound(i), this.max.get()) / (double) unit.toNanos(1);
+            }
+        }
+        return this.getMax(unit);
+    }
+
+    private static int indexOf(final long value) {
+        if (value < LatencyHistogram.SUB_BUCKETS) {
+            return (int) value;
+        }
+
+        final int exponent = 63 - Long.numberOfLeadingZeros(value);
+        final int subBucket = (int) (value >>> (exponent - LatencyHistogram.SUB_BUCKET_BITS)) & (LatencyHistogram.SUB_BUCKETS - 1);
+        return (exponent - LatencyHistogram.SUB_BUCKET_BITS + 1) * LatencyHistogram.SUB_BUCKETS + subBucket;
+    }
+
+    private static long upperBound(final int index) {
+        if (index < LatencyHistogram.SUB_BUCKETS) {
+            return index;
+        }
+
+        final int shift = index / LatencyHistogram.SUB_BUCKETS - 1;
+        final long lower = (long) (LatencyHistogram.SUB_BUCKETS + index % LatencyHistogram.SUB_BUCKETS) << shift;
+        return lower + (1L << shift) - 1;
+    }
+
+}
@@ -0,0 +1,88 @@
+package net.plexprison.plexpurchases.metrics;
+
+import net.plexprison.plexpurchases.config.settings.MetricsSettings;
+import net.plexprison.plexpurchases.utils.Logger;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Periodically writes {@link PluginMetrics} to a file in the Prometheus text format, for the node exporter's textfile
+ * collector or anything else that scrapes files. Writes happen off the server thread into a temporary file that is
+ * moved into place, so a reader never sees a half-written file.
+ */
+public class MetricsExporter {
+
+    private final Plugin plugin;
+    private final MetricsSettings settings;
+    private final Path file;
+    private BukkitTask task;
+    private boolean failing;
+
+    /**
+     * Constructor for the metrics exporter
+     *
+     * @param plugin   The plugin instance
+     * @param settings The metrics settings
+     */
+    public MetricsExporter(final Plugin plugin, final MetricsSettings settings) {
+        this.plugin = plugin;
+        this.settings = settings;
+        this.file = plugin.getDataFolder().toPath().resolve(settings.getFile());
+    }
+
+    /**
+     * Starts writing the metrics file, does nothing if it is disabled
+     */
+    public void start() {
+        if (!this.settings.isEnabled()) {
+            return;
+        }
+
+        final long intervalTicks = Math.max(1L, this.settings.getWriteIntervalSeconds()) * 20L;
+        this.task = this.plugin.getServer().getScheduler().runTaskTimerAsynchronously(this.plugin, this::write, intervalTicks, intervalTicks);
+        Logger.info("Writing metrics to " + this.file + " every " + Math.max(1L, this.settings.getWriteIntervalSeconds()) + " seconds");
+    }
+
+    /**
+     * Stops writing the metrics file, writing it one last time
+     */
+    public void shutdown() {
+        if (this.task == null) {
+            return;
+        }
+
+        this.task.cancel();
+        this.task = null;
+        this.write();
+    }
+
+    /**
+     * Writes the metrics file once
+     */
+    private synchronized void write() {
+        final StringBuilder out = new StringBuilder(4096);
+        PluginMetrics.writePrometheus(out);
+
+        final Path temp = this.file.resolveSibling(this.file.getFileName() + ".tmp");
+        try {
+            Files.createDirectories(this.file.toAbsolutePath().getParent());
+            Files.writeString(temp, out, StandardCharsets.UTF_8);
+            Files.move(temp, this.file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            this.failing = false;
+
+        } catch (final IOException e) {
+            // Logged once until a write succeeds again, rather than every interval
+            if (!this.failing) {
+                this.failing = true;
+                Logger.error("Failed to write metrics to " + this.file + ", will keep trying: " + e.getMessage());
+            }
+        }
+    }
+
+}
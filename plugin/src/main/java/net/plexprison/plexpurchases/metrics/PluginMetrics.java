@@ -0,0 +1,204 @@
+package net.plexprison.plexpurchases.metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.DoubleSupplier;
+import java.util.function.LongSupplier;
+
+/**
+ * Registry of the plugin's metrics, exported in the Prometheus text format and shown by /store metrics.
+ * Counters and latency histograms are static so hot paths record into them without looking anything up. Values other
+ * components already track, such as queue depths, are registered as suppliers that are only read when exporting.
+ * Metric names follow the Prometheus conventions, durations are exported in seconds.
+ */
+public final class PluginMetrics {
+
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    // Sorted by name so exports are stable, declared first so the instruments below can register
+    private static final Map<String, Metric> METRICS = new ConcurrentSkipListMap<>();
+
+    /**
+     * Time to parse and validate one purchase file, files taken from the compiled catalog cache aren't included
+     */
+    public static final LatencyHistogram FILE_PARSE_TIME = PluginMetrics.histogram("plexpurchases_file_parse_seconds",
+            "Time to parse and validate one purchase file");
+    /**
+     * Purchase files parsed
+     */
+    public static final Counter FILES_PARSED = PluginMetrics.counter("plexpurchases_files_parsed_total",
+            "Purchase files parsed");
+    /**
+     * Purchase files taken from the compiled catalog cache
+     */
+    public static final Counter FILES_CACHED = PluginMetrics.counter("plexpurchases_files_cached_total",
+            "Purchase files taken from the compiled catalog cache");
+    /**
+     * Purchases looked up by product or subscription ID
+     */
+    public static final Counter LOOKUPS = PluginMetrics.counter("plexpurchases_lookups_total",
+            "Purchases looked up by product or subscription ID");
+    /**
+     * Time from receiving a store callback to handing it over for delivery, including the time it waited to be grouped
+     */
+    public static final LatencyHistogram CALLBACK_TIME = PluginMetrics.histogram("plexpurchases_callback_seconds",
+            "Time from receiving a store callback to handing it over for delivery");
+    /**
+     * Store callbacks for purchases that aren't configured
+     */
+    public static final Counter UNKNOWN_CALLBACKS = PluginMetrics.counter("plexpurchases_callbacks_unknown_total",
+            "Store callbacks for purchases that aren't configured");
+    /**
+     * Store callbacks turned away because their transaction was already handled
+     */
+    public static final Counter DUPLICATE_CALLBACKS = PluginMetrics.counter("plexpurchases_callbacks_duplicate_total",
+            "Store callbacks turned away because their transaction was already handled");
+    /**
+     * Main thread time the action dispatcher used each tick
+     */
+    public static final LatencyHistogram DISPATCH_TICK_TIME = PluginMetrics.histogram("plexpurchases_dispatch_tick_seconds",
+            "Main thread time the action dispatcher used each tick");
+
+    private PluginMetrics() {
+    }
+
+    /**
+     * Registers a counter the plugin increments itself
+     *
+     * @param name The metric name
+     * @param help The description exported with it
+     * @return The counter
+     */
+    public static Counter counter(final String name, final String help) {
+        final Counter counter = new Counter();
+        PluginMetrics.METRICS.put(name, new Metric(name, help, "counter", counter, false));
+        return counter;
+    }
+
+    /**
+     * Registers a latency histogram, exported as a summary
+     *
+     * @param name The metric name, ending in _seconds
+     * @param help The description exported with it
+     * @return The histogram
+     */
+    public static LatencyHistogram histogram(final String name, final String help) {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        PluginMetrics.METRICS.put(name, new Metric(name, help, "summary", histogram, false));
+        return histogram;
+    }
+
+    /**
+     * Registers a counter whose total is kept elsewhere, replacing any earlier one with the same name
+     *
+     * @param name  The metric name, ending in _total
+     * @param help  The description exported with it
+     * @param total Reads the total, from any thread
+     */
+    public static void counter(final String name, final String help, final LongSupplier total) {
+        PluginMetrics.METRICS.put(name, new Metric(name, help, "counter", total, true));
+    }
+
+    /**
+     * Registers a gauge, replacing any earlier one with the same name
+     *
+     * @param name  The metric name
+     * @param help  The description exported with it
+     * @param value Reads the current value, from any thread
+     */
+    public static void gauge(final String name, final String help, final DoubleSupplier value) {
+        PluginMetrics.METRICS.put(name, new Metric(name, help, "gauge", value, true));
+    }
+
+    /**
+     * Drops every supplied counter and gauge so the components they read can be collected, call on shutdown
+     */
+    public static void clearSupplied() {
+        PluginMetrics.METRICS.values().removeIf(Metric::supplied);
+    }
+
+    /**
+     * Writes every metric in the Prometheus text exposition format
+     *
+     * @param out The builder to append to
+     */
+    public static void writePrometheus(final StringBuilder out) {
+        for (final Metric metric : PluginMetrics.METRICS.values()) {
+            out.append("# HELP ").append(metric.name()).append(' ').append(metric.help()).append('\n');
+            out.append("# TYPE ").append(metric.name()).append(' ').append(metric.type()).append('\n');
+
+            if (metric.source() instanceof final LatencyHistogram histogram) {
+                for (final double quantile : PluginMetrics.QUANTILES) {
+                    out.append(metric.name()).append("{quantile=\"").append(quantile).append("\"} ")
+                            .append(histogram.getQuantile(quantile, TimeUnit.SECONDS)).append('\n');
+                }
+                out.append(metric.name()).append("_sum ").append(histogram.getSum(TimeUnit.SECONDS)).append('\n');
+                out.append(metric.name()).append("_count ").append(histogram.getCount()).append('\n');
+            } else {
+                out.append(metric.name()).append(' ');
+                PluginMetrics.appendValue(out, metric);
+                out.append('\n');
+            }
+        }
+    }
+
+    /**
+     * Describes every metric in one short line each, for showing in chat
+     *
+     * @return The lines, sorted by metric name
+     */
+    public static List<String> describe() {
+        final List<String> lines = new ArrayList<>(PluginMetrics.METRICS.size());
+        for (final Metric metric : PluginMetrics.METRICS.values()) {
+            final String name = metric.name().startsWith("plexpurchases_") ? metric.name().substring("plexpurchases_".length()) : metric.name();
+            final StringBuilder line = new StringBuilder(name).append(": ");
+
+            if (metric.source() instanceof final LatencyHistogram histogram) {
+                line.append(histogram.getCount()).append(" recorded");
+                if (histogram.getCount() > 0) {
+                    line.append(String.format(Locale.ROOT, ", p50 %.3fms, p99 %.3fms, max %.3fms",
+                            histogram.getQuantile(0.5, TimeUnit.MILLISECONDS),
+                            histogram.getQuantile(0.99, TimeUnit.MILLISECONDS),
+                            histogram.getMax(TimeUnit.MILLISECONDS)));
+                }
+            } else {
+                PluginMetrics.appendValue(line, metric);
+            }
+            lines.add(line.toString());
+        }
+        return lines;
+    }
+
+    private static void appendValue(final StringBuilder out, final Metric metric) {
+        try {
+            if (metric.source() instanceof final Counter counter) {
+                out.append(counter.get());
+            } else if (metric.source() instanceof final LongSupplier total) {
+                out.append(total.getAsLong());
+            } else if (metric.source() instanceof final DoubleSupplier value) {
+                final double current = value.getAsDouble();
+                out.append(Double.isNaN(current) ? "NaN" : Double.toString(current));
+            }
+        } catch (final RuntimeException e) {
+            // A component that is shutting down shouldn't break the whole export
+            out.append("NaN");
+        }
+    }
+
+    /**
+     * A registered metric
+     *
+     * @param name     The metric name
+     * @param help     The description
+     * @param type     The Prometheus type
+     * @param source   The {@link Counter}, {@link LatencyHistogram}, {@link LongSupplier} or {@link DoubleSupplier} read
+     * @param supplied true if it reads a value kept by another component
+     */
+    private record Metric(String name, String help, String type, Object source, boolean supplied) {
+    }
+
+}
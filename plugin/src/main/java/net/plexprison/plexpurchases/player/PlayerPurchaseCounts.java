@@ -0,0 +1,147 @@
+package net.plexprison.plexpurchases.player;
+
+import net.plexprison.plexpurchases.config.ConfiguredPlexPurchasesObject;
+import net.plexprison.plexpurchases.config.holder.PurchaseCatalog;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * One player's purchase state, indexed by each purchase's dense index in the catalog it was built for.
+ * Never modified once published: every change builds a copy, so readers can use the arrays without locking.
+ * Only read it, the arrays must not be modified.
+ *
+ * @param catalog The catalog the indexes belong to
+ * @param counts  The purchase count of every purchase in the catalog, or only the purchases recorded since the player
+ *                joined while the state isn't loaded yet
+ * @param owned   The purchases the player currently owns, a subscription stops being owned when it expires
+ * @param loaded  Whether the state has been read from the player's permissions yet
+ */
+public record PlayerPurchaseCounts(PurchaseCatalog catalog, int[] counts, BitSet owned, boolean loaded) {
+
+    /**
+     * Creates empty state for a player whose permissions haven't been read yet
+     *
+     * @param catalog The current catalog
+     * @return The empty state
+     */
+    static PlayerPurchaseCounts empty(final PurchaseCatalog catalog) {
+        return new PlayerPurchaseCounts(catalog, new int[catalog.size()], new BitSet(catalog.size()), false);
+    }
+
+    /**
+     * Gets the index of a purchase in this state, which may come from a newer catalog than the state was built for
+     *
+     * @param purchase The purchase
+     * @return The index, or -1 if the purchase isn't in the catalog this state was built for
+     */
+    int indexOf(final ConfiguredPlexPurchasesObject purchase) {
+        final int index = this.catalog.indexOf(purchase);
+        if (index != -1) {
+            return index;
+        }
+
+        final ConfiguredPlexPurchasesObject current = this.catalog.getById(purchase.getPurchaseId());
+        return current == null ? -1 : this.catalog.indexOf(current);
+    }
+
+    /**
+     * Gets how many times the player has bought a purchase
+     *
+     * @param index The dense index of the purchase in {@link #catalog()}
+     * @return The purchase count
+     */
+    public int getCount(final int index) {
+        return this.counts[index];
+    }
+
+    /**
+     * Checks whether the player currently owns a purchase
+     *
+     * @param index The dense index of the purchase in {@link #catalog()}
+     * @return true if owned
+     */
+    public boolean isOwned(final int index) {
+        return this.owned.get(index);
+    }
+
+    /**
+     * Checks whether the player can buy a purchase, according to whether it is repeatable and its dependency chain
+     *
+     * @param index The dense index of the purchase in {@link #catalog()}
+     * @return true if the player may buy it
+     */
+    public boolean canPurchase(final int index) {
+        return this.catalog.getDependencyGraph().canPurchase(index, this.owned, this.counts);
+    }
+
+    /**
+     * Copies this state with one purchase changed
+     *
+     * @param index The dense index of the purchase
+     * @param count The new purchase count
+     * @param own   Whether the player now owns the purchase
+     * @return The updated copy
+     */
+    PlayerPurchaseCounts with(final int index, final int count, final boolean own) {
+        final int[] updatedCounts = Arrays.copyOf(this.counts, this.counts.length);
+        final BitSet updatedOwned = (BitSet) this.owned.clone();
+        updatedCounts[index] = count;
+        updatedOwned.set(index, own);
+        return new PlayerPurchaseCounts(this.catalog, updatedCounts, updatedOwned, this.loaded);
+    }
+
+    /**
+     * Combines this state with state probed from permissions or saved counts, keeping anything owned in either.
+     * While this state isn't loaded its counts are the purchases recorded during loading, which the probed state
+     * can't hold, so they are added on top of it. Once loaded this state holds every recorded purchase and the
+     * higher of the two counts is kept.
+     *
+     * @param probed The probed state, which may be for another catalog
+     * @return The combined state, marked loaded
+     */
+    PlayerPurchaseCounts merge(final PlayerPurchaseCounts probed) {
+        final int[] mergedCounts = Arrays.copyOf(this.counts, this.counts.length);
+        final BitSet mergedOwned = (BitSet) this.owned.clone();
+
+        for (int i = 0; i < probed.counts.length; i++) {
+            if (probed.counts[i] == 0 && !probed.owned.get(i)) {
+                continue;
+            }
+
+            // The catalog may have been swapped while probing
+            final int index = probed.catalog == this.catalog ? i : this.indexOf(probed.catalog.get(i));
+            if (index != -1) {
+                mergedCounts[index] = this.loaded ? Math.max(mergedCounts[index], probed.counts[i]) : mergedCounts[index] + probed.counts[i];
+                mergedOwned.set(index, mergedOwned.get(index) || probed.owned.get(i));
+            }
+        }
+        return new PlayerPurchaseCounts(this.catalog, mergedCounts, mergedOwned, true);
+    }
+
+    /**
+     * Moves the state over to a new catalog, matching purchases by ID
+     *
+     * @param target The new catalog
+     * @return The state for the new catalog
+     */
+    PlayerPurchaseCounts remap(final PurchaseCatalog target) {
+        final int[] remappedCounts = new int[target.size()];
+        final BitSet remappedOwned = new BitSet(target.size());
+
+        for (int i = 0; i < this.counts.length; i++) {
+            if (this.counts[i] == 0 && !this.owned.get(i)) {
+                continue;
+            }
+
+            final ConfiguredPlexPurchasesObject purchase = target.getById(this.catalog.get(i).getPurchaseId());
+            if (purchase != null) {
+                final int index = target.indexOf(purchase);
+                remappedCounts[index] = this.counts[i];
+                remappedOwned.set(index, this.owned.get(i));
+            }
+        }
+        return new PlayerPurchaseCounts(target, remappedCounts, remappedOwned, this.loaded);
+    }
+
+}
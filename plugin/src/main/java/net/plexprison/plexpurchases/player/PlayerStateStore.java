@@ -0,0 +1,458 @@
+package net.plexprison.plexpurchases.player;
+
+import net.plexprison.plexpurchases.config.ConfiguredPlexPurchasesObject;
+import net.plexprison.plexpurchases.config.holder.PurchaseCatalog;
+import net.plexprison.plexpurchases.config.settings.PlayerStateSettings;
+import net.plexprison.plexpurchases.utils.Logger;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Holds the purchase state of every tracked player, spread over lock stripes by UUID.
+ * Reads never lock: each player's {@link PlayerPurchaseCounts} is immutable and published through its own slot, and
+ * the slots of a stripe sit in a concurrent map, so a join or quit only adds or removes its own entry. Writes take
+ * the stripe's lock, so store callbacks, joins and catalog reloads only wait on players that share a stripe, and
+ * an update function runs exactly once.
+ * Changed state is written behind: each stripe keeps the latest state of the players it changed and a background task
+ * saves them to one file per player every few seconds. Only purchase counts are saved, ownership of purchases with a
+ * permission and of subscriptions still comes from the player's permissions.
+ */
+public class PlayerStateStore {
+
+    private static final int MAGIC = 0x50505031;
+    private static final int MAX_STRIPES = 1 << 12;
+
+    private final Plugin plugin;
+    private final PlayerStateSettings settings;
+    private final Path directory;
+    private final Stripe[] stripes;
+    private final int mask;
+    private final LongAdder writes;
+    // Serializes flushes, so an older state of a player is never written over a newer one
+    private final Object flushLock;
+    private BukkitTask flushTask;
+
+    /**
+     * Constructor for the player state store
+     *
+     * @param plugin   The plugin instance
+     * @param settings The player state settings
+     */
+    public PlayerStateStore(final Plugin plugin, final PlayerStateSettings settings) {
+        this.plugin = plugin;
+        this.settings = settings;
+        this.directory = plugin.getDataFolder().toPath().resolve("players");
+        this.writes = new LongAdder();
+        this.flushLock = new Object();
+
+        int count = 1;
+        while (count < Math.min(settings.getStripes(), PlayerStateStore.MAX_STRIPES)) {
+            count <<= 1;
+        }
+        this.stripes = new Stripe[count];
+        for (int i = 0; i < count; i++) {
+            this.stripes[i] = new Stripe();
+        }
+        this.mask = count - 1;
+    }
+
+    /**
+     * Starts saving changed state in the background
+     */
+    public void start() {
+        if (!this.settings.isPersist()) {
+            return;
+        }
+
+        final long flushTicks = Math.max(1L, this.settings.getFlushIntervalSeconds()) * 20L;
+        this.flushTask = this.plugin.getServer().getScheduler().runTaskTimerAsynchronously(this.plugin, this::flush, flushTicks, flushTicks);
+        Logger.info("Player state spread over " + this.stripes.length + " lock stripes, saved every " + this.settings.getFlushIntervalSeconds() + "s");
+    }
+
+    /**
+     * Stops the background saves and saves everything still waiting
+     */
+    public void shutdown() {
+        if (this.flushTask != null) {
+            this.flushTask.cancel();
+            this.flushTask = null;
+        }
+        this.flush();
+    }
+
+    /**
+     * Gets a player's state without locking
+     *
+     * @param player The player
+     * @return The player's state, or null if they aren't tracked
+     */
+    public PlayerPurchaseCounts get(final UUID player) {
+        final AtomicReference<PlayerPurchaseCounts> slot = this.stripeOf(player).slots.get(player);
+        return slot == null ? null : slot.get();
+    }
+
+    /**
+     * Starts tracking a player unless they already are
+     *
+     * @param player The player
+     * @param counts The state to start from
+     * @return true if the player wasn't tracked before
+     */
+    boolean putIfAbsent(final UUID player, final PlayerPurchaseCounts counts) {
+        final Stripe stripe = this.stripeOf(player);
+        stripe.lock.lock();
+        try {
+            return stripe.slots.putIfAbsent(player, new AtomicReference<>(counts)) == null;
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    /**
+     * Changes a tracked player's state, marking it to be saved once it is loaded
+     *
+     * @param player  The player
+     * @param updater Builds the new state from the current one, called once under the stripe's lock
+     * @return The new state, or null if the player isn't tracked
+     */
+    PlayerPurchaseCounts update(final UUID player, final UnaryOperator<PlayerPurchaseCounts> updater) {
+        final Stripe stripe = this.stripeOf(player);
+        stripe.lock.lock();
+        try {
+            final AtomicReference<PlayerPurchaseCounts> slot = stripe.slots.get(player);
+            if (slot == null) {
+                return null;
+            }
+
+            final PlayerPurchaseCounts current = slot.get();
+            final PlayerPurchaseCounts updated = updater.apply(current);
+            if (updated != current) {
+                slot.set(updated);
+                // State that isn't loaded yet would save counts of 0 over the player's real ones
+                if (this.settings.isPersist() && updated.loaded()) {
+                    stripe.dirty.put(player, updated);
+                }
+            }
+            return updated;
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    /**
+     * Stops tracking a player, their state is still saved if it changed
+     *
+     * @param player The player
+     */
+    void remove(final UUID player) {
+        final Stripe stripe = this.stripeOf(player);
+        stripe.lock.lock();
+        try {
+            stripe.slots.remove(player);
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    /**
+     * Replaces the state of every tracked player without marking it to be saved, used when the catalog changes
+     *
+     * @param updater Builds the new state from the current one
+     */
+    void replaceAll(final UnaryOperator<PlayerPurchaseCounts> updater) {
+        for (final Stripe stripe : this.stripes) {
+            stripe.lock.lock();
+            try {
+                for (final AtomicReference<PlayerPurchaseCounts> slot : stripe.slots.values()) {
+                    slot.set(updater.apply(slot.get()));
+                }
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Calls a consumer with every tracked player, without locking
+     *
+     * @param consumer The consumer
+     */
+    void forEachPlayer(final Consumer<UUID> consumer) {
+        for (final Stripe stripe : this.stripes) {
+            stripe.slots.keySet().forEach(consumer);
+        }
+    }
+
+    /**
+     * Gets the number of tracked players
+     *
+     * @return The number of players
+     */
+    public int size() {
+        int size = 0;
+        for (final Stripe stripe : this.stripes) {
+            size += stripe.slots.size();
+        }
+        return size;
+    }
+
+    /**
+     * Gets the number of players whose changed state hasn't been saved yet
+     *
+     * @return The number of players waiting for the next flush
+     */
+    public int getDirtyCount() {
+        int dirty = 0;
+        for (final Stripe stripe : this.stripes) {
+            stripe.lock.lock();
+            try {
+                dirty += stripe.dirty.size();
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+        return dirty;
+    }
+
+    /**
+     * Gets the number of player files written since startup
+     *
+     * @return The number of writes
+     */
+    public long getWrites() {
+        return this.writes.sum();
+    }
+
+    /**
+     * Reads a player's saved state, including changes that haven't reached the disk yet
+     *
+     * @param player  The player
+     * @param catalog The catalog to index the state by
+     * @return The saved state, or null if nothing is saved for the player
+     */
+    PlayerPurchaseCounts readSaved(final UUID player, final PurchaseCatalog catalog) {
+        if (!this.settings.isPersist()) {
+            return null;
+        }
+
+        final Stripe stripe = this.stripeOf(player);
+        PlayerPurchaseCounts pending;
+        stripe.lock.lock();
+        try {
+            pending = stripe.dirty.get(player);
+            if (pending == null) {
+                pending = stripe.flushing.get(player);
+            }
+        } finally {
+            stripe.lock.unlock();
+        }
+        if (pending != null) {
+            return PlayerStateStore.toSaved(pending.catalog() == catalog ? pending : pending.remap(catalog));
+        }
+
+        final Path file = this.fileOf(player);
+        if (!Files.exists(file)) {
+            return null;
+        }
+
+        try {
+            final byte[] bytes = Files.readAllBytes(file);
+            final CRC32 crc = new CRC32();
+            crc.update(bytes, 0, Math.max(0, bytes.length - Long.BYTES));
+
+            final DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+            if (bytes.length < Integer.BYTES * 2 + Long.BYTES || in.readInt() != PlayerStateStore.MAGIC
+                    || crc.getValue() != new DataInputStream(new ByteArrayInputStream(bytes, bytes.length - Long.BYTES, Long.BYTES)).readLong()) {
+                Logger.error("Saved purchase counts of " + player + " are corrupt, using their permissions only");
+                return null;
+            }
+
+            final int[] counts = new int[catalog.size()];
+            final int entries = in.readInt();
+            for (int i = 0; i < entries; i++) {
+                final String purchaseId = in.readUTF();
+                final int count = in.readInt();
+                final ConfiguredPlexPurchasesObject purchase = catalog.getById(purchaseId);
+                // Purchases removed from the catalog are dropped the next time the player is saved
+                if (purchase != null) {
+                    counts[catalog.indexOf(purchase)] = count;
+                }
+            }
+            return PlayerStateStore.toSaved(new PlayerPurchaseCounts(catalog, counts, new BitSet(counts.length), true));
+
+        } catch (final IOException e) {
+            Logger.error("Failed to read saved purchase counts of " + player + ", using their permissions only: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Saves every player whose state changed since the last flush, a stripe at a time so writers are only held up for
+     * as long as it takes to swap its dirty map
+     */
+    private void flush() {
+        synchronized (this.flushLock) {
+            for (final Stripe stripe : this.stripes) {
+                final Map<UUID, PlayerPurchaseCounts> pending;
+                stripe.lock.lock();
+                try {
+                    pending = stripe.dirty;
+                    if (pending.isEmpty()) {
+                        continue;
+                    }
+                    stripe.dirty = new HashMap<>();
+                    stripe.flushing = pending;
+                } finally {
+                    stripe.lock.unlock();
+                }
+
+                for (final Map.Entry<UUID, PlayerPurchaseCounts> entry : pending.entrySet()) {
+                    try {
+                        this.write(entry.getKey(), entry.getValue());
+                        this.writes.increment();
+                    } catch (final IOException e) {
+                        Logger.error("Failed to save purchase counts of " + entry.getKey() + ", will retry: " + e.getMessage());
+                        stripe.lock.lock();
+                        try {
+                            // A newer state may have been queued since
+                            stripe.dirty.putIfAbsent(entry.getKey(), entry.getValue());
+                        } finally {
+                            stripe.lock.unlock();
+                        }
+                    }
+                }
+
+                stripe.lock.lock();
+                try {
+                    stripe.flushing = Map.of();
+                } finally {
+                    stripe.lock.unlock();
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes a player's counts to a temporary file first, forces it to disk and moves it into place
+     *
+     * @param player The player
+     * @param counts The state to save
+     * @throws IOException If the file can't be written
+     */
+    private void write(final UUID player, final PlayerPurchaseCounts counts) throws IOException {
+        final PurchaseCatalog catalog = counts.catalog();
+        int entries = 0;
+        for (int i = 0; i < counts.counts().length; i++) {
+            if (counts.counts()[i] > 0) {
+                entries++;
+            }
+        }
+
+        final Path file = this.fileOf(player);
+        final Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.createDirectories(this.directory);
+        try (final FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            final CheckedOutputStream checked = new CheckedOutputStream(Channels.newOutputStream(channel), new CRC32());
+            final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(checked));
+            out.writeInt(PlayerStateStore.MAGIC);
+            out.writeInt(entries);
+            for (int i = 0; i < counts.counts().length; i++) {
+                if (counts.counts()[i] > 0) {
+                    out.writeUTF(catalog.get(i).getPurchaseId());
+                    out.writeInt(counts.counts()[i]);
+                }
+            }
+            out.flush();
+            out.writeLong(checked.getChecksum().getValue());
+            out.flush();
+            // On disk before the move is, or a power loss could leave the renamed file without its contents
+            channel.force(true);
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Builds the state saved counts stand for: a purchase is owned if it was bought, unless its ownership comes from a
+     * permission or a subscription, which the player's permissions decide
+     *
+     * @param counts State holding the saved counts
+     * @return The saved state, marked loaded
+     */
+    private static PlayerPurchaseCounts toSaved(final PlayerPurchaseCounts counts) {
+        final PurchaseCatalog catalog = counts.catalog();
+        final int[] saved = counts.counts().clone();
+        final BitSet owned = new BitSet(saved.length);
+        for (int i = 0; i < saved.length; i++) {
+            owned.set(i, saved[i] > 0 && catalog.getPermissionPrefix(i) == null && !catalog.isSubscription(i));
+        }
+        return new PlayerPurchaseCounts(catalog, saved, owned, true);
+    }
+
+    /**
+     * Gets the lock stripe a player is spread to
+     *
+     * @param player The player
+     * @return The stripe's index, below the number of stripes
+     */
+    int stripeIndexOf(final UUID player) {
+        final int hash = player.hashCode();
+        return (hash ^ (hash >>> 16)) & this.mask;
+    }
+
+    /**
+     * Gets the number of lock stripes, the configured count rounded up to a power of two
+     *
+     * @return The number of stripes
+     */
+    int getStripeCount() {
+        return this.stripes.length;
+    }
+
+    private Stripe stripeOf(final UUID player) {
+        return this.stripes[this.stripeIndexOf(player)];
+    }
+
+    private Path fileOf(final UUID player) {
+        return this.directory.resolve(player + ".dat");
+    }
+
+    /**
+     * The players of one lock stripe
+     */
+    private static final class Stripe {
+
+        private final ReentrantLock lock = new ReentrantLock();
+        // Only changed under the lock, read without it
+        private final Map<UUID, AtomicReference<PlayerPurchaseCounts>> slots = new ConcurrentHashMap<>();
+        // Guarded by the lock, the latest unsaved state of each changed player
+        private Map<UUID, PlayerPurchaseCounts> dirty = new HashMap<>();
+        // Guarded by the lock, the states the running flush is writing, so a player who rejoins meanwhile reads them
+        private Map<UUID, PlayerPurchaseCounts> flushing = Map.of();
+
+    }
+
+}
@@ -0,0 +1,16 @@
+package net.plexprison.plexpurchases.player;
+
+import net.plexprison.plexpurchases.delivery.PendingDelivery;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Purchase state of a player loaded while they were logging in
+ *
+ * @param player            The player
+ * @param pendingDeliveries The deliveries waiting for the player to join
+ * @param loadedAt          {@link System#nanoTime()} when the state was read
+ */
+public record PrefetchedPurchaseState(UUID player, List<PendingDelivery> pendingDeliveries, long loadedAt) {
+}
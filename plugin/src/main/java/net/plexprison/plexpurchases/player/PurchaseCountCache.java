@@ -0,0 +1,388 @@
+package net.plexprison.plexpurchases.player;
+
+import net.plexprison.plexpurchases.config.ConfiguredPlexPurchasesObject;
+import net.plexprison.plexpurchases.config.holder.ConfiguredPlexPurchasesObjectHolder;
+import net.plexprison.plexpurchases.config.holder.PurchaseCatalog;
+import net.plexprison.plexpurchases.utils.Logger;
+import org.bukkit.entity.Player;
+import org.bukkit.permissions.PermissionAttachmentInfo;
+import org.bukkit.plugin.Plugin;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Caches how many times each online player has bought each product and which products they currently own.
+ * Purchases limited by times record the count as permissions such as {@code plexpurchases.coins.times.3}, and other
+ * purchases with a permission are owned while the player has it, so the state is probed from the player's permissions
+ * once when they join, together with the counts the {@link PlayerStateStore} saved for them. Permission plugins aren't
+ * thread-safe, so the player's permissions are copied on the server thread and only matched against the catalog off it.
+ * After that store callbacks keep it up to date, and count and eligibility checks are lock-free reads from arrays
+ * indexed by the purchase's catalog index.
+ * State is dropped from memory when the player quits, the store still saves it if it changed.
+ */
+public class PurchaseCountCache {
+
+    // Stops probing runaway permission setups such as a wildcard that grants every count
+    private static final int MAX_PROBED_TIMES = 10_000;
+
+    private final Plugin plugin;
+    private final ConfiguredPlexPurchasesObjectHolder holder;
+    private final PlayerStateStore players;
+    private final List<Consumer<UUID>> changeListeners;
+    private final List<PurchaseRecordListener> recordListeners;
+
+    /**
+     * Constructor for the purchase count cache
+     *
+     * @param plugin The plugin instance
+     * @param holder The holder the catalog is read from
+     * @param store  The store player state is kept in
+     */
+    public PurchaseCountCache(final Plugin plugin, final ConfiguredPlexPurchasesObjectHolder holder, final PlayerStateStore store) {
+        this.plugin = plugin;
+        this.holder = holder;
+        this.players = store;
+        this.changeListeners = new CopyOnWriteArrayList<>();
+        this.recordListeners = new CopyOnWriteArrayList<>();
+    }
+
+    /**
+     * Registers a listener called with a player's UUID whenever their state is loaded or changes, on whichever thread changed it
+     *
+     * @param listener The listener to call
+     */
+    public void addChangeListener(final Consumer<UUID> listener) {
+        this.changeListeners.add(listener);
+    }
+
+    /**
+     * Registers a listener called with every purchase, renewal and expiry recorded through this cache
+     *
+     * @param listener The listener to call
+     */
+    public void addRecordListener(final PurchaseRecordListener listener) {
+        this.recordListeners.add(listener);
+    }
+
+    /**
+     * Starts tracking a player and reads their saved counts and their permissions off the server thread.
+     * Purchases recorded while the counts are being read are kept. Must be called on the server thread.
+     *
+     * @param player The player who joined
+     * @return Completes once the player's counts are loaded
+     */
+    public CompletableFuture<Void> load(final Player player) {
+        final PurchaseCatalog catalog = this.holder.getCatalog();
+        this.players.putIfAbsent(player.getUniqueId(), PlayerPurchaseCounts.empty(catalog));
+        final Set<String> granted = PurchaseCountCache.grantedPermissions(player);
+
+        final CompletableFuture<Void> loaded = new CompletableFuture<>();
+        this.plugin.getServer().getScheduler().runTaskAsynchronously(this.plugin, () -> {
+            try {
+                final PlayerPurchaseCounts probed = PurchaseCountCache.probe(granted, catalog);
+                final PlayerPurchaseCounts saved = this.players.readSaved(player.getUniqueId(), catalog);
+                this.merge(player.getUniqueId(), saved == null ? probed : probed.merge(saved));
+                loaded.complete(null);
+            } catch (final RuntimeException e) {
+                Logger.error("Failed to load purchase counts for " + player.getName() + ": " + e.getMessage());
+                loaded.completeExceptionally(e);
+            }
+        });
+        return loaded;
+    }
+
+    /**
+     * Stops tracking a player
+     *
+     * @param player The player who quit
+     */
+    public void evict(final UUID player) {
+        this.players.remove(player);
+    }
+
+    /**
+     * Checks if a player's counts have been loaded
+     *
+     * @param player The player
+     * @return true if {@link #getCount(UUID, ConfiguredPlexPurchasesObject)} will return their count
+     */
+    public boolean isLoaded(final UUID player) {
+        final PlayerPurchaseCounts counts = this.players.get(player);
+        return counts != null && counts.loaded();
+    }
+
+    /**
+     * Gets how many times a player has bought a product
+     *
+     * @param player   The player
+     * @param purchase The purchase
+     * @return The purchase count, or -1 if the player's counts aren't loaded
+     */
+    public int getCount(final UUID player, final ConfiguredPlexPurchasesObject purchase) {
+        final PlayerPurchaseCounts counts = this.players.get(player);
+        if (counts == null || !counts.loaded()) {
+            return -1;
+        }
+
+        final int index = counts.indexOf(purchase);
+        return index == -1 ? 0 : counts.counts()[index];
+    }
+
+    /**
+     * Gets a player's whole purchase state, for callers that read many purchases at once
+     *
+     * @param player The player
+     * @return The player's state, or null if it isn't loaded
+     */
+    public PlayerPurchaseCounts getState(final UUID player) {
+        final PlayerPurchaseCounts counts = this.players.get(player);
+        return counts == null || !counts.loaded() ? null : counts;
+    }
+
+    /**
+     * Checks whether a player can buy a purchase, according to whether it is repeatable and its dependency chain
+     *
+     * @param player   The player
+     * @param purchase The purchase
+     * @return true if the player may buy it, false if not or if the player's state isn't loaded
+     */
+    public boolean canPurchase(final UUID player, final ConfiguredPlexPurchasesObject purchase) {
+        final PlayerPurchaseCounts counts = this.players.get(player);
+        if (counts == null || !counts.loaded()) {
+            return false;
+        }
+
+        final int index = counts.indexOf(purchase);
+        return index != -1 && counts.canPurchase(index);
+    }
+
+    /**
+     * Records a purchase, call for every purchase callback.
+     * A purchase limited by times isn't recorded while the player's counts are loading, since its delivery needs the
+     * count: the delivery waits until they are loaded and records it then, so it is counted exactly once.
+     *
+     * @param player   The purchasing player
+     * @param purchase The purchase
+     * @return The new purchase count, or -1 if the player's counts aren't loaded
+     */
+    public int increment(final UUID player, final ConfiguredPlexPurchasesObject purchase) {
+        final int[] count = {-1, 0};
+        this.players.update(player, counts -> {
+            final int index = counts.indexOf(purchase);
+            if (index == -1 || !counts.loaded() && purchase.isLimitedByTimes()) {
+                return counts;
+            }
+
+            final int updated = counts.counts()[index] + 1;
+            count[0] = counts.loaded() ? updated : -1;
+            count[1] = updated;
+            return counts.with(index, updated, true);
+        });
+        this.fireChanged(player);
+        if (count[1] > 0) {
+            this.fireRecorded(player, purchase.getPurchaseId(), count[1], true);
+        }
+        return count[0];
+    }
+
+    /**
+     * Records a subscription renewing or expiring
+     *
+     * @param player   The subscribed player
+     * @param purchase The subscription
+     * @param owned    true if the subscription renewed, false if it expired
+     */
+    public void setOwned(final UUID player, final ConfiguredPlexPurchasesObject purchase, final boolean owned) {
+        final int[] count = {-1};
+        this.players.update(player, counts -> {
+            final int index = counts.indexOf(purchase);
+            if (index == -1) {
+                return counts;
+            }
+
+            count[0] = counts.counts()[index];
+            return counts.with(index, count[0], owned);
+        });
+        this.fireChanged(player);
+        if (count[0] != -1) {
+            this.fireRecorded(player, purchase.getPurchaseId(), count[0], owned);
+        }
+    }
+
+    /**
+     * Applies a change recorded on another instance, keeping the higher count.
+     * Ignored while the player's counts are loading, those only hold purchases recorded here since they joined.
+     *
+     * @param player     The player
+     * @param purchaseId The product or subscription ID
+     * @param count      The player's purchase count on the other instance
+     * @param owned      Whether the player owns the purchase on the other instance
+     * @return true if the player is tracked here and their state changed
+     */
+    public boolean applyRemote(final UUID player, final String purchaseId, final int count, final boolean owned) {
+        final boolean[] changed = {false};
+        this.players.update(player, counts -> {
+            final ConfiguredPlexPurchasesObject purchase = counts.catalog().getById(purchaseId);
+            if (purchase == null || !counts.loaded()) {
+                return counts;
+            }
+
+            final int index = counts.catalog().indexOf(purchase);
+            final int merged = Math.max(counts.counts()[index], count);
+            if (merged == counts.counts()[index] && owned == counts.owned().get(index)) {
+                return counts;
+            }
+
+            changed[0] = true;
+            return counts.with(index, merged, owned);
+        });
+        if (changed[0]) {
+            this.fireChanged(player);
+        }
+        return changed[0];
+    }
+
+    /**
+     * Moves every player's counts to a newly published catalog and reprobes online players for purchases that changed
+     *
+     * @param catalog The published catalog
+     */
+    public void onCatalogPublished(final PurchaseCatalog catalog) {
+        this.players.replaceAll(counts -> counts.catalog() == catalog ? counts : counts.remap(catalog));
+
+        if (this.players.size() == 0 || !this.plugin.isEnabled()) {
+            return;
+        }
+
+        // Permissions are copied on the server thread, matching them against the catalog happens off it
+        this.plugin.getServer().getScheduler().runTask(this.plugin, () -> {
+            final Map<UUID, Set<String>> granted = new HashMap<>();
+            this.players.forEachPlayer(id -> {
+                final Player player = this.plugin.getServer().getPlayer(id);
+                if (player != null) {
+                    granted.put(id, PurchaseCountCache.grantedPermissions(player));
+                }
+            });
+            if (granted.isEmpty() || !this.plugin.isEnabled()) {
+                return;
+            }
+
+            this.plugin.getServer().getScheduler().runTaskAsynchronously(this.plugin,
+                    () -> granted.forEach((id, permissions) -> this.merge(id, PurchaseCountCache.probe(permissions, catalog))));
+        });
+    }
+
+    /**
+     * Gets the number of players being tracked
+     *
+     * @return The number of cached players
+     */
+    public int getCachedPlayers() {
+        return this.players.size();
+    }
+
+    /**
+     * Merges probed state into a player's state, purchases recorded while it was probed are kept on top of it
+     *
+     * @param player The player
+     * @param probed The probed state
+     */
+    private void merge(final UUID player, final PlayerPurchaseCounts probed) {
+        this.players.update(player, counts -> counts.merge(probed));
+        this.fireChanged(player);
+    }
+
+    private void fireRecorded(final UUID player, final String purchaseId, final int count, final boolean owned) {
+        for (final PurchaseRecordListener listener : this.recordListeners) {
+            try {
+                listener.onRecorded(player, purchaseId, count, owned);
+            } catch (final RuntimeException e) {
+                Logger.error("Purchase record listener failed: " + e.getMessage());
+            }
+        }
+    }
+
+    private void fireChanged(final UUID player) {
+        for (final Consumer<UUID> listener : this.changeListeners) {
+            try {
+                listener.accept(player);
+            } catch (final RuntimeException e) {
+                Logger.error("Purchase state listener failed: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Copies the permissions a player has, must be called on the server thread
+     *
+     * @param player The player
+     * @return The lower case names of the permissions the player has, including those they have by default
+     */
+    private static Set<String> grantedPermissions(final Player player) {
+        final Set<PermissionAttachmentInfo> effective = player.getEffectivePermissions();
+        final Set<String> granted = new HashSet<>(Math.max(16, effective.size() * 2));
+        for (final PermissionAttachmentInfo permission : effective) {
+            if (permission.getValue()) {
+                // Bukkit compares permission names case-insensitively
+                granted.add(permission.getPermission().toLowerCase(Locale.ROOT));
+            }
+        }
+        return granted;
+    }
+
+    /**
+     * Reads the purchase count and ownership of every purchase with a permission from a copy of the player's permissions
+     *
+     * @param granted The player's permissions, from {@link #grantedPermissions(Player)}
+     * @param catalog The catalog to probe
+     * @return The probed state, indexed by catalog index
+     */
+    private static PlayerPurchaseCounts probe(final Set<String> granted, final PurchaseCatalog catalog) {
+        final int[] counts = new int[catalog.size()];
+        final BitSet owned = new BitSet(counts.length);
+        final StringBuilder builder = new StringBuilder(64);
+
+        for (int i = 0; i < counts.length; i++) {
+            final String prefix = catalog.getPermissionPrefix(i);
+            if (prefix == null) {
+                continue;
+            }
+
+            if (!catalog.isLimitedByTimes(i)) {
+                if (granted.contains(prefix.toLowerCase(Locale.ROOT))) {
+                    counts[i] = 1;
+                    owned.set(i);
+                }
+                continue;
+            }
+
+            // Split around <purchase_times> once when the catalog was built
+            final String lowerPrefix = prefix.toLowerCase(Locale.ROOT);
+            final String suffix = catalog.getPermissionSuffix(i).toLowerCase(Locale.ROOT);
+
+            int times = 0;
+            while (times < PurchaseCountCache.MAX_PROBED_TIMES) {
+                builder.setLength(0);
+                builder.append(lowerPrefix).append(times + 1).append(suffix);
+                if (!granted.contains(builder.toString())) {
+                    break;
+                }
+                times++;
+            }
+            counts[i] = times;
+            owned.set(i, times > 0);
+        }
+        return new PlayerPurchaseCounts(catalog, counts, owned, true);
+    }
+
+}
@@ -0,0 +1,22 @@
+package net.plexprison.plexpurchases.player;
+
+import java.util.UUID;
+
+/**
+ * Told about every purchase, renewal and expiry recorded on this instance, but not about state loaded from permissions,
+ * from disk or from other instances
+ */
+@FunctionalInterface
+public interface PurchaseRecordListener {
+
+    /**
+     * Called after a player's state changed, on whichever thread changed it
+     *
+     * @param player     The player
+     * @param purchaseId The product or subscription ID of the purchase that changed
+     * @param count      The player's purchase count after the change
+     * @param owned      Whether the player owns the purchase after the change
+     */
+    void onRecorded(UUID player, String purchaseId, int count, boolean owned);
+
+}
@@ -0,0 +1,270 @@
+package net.plexprison.plexpurchases.player;
+
+import net.plexprison.plexpurchases.config.settings.PrefetchSettings;
+import net.plexprison.plexpurchases.delivery.PendingDelivery;
+import net.plexprison.plexpurchases.delivery.PurchaseDeliveryService;
+import net.plexprison.plexpurchases.utils.Logger;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Loads a player's purchase state while they log in, so the join handler only reads from memory.
+ * Prefetches run on the pre-login threads. Logins arriving together are batched: the first one waits a short window
+ * for others, then does a single storage read for the whole batch. Results are kept for a limited time and number of
+ * players, and taken out of the cache when the player joins.
+ */
+public class PurchaseStatePrefetcher {
+
+    // Most players read in a single batch
+    private static final int MAX_BATCH = 256;
+
+    private final PurchaseDeliveryService deliveryService;
+    private final PrefetchSettings settings;
+    private final Queue<Request> requests;
+    private final AtomicBoolean reading;
+    // Guarded by itself, in insertion order so the oldest entries are evicted first
+    private final LinkedHashMap<UUID, PrefetchedPurchaseState> cache;
+    private final LongAdder hits;
+    private final LongAdder misses;
+    private final LongAdder prefetches;
+    private final LongAdder batches;
+    private final LongAdder latencyNanos;
+    private final AtomicLong maxLatencyNanos;
+
+    /**
+     * Constructor for the prefetcher
+     *
+     * @param deliveryService The service pending deliveries are read from
+     * @param settings        The prefetch settings
+     */
+    public PurchaseStatePrefetcher(final PurchaseDeliveryService deliveryService, final PrefetchSettings settings) {
+        this.deliveryService = deliveryService;
+        this.settings = settings;
+        this.requests = new ConcurrentLinkedQueue<>();
+        this.reading = new AtomicBoolean();
+        this.cache = new LinkedHashMap<>(16, 0.75f, false) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<UUID, PrefetchedPurchaseState> eldest) {
+                return this.size() > PurchaseStatePrefetcher.this.settings.getMaxEntries();
+            }
+        };
+        this.hits = new LongAdder();
+        this.misses = new LongAdder();
+        this.prefetches = new LongAdder();
+        this.batches = new LongAdder();
+        this.latencyNanos = new LongAdder();
+        this.maxLatencyNanos = new AtomicLong();
+    }
+
+    /**
+     * Loads and caches a player's purchase state, call from the pre-login event.
+     * Blocks the calling login thread until the state is loaded or the timeout passes.
+     *
+     * @param player The player logging in
+     */
+    public void prefetch(final UUID player) {
+        final long start = System.nanoTime();
+        final CompletableFuture<PrefetchedPurchaseState> future = new CompletableFuture<>();
+        this.requests.add(new Request(player, future));
+        this.readBatches();
+
+        try {
+            final PrefetchedPurchaseState state = future.get(this.settings.getTimeoutMillis(), TimeUnit.MILLISECONDS);
+            synchronized (this.cache) {
+                this.cache.put(player, state);
+            }
+        } catch (final TimeoutException e) {
+            Logger.warning("Prefetching purchase state of " + player + " timed out, it will be loaded on join");
+            return;
+        } catch (final ExecutionException e) {
+            Logger.error("Failed to prefetch purchase state of " + player + ": " + e.getCause().getMessage());
+            return;
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+
+        final long elapsed = System.nanoTime() - start;
+        this.prefetches.increment();
+        this.latencyNanos.add(elapsed);
+        this.maxLatencyNanos.accumulateAndGet(elapsed, Math::max);
+    }
+
+    /**
+     * Takes a player's prefetched state out of the cache, call from the join handler
+     *
+     * @param player The player who joined
+     * @return The prefetched state, or null if there is none or it expired
+     */
+    public PrefetchedPurchaseState take(final UUID player) {
+        final PrefetchedPurchaseState state;
+        synchronized (this.cache) {
+            state = this.cache.remove(player);
+        }
+
+        if (state == null || this.isExpired(state, System.nanoTime())) {
+            this.misses.increment();
+            return null;
+        }
+        this.hits.increment();
+        return state;
+    }
+
+    /**
+     * Drops expired state of players who never joined, such as logins denied by another plugin
+     */
+    public void evictExpired() {
+        final long now = System.nanoTime();
+        synchronized (this.cache) {
+            final Iterator<PrefetchedPurchaseState> iterator = this.cache.values().iterator();
+            while (iterator.hasNext() && this.isExpired(iterator.next(), now)) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Gets the share of joins that found their state already loaded
+     *
+     * @return The hit rate between 0 and 1, or 0 before any join
+     */
+    public double getHitRate() {
+        final long hitCount = this.hits.sum();
+        final long total = hitCount + this.misses.sum();
+        return total == 0 ? 0 : (double) hitCount / total;
+    }
+
+    /**
+     * Gets the number of joins that found their state already loaded
+     *
+     * @return The cache hits since startup
+     */
+    public long getHits() {
+        return this.hits.sum();
+    }
+
+    /**
+     * Gets the number of joins that had to load their state themselves
+     *
+     * @return The cache misses since startup
+     */
+    public long getMisses() {
+        return this.misses.sum();
+    }
+
+    /**
+     * Gets the average time a login spent prefetching, including waiting for its batch
+     *
+     * @return The average latency in milliseconds
+     */
+    public double getAverageLatencyMillis() {
+        final long count = this.prefetches.sum();
+        return count == 0 ? 0 : this.latencyNanos.sum() / (double) count / 1_000_000D;
+    }
+
+    /**
+     * Gets the longest time a login spent prefetching
+     *
+     * @return The maximum latency in milliseconds
+     */
+    public double getMaxLatencyMillis() {
+        return this.maxLatencyNanos.get() / 1_000_000D;
+    }
+
+    /**
+     * Gets the average number of logins served by one storage read
+     *
+     * @return The average batch size
+     */
+    public double getAverageBatchSize() {
+        final long count = this.batches.sum();
+        return count == 0 ? 0 : this.prefetches.sum() / (double) count;
+    }
+
+    /**
+     * Gets the number of players with prefetched state waiting for their join
+     *
+     * @return The cache size
+     */
+    public int getCachedPlayers() {
+        synchronized (this.cache) {
+            return this.cache.size();
+        }
+    }
+
+    /**
+     * Serves queued requests in batches. Whichever login finds no read in progress does the reading for everyone,
+     * the rest just wait for their result.
+     */
+    private void readBatches() {
+        while (!this.requests.isEmpty() && this.reading.compareAndSet(false, true)) {
+            try {
+                // Give logins arriving at the same moment a chance to share this read
+                TimeUnit.MILLISECONDS.sleep(this.settings.getBatchWindowMillis());
+
+                final List<Request> batch = new ArrayList<>();
+                Request request;
+                while (batch.size() < PurchaseStatePrefetcher.MAX_BATCH && (request = this.requests.poll()) != null) {
+                    batch.add(request);
+                }
+                this.read(batch);
+
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                this.reading.set(false);
+            }
+        }
+    }
+
+    private void read(final List<Request> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        try {
+            final List<UUID> players = new ArrayList<>(batch.size());
+            batch.forEach(request -> players.add(request.player()));
+
+            final Map<UUID, List<PendingDelivery>> deliveries = this.deliveryService.readPending(players);
+            final long loadedAt = System.nanoTime();
+            for (final Request request : batch) {
+                request.future().complete(new PrefetchedPurchaseState(request.player(),
+                        deliveries.getOrDefault(request.player(), List.of()), loadedAt));
+            }
+            this.batches.increment();
+
+        } catch (final RuntimeException e) {
+            batch.forEach(request -> request.future().completeExceptionally(e));
+        }
+    }
+
+    private boolean isExpired(final PrefetchedPurchaseState state, final long now) {
+        return now - state.loadedAt() > TimeUnit.SECONDS.toNanos(this.settings.getTtlSeconds());
+    }
+
+    /**
+     * A login waiting for its state
+     *
+     * @param player The player logging in
+     * @param future Completed with the player's state
+     */
+    private record Request(UUID player, CompletableFuture<PrefetchedPurchaseState> future) {
+    }
+
+}
@@ -0,0 +1,25 @@
+package net.plexprison.plexpurchases.subscription;
+
+import java.util.UUID;
+
+/**
+ * A subscription whose renewal didn't arrive before its deadline
+ *
+ * @param player         The subscribed player's UUID
+ * @param playerName     The subscribed player's name when the subscription was last renewed
+ * @param subscriptionId The subscription ID
+ * @param deadline       The epoch second the renewal was due by
+ */
+public record DueSubscription(UUID player, String playerName, String subscriptionId, long deadline) {
+
+    /**
+     * Gets the ID this expiry is recorded under in the purchase ledger, the same however often the deadline is handed
+     * over, such as after a crash before the schedule was saved
+     *
+     * @return The transaction ID
+     */
+    public String transactionId() {
+        return "expiry:" + this.player + ":" + this.subscriptionId + ":" + this.deadline;
+    }
+
+}
@@ -0,0 +1,12 @@
+package net.plexprison.plexpurchases.subscription;
+
+import java.util.UUID;
+
+/**
+ * Identifies one player's subscription to one product
+ *
+ * @param player         The subscribed player's UUID
+ * @param subscriptionId The subscription ID
+ */
+record SubscriptionKey(UUID player, String subscriptionId) {
+}
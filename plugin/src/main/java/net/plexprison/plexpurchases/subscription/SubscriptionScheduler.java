@@ -0,0 +1,343 @@
+package net.plexprison.plexpurchases.subscription;
+
+import net.plexprison.plexpurchases.config.ConfiguredPlexPurchasesObject;
+import net.plexprison.plexpurchases.config.holder.ConfiguredPlexPurchasesObjectHolder;
+import net.plexprison.plexpurchases.config.settings.SubscriptionSettings;
+import net.plexprison.plexpurchases.dispatch.ActionDispatcher;
+import net.plexprison.plexpurchases.utils.Logger;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Expires subscriptions whose renewal never arrives.
+ * Every subscription purchase or renewal sets a deadline one billing period plus a grace time away, kept in a
+ * {@link TimingWheel} so scheduling and cancelling are O(1) however many players are subscribed. When a deadline
+ * passes without a renewal the subscription is handed to the expiry callback, at most a configured number per second
+ * and only while the action dispatcher isn't backed up.
+ * The schedule is saved to disk in the background whenever it changed and on shutdown, and on startup deadlines that
+ * passed while the server was down are handed over first.
+ */
+public class SubscriptionScheduler {
+
+    private static final int MAGIC = 0x50505331;
+    private static final long TICK_INTERVAL_TICKS = 20L;
+
+    private final Plugin plugin;
+    private final ConfiguredPlexPurchasesObjectHolder holder;
+    private final SubscriptionSettings settings;
+    private final ActionDispatcher dispatcher;
+    private final Consumer<DueSubscription> onDue;
+    private final Path file;
+    // Everything below is guarded by this
+    private final Map<SubscriptionKey, SubscriptionTimer> timers;
+    private final ArrayDeque<SubscriptionTimer> due;
+    private final TimingWheel wheel;
+    private boolean dirty;
+    // Serializes saves, which write outside the lock above
+    private final Object saveLock;
+    private BukkitTask tickTask;
+    private BukkitTask saveTask;
+
+    /**
+     * Constructor for the subscription scheduler
+     *
+     * @param plugin     The plugin instance
+     * @param holder     The holder due subscriptions wait on until purchases are loaded
+     * @param settings   The subscription settings
+     * @param dispatcher The dispatcher whose queue depth due subscriptions wait on
+     * @param onDue      Called with each subscription whose deadline passed, off the server thread
+     */
+    public SubscriptionScheduler(final Plugin plugin, final ConfiguredPlexPurchasesObjectHolder holder, final SubscriptionSettings settings,
+                                 final ActionDispatcher dispatcher, final Consumer<DueSubscription> onDue) {
+        this.plugin = plugin;
+        this.holder = holder;
+        this.settings = settings;
+        this.dispatcher = dispatcher;
+        this.onDue = onDue;
+        this.file = plugin.getDataFolder().toPath().resolve("subscriptions.dat");
+        this.timers = new HashMap<>();
+        this.due = new ArrayDeque<>();
+        this.wheel = new TimingWheel(Instant.now().getEpochSecond());
+        this.saveLock = new Object();
+    }
+
+    /**
+     * Rebuilds the schedule from disk and starts checking deadlines every second
+     */
+    public void start() {
+        final long start = System.nanoTime();
+        this.load();
+        Logger.info("Subscription schedule loaded with " + this.size() + " subscriptions in "
+                + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + "ms");
+
+        final int overdue = this.getDueCount();
+        if (overdue > 0) {
+            Logger.warning(overdue + " subscriptions expired without renewal while the server was down, expiring them now");
+        }
+
+        this.tickTask = this.plugin.getServer().getScheduler().runTaskTimerAsynchronously(this.plugin, this::tick,
+                SubscriptionScheduler.TICK_INTERVAL_TICKS, SubscriptionScheduler.TICK_INTERVAL_TICKS);
+        final long saveTicks = Math.max(1L, this.settings.getSaveIntervalSeconds()) * 20L;
+        this.saveTask = this.plugin.getServer().getScheduler().runTaskTimerAsynchronously(this.plugin, this::saveIfDirty, saveTicks, saveTicks);
+    }
+
+    /**
+     * Stops checking deadlines and saves the schedule
+     */
+    public void shutdown() {
+        if (this.tickTask != null) {
+            this.tickTask.cancel();
+            this.tickTask = null;
+        }
+        if (this.saveTask != null) {
+            this.saveTask.cancel();
+            this.saveTask = null;
+        }
+        this.saveIfDirty();
+    }
+
+    /**
+     * Sets a subscription's deadline one billing period plus the grace time from now, replacing any earlier one.
+     * Call when a subscription is bought or renewed, purchases that aren't subscriptions are ignored.
+     *
+     * @param player     The subscribed player's UUID
+     * @param playerName The subscribed player's name
+     * @param purchase   The subscription
+     */
+    public void schedule(final UUID player, final String playerName, final ConfiguredPlexPurchasesObject purchase) {
+        if (!this.settings.isExpireWithoutRenewal() || purchase.getSubscriptionBasis() == null) {
+            return;
+        }
+
+        final long deadline = Instant.now().atZone(ZoneOffset.UTC)
+                .plus(purchase.getSubscriptionBasis().getPeriod())
+                .plusHours(this.settings.getGraceHours())
+                .toEpochSecond();
+
+        synchronized (this) {
+            final SubscriptionKey key = new SubscriptionKey(player, purchase.getPurchaseId());
+            final SubscriptionTimer existing = this.timers.remove(key);
+            if (existing != null) {
+                this.detach(existing);
+            }
+
+            final SubscriptionTimer timer = new SubscriptionTimer(player, playerName, purchase.getPurchaseId(), deadline);
+            this.timers.put(key, timer);
+            this.attach(timer);
+            this.dirty = true;
+        }
+    }
+
+    /**
+     * Removes a subscription's deadline, call when it expires through the store
+     *
+     * @param player         The subscribed player's UUID
+     * @param subscriptionId The subscription ID
+     * @return true if the subscription had a deadline
+     */
+    public synchronized boolean cancel(final UUID player, final String subscriptionId) {
+        final SubscriptionTimer timer = this.timers.remove(new SubscriptionKey(player, subscriptionId));
+        if (timer == null) {
+            return false;
+        }
+
+        this.detach(timer);
+        this.dirty = true;
+        return true;
+    }
+
+    /**
+     * Gets the number of subscriptions with a deadline, including due ones not handed over yet
+     *
+     * @return The number of scheduled subscriptions
+     */
+    public synchronized int size() {
+        return this.timers.size();
+    }
+
+    /**
+     * Gets the number of subscriptions whose deadline passed and that are waiting to be handed over
+     *
+     * @return The number of due subscriptions
+     */
+    public synchronized int getDueCount() {
+        return this.due.size();
+    }
+
+    /**
+     * Advances the wheel to now and hands over the next batch of due subscriptions, runs off the server thread
+     */
+    private void tick() {
+        final List<DueSubscription> batch = new ArrayList<>();
+        synchronized (this) {
+            this.wheel.advance(Instant.now().getEpochSecond(), this::markDue);
+
+            // Leave the rest for later seconds until purchases are loaded, or if actions are already piling up
+            final boolean wait = !this.holder.isReady() || this.dispatcher.getQueuedActions() >= this.settings.getMaxQueuedActions();
+            final int limit = wait ? 0 : this.settings.getBatchSize();
+            while (batch.size() < limit && !this.due.isEmpty()) {
+                final SubscriptionTimer timer = this.due.poll();
+                if (timer.bucket != SubscriptionTimer.DUE) {
+                    // Renewed or cancelled after it became due
+                    continue;
+                }
+
+                timer.bucket = SubscriptionTimer.DETACHED;
+                this.timers.remove(new SubscriptionKey(timer.player, timer.subscriptionId));
+                batch.add(new DueSubscription(timer.player, timer.playerName, timer.subscriptionId, timer.deadline));
+            }
+
+            if (!batch.isEmpty()) {
+                this.dirty = true;
+            }
+        }
+
+        for (final DueSubscription subscription : batch) {
+            try {
+                this.onDue.accept(subscription);
+            } catch (final RuntimeException e) {
+                Logger.error("Failed to expire subscription " + subscription.subscriptionId() + " of " + subscription.playerName() + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private void attach(final SubscriptionTimer timer) {
+        if (!this.wheel.add(timer)) {
+            this.markDue(timer);
+        }
+    }
+
+    private void detach(final SubscriptionTimer timer) {
+        if (timer.bucket >= 0) {
+            this.wheel.remove(timer);
+        }
+        // A due timer stays in the queue and is skipped once it reaches the front
+        timer.bucket = SubscriptionTimer.DETACHED;
+    }
+
+    private void markDue(final SubscriptionTimer timer) {
+        timer.bucket = SubscriptionTimer.DUE;
+        this.due.add(timer);
+    }
+
+    /**
+     * Saves the schedule if it changed since the last save, written to a temporary file first and moved into place
+     */
+    private void saveIfDirty() {
+        synchronized (this.saveLock) {
+            final List<SubscriptionTimer> snapshot;
+            final long[] deadlines;
+            synchronized (this) {
+                if (!this.dirty) {
+                    return;
+                }
+                this.dirty = false;
+                snapshot = new ArrayList<>(this.timers.values());
+                // Deadlines are copied too, they change when a subscription is renewed
+                deadlines = new long[snapshot.size()];
+                for (int i = 0; i < deadlines.length; i++) {
+                    deadlines[i] = snapshot.get(i).deadline;
+                }
+            }
+
+            final Path temp = this.file.resolveSibling(this.file.getFileName() + ".tmp");
+            try {
+                Files.createDirectories(this.file.getParent());
+                final CheckedOutputStream checked = new CheckedOutputStream(Files.newOutputStream(temp), new CRC32());
+                try (final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(checked))) {
+                    out.writeInt(SubscriptionScheduler.MAGIC);
+                    out.writeInt(snapshot.size());
+                    for (int i = 0; i < deadlines.length; i++) {
+                        final SubscriptionTimer timer = snapshot.get(i);
+                        out.writeLong(timer.player.getMostSignificantBits());
+                        out.writeLong(timer.player.getLeastSignificantBits());
+                        out.writeLong(deadlines[i]);
+                        out.writeUTF(timer.subscriptionId);
+                        out.writeUTF(timer.playerName == null ? "" : timer.playerName);
+                    }
+                    out.flush();
+                    out.writeLong(checked.getChecksum().getValue());
+                }
+                Files.move(temp, this.file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            } catch (final IOException e) {
+                synchronized (this) {
+                    this.dirty = true;
+                }
+                Logger.error("Failed to save subscription schedule, will retry: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Reads the saved schedule, putting deadlines that already passed straight into the due queue
+     */
+    private void load() {
+        if (!Files.exists(this.file)) {
+            return;
+        }
+
+        try {
+            final byte[] bytes = Files.readAllBytes(this.file);
+            final CRC32 crc = new CRC32();
+            crc.update(bytes, 0, Math.max(0, bytes.length - Long.BYTES));
+
+            final DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+            if (bytes.length < Integer.BYTES * 2 + Long.BYTES || in.readInt() != SubscriptionScheduler.MAGIC
+                    || crc.getValue() != new DataInputStream(new ByteArrayInputStream(bytes, bytes.length - Long.BYTES, Long.BYTES)).readLong()) {
+                this.quarantine("it is corrupt");
+                return;
+            }
+
+            final int count = in.readInt();
+            synchronized (this) {
+                for (int i = 0; i < count; i++) {
+                    final UUID player = new UUID(in.readLong(), in.readLong());
+                    final long deadline = in.readLong();
+                    final String subscriptionId = in.readUTF();
+                    final String playerName = in.readUTF();
+
+                    final SubscriptionTimer timer = new SubscriptionTimer(player, playerName, subscriptionId, deadline);
+                    this.timers.put(new SubscriptionKey(player, subscriptionId), timer);
+                    this.attach(timer);
+                }
+            }
+
+        } catch (final IOException e) {
+            this.quarantine(e.getMessage());
+        }
+    }
+
+    private void quarantine(final String reason) {
+        final Path broken = this.file.resolveSibling(this.file.getFileName() + ".corrupt");
+        try {
+            Files.move(this.file, broken, StandardCopyOption.REPLACE_EXISTING);
+            Logger.error("Failed to read " + this.file.getFileName() + " (" + reason + "), moved it to " + broken.getFileName()
+                    + " and starting with an empty subscription schedule");
+        } catch (final IOException e) {
+            Logger.error("Failed to read " + this.file.getFileName() + " (" + reason + ") or move it aside: " + e.getMessage());
+        }
+    }
+
+}
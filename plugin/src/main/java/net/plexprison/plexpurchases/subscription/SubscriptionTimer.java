@@ -0,0 +1,33 @@
+package net.plexprison.plexpurchases.subscription;
+
+import java.util.UUID;
+
+/**
+ * A subscription's expiry deadline, linked into one bucket of the {@link TimingWheel} so it can be unlinked in O(1)
+ */
+final class SubscriptionTimer {
+
+    // Not in the wheel or the due queue
+    static final int DETACHED = -1;
+    // Waiting in the due queue to be handed to the action pipeline
+    static final int DUE = -2;
+
+    final UUID player;
+    final String playerName;
+    final String subscriptionId;
+    // Epoch second the subscription expires at
+    long deadline;
+    // Bucket in the wheel, or DETACHED or DUE
+    int bucket;
+    SubscriptionTimer previous;
+    SubscriptionTimer next;
+
+    SubscriptionTimer(final UUID player, final String playerName, final String subscriptionId, final long deadline) {
+        this.player = player;
+        this.playerName = playerName;
+        this.subscriptionId = subscriptionId;
+        this.deadline = deadline;
+        this.bucket = SubscriptionTimer.DETACHED;
+    }
+
+}
@@ -0,0 +1,150 @@
+package net.plexprison.plexpurchases.subscription;
+
+import java.util.function.Consumer;
+
+/**
+ * Hierarchical timing wheel of subscription deadlines with a resolution of one second.
+ * Five levels of 64 buckets each cover about 34 years. A timer goes into the lowest level whose span covers its
+ * deadline, and each time a level completes a turn the next bucket of the level above is cascaded down, so every
+ * timer moves at most once per level before it is due. Adding and cancelling a timer is O(1), and advancing costs
+ * O(1) per second plus the timers that move. Not thread safe.
+ */
+final class TimingWheel {
+
+    private static final int LEVELS = 5;
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << TimingWheel.SLOT_BITS;
+    private static final long SLOT_MASK = TimingWheel.SLOTS - 1;
+    // Deadlines further out are parked in the top level and cascaded again until they're in range
+    private static final long MAX_SPAN = (1L << (TimingWheel.SLOT_BITS * TimingWheel.LEVELS)) - 1;
+
+    // Head of the linked list of timers in each bucket, level by level
+    private final SubscriptionTimer[] buckets;
+    private long current;
+    private int size;
+
+    /**
+     * Constructor for an empty wheel
+     *
+     * @param now The epoch second the wheel starts at
+     */
+    TimingWheel(final long now) {
+        this.buckets = new SubscriptionTimer[TimingWheel.LEVELS * TimingWheel.SLOTS];
+        this.current = now;
+    }
+
+    /**
+     * Adds a timer
+     *
+     * @param timer A detached timer
+     * @return false if its deadline has already passed, it then isn't added
+     */
+    boolean add(final SubscriptionTimer timer) {
+        if (timer.deadline <= this.current) {
+            return false;
+        }
+
+        final long delta = Math.min(timer.deadline - this.current, TimingWheel.MAX_SPAN);
+        int level = 0;
+        while (level < TimingWheel.LEVELS - 1 && delta >= 1L << (TimingWheel.SLOT_BITS * (level + 1))) {
+            level++;
+        }
+
+        final long at = this.current + delta;
+        final int bucket = level * TimingWheel.SLOTS + (int) ((at >>> (TimingWheel.SLOT_BITS * level)) & TimingWheel.SLOT_MASK);
+        timer.bucket = bucket;
+        timer.previous = null;
+        timer.next = this.buckets[bucket];
+        if (timer.next != null) {
+            timer.next.previous = timer;
+        }
+        this.buckets[bucket] = timer;
+        this.size++;
+        return true;
+    }
+
+    /**
+     * Removes a timer from the wheel
+     *
+     * @param timer A timer in the wheel
+     */
+    void remove(final SubscriptionTimer timer) {
+        if (timer.previous != null) {
+            timer.previous.next = timer.next;
+        } else {
+            this.buckets[timer.bucket] = timer.next;
+        }
+        if (timer.next != null) {
+            timer.next.previous = timer.previous;
+        }
+
+        timer.previous = null;
+        timer.next = null;
+        timer.bucket = SubscriptionTimer.DETACHED;
+        this.size--;
+    }
+
+    /**
+     * Moves the wheel forward, taking out every timer whose deadline is reached on the way
+     *
+     * @param now The epoch second to advance to
+     * @param due Receives the due timers, detached, in deadline order
+     */
+    void advance(final long now, final Consumer<SubscriptionTimer> due) {
+        while (this.current < now) {
+            // Nothing to move, such as when catching up after a long pause
+            if (this.size == 0) {
+                this.current = now;
+                return;
+            }
+            this.current++;
+
+            // A lower level finished a turn, spread the next bucket of the level above over the levels below it
+            for (int level = 1; level < TimingWheel.LEVELS; level++) {
+                if ((this.current & ((1L << (TimingWheel.SLOT_BITS * level)) - 1)) != 0) {
+                    break;
+                }
+                this.cascade(level * TimingWheel.SLOTS + (int) ((this.current >>> (TimingWheel.SLOT_BITS * level)) & TimingWheel.SLOT_MASK), due);
+            }
+
+            this.cascade((int) (this.current & TimingWheel.SLOT_MASK), due);
+        }
+    }
+
+    /**
+     * Gets the epoch second the wheel has advanced to
+     *
+     * @return The current time of the wheel
+     */
+    long getCurrent() {
+        return this.current;
+    }
+
+    /**
+     * Gets the number of timers in the wheel
+     *
+     * @return The number of timers
+     */
+    int size() {
+        return this.size;
+    }
+
+    private void cascade(final int bucket, final Consumer<SubscriptionTimer> due) {
+        SubscriptionTimer timer = this.buckets[bucket];
+        this.buckets[bucket] = null;
+
+        while (timer != null) {
+            final SubscriptionTimer next = timer.next;
+            timer.previous = null;
+            timer.next = null;
+            timer.bucket = SubscriptionTimer.DETACHED;
+            this.size--;
+
+            if (!this.add(timer)) {
+                due.accept(timer);
+            }
+            timer = next;
+        }
+    }
+
+}
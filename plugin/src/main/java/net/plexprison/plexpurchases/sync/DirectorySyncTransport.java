@@ -0,0 +1,170 @@
+package net.plexprison.plexpurchases.sync;
+
+import net.plexprison.plexpurchases.utils.Logger;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Exchanges batches as files in a directory every instance can read and write, such as a folder next to the servers
+ * on one machine. Each batch is written to a temporary file and moved into place, so readers never see half a batch,
+ * and file names start with the time they were written so every instance reads them in order. Only batches written
+ * after an instance started are read, and each instance deletes its own files once they are older than the retention.
+ */
+final class DirectorySyncTransport implements SyncTransport, Runnable {
+
+    private static final String EXTENSION = ".sync";
+
+    private final Path directory;
+    private final String instance;
+    private final long pollMillis;
+    private final long retentionMillis;
+    private final AtomicLong written;
+    // Only touched by the polling thread
+    private final Set<String> seen;
+    // Guarded by itself, the files this instance wrote, oldest first
+    private final ArrayDeque<Path> ownFiles;
+    private volatile Consumer<byte[]> receiver;
+    private volatile boolean running;
+    private Thread thread;
+
+    /**
+     * Constructor for the directory transport
+     *
+     * @param directory       The shared directory
+     * @param instance        The ID of this instance, written into the names of its files
+     * @param pollMillis      How often the directory is checked for new batches
+     * @param retentionMillis How long this instance's files are kept
+     */
+    DirectorySyncTransport(final Path directory, final String instance, final long pollMillis, final long retentionMillis) {
+        this.directory = directory;
+        this.instance = instance;
+        this.pollMillis = Math.max(10L, pollMillis);
+        this.retentionMillis = retentionMillis;
+        this.written = new AtomicLong();
+        this.seen = new HashSet<>();
+        this.ownFiles = new ArrayDeque<>();
+    }
+
+    @Override
+    public void start(final Consumer<byte[]> receiver) throws IOException {
+        Files.createDirectories(this.directory);
+        // Batches from before this start are about state this instance will load on its own
+        this.seen.addAll(this.listBatches());
+
+        this.receiver = receiver;
+        this.running = true;
+        this.thread = new Thread(this, "PlexPurchases-Sync");
+        this.thread.setDaemon(true);
+        this.thread.start();
+        Logger.info("Syncing with other instances through " + this.directory);
+    }
+
+    @Override
+    public void send(final byte[] batch) throws IOException {
+        final String name = String.format("%013d-%s-%d%s", System.currentTimeMillis(), this.instance, this.written.incrementAndGet(), DirectorySyncTransport.EXTENSION);
+        final Path file = this.directory.resolve(name);
+        // Dot-prefixed and without the extension, so readers skip it until it is moved into place
+        final Path temp = this.directory.resolve("." + name + ".tmp");
+        Files.write(temp, batch);
+        Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE);
+
+        synchronized (this.ownFiles) {
+            this.ownFiles.add(file);
+        }
+    }
+
+    @Override
+    public void close() {
+        this.running = false;
+        if (this.thread != null) {
+            this.thread.interrupt();
+        }
+    }
+
+    @Override
+    public void run() {
+        while (this.running) {
+            try {
+                this.poll();
+                this.deleteExpired();
+            } catch (final IOException e) {
+                Logger.error("Failed to read sync directory " + this.directory + ": " + e.getMessage());
+            }
+
+            try {
+                Thread.sleep(this.pollMillis);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Hands every batch written since the last poll to the receiver, in the order they were written
+     *
+     * @throws IOException If the directory can't be listed
+     */
+    private void poll() throws IOException {
+        final List<String> present = this.listBatches();
+        for (final String name : present) {
+            if (!this.seen.add(name) || name.contains(this.instance)) {
+                continue;
+            }
+
+            try {
+                this.receiver.accept(Files.readAllBytes(this.directory.resolve(name)));
+            } catch (final NoSuchFileException e) {
+                // Its writer deleted it after its retention, nothing in it is still news
+            }
+        }
+        // Forget deleted files so the set doesn't grow forever
+        this.seen.retainAll(new HashSet<>(present));
+    }
+
+    private void deleteExpired() {
+        final long cutoff = System.currentTimeMillis() - this.retentionMillis;
+        while (true) {
+            final Path oldest;
+            synchronized (this.ownFiles) {
+                oldest = this.ownFiles.peek();
+                if (oldest == null || DirectorySyncTransport.writtenAt(oldest) > cutoff) {
+                    return;
+                }
+                this.ownFiles.poll();
+            }
+
+            try {
+                Files.deleteIfExists(oldest);
+            } catch (final IOException e) {
+                Logger.warning("Failed to delete sync batch " + oldest.getFileName() + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private List<String> listBatches() throws IOException {
+        try (final Stream<Path> files = Files.list(this.directory)) {
+            return files.map(path -> path.getFileName().toString())
+                    .filter(name -> name.endsWith(DirectorySyncTransport.EXTENSION) && !name.startsWith("."))
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    private static long writtenAt(final Path file) {
+        final String name = file.getFileName().toString();
+        return Long.parseLong(name.substring(0, name.indexOf('-')));
+    }
+
+}
@@ -0,0 +1,100 @@
+package net.plexprison.plexpurchases.sync;
+
+import net.plexprison.plexpurchases.utils.Logger;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.MulticastSocket;
+import java.net.StandardSocketOptions;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * Exchanges batches as UDP multicast datagrams, one batch per datagram. With a TTL of 0 datagrams never leave the
+ * machine, which is enough for several instances on one host without running a broker. Datagrams can be lost, which
+ * only delays a player's count until their next purchase, since every batch carries absolute counts.
+ */
+final class MulticastSyncTransport implements SyncTransport, Runnable {
+
+    // Largest UDP payload over IPv4
+    private static final int MAX_DATAGRAM_BYTES = 65_507;
+
+    private final String group;
+    private final int port;
+    private final int ttl;
+    private InetSocketAddress address;
+    private MulticastSocket socket;
+    private volatile Consumer<byte[]> receiver;
+    private volatile boolean running;
+
+    /**
+     * Constructor for the multicast transport
+     *
+     * @param group The multicast group address every instance joins
+     * @param port  The port every instance listens on
+     * @param ttl   How many hops datagrams may travel
+     */
+    MulticastSyncTransport(final String group, final int port, final int ttl) {
+        this.group = group;
+        this.port = port;
+        this.ttl = ttl;
+    }
+
+    @Override
+    public void start(final Consumer<byte[]> receiver) throws IOException {
+        this.address = new InetSocketAddress(InetAddress.getByName(this.group), this.port);
+        if (!this.address.getAddress().isMulticastAddress()) {
+            throw new IOException(this.group + " is not a multicast address");
+        }
+
+        // Binds with SO_REUSEADDR, so every instance on the machine can listen on the same port
+        this.socket = new MulticastSocket(this.port);
+        this.socket.setTimeToLive(this.ttl);
+        this.socket.setOption(StandardSocketOptions.IP_MULTICAST_LOOP, true);
+        this.socket.joinGroup(this.address, null);
+
+        this.receiver = receiver;
+        this.running = true;
+        final Thread thread = new Thread(this, "PlexPurchases-Sync");
+        thread.setDaemon(true);
+        thread.start();
+        Logger.info("Syncing with other instances over multicast " + this.group + ":" + this.port);
+    }
+
+    @Override
+    public void send(final byte[] batch) throws IOException {
+        if (batch.length > MulticastSyncTransport.MAX_DATAGRAM_BYTES) {
+            throw new IOException("batch of " + batch.length + " bytes doesn't fit in a datagram");
+        }
+        this.socket.send(new DatagramPacket(batch, batch.length, this.address));
+    }
+
+    @Override
+    public void close() {
+        this.running = false;
+        if (this.socket != null) {
+            // Unblocks the receiving thread
+            this.socket.close();
+        }
+    }
+
+    @Override
+    public void run() {
+        final byte[] buffer = new byte[MulticastSyncTransport.MAX_DATAGRAM_BYTES];
+        final DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+        while (this.running) {
+            try {
+                packet.setLength(buffer.length);
+                this.socket.receive(packet);
+                this.receiver.accept(Arrays.copyOfRange(buffer, packet.getOffset(), packet.getOffset() + packet.getLength()));
+            } catch (final IOException e) {
+                if (this.running) {
+                    Logger.error("Failed to receive sync batch: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,98 @@
+package net.plexprison.plexpurchases.sync;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * One batch of changes an instance tells the others about: optionally the content version of its catalog after a
+ * reload, and the latest purchase count and ownership of every player purchase it recorded since the last batch.
+ * Counts are absolute rather than increments, so a batch received twice or out of order does no harm.
+ * Encoded as magic, instance, sequence, catalog flag and version, delta count, then per delta the player, the purchase
+ * ID, the count and whether it is owned, which keeps a typical delta around 35 bytes.
+ *
+ * @param instance       The instance that sent the batch, new on every start
+ * @param sequence       Increases with every batch the instance sends
+ * @param catalogChanged Whether the sender published a catalog with different content since its last batch
+ * @param catalogVersion The content version of the sender's catalog, see {@code ConfiguredPlexPurchasesObjectHolder#getContentVersion()}
+ * @param deltas         The changed player purchases
+ */
+public record SyncBatch(UUID instance, long sequence, boolean catalogChanged, long catalogVersion, List<Delta> deltas) {
+
+    private static final int MAGIC = 0x50505359;
+
+    /**
+     * Encodes the batch for a transport
+     *
+     * @return The encoded batch
+     */
+    public byte[] encode() {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(40 + this.deltas.size() * 40);
+        try (final DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(SyncBatch.MAGIC);
+            out.writeLong(this.instance.getMostSignificantBits());
+            out.writeLong(this.instance.getLeastSignificantBits());
+            out.writeLong(this.sequence);
+            out.writeBoolean(this.catalogChanged);
+            out.writeLong(this.catalogVersion);
+            out.writeInt(this.deltas.size());
+            for (final Delta delta : this.deltas) {
+                out.writeLong(delta.player().getMostSignificantBits());
+                out.writeLong(delta.player().getLeastSignificantBits());
+                out.writeUTF(delta.purchaseId());
+                out.writeInt(delta.count());
+                out.writeBoolean(delta.owned());
+            }
+        } catch (final IOException e) {
+            // Only thrown for purchase IDs over 64KB, which no catalog has
+            throw new IllegalStateException("Failed to encode sync batch: " + e.getMessage(), e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Decodes a batch received from a transport
+     *
+     * @param encoded The encoded batch
+     * @return The batch
+     * @throws IOException If the bytes aren't a complete batch
+     */
+    public static SyncBatch decode(final byte[] encoded) throws IOException {
+        final DataInputStream in = new DataInputStream(new ByteArrayInputStream(encoded));
+        if (encoded.length < Integer.BYTES || in.readInt() != SyncBatch.MAGIC) {
+            throw new IOException("not a sync batch");
+        }
+
+        final UUID instance = new UUID(in.readLong(), in.readLong());
+        final long sequence = in.readLong();
+        final boolean catalogChanged = in.readBoolean();
+        final long catalogVersion = in.readLong();
+        final int count = in.readInt();
+        if (count < 0 || count > encoded.length) {
+            throw new IOException("bad delta count " + count);
+        }
+
+        final List<Delta> deltas = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            deltas.add(new Delta(new UUID(in.readLong(), in.readLong()), in.readUTF(), in.readInt(), in.readBoolean()));
+        }
+        return new SyncBatch(instance, sequence, catalogChanged, catalogVersion, deltas);
+    }
+
+    /**
+     * A player purchase's state after it changed on the sending instance
+     *
+     * @param player     The player
+     * @param purchaseId The product or subscription ID
+     * @param count      The player's purchase count
+     * @param owned      Whether the player owns the purchase
+     */
+    public record Delta(UUID player, String purchaseId, int count, boolean owned) {
+    }
+
+}
@@ -0,0 +1,271 @@
+package net.plexprison.plexpurchases.sync;
+
+import net.plexprison.plexpurchases.config.holder.ConfiguredPlexPurchasesObjectHolder;
+import net.plexprison.plexpurchases.config.holder.PurchaseCatalog;
+import net.plexprison.plexpurchases.config.settings.SyncSettings;
+import net.plexprison.plexpurchases.player.PurchaseCountCache;
+import net.plexprison.plexpurchases.utils.Logger;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps instances that serve the same purchases directory in step without a broker.
+ * When this instance publishes a catalog whose files differ from the last version it knew of, and whenever it records
+ * a purchase, renewal or expiry, the change is queued and sent to the others in a small batch every few ticks. An
+ * instance that receives a newer catalog version reparses the files that changed, and applies player deltas to the
+ * players it is tracking, keeping the higher count. Players who aren't online here are skipped, their counts come
+ * from their permissions and this instance's saved state when they join.
+ */
+public class SyncService {
+
+    // Keeps a batch of typical deltas well under one datagram
+    private static final int MAX_DELTAS_PER_BATCH = 256;
+
+    private final Plugin plugin;
+    private final SyncSettings settings;
+    private final ConfiguredPlexPurchasesObjectHolder holder;
+    private final PurchaseCountCache purchaseCounts;
+    private final SyncTransport transport;
+    private final UUID instance;
+    private final AtomicLong sequence;
+    // Guarded by itself, the latest change of each player purchase since the last batch
+    private final Map<DeltaKey, SyncBatch.Delta> pending;
+    // Guarded by pending
+    private boolean catalogChanged;
+    // Guarded by pending, the last catalog version sent or received
+    private long knownVersion;
+    // Only touched by the transport's receiving thread
+    private final Map<UUID, Long> lastSequences;
+    // Serializes sends, so batches go out in sequence order
+    private final Object sendLock;
+    private final LongAdder sentBatches;
+    private final LongAdder receivedBatches;
+    private final LongAdder appliedDeltas;
+    private BukkitTask flushTask;
+
+    /**
+     * Constructor for the sync service
+     *
+     * @param plugin         The plugin instance
+     * @param settings       The sync settings
+     * @param holder         The holder whose catalog reloads are shared
+     * @param purchaseCounts The cache whose recorded purchases are shared
+     */
+    public SyncService(final Plugin plugin, final SyncSettings settings, final ConfiguredPlexPurchasesObjectHolder holder, final PurchaseCountCache purchaseCounts) {
+        this.plugin = plugin;
+        this.settings = settings;
+        this.holder = holder;
+        this.purchaseCounts = purchaseCounts;
+        this.instance = UUID.randomUUID();
+        this.sequence = new AtomicLong();
+        this.pending = new LinkedHashMap<>();
+        this.knownVersion = holder.getContentVersion();
+        this.lastSequences = new HashMap<>();
+        this.sendLock = new Object();
+        this.sentBatches = new LongAdder();
+        this.receivedBatches = new LongAdder();
+        this.appliedDeltas = new LongAdder();
+        this.transport = switch (settings.getTransport()) {
+            case DIRECTORY -> new DirectorySyncTransport(plugin.getDataFolder().toPath().resolve(settings.getDirectory()).normalize(),
+                    this.instance.toString(), settings.getPollMillis(), settings.getRetentionSeconds() * 1000L);
+            case MULTICAST -> new MulticastSyncTransport(settings.getMulticastGroup(), settings.getMulticastPort(), settings.getMulticastTtl());
+        };
+    }
+
+    /**
+     * Opens the transport and starts sharing changes
+     *
+     * @throws IOException If the transport can't be opened
+     */
+    public void start() throws IOException {
+        this.transport.start(this::receive);
+        this.holder.addPublishListener(this::onCatalogPublished);
+        this.purchaseCounts.addRecordListener(this::onRecorded);
+
+        final long batchTicks = Math.max(1L, (this.settings.getBatchMillis() + 49L) / 50L);
+        this.flushTask = this.plugin.getServer().getScheduler().runTaskTimerAsynchronously(this.plugin, this::flush, batchTicks, batchTicks);
+    }
+
+    /**
+     * Sends everything still queued and closes the transport
+     */
+    public void shutdown() {
+        if (this.flushTask != null) {
+            this.flushTask.cancel();
+            this.flushTask = null;
+        }
+        this.flush();
+        this.transport.close();
+    }
+
+    /**
+     * Gets the number of batches sent to other instances
+     *
+     * @return The number of batches sent
+     */
+    public long getSentBatches() {
+        return this.sentBatches.sum();
+    }
+
+    /**
+     * Gets the number of batches received from other instances
+     *
+     * @return The number of batches received
+     */
+    public long getReceivedBatches() {
+        return this.receivedBatches.sum();
+    }
+
+    /**
+     * Gets the number of deltas from other instances that changed a player's state here
+     *
+     * @return The number of applied deltas
+     */
+    public long getAppliedDeltas() {
+        return this.appliedDeltas.sum();
+    }
+
+    /**
+     * Queues a catalog version bump if the published catalog was loaded from different files than the last one
+     *
+     * @param catalog The published catalog
+     */
+    private void onCatalogPublished(final PurchaseCatalog catalog) {
+        final long version = this.holder.getContentVersion();
+        synchronized (this.pending) {
+            // Also true after a reload another instance asked for, so the bump isn't echoed back
+            if (version == this.knownVersion) {
+                return;
+            }
+            this.knownVersion = version;
+            this.catalogChanged = true;
+        }
+    }
+
+    /**
+     * Queues a purchase recorded on this instance, replacing any earlier change of the same player purchase
+     *
+     * @param player     The player
+     * @param purchaseId The product or subscription ID
+     * @param count      The new purchase count
+     * @param owned      Whether the purchase is owned
+     */
+    private void onRecorded(final UUID player, final String purchaseId, final int count, final boolean owned) {
+        synchronized (this.pending) {
+            this.pending.put(new DeltaKey(player, purchaseId), new SyncBatch.Delta(player, purchaseId, count, owned));
+        }
+    }
+
+    /**
+     * Sends everything queued since the last flush, split into batches of at most {@link #MAX_DELTAS_PER_BATCH} deltas
+     */
+    private void flush() {
+        synchronized (this.sendLock) {
+            final List<SyncBatch.Delta> deltas;
+            final boolean bump;
+            final long version;
+            synchronized (this.pending) {
+                if (this.pending.isEmpty() && !this.catalogChanged) {
+                    return;
+                }
+                deltas = new ArrayList<>(this.pending.values());
+                bump = this.catalogChanged;
+                version = this.knownVersion;
+                this.pending.clear();
+                this.catalogChanged = false;
+            }
+
+            int from = 0;
+            do {
+                final int to = Math.min(deltas.size(), from + SyncService.MAX_DELTAS_PER_BATCH);
+                final List<SyncBatch.Delta> slice = deltas.subList(from, to);
+                final boolean sliceBump = bump && from == 0;
+                final SyncBatch batch = new SyncBatch(this.instance, this.sequence.incrementAndGet(), sliceBump, version, List.copyOf(slice));
+                try {
+                    this.transport.send(batch.encode());
+                    this.sentBatches.increment();
+                } catch (final IOException e) {
+                    Logger.error("Failed to send sync batch, will retry: " + e.getMessage());
+                    this.requeue(slice, sliceBump);
+                }
+                from = to;
+            } while (from < deltas.size());
+        }
+    }
+
+    private void requeue(final List<SyncBatch.Delta> deltas, final boolean bump) {
+        synchronized (this.pending) {
+            for (final SyncBatch.Delta delta : deltas) {
+                // A newer change may have been queued since
+                this.pending.putIfAbsent(new DeltaKey(delta.player(), delta.purchaseId()), delta);
+            }
+            this.catalogChanged |= bump;
+        }
+    }
+
+    /**
+     * Applies a batch from another instance, called on the transport's receiving thread
+     *
+     * @param encoded The encoded batch
+     */
+    private void receive(final byte[] encoded) {
+        final SyncBatch batch;
+        try {
+            batch = SyncBatch.decode(encoded);
+        } catch (final IOException e) {
+            Logger.warning("Ignoring malformed sync batch: " + e.getMessage());
+            return;
+        }
+
+        if (batch.instance().equals(this.instance)) {
+            return;
+        }
+        final Long last = this.lastSequences.get(batch.instance());
+        if (last != null && batch.sequence() <= last) {
+            return;
+        }
+        this.lastSequences.put(batch.instance(), batch.sequence());
+        this.receivedBatches.increment();
+
+        try {
+            if (batch.catalogChanged()) {
+                synchronized (this.pending) {
+                    this.knownVersion = batch.catalogVersion();
+                }
+                // Reparse first, so deltas for purchases that were just added find them
+                if (this.holder.isReady() && this.holder.getContentVersion() != batch.catalogVersion()) {
+                    Logger.info("Another instance reloaded purchases, reloading changed files");
+                    this.holder.reloadChangedFiles();
+                }
+            }
+
+            for (final SyncBatch.Delta delta : batch.deltas()) {
+                if (this.purchaseCounts.applyRemote(delta.player(), delta.purchaseId(), delta.count(), delta.owned())) {
+                    this.appliedDeltas.increment();
+                }
+            }
+        } catch (final RuntimeException e) {
+            Logger.error("Failed to apply sync batch from " + batch.instance() + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Identifies one purchase of one player in the queue of changes
+     *
+     * @param player     The player
+     * @param purchaseId The product or subscription ID
+     */
+    private record DeltaKey(UUID player, String purchaseId) {
+    }
+
+}
@@ -0,0 +1,34 @@
+package net.plexprison.plexpurchases.sync;
+
+import java.io.IOException;
+import java.util.function.Consumer;
+
+/**
+ * Carries encoded {@link SyncBatch}es between the instances serving the same purchases directory.
+ * A transport only moves bytes, deciding what to send and what a received batch means is up to {@link SyncService}.
+ * Batches may arrive more than once and a transport may hand an instance its own batches back.
+ */
+public interface SyncTransport {
+
+    /**
+     * Starts receiving batches from other instances
+     *
+     * @param receiver Called with every received batch, always on the same background thread
+     * @throws IOException If the transport can't be opened
+     */
+    void start(Consumer<byte[]> receiver) throws IOException;
+
+    /**
+     * Sends a batch to every other instance
+     *
+     * @param batch The encoded batch
+     * @throws IOException If the batch couldn't be sent
+     */
+    void send(byte[] batch) throws IOException;
+
+    /**
+     * Stops receiving and releases the transport
+     */
+    void close();
+
+}
@@ -0,0 +1,40 @@
+package net.plexprison.plexpurchases.utils;
+
+import java.util.logging.Level;
+
+/**
+ * Log levels in increasing order of importance, each with the prefix it is printed with
+ */
+public enum LogLevel {
+    DEBUG(Level.INFO, "[DEBUG] "),
+    INFO(Level.INFO, "ℹ️ "),
+    SUCCESS(Level.INFO, "✅ "),
+    WARNING(Level.WARNING, "⚠️ "),
+    ERROR(Level.SEVERE, "❌ ");
+
+    private final Level julLevel;
+    private final String prefix;
+
+    LogLevel(final Level julLevel, final String prefix) {
+        this.julLevel = julLevel;
+        this.prefix = prefix;
+    }
+
+    /**
+     * Gets the level messages are written to the plugin logger at
+     *
+     * @return The java.util.logging level
+     */
+    public Level getJulLevel() {
+        return this.julLevel;
+    }
+
+    /**
+     * Gets the prefix messages are printed with
+     *
+     * @return The prefix, including a trailing space
+     */
+    public String getPrefix() {
+        return this.prefix;
+    }
+}
@@ -0,0 +1,96 @@
+package net.plexprison.plexpurchases.utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded lock-free queue for many producers and a single consumer.
+ * Each slot carries a sequence number telling producers whether it is free and the consumer whether it is filled, so
+ * producers only contend on one compare-and-set and never wait: when the buffer is full {@link #offer(Object)} fails.
+ *
+ * @param <T> The element type
+ */
+final class LogRingBuffer<T> {
+
+    private final int mask;
+    private final AtomicReferenceArray<T> items;
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail;
+    // Only touched by the consumer
+    private long head;
+
+    /**
+     * Constructor for the ring buffer
+     *
+     * @param capacity The minimum capacity, rounded up to a power of two
+     */
+    LogRingBuffer(final int capacity) {
+        final int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.mask = size - 1;
+        this.items = new AtomicReferenceArray<>(size);
+        this.sequences = new AtomicLongArray(size);
+        this.tail = new AtomicLong();
+        for (int i = 0; i < size; i++) {
+            this.sequences.set(i, i);
+        }
+    }
+
+    /**
+     * Adds an element if there is room, safe to call from any thread
+     *
+     * @param item The element
+     * @return false if the buffer is full
+     */
+    boolean offer(final T item) {
+        long position = this.tail.get();
+        while (true) {
+            final int index = (int) (position & this.mask);
+            final long difference = this.sequences.get(index) - position;
+
+            if (difference == 0) {
+                if (this.tail.compareAndSet(position, position + 1)) {
+                    this.items.set(index, item);
+                    // Publishes the element to the consumer
+                    this.sequences.set(index, position + 1);
+                    return true;
+                }
+                position = this.tail.get();
+            } else if (difference < 0) {
+                return false;
+            } else {
+                // Another producer claimed this slot first
+                position = this.tail.get();
+            }
+        }
+    }
+
+    /**
+     * Takes the oldest element, must only be called by the single consumer
+     *
+     * @return The element, or null if the buffer is empty
+     */
+    T poll() {
+        final int index = (int) (this.head & this.mask);
+        if (this.sequences.get(index) != this.head + 1) {
+            return null;
+        }
+
+        final T item = this.items.get(index);
+        this.items.set(index, null);
+        // Hands the slot back to producers for the next lap
+        this.sequences.set(index, this.head + this.mask + 1);
+        this.head++;
+        return item;
+    }
+
+    /**
+     * Gets the number of slots
+     *
+     * @return The capacity
+     */
+    int capacity() {
+        return this.mask + 1;
+    }
+
+}
@@ -2,21 +2,112 @@ package net.plexprison.plexpurchases.utils;
 
 import org.bukkit.plugin.Plugin;
 
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
 /**
  * Utility class for logging messages with different levels
  * Uses plugin-specific logger for better contextual information
+ * Messages below the minimum level are dropped before anything is built, and formatting of parameterized and
+ * supplied messages happens on a background thread. Callers only add a message to a bounded lock-free buffer, so
+ * logging never blocks; when the buffer is full the message is dropped and counted instead.
+ * Arguments are formatted later, so pass values that won't change rather than live objects.
  */
 public class Logger {
 
+    private static final int DEFAULT_BUFFER_SIZE = 8192;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+
     private static Plugin plugin;
+    private static volatile LogLevel minimumLevel = LogLevel.INFO;
+    private static volatile LogRingBuffer<Entry> buffer;
+    private static volatile Thread writer;
+    private static volatile boolean running;
+    private static final LongAdder dropped = new LongAdder();
 
     /**
-     * Initialize the logger with the plugin instance
+     * Initialize the logger with the plugin instance and start the background writer.
+     * The buffer size defaults to 8192 messages and can be overridden with -Dplexpurchases.log.buffer.
      *
      * @param pluginInstance The plugin instance
      */
     public static void initialize(final Plugin pluginInstance) {
         Logger.plugin = pluginInstance;
+        Logger.buffer = new LogRingBuffer<>(Math.max(16, Integer.getInteger("plexpurchases.log.buffer", Logger.DEFAULT_BUFFER_SIZE)));
+        Logger.running = true;
+
+        final Thread thread = new Thread(Logger::drainLoop, "PlexPurchases-Logger");
+        thread.setDaemon(true);
+        Logger.writer = thread;
+        thread.start();
+    }
+
+    /**
+     * Stop the background writer after it has written everything already logged.
+     * Messages logged afterwards are written directly.
+     */
+    public static void shutdown() {
+        final Thread thread = Logger.writer;
+        if (thread == null) {
+            return;
+        }
+
+        // New messages are written directly from here on
+        Logger.writer = null;
+        Logger.running = false;
+        LockSupport.unpark(thread);
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(2));
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        // Pick up anything that was added while the writer was finishing
+        if (!thread.isAlive()) {
+            Entry entry;
+            while ((entry = Logger.buffer.poll()) != null) {
+                Logger.write(entry);
+            }
+        }
+    }
+
+    /**
+     * Set the minimum level messages must have to be logged
+     *
+     * @param level The minimum level
+     */
+    public static void setMinimumLevel(final LogLevel level) {
+        Logger.minimumLevel = level;
+    }
+
+    /**
+     * Get the minimum level messages must have to be logged
+     *
+     * @return The minimum level
+     */
+    public static LogLevel getMinimumLevel() {
+        return Logger.minimumLevel;
+    }
+
+    /**
+     * Check if messages of a level are logged, for callers that need to do work before logging
+     *
+     * @param level The level to check
+     * @return true if messages of this level are logged
+     */
+    public static boolean isEnabled(final LogLevel level) {
+        return level.ordinal() >= Logger.minimumLevel.ordinal();
+    }
+
+    /**
+     * Get the number of messages dropped because the buffer was full
+     *
+     * @return The total dropped since startup
+     */
+    public static long getDroppedMessages() {
+        return Logger.dropped.sum();
     }
 
     /**
@@ -25,9 +116,26 @@ public class Logger {
      * @param message The message to log
      */
     public static void info(final String message) {
-        if (Logger.plugin != null) {
-            Logger.plugin.getLogger().info("ℹ️ " + message);
-        }
+        Logger.submit(LogLevel.INFO, message, null);
+    }
+
+    /**
+     * Log an INFO level message built from a format string
+     *
+     * @param format The {@link String#format} pattern
+     * @param args   The arguments to format into the message
+     */
+    public static void info(final String format, final Object... args) {
+        Logger.submit(LogLevel.INFO, format, args);
+    }
+
+    /**
+     * Log an INFO level message built only if INFO is enabled
+     *
+     * @param message Supplies the message to log
+     */
+    public static void info(final Supplier<String> message) {
+        Logger.submit(LogLevel.INFO, message, null);
     }
 
     /**
@@ -36,9 +144,26 @@ public class Logger {
      * @param message The message to log
      */
     public static void warning(final String message) {
-        if (Logger.plugin != null) {
-            Logger.plugin.getLogger().warning("⚠️ " + message);
-        }
+        Logger.submit(LogLevel.WARNING, message, null);
+    }
+
+    /**
+     * Log a WARNING level message built from a format string
+     *
+     * @param format The {@link String#format} pattern
+     * @param args   The arguments to format into the message
+     */
+    public static void warning(final String format, final Object... args) {
+        Logger.submit(LogLevel.WARNING, format, args);
+    }
+
+    /**
+     * Log a WARNING level message built only if WARNING is enabled
+     *
+     * @param message Supplies the message to log
+     */
+    public static void warning(final Supplier<String> message) {
+        Logger.submit(LogLevel.WARNING, message, null);
     }
 
     /**
@@ -47,9 +172,26 @@ public class Logger {
      * @param message The message to log
      */
     public static void error(final String message) {
-        if (Logger.plugin != null) {
-            Logger.plugin.getLogger().severe("❌ " + message);
-        }
+        Logger.submit(LogLevel.ERROR, message, null);
+    }
+
+    /**
+     * Log an ERROR level message built from a format string
+     *
+     * @param format The {@link String#format} pattern
+     * @param args   The arguments to format into the message
+     */
+    public static void error(final String format, final Object... args) {
+        Logger.submit(LogLevel.ERROR, format, args);
+    }
+
+    /**
+     * Log an ERROR level message built only if ERROR is enabled
+     *
+     * @param message Supplies the message to log
+     */
+    public static void error(final Supplier<String> message) {
+        Logger.submit(LogLevel.ERROR, message, null);
     }
 
     /**
@@ -58,9 +200,26 @@ public class Logger {
      * @param message The message to log
      */
     public static void debug(final String message) {
-        if (Logger.plugin != null) {
-            Logger.plugin.getLogger().info("[DEBUG] " + message);
-        }
+        Logger.submit(LogLevel.DEBUG, message, null);
+    }
+
+    /**
+     * Log a DEBUG level message built from a format string (only if debug is enabled)
+     *
+     * @param format The {@link String#format} pattern
+     * @param args   The arguments to format into the message
+     */
+    public static void debug(final String format, final Object... args) {
+        Logger.submit(LogLevel.DEBUG, format, args);
+    }
+
+    /**
+     * Log a DEBUG level message built only if debug is enabled
+     *
+     * @param message Supplies the message to log
+     */
+    public static void debug(final Supplier<String> message) {
+        Logger.submit(LogLevel.DEBUG, message, null);
     }
 
     /**
@@ -69,9 +228,26 @@ public class Logger {
      * @param message The message to log
      */
     public static void success(final String message) {
-        if (Logger.plugin != null) {
-            Logger.plugin.getLogger().info("✅ " + message);
-        }
+        Logger.submit(LogLevel.SUCCESS, message, null);
+    }
+
+    /**
+     * Log a SUCCESS level message built from a format string
+     *
+     * @param format The {@link String#format} pattern
+     * @param args   The arguments to format into the message
+     */
+    public static void success(final String format, final Object... args) {
+        Logger.submit(LogLevel.SUCCESS, format, args);
+    }
+
+    /**
+     * Log a SUCCESS level message built only if SUCCESS is enabled
+     *
+     * @param message Supplies the message to log
+     */
+    public static void success(final Supplier<String> message) {
+        Logger.submit(LogLevel.SUCCESS, message, null);
     }
 
     /**
@@ -82,23 +258,107 @@ public class Logger {
      * @param args    The arguments to format into the message
      */
     public static void log(final String level, final String message, final Object... args) {
-        final String formattedMessage = String.format(message, args);
-        switch (level.toUpperCase()) {
-            case "WARNING":
-                Logger.warning(formattedMessage);
-                break;
-            case "ERROR":
-                Logger.error(formattedMessage);
-                break;
-            case "DEBUG":
-                Logger.debug(formattedMessage);
-                break;
-            case "SUCCESS":
-                Logger.success(formattedMessage);
-                break;
-            default:
-                Logger.info(formattedMessage);
-                break;
+        LogLevel logLevel;
+        try {
+            logLevel = LogLevel.valueOf(level.toUpperCase());
+        } catch (final IllegalArgumentException e) {
+            logLevel = LogLevel.INFO;
         }
+        Logger.submit(logLevel, message, args);
+    }
+
+    /**
+     * Log a formatted message with parameters
+     *
+     * @param level   The log level
+     * @param message The message to log
+     * @param args    The arguments to format into the message
+     */
+    public static void log(final LogLevel level, final String message, final Object... args) {
+        Logger.submit(level, message, args);
+    }
+
+    private static void submit(final LogLevel level, final Object message, final Object[] args) {
+        if (Logger.plugin == null || !Logger.isEnabled(level)) {
+            return;
+        }
+
+        final Entry entry = new Entry(level, message, args);
+        final LogRingBuffer<Entry> ring = Logger.buffer;
+        if (Logger.writer == null || ring == null) {
+            Logger.write(entry);
+            return;
+        }
+
+        if (!ring.offer(entry)) {
+            Logger.dropped.increment();
+        }
+    }
+
+    /**
+     * Writes buffered messages until shut down, then writes whatever is left
+     */
+    private static void drainLoop() {
+        final LogRingBuffer<Entry> ring = Logger.buffer;
+        long reportedDropped = 0;
+
+        while (true) {
+            Entry entry;
+            boolean wrote = false;
+            while ((entry = ring.poll()) != null) {
+                Logger.write(entry);
+                wrote = true;
+            }
+
+            final long droppedNow = Logger.dropped.sum();
+            if (droppedNow != reportedDropped) {
+                Logger.write(new Entry(LogLevel.WARNING, "Log buffer was full, dropped " + (droppedNow - reportedDropped) + " messages", null));
+                reportedDropped = droppedNow;
+            }
+
+            if (!Logger.running) {
+                return;
+            }
+            if (!wrote) {
+                LockSupport.parkNanos(Logger.IDLE_PARK_NANOS);
+            }
+        }
+    }
+
+    private static void write(final Entry entry) {
+        final Plugin target = Logger.plugin;
+        if (target == null) {
+            return;
+        }
+
+        String text;
+        try {
+            text = entry.render();
+        } catch (final RuntimeException e) {
+            text = "Failed to format log message '" + entry.message() + "': " + e;
+        }
+        target.getLogger().log(entry.level().getJulLevel(), entry.level().getPrefix() + text);
+    }
+
+    /**
+     * A message waiting to be written, kept unformatted until then
+     *
+     * @param level   The level
+     * @param message The message, format string or supplier
+     * @param args    The format arguments, or null
+     */
+    private record Entry(LogLevel level, Object message, Object[] args) {
+
+        @SuppressWarnings("unchecked")
+        private String render() {
+            if (this.message instanceof Supplier) {
+                return String.valueOf(((Supplier<String>) this.message).get());
+            }
+            if (this.args == null || this.args.length == 0) {
+                return String.valueOf(this.message);
+            }
+            return String.format((String) this.message, this.args);
+        }
+
     }
-} 
\ No newline at end of file
+}
@@ -1,8 +1,13 @@
 package net.plexprison.plexpurchases.utils;
 
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.MappingIterator;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.deser.DeserializationProblemHandler;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
 
@@ -10,7 +15,10 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
+import java.util.function.ObjIntConsumer;
 
 /**
  * Utility class for parsing YAML files into data classes
@@ -43,7 +51,7 @@ public class YamlParser {
             }
 
             final T result = YamlParser.yamlMapper.readValue(file, targetClass);
-            Logger.debug("Successfully parsed YAML file: " + file.getPath());
+            Logger.debug(() -> "Successfully parsed YAML file: " + file.getPath());
             return Optional.of(result);
 
         } catch (final IOException e) {
@@ -52,6 +60,95 @@ public class YamlParser {
         }
     }
 
+    /**
+     * Read a YAML file into the specified data class, leaving failure handling to the caller
+     *
+     * @param file        The YAML file to read
+     * @param targetClass The class to parse the YAML into
+     * @param <T>         The type of the target class
+     * @return The parsed object
+     * @throws IOException if the file cannot be read or does not match the target class
+     */
+    public static <T> T readFile(final File file, final Class<T> targetClass) throws IOException {
+        return YamlParser.yamlMapper.readValue(file, targetClass);
+    }
+
+    /**
+     * Read raw YAML content into the specified data class, leaving failure handling to the caller
+     *
+     * @param content     The YAML content as bytes
+     * @param targetClass The class to parse the YAML into
+     * @param <T>         The type of the target class
+     * @return The parsed object
+     * @throws IOException if the content does not match the target class
+     */
+    public static <T> T readBytes(final byte[] content, final Class<T> targetClass) throws IOException {
+        return YamlParser.yamlMapper.readValue(content, targetClass);
+    }
+
+    /**
+     * Read every object in raw YAML content, leaving failure handling to the caller.
+     * The content may hold one object, a top-level list of objects, or several YAML documents separated by {@code ---},
+     * each of which may again be an object or a list. Objects are bound one at a time straight from the token stream,
+     * so the content is never built into a tree first. Empty documents are skipped.
+     *
+     * @param content     The YAML content as bytes
+     * @param targetClass The class to parse each object into
+     * @param <T>         The type of the target class
+     * @return The parsed objects in document order, empty if the content holds none
+     * @throws IOException if the content is malformed or an object does not match the target class
+     */
+    public static <T> List<T> readAll(final byte[] content, final Class<T> targetClass) throws IOException {
+        final List<T> results = new ArrayList<>(1);
+        YamlParser.readAll(content, targetClass, null, (value, line) -> results.add(value));
+        return results;
+    }
+
+    /**
+     * Read every object in raw YAML content like {@link #readAll(byte[], Class)}, passing each one on as soon as it is bound
+     *
+     * @param content     The YAML content as bytes
+     * @param targetClass The class to parse each object into
+     * @param handler     Handles values that don't match their field, such as unknown enum constants, or null to fail on them
+     * @param consumer    Receives each object with the line it starts on, in document order
+     * @param <T>         The type of the target class
+     * @throws IOException if the content is malformed or an object does not match the target class
+     */
+    public static <T> void readAll(final byte[] content, final Class<T> targetClass, final DeserializationProblemHandler handler,
+                                   final ObjIntConsumer<T> consumer) throws IOException {
+        final ObjectReader reader = handler == null
+                ? YamlParser.yamlMapper.readerFor(targetClass)
+                : YamlParser.yamlMapper.readerFor(targetClass).withHandler(handler);
+
+        try (final JsonParser parser = YamlParser.yamlMapper.getFactory().createParser(content)) {
+            JsonToken token;
+            while ((token = parser.nextToken()) != null) {
+                if (token == JsonToken.VALUE_NULL) {
+                    continue;
+                }
+
+                if (token == JsonToken.START_ARRAY) {
+                    // The iterator stops at the END_ARRAY of this list, leaving the parser on it for the next document
+                    if (parser.nextToken() == JsonToken.END_ARRAY) {
+                        continue;
+                    }
+                    try (final MappingIterator<T> iterator = reader.readValues(parser)) {
+                        while (iterator.hasNextValue()) {
+                            final int line = parser.currentTokenLocation().getLineNr();
+                            final T value = iterator.nextValue();
+                            if (value != null) {
+                                consumer.accept(value, line);
+                            }
+                        }
+                    }
+                } else {
+                    final int line = parser.currentTokenLocation().getLineNr();
+                    consumer.accept(reader.readValue(parser), line);
+                }
+            }
+        }
+    }
+
     /**
      * Parse a YAML file from a path into the specified data class
      *
@@ -121,7 +218,7 @@ public class YamlParser {
             }
 
             YamlParser.yamlMapper.writeValue(file, object);
-            Logger.debug("Successfully wrote object to YAML file: " + file.getPath());
+            Logger.debug(() -> "Successfully wrote object to YAML file: " + file.getPath());
             return true;
 
         } catch (final IOException e) {